@@ -0,0 +1,272 @@
+package io.github.susamlu.langchain4j.aiservice.ingestion;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.exception.NonRetriableException;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 批量向量化入库：把文本段按提供方的限制切成批次，每批一次 embedAll 请求，多个批次并发执行，
+ * 失败的批次退避后重试，结果用 addAll 写入嵌入存储
+ * <p>
+ * 逐条调用 embed(segment) 时每个文本段都是一次 HTTP 往返，入库耗时 ≈ 文本段数 × 往返时间；
+ * 批量后请求数降为 1 / maxBatchSize，再由 maxConcurrency 个请求重叠往返时间。
+ * <ul>
+ *     <li>maxBatchSize：每批最多的文本段数，默认 25（DashScope text-embedding-v2 的上限；OpenAI 为 2048）</li>
+ *     <li>maxBatchChars：每批最多的字符数，用来近似提供方的单次请求 token 上限，0 表示不限制；
+ *     单个文本段超过上限时单独成批</li>
+ *     <li>maxConcurrency：同时进行的请求数，受提供方的并发 / 速率限制约束，默认 4</li>
+ *     <li>maxRetries：每批的最大重试次数，默认 3；退避时间从 initialBackoff 开始翻倍，不超过 maxBackoff，并加上随机抖动，
+ *     避免限流后所有批次同时重试。NonRetriableException（鉴权失败、请求参数错误等）不重试</li>
+ * </ul>
+ * OpenAiEmbeddingModel 自身也会重试（maxRetries，默认 2），两者叠加时单批最多请求 (3 + 1) × (2 + 1) 次，
+ * 只用于入库的嵌入模型可以把它设为 0。
+ * <p>
+ * 写入嵌入存储在锁内进行，存储实现不需要线程安全；任一批次最终失败时不再发起新的批次，
+ * 等进行中的批次结束后抛出 IllegalStateException，已写入的批次不会回滚
+ */
+public class BatchedEmbeddingIngestor {
+
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final int maxBatchSize;
+    private final int maxBatchChars;
+    private final int maxConcurrency;
+    private final int maxRetries;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    private BatchedEmbeddingIngestor(Builder builder) {
+        if (builder.embeddingModel == null || builder.embeddingStore == null) {
+            throw new IllegalArgumentException("embeddingModel 和 embeddingStore 不能为空");
+        }
+        if (builder.maxBatchSize < 1 || builder.maxConcurrency < 1 || builder.maxRetries < 0
+                || builder.maxBatchChars < 0) {
+            throw new IllegalArgumentException("maxBatchSize、maxConcurrency 必须大于 0，maxRetries、maxBatchChars 不能为负数");
+        }
+        this.embeddingModel = builder.embeddingModel;
+        this.embeddingStore = builder.embeddingStore;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.maxBatchChars = builder.maxBatchChars;
+        this.maxConcurrency = builder.maxConcurrency;
+        this.maxRetries = builder.maxRetries;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 向量化并写入全部文本段，返回的 ids 与 segments 一一对应
+     */
+    public IngestionResult ingest(List<TextSegment> segments) {
+        long startNanos = System.nanoTime();
+        List<List<TextSegment>> batches = split(segments);
+        List<List<String>> batchIds = new ArrayList<>(batches.size());
+        for (int i = 0; i < batches.size(); i++) {
+            batchIds.add(List.of());
+        }
+        AtomicInteger requests = new AtomicInteger();
+        AtomicInteger retries = new AtomicInteger();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        int threads = Math.max(1, Math.min(maxConcurrency, batches.size()));
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "embedding-ingestion-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(batches.size());
+            for (int i = 0; i < batches.size(); i++) {
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    // 已有批次最终失败，排队中的批次不再请求
+                    if (failure.get() != null) {
+                        return;
+                    }
+                    try {
+                        batchIds.set(index, ingestBatch(batches.get(index), requests, retries));
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("向量化入库被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("向量化入库失败", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        if (failure.get() != null) {
+            throw new IllegalStateException("向量化入库失败，已完成的批次已写入嵌入存储: " + failure.get().getMessage(),
+                    failure.get());
+        }
+
+        List<String> ids = new ArrayList<>(segments.size());
+        batchIds.forEach(ids::addAll);
+        return new IngestionResult(segments.size(), batches.size(), requests.get(), retries.get(), ids,
+                Duration.ofNanos(System.nanoTime() - startNanos));
+    }
+
+    // 按文本段数和字符数切分批次，保持原有顺序
+    List<List<TextSegment>> split(List<TextSegment> segments) {
+        List<List<TextSegment>> batches = new ArrayList<>();
+        List<TextSegment> current = new ArrayList<>();
+        int currentChars = 0;
+        for (TextSegment segment : segments) {
+            int chars = segment.text().length();
+            boolean full = current.size() >= maxBatchSize
+                    || (maxBatchChars > 0 && !current.isEmpty() && currentChars + chars > maxBatchChars);
+            if (full) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentChars = 0;
+            }
+            current.add(segment);
+            currentChars += chars;
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+
+    private List<String> ingestBatch(List<TextSegment> batch, AtomicInteger requests, AtomicInteger retries) {
+        int attempt = 0;
+        while (true) {
+            List<Embedding> embeddings;
+            try {
+                requests.incrementAndGet();
+                embeddings = embeddingModel.embedAll(batch).content();
+            } catch (NonRetriableException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                sleep(backoff(attempt++));
+                retries.incrementAndGet();
+                continue;
+            }
+            if (embeddings.size() != batch.size()) {
+                throw new IllegalStateException("嵌入模型返回的向量数与文本段数不一致: " + embeddings.size()
+                        + " != " + batch.size());
+            }
+            synchronized (embeddingStore) {
+                return embeddingStore.addAll(embeddings, batch);
+            }
+        }
+    }
+
+    // 指数退避加随机抖动：在 [base / 2, base] 之间随机
+    private long backoff(int attempt) {
+        long base = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempt, 20));
+        return base / 2 + ThreadLocalRandom.current().nextLong(base / 2 + 1);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("重试等待被中断", e);
+        }
+    }
+
+    /**
+     * 一次入库的统计：文本段数、批次数、实际请求数（含重试）、重试次数、写入的 id（与文本段一一对应）和耗时
+     */
+    public record IngestionResult(int segments, int batches, int requests, int retries, List<String> ids,
+                                  Duration elapsed) {
+
+        public double segmentsPerSecond() {
+            return segments * 1_000_000_000.0 / Math.max(1, elapsed.toNanos());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("文本段=%d, 批次=%d, 请求=%d, 重试=%d, 耗时=%d ms, 吞吐=%.0f 段/秒",
+                    segments, batches, requests, retries, elapsed.toMillis(), segmentsPerSecond());
+        }
+
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel embeddingModel;
+        private EmbeddingStore<TextSegment> embeddingStore;
+        private int maxBatchSize = 25;
+        private int maxBatchChars;
+        private int maxConcurrency = 4;
+        private int maxRetries = 3;
+        private Duration initialBackoff = Duration.ofMillis(500);
+        private Duration maxBackoff = Duration.ofSeconds(10);
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder embeddingStore(EmbeddingStore<TextSegment> embeddingStore) {
+            this.embeddingStore = embeddingStore;
+            return this;
+        }
+
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        public Builder maxBatchChars(int maxBatchChars) {
+            this.maxBatchChars = maxBatchChars;
+            return this;
+        }
+
+        public Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public Builder initialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+
+        public Builder maxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        public BatchedEmbeddingIngestor build() {
+            return new BatchedEmbeddingIngestor(this);
+        }
+
+    }
+
+}
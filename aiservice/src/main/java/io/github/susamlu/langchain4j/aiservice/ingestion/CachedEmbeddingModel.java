@@ -0,0 +1,308 @@
+package io.github.susamlu.langchain4j.aiservice.ingestion;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带本地磁盘缓存的嵌入模型：按“模型名 + 文本内容的哈希”缓存向量，重启后未变化的文本段不再请求提供方
+ * <p>
+ * 缓存目录下每个模型两个文件：
+ * <ul>
+ *     <li>{模型名}.vectors：向量按槽位连续存放的 float 数组（小端），按 64MB 分块内存映射，命中时直接从映射区拷贝到向量数组</li>
+ *     <li>{模型名}.index：文件头（魔数、版本、维度）加追加写入的索引项，每项为 SHA-256(模型名 + 文本) 的前 16 字节和槽位号，
+ *     打开时全部读入内存；进程在写入中途退出时，末尾不完整的索引项被截掉，对应槽位之后会被覆盖</li>
+ * </ul>
+ * embedAll 只把未命中的文本段（同一批内相同的文本只请求一次）交给被装饰的模型，一次 embedAll 请求；
+ * 分批、并发和重试由调用方（例如 {@link BatchedEmbeddingIngestor}）负责。文档改动后只有内容变化的文本段会重新向量化。
+ * <p>
+ * 同一模型改变输出维度（例如 dimensions 参数）时应通过 namespace 区分，维度与缓存文件不一致时抛出 IllegalStateException。
+ * 线程安全；同一个缓存目录不应被多个进程同时写入
+ */
+public class CachedEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private static final int MAGIC = 0x454D4243;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 20;
+    private static final long CHUNK_BYTES = 64L << 20;
+
+    private final EmbeddingModel delegate;
+    private final String namespace;
+    private final Path vectorsPath;
+    private final FileChannel indexChannel;
+    private final FileChannel vectorsChannel;
+    // 以下字段都在 this 的锁内访问
+    private final Map<Key, Integer> index = new HashMap<>();
+    private final List<FloatBuffer> chunks = new ArrayList<>();
+    private final List<MappedByteBuffer> mapped = new ArrayList<>();
+    private int dimension;
+    private int slotsPerChunk;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private CachedEmbeddingModel(Builder builder) {
+        if (builder.delegate == null || builder.cacheDirectory == null) {
+            throw new IllegalArgumentException("delegate 和 cacheDirectory 不能为空");
+        }
+        this.delegate = builder.delegate;
+        this.namespace = builder.namespace != null ? builder.namespace : delegate.modelName();
+        String fileName = namespace.replaceAll("[^A-Za-z0-9._-]", "_");
+        try {
+            Files.createDirectories(builder.cacheDirectory);
+            this.vectorsPath = builder.cacheDirectory.resolve(fileName + ".vectors");
+            this.indexChannel = FileChannel.open(builder.cacheDirectory.resolve(fileName + ".index"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.vectorsChannel = FileChannel.open(vectorsPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开嵌入缓存失败: " + builder.cacheDirectory, e);
+        }
+        System.out.println("嵌入缓存已加载: " + namespace + ", 向量数=" + index.size());
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        Key[] keys = new Key[textSegments.size()];
+        Embedding[] embeddings = new Embedding[textSegments.size()];
+        // 未命中的文本 -> 在 textSegments 中的位置
+        Map<Key, List<Integer>> missing = new LinkedHashMap<>();
+        List<TextSegment> toEmbed = new ArrayList<>();
+        for (int i = 0; i < textSegments.size(); i++) {
+            keys[i] = key(textSegments.get(i).text());
+        }
+        synchronized (this) {
+            for (int i = 0; i < textSegments.size(); i++) {
+                Integer slot = index.get(keys[i]);
+                if (slot != null) {
+                    embeddings[i] = Embedding.from(read(slot));
+                    continue;
+                }
+                List<Integer> positions = missing.get(keys[i]);
+                if (positions == null) {
+                    positions = new ArrayList<>();
+                    missing.put(keys[i], positions);
+                    toEmbed.add(textSegments.get(i));
+                }
+                positions.add(i);
+            }
+        }
+        hits.addAndGet(textSegments.size() - toEmbed.size());
+        if (toEmbed.isEmpty()) {
+            return Response.from(List.of(embeddings));
+        }
+
+        misses.addAndGet(toEmbed.size());
+        Response<List<Embedding>> response = delegate.embedAll(toEmbed);
+        List<Embedding> embedded = response.content();
+        if (embedded.size() != toEmbed.size()) {
+            throw new IllegalStateException("嵌入模型返回的向量数与文本段数不一致: " + embedded.size()
+                    + " != " + toEmbed.size());
+        }
+        synchronized (this) {
+            int j = 0;
+            for (Map.Entry<Key, List<Integer>> entry : missing.entrySet()) {
+                Embedding embedding = embedded.get(j++);
+                // 并发请求了相同的文本时，只保留先写入的一份
+                if (!index.containsKey(entry.getKey())) {
+                    write(entry.getKey(), embedding.vector());
+                }
+                for (int position : entry.getValue()) {
+                    embeddings[position] = embedding;
+                }
+            }
+        }
+        return Response.from(List.of(embeddings), response.tokenUsage(), response.finishReason());
+    }
+
+    @Override
+    public int dimension() {
+        synchronized (this) {
+            if (dimension > 0) {
+                return dimension;
+            }
+        }
+        return delegate.dimension();
+    }
+
+    @Override
+    public String modelName() {
+        return delegate.modelName();
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * 把映射区和索引刷到磁盘并关闭文件
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            mapped.forEach(MappedByteBuffer::force);
+            indexChannel.force(false);
+            indexChannel.close();
+            vectorsChannel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("关闭嵌入缓存失败: " + namespace, e);
+        }
+    }
+
+    // 读入文件头和全部索引项，截掉末尾不完整的索引项
+    private void load() throws IOException {
+        long size = indexChannel.size();
+        if (size < HEADER_BYTES) {
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        indexChannel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IllegalStateException("不是嵌入缓存索引文件或版本不兼容: " + vectorsPath);
+        }
+        initDimension(header.getInt());
+
+        long entries = (size - HEADER_BYTES) / ENTRY_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate((int) (entries * ENTRY_BYTES));
+        indexChannel.read(buffer, HEADER_BYTES);
+        buffer.flip();
+        for (long i = 0; i < entries; i++) {
+            index.put(new Key(buffer.getLong(), buffer.getLong()), buffer.getInt());
+        }
+        if (size != HEADER_BYTES + entries * ENTRY_BYTES) {
+            indexChannel.truncate(HEADER_BYTES + entries * ENTRY_BYTES);
+        }
+    }
+
+    private void initDimension(int dimension) {
+        this.dimension = dimension;
+        this.slotsPerChunk = (int) Math.max(1, CHUNK_BYTES / (dimension * (long) Float.BYTES));
+    }
+
+    private float[] read(int slot) {
+        float[] vector = new float[dimension];
+        chunk(slot / slotsPerChunk).get((slot % slotsPerChunk) * dimension, vector);
+        return vector;
+    }
+
+    // 先写向量再追加索引项：中途退出时索引不会指向未写完的向量
+    private void write(Key key, float[] vector) {
+        try {
+            if (dimension == 0) {
+                initDimension(vector.length);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                        .putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(0);
+                indexChannel.write(header.flip(), 0);
+            } else if (vector.length != dimension) {
+                throw new IllegalStateException("向量维度 " + vector.length + " 与缓存文件的维度 " + dimension
+                        + " 不一致，请为不同维度设置不同的 namespace: " + namespace);
+            }
+            int slot = index.size();
+            chunk(slot / slotsPerChunk).put((slot % slotsPerChunk) * dimension, vector);
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_BYTES).putLong(key.high()).putLong(key.low()).putInt(slot);
+            indexChannel.write(entry.flip(), HEADER_BYTES + (long) slot * ENTRY_BYTES);
+            index.put(key, slot);
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入嵌入缓存失败: " + namespace, e);
+        }
+    }
+
+    // 按需映射分块，映射超出文件长度的区域会把文件扩展到分块末尾
+    private FloatBuffer chunk(int chunkIndex) {
+        try {
+            while (chunks.size() <= chunkIndex) {
+                long chunkBytes = (long) slotsPerChunk * dimension * Float.BYTES;
+                MappedByteBuffer buffer = vectorsChannel.map(FileChannel.MapMode.READ_WRITE,
+                        chunks.size() * chunkBytes, chunkBytes);
+                mapped.add(buffer);
+                chunks.add(buffer.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer());
+            }
+            return chunks.get(chunkIndex);
+        } catch (IOException e) {
+            throw new UncheckedIOException("映射嵌入缓存文件失败: " + vectorsPath, e);
+        }
+    }
+
+    private Key key(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(namespace.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            ByteBuffer hash = ByteBuffer.wrap(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+            return new Key(hash.getLong(), hash.getLong());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // SHA-256 的前 128 位，碰撞概率可以忽略
+    private record Key(long high, long low) {
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel delegate;
+        private Path cacheDirectory;
+        private String namespace;
+
+        public Builder delegate(EmbeddingModel delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        public Builder cacheDirectory(Path cacheDirectory) {
+            this.cacheDirectory = cacheDirectory;
+            return this;
+        }
+
+        /**
+         * 缓存的命名空间，默认为被装饰模型的 modelName()
+         */
+        public Builder namespace(String namespace) {
+            this.namespace = namespace;
+            return this;
+        }
+
+        public CachedEmbeddingModel build() {
+            return new CachedEmbeddingModel(this);
+        }
+
+    }
+
+}
@@ -1,6 +1,5 @@
 package io.github.susamlu.langchain4j.aiservice.multiservice;
 
-import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
@@ -13,7 +12,10 @@ import dev.langchain4j.service.SystemMessage;
 import dev.langchain4j.service.UserMessage;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.github.susamlu.langchain4j.aiservice.ingestion.BatchedEmbeddingIngestor;
+import io.github.susamlu.langchain4j.aiservice.ingestion.CachedEmbeddingModel;
 
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.List;
 
@@ -92,10 +94,16 @@ public class MilesOfSmilesMultiServiceExample {
                 TextSegment.from("微笑口腔设有洁牙、全景 X 光和个性化居家护理指导，帮助维持长期口腔健康。")
         );
 
-        // 批量向量化并存储文档
-        for (TextSegment doc : docs) {
-            Embedding embedding = embeddingModel.embed(doc).content();
-            store.add(embedding, doc);
+        // 批量向量化并存储文档，向量缓存在本地磁盘，重启后内容未变化的文档不再请求嵌入接口
+        try (CachedEmbeddingModel cachedEmbeddingModel = CachedEmbeddingModel.builder()
+                .delegate(embeddingModel)
+                .cacheDirectory(Path.of("target", "embedding-cache"))
+                .build()) {
+            BatchedEmbeddingIngestor.builder()
+                    .embeddingModel(cachedEmbeddingModel)
+                    .embeddingStore(store)
+                    .build()
+                    .ingest(docs);
         }
 
         // 配置检索器：返回最相关的3条结果（平衡相关性与响应速度）
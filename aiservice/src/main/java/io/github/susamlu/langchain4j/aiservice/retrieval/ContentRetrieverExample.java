@@ -1,6 +1,5 @@
 package io.github.susamlu.langchain4j.aiservice.retrieval;
 
-import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
@@ -11,7 +10,10 @@ import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.github.susamlu.langchain4j.aiservice.ingestion.BatchedEmbeddingIngestor;
+import io.github.susamlu.langchain4j.aiservice.ingestion.CachedEmbeddingModel;
 
+import java.nio.file.Path;
 import java.util.List;
 
 /**
@@ -57,10 +59,17 @@ public class ContentRetrieverExample {
                 TextSegment.from("RAG (Retrieval Augmented Generation) 是一种结合检索和生成的技术。")
         );
 
-        // 将文本段添加到嵌入存储中
-        for (TextSegment segment : segments) {
-            Embedding embedding = embeddingModel.embed(segment).content();
-            embeddingStore.add(embedding, segment);
+        // 将文本段批量向量化后写入嵌入存储（每批一次 embedAll 请求）
+        // 向量缓存在本地磁盘，重启后内容未变化的文本段不再请求嵌入接口
+        try (CachedEmbeddingModel cachedEmbeddingModel = CachedEmbeddingModel.builder()
+                .delegate(embeddingModel)
+                .cacheDirectory(Path.of("target", "embedding-cache"))
+                .build()) {
+            BatchedEmbeddingIngestor.builder()
+                    .embeddingModel(cachedEmbeddingModel)
+                    .embeddingStore(embeddingStore)
+                    .build()
+                    .ingest(segments);
         }
 
         // 创建内容检索器
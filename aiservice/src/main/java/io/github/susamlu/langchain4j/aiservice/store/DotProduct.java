@@ -0,0 +1,61 @@
+package io.github.susamlu.langchain4j.aiservice.store;
+
+/**
+ * 点积内核：query 与 data 中从 offset 开始的 length 个 float 的点积
+ * <p>
+ * 默认使用 JDK Vector API 实现（{@link VectorDotProduct}，需要 --add-modules jdk.incubator.vector），
+ * 模块不可用、硬件向量长度不足 4 个 float，或设置了 -Dembedding.store.simd=false 时退回标量实现
+ */
+interface DotProduct {
+
+    DotProduct SCALAR = new ScalarDotProduct();
+
+    float dot(float[] query, float[] data, int offset, int length);
+
+    /**
+     * 当前 JVM 上可用的最快实现
+     */
+    static DotProduct best() {
+        if (!Boolean.parseBoolean(System.getProperty("embedding.store.simd", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            // 通过反射加载，未添加模块时不会触发 Vector API 类的链接；向量长度不足时构造方法抛出异常
+            return (DotProduct) Class.forName(DotProduct.class.getPackageName() + ".VectorDotProduct")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+
+    /**
+     * 标量实现：4 路累加打破加法的循环依赖，JIT 不会自动向量化浮点归约
+     */
+    final class ScalarDotProduct implements DotProduct {
+
+        @Override
+        public float dot(float[] query, float[] data, int offset, int length) {
+            float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int i = 0;
+            int bound = length & ~3;
+            for (; i < bound; i += 4) {
+                s0 += query[i] * data[offset + i];
+                s1 += query[i + 1] * data[offset + i + 1];
+                s2 += query[i + 2] * data[offset + i + 2];
+                s3 += query[i + 3] * data[offset + i + 3];
+            }
+            for (; i < length; i++) {
+                s0 += query[i] * data[offset + i];
+            }
+            return s0 + s1 + s2 + s3;
+        }
+
+        @Override
+        public String toString() {
+            return "scalar";
+        }
+
+    }
+
+}
@@ -0,0 +1,364 @@
+package io.github.susamlu.langchain4j.aiservice.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 精确检索的嵌入存储：结果与 InMemoryEmbeddingStore 相同（余弦相似度，分数为 RelevanceScore.fromCosineSimilarity），
+ * 但扫描更快
+ * <p>
+ * InMemoryEmbeddingStore 把每个向量作为单独的 float[] 放在 Embedding 对象里，逐个顺序打分。这里：
+ * <ul>
+ *     <li>所有向量归一化后连续存放在一个 float 数组里（第 i 个向量位于 [i * dimension, (i + 1) * dimension)），
+ *     扫描时顺序读内存，没有指针跳转；单个数组最多 Integer.MAX_VALUE 个 float（1536 维约 139 万个向量）</li>
+ *     <li>点积用 JDK Vector API 计算（需要 --add-modules jdk.incubator.vector），不可用时退回标量实现，见 {@link DotProduct}</li>
+ *     <li>向量较多时按区间拆分为 fork/join 任务，每个分区维护自己的 top-k 小顶堆，低于 minScore 的直接跳过，
+ *     合并时只合并各分区的 k 个结果</li>
+ * </ul>
+ * 检索持有读锁，可以并发；写入和删除持有写锁。相同 id 再次写入时覆盖原向量，删除时用最后一个向量填补空位
+ */
+public class ExactEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private final ForkJoinPool pool;
+    private final DotProduct dotProduct;
+    private final int parallelThreshold;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // 以下字段在读写锁内访问
+    private float[] vectors = new float[0];
+    private String[] ids = new String[0];
+    private TextSegment[] segments = new TextSegment[0];
+    private final Map<String, Integer> positions = new HashMap<>();
+    private int dimension;
+    private int size;
+
+    private ExactEmbeddingStore(Builder builder) {
+        this.pool = builder.pool != null ? builder.pool : ForkJoinPool.commonPool();
+        this.dotProduct = builder.simd ? DotProduct.best() : DotProduct.SCALAR;
+        this.parallelThreshold = builder.parallelThreshold;
+        System.out.println("ExactEmbeddingStore 点积实现: " + dotProduct + ", 并行度: " + pool.getParallelism());
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (ids.size() != embeddings.size() || (embedded != null && embedded.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids、embeddings 和 embedded 的数量必须一致");
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                float[] vector = embeddings.get(i).vector();
+                if (dimension == 0) {
+                    dimension = vector.length;
+                } else if (vector.length != dimension) {
+                    throw new IllegalArgumentException("向量维度 " + vector.length + " 与已有向量的维度 " + dimension + " 不一致");
+                }
+                Integer existing = positions.get(ids.get(i));
+                int position = existing != null ? existing : append(ids.get(i));
+                normalizeInto(vector, vectors, position * dimension);
+                segments[position] = embedded != null ? embedded.get(i) : null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer position = positions.remove(id);
+                if (position == null) {
+                    continue;
+                }
+                int last = --size;
+                if (position != last) {
+                    System.arraycopy(vectors, last * dimension, vectors, position * dimension, dimension);
+                    moveLast(position, last);
+                }
+                this.ids[last] = null;
+                segments[last] = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        List<String> matched = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                if (segments[i] != null && filter.test(segments[i].metadata())) {
+                    matched.add(ids[i]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        removeAll(matched);
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            vectors = new float[0];
+            ids = new String[0];
+            segments = new TextSegment[0];
+            positions.clear();
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            float[] query = new float[dimension];
+            normalizeInto(request.queryEmbedding().vector(), query, 0);
+            int k = request.maxResults();
+            // 分数与余弦相似度单调对应，先换算成点积阈值再扫描
+            float minDot = (float) (2 * request.minScore() - 1);
+            boolean parallel = (long) size * dimension >= parallelThreshold;
+            Scan scan = new Scan(query, k, minDot, request.filter(), 0, size, parallel ? leafSize() : size);
+            NodeHeap top = parallel ? pool.invoke(scan) : scan.compute();
+
+            int count = top.size();
+            int[] order = new int[count];
+            float[] scores = new float[count];
+            for (int i = count - 1; i >= 0; i--) {
+                scores[i] = -top.topDistance();
+                order[i] = top.pop();
+            }
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int offset = order[i] * dimension;
+                matches.add(new EmbeddingMatch<>(RelevanceScore.fromCosineSimilarity(scores[i]), ids[order[i]],
+                        Embedding.from(Arrays.copyOfRange(vectors, offset, offset + dimension)), segments[order[i]]));
+            }
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 每个核分到约 4 个分区，便于工作窃取平衡负载；分区也不能太小，否则任务调度的开销超过打分本身
+    private int leafSize() {
+        int minLeaf = Math.max(1, (1 << 16) / dimension);
+        return Math.max(minLeaf, (size + pool.getParallelism() * 4 - 1) / (pool.getParallelism() * 4));
+    }
+
+    private int append(String id) {
+        if (size == ids.length) {
+            long capacity = Math.max(16, ids.length + (ids.length >> 1));
+            if (capacity * dimension > Integer.MAX_VALUE - 8) {
+                capacity = (Integer.MAX_VALUE - 8) / dimension;
+                if (capacity <= size) {
+                    throw new IllegalStateException("超过单个 float 数组的容量，最多 " + capacity + " 个 " + dimension + " 维向量");
+                }
+            }
+            vectors = Arrays.copyOf(vectors, (int) capacity * dimension);
+            ids = Arrays.copyOf(ids, (int) capacity);
+            segments = Arrays.copyOf(segments, (int) capacity);
+        }
+        ids[size] = id;
+        positions.put(id, size);
+        return size++;
+    }
+
+    // 删除时把最后一个向量的 id 和文本段移到空位
+    private void moveLast(int position, int last) {
+        ids[position] = ids[last];
+        segments[position] = segments[last];
+        positions.put(ids[position], position);
+    }
+
+    private static void normalizeInto(float[] vector, float[] target, int offset) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float scale = norm == 0 ? 0 : (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            target[offset + i] = vector[i] * scale;
+        }
+    }
+
+    /**
+     * 扫描 [from, to) 区间，返回该区间的 top-k（分数取负存入大顶堆，堆顶即当前第 k 名）；区间较大时二分后并行扫描再合并
+     */
+    private final class Scan extends RecursiveTask<NodeHeap> {
+
+        private final float[] query;
+        private final int k;
+        private final float minDot;
+        private final Filter filter;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        Scan(float[] query, int k, float minDot, Filter filter, int from, int to, int leafSize) {
+            this.query = query;
+            this.k = k;
+            this.minDot = minDot;
+            this.filter = filter;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected NodeHeap compute() {
+            if (to - from <= leafSize) {
+                return scan();
+            }
+            int middle = (from + to) >>> 1;
+            Scan left = new Scan(query, k, minDot, filter, from, middle, leafSize);
+            Scan right = new Scan(query, k, minDot, filter, middle, to, leafSize);
+            left.fork();
+            NodeHeap merged = right.compute();
+            NodeHeap other = left.join();
+            while (other.size() > 0) {
+                float negated = other.topDistance();
+                offer(merged, other.pop(), -negated);
+            }
+            return merged;
+        }
+
+        private NodeHeap scan() {
+            NodeHeap top = new NodeHeap(k + 1);
+            float[] data = vectors;
+            int dim = dimension;
+            // 堆满之后只有超过第 k 名的分数才需要入堆
+            float threshold = minDot;
+            for (int i = from; i < to; i++) {
+                if (filter != null && (segments[i] == null || !filter.test(segments[i].metadata()))) {
+                    continue;
+                }
+                float score = dotProduct.dot(query, data, i * dim, dim);
+                if (score < threshold) {
+                    continue;
+                }
+                offer(top, i, score);
+                if (top.size() == k) {
+                    threshold = Math.max(minDot, -top.topDistance());
+                }
+            }
+            return top;
+        }
+
+        private void offer(NodeHeap top, int position, float score) {
+            if (score < minDot) {
+                return;
+            }
+            if (top.size() < k) {
+                top.push(position, -score);
+            } else if (-score < top.topDistance()) {
+                top.pop();
+                top.push(position, -score);
+            }
+        }
+
+    }
+
+    public static class Builder {
+
+        private ForkJoinPool pool;
+        private boolean simd = true;
+        private int parallelThreshold = 1 << 20;
+
+        /**
+         * 执行并行扫描的线程池，默认为公共 ForkJoinPool
+         */
+        public Builder forkJoinPool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * 是否使用 Vector API 计算点积，默认 true；为 false 或 Vector API 不可用时使用标量实现
+         */
+        public Builder simd(boolean simd) {
+            this.simd = simd;
+            return this;
+        }
+
+        /**
+         * 向量总 float 数（向量数 × 维度）达到该值时并行扫描，默认 1M（约 4MB）
+         */
+        public Builder parallelThreshold(int parallelThreshold) {
+            this.parallelThreshold = parallelThreshold;
+            return this;
+        }
+
+        public ExactEmbeddingStore build() {
+            return new ExactEmbeddingStore(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,121 @@
+package io.github.susamlu.langchain4j.aiservice.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * 精确检索基准：同一份随机向量上对比 InMemoryEmbeddingStore 和 ExactEmbeddingStore 的几种配置
+ * （标量 / Vector API，单线程 / fork/join 并行）的单次检索延迟（平均、p50、p99）、QPS 和扫描带宽
+ * <p>
+ * 每种配置先预热 --warmup 次检索（让 JIT 编译点积内核），再计时 --queries 次；默认 1536 维（OpenAI text-embedding-3-small 等）。
+ * 需要 jdk.incubator.vector 模块，否则 Vector API 配置会退回标量实现：
+ * <pre>
+ * mvn -pl aiservice -am install -DskipTests
+ * MAVEN_OPTS="--add-modules jdk.incubator.vector -Xmx4g" mvn -pl aiservice exec:java \
+ *     -Dexec.mainClass=io.github.susamlu.langchain4j.aiservice.store.ExactSearchBenchmark \
+ *     -Dexec.args="--size=100000 --dimensions=1536 --queries=200"
+ * </pre>
+ */
+public class ExactSearchBenchmark {
+
+    public static void main(String[] args) {
+        int size = 100_000;
+        int dimensions = 1536;
+        int warmup = 30;
+        int queries = 200;
+        int k = 10;
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            String value = pair.length > 1 ? pair[1] : "";
+            switch (pair[0]) {
+                case "size" -> size = Integer.parseInt(value);
+                case "dimensions" -> dimensions = Integer.parseInt(value);
+                case "warmup" -> warmup = Integer.parseInt(value);
+                case "queries" -> queries = Integer.parseInt(value);
+                case "k" -> k = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("未知参数: " + arg);
+            }
+        }
+        System.out.printf("向量数=%d, 维度=%d, 预热=%d, 查询数=%d, k=%d, CPU=%d%n",
+                size, dimensions, warmup, queries, k, Runtime.getRuntime().availableProcessors());
+
+        Random random = new Random(42);
+        List<String> ids = new ArrayList<>(size);
+        List<Embedding> embeddings = new ArrayList<>(size);
+        List<TextSegment> segments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(String.valueOf(i));
+            embeddings.add(Embedding.from(random(random, dimensions)));
+            segments.add(TextSegment.from("片段 " + i));
+        }
+        List<Embedding> queryEmbeddings = new ArrayList<>(warmup + queries);
+        for (int q = 0; q < warmup + queries; q++) {
+            queryEmbeddings.add(Embedding.from(random(random, dimensions)));
+        }
+
+        // 逐个测量，测完一个释放一个，避免同时持有多份向量
+        Map<String, Supplier<EmbeddingStore<TextSegment>>> stores = new LinkedHashMap<>();
+        stores.put("InMemoryEmbeddingStore", InMemoryEmbeddingStore::new);
+        stores.put("Exact 标量 单线程", () -> ExactEmbeddingStore.builder().simd(false)
+                .parallelThreshold(Integer.MAX_VALUE).build());
+        stores.put("Exact 向量 单线程", () -> ExactEmbeddingStore.builder().parallelThreshold(Integer.MAX_VALUE).build());
+        stores.put("Exact 标量 并行", () -> ExactEmbeddingStore.builder().simd(false).build());
+        stores.put("Exact 向量 并行", () -> ExactEmbeddingStore.builder().build());
+
+        List<String> rows = new ArrayList<>();
+        for (Map.Entry<String, Supplier<EmbeddingStore<TextSegment>>> entry : stores.entrySet()) {
+            EmbeddingStore<TextSegment> store = entry.getValue().get();
+            store.addAll(ids, embeddings, segments);
+            for (int q = 0; q < warmup; q++) {
+                search(store, queryEmbeddings.get(q), k);
+            }
+            long[] latencies = new long[queries];
+            for (int q = 0; q < queries; q++) {
+                long start = System.nanoTime();
+                search(store, queryEmbeddings.get(warmup + q), k);
+                latencies[q] = System.nanoTime() - start;
+            }
+            rows.add(row(entry.getKey(), latencies, (long) size * dimensions * Float.BYTES));
+            System.out.println(rows.get(rows.size() - 1));
+            store.removeAll();
+        }
+
+        System.out.println();
+        System.out.printf("%-24s %10s %10s %10s %10s %10s%n", "存储", "平均(ms)", "p50(ms)", "p99(ms)", "QPS", "GB/s");
+        rows.forEach(System.out::println);
+    }
+
+    private static void search(EmbeddingStore<TextSegment> store, Embedding query, int k) {
+        store.search(EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(k).build());
+    }
+
+    private static String row(String name, long[] latencies, long bytes) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(latencies).average().orElse(0);
+        return String.format("%-24s %10.2f %10.2f %10.2f %10.1f %10.1f", name, mean / 1e6,
+                sorted[sorted.length / 2] / 1e6,
+                sorted[(int) Math.min(sorted.length - 1, Math.ceil(sorted.length * 0.99) - 1)] / 1e6,
+                1e9 / mean, bytes / mean);
+    }
+
+    private static float[] random(Random random, int length) {
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+}
@@ -0,0 +1,151 @@
+package io.github.susamlu.langchain4j.aiservice.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * HNSW 检索基准：在同一份聚类向量上对比 InMemoryEmbeddingStore（逐个比较的精确检索）和 HnswEmbeddingStore
+ * 在不同 efSearch 下的单线程 QPS、延迟（p50 / p99）和 recall@k
+ * <p>
+ * 数据为高斯混合（--clusters 个中心加噪声），查询为随机数据点加噪声；recall@k 以精确检索的前 k 个结果为准。
+ * 典型用法（百万级需要较大的堆，例如 384 维约 1.6GB 向量，两个存储各一份）：
+ * <pre>
+ * mvn -pl aiservice -am install -DskipTests
+ * MAVEN_OPTS=-Xmx8g mvn -pl aiservice exec:java -Dexec.mainClass=io.github.susamlu.langchain4j.aiservice.store.HnswBenchmark \
+ *     -Dexec.args="--size=1000000 --dimensions=384 --queries=1000 --k=10"
+ * </pre>
+ */
+public class HnswBenchmark {
+
+    public static void main(String[] args) {
+        int size = 100_000;
+        int dimensions = 384;
+        int clusters = 1000;
+        int queries = 500;
+        int k = 10;
+        int m = 16;
+        int efConstruction = 200;
+        int[] efSearches = {16, 32, 64, 128, 256};
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            String value = pair.length > 1 ? pair[1] : "";
+            switch (pair[0]) {
+                case "size" -> size = Integer.parseInt(value);
+                case "dimensions" -> dimensions = Integer.parseInt(value);
+                case "clusters" -> clusters = Integer.parseInt(value);
+                case "queries" -> queries = Integer.parseInt(value);
+                case "k" -> k = Integer.parseInt(value);
+                case "m" -> m = Integer.parseInt(value);
+                case "ef-construction" -> efConstruction = Integer.parseInt(value);
+                case "ef-search" -> efSearches = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                default -> throw new IllegalArgumentException("未知参数: " + arg);
+            }
+        }
+        System.out.printf("向量数=%d, 维度=%d, 聚类数=%d, 查询数=%d, k=%d, m=%d, efConstruction=%d, CPU=%d%n",
+                size, dimensions, clusters, queries, k, m, efConstruction, Runtime.getRuntime().availableProcessors());
+
+        Random random = new Random(42);
+        float[][] centers = new float[clusters][dimensions];
+        for (float[] center : centers) {
+            for (int d = 0; d < dimensions; d++) {
+                center[d] = (float) random.nextGaussian();
+            }
+        }
+        List<String> ids = new ArrayList<>(size);
+        List<Embedding> embeddings = new ArrayList<>(size);
+        List<TextSegment> segments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(String.valueOf(i));
+            embeddings.add(Embedding.from(perturb(random, centers[random.nextInt(clusters)], 0.5f)));
+            segments.add(TextSegment.from("片段 " + i));
+        }
+        List<Embedding> queryEmbeddings = new ArrayList<>(queries);
+        for (int q = 0; q < queries; q++) {
+            queryEmbeddings.add(Embedding.from(perturb(random, embeddings.get(random.nextInt(size)).vector(), 0.3f)));
+        }
+
+        InMemoryEmbeddingStore<TextSegment> exact = new InMemoryEmbeddingStore<>();
+        long start = System.nanoTime();
+        exact.addAll(ids, embeddings, segments);
+        System.out.printf("InMemoryEmbeddingStore 写入: %.1f s%n", (System.nanoTime() - start) / 1e9);
+
+        HnswEmbeddingStore hnsw = HnswEmbeddingStore.builder().m(m).efConstruction(efConstruction).build();
+        start = System.nanoTime();
+        hnsw.addAll(ids, embeddings, segments);
+        System.out.printf("HnswEmbeddingStore 建图: %.1f s（%.0f 向量/秒）%n", (System.nanoTime() - start) / 1e9,
+                size / ((System.nanoTime() - start) / 1e9));
+
+        // 精确结果同时作为 recall 的基准
+        List<Set<String>> truth = new ArrayList<>(queries);
+        long[] exactLatencies = new long[queries];
+        for (int q = 0; q < queries; q++) {
+            long begin = System.nanoTime();
+            List<EmbeddingMatch<TextSegment>> matches = search(exact, queryEmbeddings.get(q), k);
+            exactLatencies[q] = System.nanoTime() - begin;
+            Set<String> expected = new HashSet<>();
+            matches.forEach(match -> expected.add(match.embeddingId()));
+            truth.add(expected);
+        }
+
+        List<String> rows = new ArrayList<>();
+        rows.add(row("InMemory（精确）", exactLatencies, 1.0));
+        for (int efSearch : efSearches) {
+            hnsw.efSearch(efSearch);
+            // 预热
+            for (int q = 0; q < Math.min(queries, 100); q++) {
+                search(hnsw, queryEmbeddings.get(q), k);
+            }
+            long[] latencies = new long[queries];
+            int found = 0;
+            int total = 0;
+            for (int q = 0; q < queries; q++) {
+                long begin = System.nanoTime();
+                List<EmbeddingMatch<TextSegment>> matches = search(hnsw, queryEmbeddings.get(q), k);
+                latencies[q] = System.nanoTime() - begin;
+                for (EmbeddingMatch<TextSegment> match : matches) {
+                    if (truth.get(q).contains(match.embeddingId())) {
+                        found++;
+                    }
+                }
+                total += truth.get(q).size();
+            }
+            rows.add(row("HNSW efSearch=" + efSearch, latencies, (double) found / total));
+        }
+
+        System.out.println();
+        System.out.printf("%-22s %10s %12s %12s %10s%n", "存储", "QPS", "p50(ms)", "p99(ms)", "recall@" + k);
+        rows.forEach(System.out::println);
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> search(EmbeddingStore<TextSegment> store, Embedding query, int k) {
+        return store.search(EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(k).build()).matches();
+    }
+
+    private static String row(String name, long[] latencies, double recall) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        double qps = latencies.length / (Arrays.stream(latencies).sum() / 1e9);
+        return String.format("%-22s %10.0f %12.3f %12.3f %10.3f", name, qps, sorted[sorted.length / 2] / 1e6,
+                sorted[(int) Math.min(sorted.length - 1, Math.ceil(sorted.length * 0.99) - 1)] / 1e6, recall);
+    }
+
+    private static float[] perturb(Random random, float[] base, float sigma) {
+        float[] vector = base.clone();
+        for (int d = 0; d < vector.length; d++) {
+            vector[d] += (float) random.nextGaussian() * sigma;
+        }
+        return vector;
+    }
+
+}
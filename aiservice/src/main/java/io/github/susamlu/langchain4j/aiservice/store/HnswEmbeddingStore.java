@@ -0,0 +1,449 @@
+package io.github.susamlu.langchain4j.aiservice.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * 基于 HNSW（Hierarchical Navigable Small World）图的近似最近邻嵌入存储，按余弦相似度检索
+ * <p>
+ * InMemoryEmbeddingStore 每次检索都要与全部向量计算相似度，百万级文本段时检索成为 RAG 一轮中最慢的部分；
+ * HNSW 在多层近邻图上贪心搜索，每次检索只比较几百到几千个向量，代价是结果是近似的（召回率由 efSearch 控制）。
+ * <ul>
+ *     <li>m：每个节点在上层保留的邻居数，第 0 层为 2m，默认 16。越大召回率越高，内存和建图时间也越多</li>
+ *     <li>efConstruction：插入时的候选集大小，默认 200</li>
+ *     <li>efSearch：检索时的候选集大小（实际取 max(efSearch, maxResults)），默认 64，可以在运行时调整</li>
+ * </ul>
+ * 向量在插入时归一化并复制一份，相似度即点积；返回的分数与 InMemoryEmbeddingStore 一致
+ * （RelevanceScore.fromCosineSimilarity），minScore、maxResults 的语义也相同，
+ * 因此可以直接用于 EmbeddingStoreContentRetriever。返回的 embedding 是归一化后的向量。
+ * <p>
+ * 插入和检索可以在多个线程上同时进行：每个节点的邻居表用该节点的锁保护，一次只持有一个节点的锁；
+ * addAll 在文本段较多时用公共 ForkJoinPool 并行插入。不支持删除；metadata 过滤在近似结果上进行，满足条件的结果可能少于 maxResults
+ */
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    // addAll 达到该数量时并行插入
+    private static final int PARALLEL_THRESHOLD = 1024;
+
+    private final int m;
+    private final int maxConnections0;
+    private final int efConstruction;
+    private volatile int efSearch;
+    private final double levelMultiplier;
+
+    private final Object growLock = new Object();
+    private volatile Node[] nodes = new Node[1024];
+    private volatile int size;
+    private volatile EntryPoint entryPoint;
+
+    private final ThreadLocal<SearchContext> searchContexts = ThreadLocal.withInitial(SearchContext::new);
+
+    private HnswEmbeddingStore(Builder builder) {
+        if (builder.m < 2 || builder.efConstruction < 1 || builder.efSearch < 1) {
+            throw new IllegalArgumentException("m 不能小于 2，efConstruction、efSearch 必须大于 0");
+        }
+        this.m = builder.m;
+        this.maxConnections0 = builder.m * 2;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.levelMultiplier = 1 / Math.log(builder.m);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 调整检索时的候选集大小，不需要重建索引，对之后的检索生效
+     */
+    public void efSearch(int efSearch) {
+        if (efSearch < 1) {
+            throw new IllegalArgumentException("efSearch 必须大于 0");
+        }
+        this.efSearch = efSearch;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        insert(id, embedding, null);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        insert(id, embedding, null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        insert(id, embedding, textSegment);
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (ids.size() != embeddings.size() || (embedded != null && embedded.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids、embeddings 和 embedded 的数量必须一致");
+        }
+        IntStream indexes = IntStream.range(0, ids.size());
+        if (ids.size() >= PARALLEL_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> insert(ids.get(i), embeddings.get(i), embedded != null ? embedded.get(i) : null));
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        EntryPoint entry = entryPoint;
+        if (entry == null) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+        float[] query = normalize(request.queryEmbedding().vector());
+        SearchContext context = searchContexts.get();
+        int nearest = entry.node;
+        for (int level = entry.level; level > 0; level--) {
+            nearest = greedySearch(query, nearest, level);
+        }
+        int ef = Math.max(efSearch, request.maxResults());
+        NodeHeap results = searchLayer(context, query, nearest, ef, 0);
+
+        // 结果堆是距离的大顶堆，倒序取出得到相似度从高到低
+        int count = results.size();
+        int[] ids = new int[count];
+        float[] distances = new float[count];
+        for (int i = count - 1; i >= 0; i--) {
+            distances[i] = results.topDistance();
+            ids[i] = results.pop();
+        }
+        Filter filter = request.filter();
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (int i = 0; i < count && matches.size() < request.maxResults(); i++) {
+            double score = RelevanceScore.fromCosineSimilarity(1 - distances[i]);
+            if (score < request.minScore()) {
+                break;
+            }
+            Node node = node(ids[i]);
+            if (filter != null && (node.embedded == null || !filter.test(node.embedded.metadata()))) {
+                continue;
+            }
+            matches.add(new EmbeddingMatch<>(score, node.id, Embedding.from(node.vector), node.embedded));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    private void insert(String id, Embedding embedding, TextSegment embedded) {
+        float[] vector = normalize(embedding.vector());
+        int level = (int) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * levelMultiplier);
+        Node node = new Node(id, vector, embedded, level, m, maxConnections0);
+        int index = store(node);
+
+        EntryPoint entry = entryPoint;
+        if (entry == null) {
+            synchronized (growLock) {
+                if (entryPoint == null) {
+                    entryPoint = new EntryPoint(index, level);
+                    return;
+                }
+                entry = entryPoint;
+            }
+        }
+
+        SearchContext context = searchContexts.get();
+        int nearest = entry.node;
+        for (int l = entry.level; l > level; l--) {
+            nearest = greedySearch(vector, nearest, l);
+        }
+        for (int l = Math.min(level, entry.level); l >= 0; l--) {
+            NodeHeap candidates = searchLayer(context, vector, nearest, efConstruction, l);
+            int[] neighbors = selectNeighbors(vector, candidates, l == 0 ? maxConnections0 : m);
+            synchronized (node) {
+                node.setNeighbors(l, neighbors);
+            }
+            for (int neighbor : neighbors) {
+                connect(node(neighbor), index, l);
+            }
+            // 下一层从本层最近的邻居开始
+            nearest = neighbors.length > 0 ? neighbors[0] : nearest;
+        }
+
+        if (level > entry.level) {
+            synchronized (growLock) {
+                if (level > entryPoint.level) {
+                    entryPoint = new EntryPoint(index, level);
+                }
+            }
+        }
+    }
+
+    private int store(Node node) {
+        synchronized (growLock) {
+            Node[] current = nodes;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[size] = node;
+            nodes = current;
+            return size++;
+        }
+    }
+
+    private Node node(int index) {
+        return nodes[index];
+    }
+
+    // 把新节点加入邻居的邻居表，超过上限时用同样的启发式重新挑选
+    private void connect(Node neighbor, int index, int level) {
+        synchronized (neighbor) {
+            int[] links = neighbor.links[level];
+            int count = neighbor.counts[level];
+            int max = links.length;
+            if (count < max) {
+                links[count] = index;
+                neighbor.counts[level] = count + 1;
+                return;
+            }
+            NodeHeap candidates = new NodeHeap(max + 1);
+            for (int i = 0; i < count; i++) {
+                candidates.push(links[i], distance(neighbor.vector, node(links[i]).vector));
+            }
+            candidates.push(index, distance(neighbor.vector, node(index).vector));
+            neighbor.setNeighbors(level, selectNeighbors(neighbor.vector, candidates, max));
+        }
+    }
+
+    /**
+     * 启发式挑选邻居（论文算法 4）：按距离从近到远，只保留比已选邻居都更接近 base 的候选，使邻居分布在不同方向上，
+     * 聚类数据上比直接取最近的 max 个召回率更高。会清空 candidates
+     */
+    private int[] selectNeighbors(float[] base, NodeHeap candidates, int max) {
+        int count = candidates.size();
+        int[] sorted = new int[count];
+        float[] distances = new float[count];
+        for (int i = count - 1; i >= 0; i--) {
+            distances[i] = candidates.topDistance();
+            sorted[i] = candidates.pop();
+        }
+        int[] selected = new int[Math.min(max, count)];
+        int selectedCount = 0;
+        for (int i = 0; i < count && selectedCount < selected.length; i++) {
+            float[] candidate = node(sorted[i]).vector;
+            boolean diverse = true;
+            for (int j = 0; j < selectedCount; j++) {
+                if (distance(candidate, node(selected[j]).vector) < distances[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[selectedCount++] = sorted[i];
+            }
+        }
+        return selectedCount == selected.length ? selected : Arrays.copyOf(selected, selectedCount);
+    }
+
+    // 上层只需要最近的一个节点：沿邻居贪心移动，直到没有更近的邻居
+    private int greedySearch(float[] query, int start, int level) {
+        int current = start;
+        float currentDistance = distance(query, node(current).vector);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int neighbor : node(current).neighbors(level)) {
+                float d = distance(query, node(neighbor).vector);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = neighbor;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在一层上做最佳优先搜索（论文算法 2），返回最多 ef 个最近节点组成的距离大顶堆
+     */
+    private NodeHeap searchLayer(SearchContext context, float[] query, int start, int ef, int level) {
+        context.reset(size);
+        NodeHeap candidates = context.candidates;
+        NodeHeap results = new NodeHeap(ef + 1);
+        float startDistance = distance(query, node(start).vector);
+        context.visit(start);
+        candidates.push(start, -startDistance);
+        results.push(start, startDistance);
+        while (candidates.size() > 0) {
+            float candidateDistance = -candidates.topDistance();
+            if (candidateDistance > results.topDistance() && results.size() >= ef) {
+                break;
+            }
+            int candidate = candidates.pop();
+            for (int neighbor : node(candidate).neighbors(level)) {
+                if (!context.visit(neighbor)) {
+                    continue;
+                }
+                float d = distance(query, node(neighbor).vector);
+                if (results.size() < ef || d < results.topDistance()) {
+                    candidates.push(neighbor, -d);
+                    results.push(neighbor, d);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // 归一化向量的余弦距离：1 - 点积；4 路累加减少循环依赖
+    static float distance(float[] a, float[] b) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        int bound = a.length & ~3;
+        for (; i < bound; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return 1 - (s0 + s1 + s2 + s3);
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    private record EntryPoint(int node, int level) {
+    }
+
+    private static class Node {
+
+        private final String id;
+        private final float[] vector;
+        private final TextSegment embedded;
+        // 每层的邻居表和实际数量，在该节点的锁内读写
+        private final int[][] links;
+        private final int[] counts;
+
+        Node(String id, float[] vector, TextSegment embedded, int level, int m, int maxConnections0) {
+            this.id = id;
+            this.vector = vector;
+            this.embedded = embedded;
+            this.links = new int[level + 1][];
+            this.counts = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                links[l] = new int[l == 0 ? maxConnections0 : m];
+            }
+        }
+
+        synchronized int[] neighbors(int level) {
+            return level < links.length ? Arrays.copyOf(links[level], counts[level]) : new int[0];
+        }
+
+        void setNeighbors(int level, int[] neighbors) {
+            System.arraycopy(neighbors, 0, links[level], 0, neighbors.length);
+            counts[level] = neighbors.length;
+        }
+
+    }
+
+    // 每个线程复用的访问标记和候选堆，标记用代数区分，不需要每次清零
+    private static class SearchContext {
+
+        private int[] visited = new int[1024];
+        private int generation;
+        private final NodeHeap candidates = new NodeHeap(64);
+
+        void reset(int size) {
+            if (visited.length < size) {
+                visited = new int[Math.max(size, visited.length * 2)];
+            }
+            if (++generation == 0) {
+                Arrays.fill(visited, 0);
+                generation = 1;
+            }
+            candidates.clear();
+        }
+
+        // 首次访问返回 true；并发插入时节点数可能在搜索过程中增加
+        boolean visit(int node) {
+            if (node >= visited.length) {
+                visited = Arrays.copyOf(visited, Math.max(node + 1, visited.length * 2));
+            }
+            if (visited[node] == generation) {
+                return false;
+            }
+            visited[node] = generation;
+            return true;
+        }
+
+    }
+
+    public static class Builder {
+
+        private int m = 16;
+        private int efConstruction = 200;
+        private int efSearch = 64;
+
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        public HnswEmbeddingStore build() {
+            return new HnswEmbeddingStore(this);
+        }
+
+    }
+
+}
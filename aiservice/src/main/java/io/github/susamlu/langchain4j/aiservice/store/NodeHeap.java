@@ -0,0 +1,75 @@
+package io.github.susamlu.langchain4j.aiservice.store;
+
+import java.util.Arrays;
+
+/**
+ * 按距离排序的二叉大顶堆（节点下标 + 距离），小顶堆通过存入负距离实现
+ * <p>
+ * HNSW 搜索的候选集、结果集和精确检索每个分区的 top-k 都用它，避免装箱
+ */
+class NodeHeap {
+
+    private int[] nodes;
+    private float[] distances;
+    private int size;
+
+    NodeHeap(int capacity) {
+        this.nodes = new int[capacity];
+        this.distances = new float[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    float topDistance() {
+        return distances[0];
+    }
+
+    void push(int node, float distance) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            distances = Arrays.copyOf(distances, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (distances[parent] >= distance) {
+                break;
+            }
+            nodes[i] = nodes[parent];
+            distances[i] = distances[parent];
+            i = parent;
+        }
+        nodes[i] = node;
+        distances[i] = distance;
+    }
+
+    int pop() {
+        int top = nodes[0];
+        int lastNode = nodes[--size];
+        float lastDistance = distances[size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && distances[child + 1] > distances[child]) {
+                child++;
+            }
+            if (distances[child] <= lastDistance) {
+                break;
+            }
+            nodes[i] = nodes[child];
+            distances[i] = distances[child];
+            i = child;
+        }
+        nodes[i] = lastNode;
+        distances[i] = lastDistance;
+        return top;
+    }
+
+}
@@ -0,0 +1,53 @@
+package io.github.susamlu.langchain4j.aiservice.store;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 JDK Vector API 的点积：按硬件支持的最宽向量（AVX2 为 8 个 float，AVX-512 为 16 个）做融合乘加，
+ * 两个累加器交替使用以隐藏 FMA 的延迟，尾部不足一个向量的部分用标量计算
+ * <p>
+ * 只能通过 {@link DotProduct#best()} 反射创建，其他类不要直接引用，否则未添加 jdk.incubator.vector 模块时会链接失败
+ */
+final class VectorDotProduct implements DotProduct {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    VectorDotProduct() {
+        if (SPECIES.length() < 4) {
+            throw new UnsupportedOperationException("硬件向量长度不足: " + SPECIES.length());
+        }
+    }
+
+    @Override
+    public float dot(float[] query, float[] data, int offset, int length) {
+        int step = SPECIES.length();
+        FloatVector acc0 = FloatVector.zero(SPECIES);
+        FloatVector acc1 = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound2 = length - length % (2 * step);
+        for (; i < bound2; i += 2 * step) {
+            acc0 = FloatVector.fromArray(SPECIES, query, i)
+                    .fma(FloatVector.fromArray(SPECIES, data, offset + i), acc0);
+            acc1 = FloatVector.fromArray(SPECIES, query, i + step)
+                    .fma(FloatVector.fromArray(SPECIES, data, offset + i + step), acc1);
+        }
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += step) {
+            acc0 = FloatVector.fromArray(SPECIES, query, i)
+                    .fma(FloatVector.fromArray(SPECIES, data, offset + i), acc0);
+        }
+        float sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += query[i] * data[offset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return "vector-" + SPECIES.length() + "x32";
+    }
+
+}
@@ -3,6 +3,7 @@ package io.github.susamlu.langchain4j.aiservice.streaming;
 import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import dev.langchain4j.service.AiServices;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import reactor.core.publisher.Flux;
 
 import java.time.Duration;
@@ -27,6 +28,8 @@ import java.time.Duration;
  * 2. 使用 StreamingChatModel
  * 3. 通过 Flux 的操作符处理流式响应
  * 4. 使用 subscribe 订阅流式响应，或使用 blockLast 阻塞等待完成
+ * <p>
+ * 每个 Flux 都用 StreamingMetrics 包装，记录首 token 时间、token 间隔、输出速率和总时长，最后打印汇总
  */
 public class ReactiveStreamingExample {
 
@@ -58,12 +61,15 @@ public class ReactiveStreamingExample {
         // ====================== 2. 使用 AiServices 创建 Assistant 实例 ======================
         Assistant assistant = AiServices.create(Assistant.class, model);
 
+        // 流式指标：每个 Flux 在订阅时开始计时
+        StreamingMetrics metrics = new StreamingMetrics(new SimpleMeterRegistry());
+
         // ====================== 3. 方式一：使用 subscribe 订阅流式响应 ======================
         System.out.println("========== 方式一：使用 subscribe 订阅流式响应 ==========");
         System.out.println("问题：给我讲个笑话");
         System.out.println("回答：");
 
-        Flux<String> flux1 = assistant.chat("给我讲个笑话");
+        Flux<String> flux1 = metrics.meter(assistant.chat("给我讲个笑话"), "deepseek-chat", "flux");
 
         flux1
                 .doOnNext(partialResponse -> System.out.print(partialResponse))
@@ -88,7 +94,7 @@ public class ReactiveStreamingExample {
         System.out.println("问题：给我讲个故事");
         System.out.println("回答：");
 
-        Flux<String> flux2 = assistant.chat("给我讲个故事");
+        Flux<String> flux2 = metrics.meter(assistant.chat("给我讲个故事"), "deepseek-chat", "flux");
 
         try {
             // blockLast 会阻塞直到流完成，并返回最后一个元素
@@ -110,7 +116,7 @@ public class ReactiveStreamingExample {
         System.out.println("问题：用一句话介绍 Java");
         System.out.println("回答（仅显示前 10 个片段）：");
 
-        Flux<String> flux3 = assistant.chat("用一句话介绍 Java");
+        Flux<String> flux3 = metrics.meter(assistant.chat("用一句话介绍 Java"), "deepseek-chat", "flux");
 
         flux3
                 .take(10) // 只取前10个元素
@@ -131,7 +137,7 @@ public class ReactiveStreamingExample {
         System.out.println("问题：介绍一下人工智能");
         System.out.println("回答：");
 
-        Flux<String> flux4 = assistant.chat("介绍一下人工智能");
+        Flux<String> flux4 = metrics.meter(assistant.chat("介绍一下人工智能"), "deepseek-chat", "flux");
 
         try {
             // 收集所有响应片段并拼接成完整响应
@@ -155,7 +161,7 @@ public class ReactiveStreamingExample {
         System.out.println("问题：解释一下什么是机器学习");
         System.out.println("回答（每5个片段输出一次）：");
 
-        Flux<String> flux5 = assistant.chat("解释一下什么是机器学习");
+        Flux<String> flux5 = metrics.meter(assistant.chat("解释一下什么是机器学习"), "deepseek-chat", "flux");
 
         flux5
                 .buffer(5) // 每5个元素缓冲一次
@@ -171,6 +177,11 @@ public class ReactiveStreamingExample {
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
+
+        // ====================== 8. 打印流式指标 ======================
+        // 方式三的 take(10) 会取消上游订阅，记为 cancelled
+        System.out.println("\n");
+        metrics.printSummary();
     }
 
 }
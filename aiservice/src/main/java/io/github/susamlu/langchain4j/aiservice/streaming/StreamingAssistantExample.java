@@ -5,6 +5,7 @@ import dev.langchain4j.model.chat.response.ChatResponse;
 import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.TokenStream;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import java.util.concurrent.CompletableFuture;
 
@@ -29,6 +30,8 @@ import java.util.concurrent.CompletableFuture;
  * 3. 通过链式调用设置各种回调
  * 4. 调用 start() 启动流式响应
  * 5. 使用 CompletableFuture.join() 阻塞主线程等待完成
+ * <p>
+ * 同时用 StreamingMetrics 记录首 token 时间、token 间隔、输出速率和总时长
  */
 public class StreamingAssistantExample {
 
@@ -69,8 +72,15 @@ public class StreamingAssistantExample {
 
         CompletableFuture<ChatResponse> futureResponse = new CompletableFuture<>();
 
+        // 流式指标：在 start() 之前开始计时
+        StreamingMetrics metrics = new StreamingMetrics(new SimpleMeterRegistry());
+        StreamingMetrics.Recorder recorder = metrics.start("deepseek-chat", "tokenstream");
+
         tokenStream
-                .onPartialResponse(partialResponse -> System.out.print(partialResponse))
+                .onPartialResponse(partialResponse -> {
+                    recorder.onToken();
+                    System.out.print(partialResponse);
+                })
                 .onPartialThinking(partialThinking -> System.out.println(partialThinking))
                 .onRetrieved(contents -> System.out.println(contents))
                 .onIntermediateResponse(intermediateResponse -> System.out.println(intermediateResponse))
@@ -78,8 +88,14 @@ public class StreamingAssistantExample {
                 .beforeToolExecution(beforeToolExecution -> System.out.println(beforeToolExecution))
                 // 工具执行后回调，ToolExecution 包含 ToolExecutionRequest 和工具执行结果
                 .onToolExecuted(toolExecution -> System.out.println(toolExecution))
-                .onCompleteResponse(response -> futureResponse.complete(response))
-                .onError(error -> futureResponse.completeExceptionally(error))
+                .onCompleteResponse(response -> {
+                    recorder.finish(StreamingMetrics.OUTCOME_COMPLETE);
+                    futureResponse.complete(response);
+                })
+                .onError(error -> {
+                    recorder.finish(StreamingMetrics.OUTCOME_ERROR);
+                    futureResponse.completeExceptionally(error);
+                })
                 .start();
 
         // 阻塞主线程，直到流式响应完成（LangChain4j 会自动在后台线程中处理流式响应的接收与回调）
@@ -94,6 +110,9 @@ public class StreamingAssistantExample {
             System.err.println("等待流式响应时发生异常: " + e.getMessage());
             e.printStackTrace();
         }
+
+        System.out.println();
+        metrics.printSummary();
     }
 
 }
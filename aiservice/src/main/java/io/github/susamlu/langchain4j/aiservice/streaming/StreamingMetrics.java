@@ -0,0 +1,152 @@
+package io.github.susamlu.langchain4j.aiservice.streaming;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * AI Service 流式响应的时延指标（Micrometer），按模型（model）和调用方式（endpoint）打标签
+ * <p>
+ * 记录的指标与 responsestreaming 模块的 HTTP/WebSocket 端点一致：
+ * - streaming.ttft：从发起请求到第一个 token 的时间
+ * - streaming.token.gap：相邻两个 token 的间隔
+ * - streaming.tokens.per-second：第一个 token 之后的输出速率
+ * - streaming.duration：整个流的时长，按结果（outcome）打标签：complete / cancelled / error
+ * <p>
+ * 使用方式：
+ * - TokenStream：在调用 start() 前通过 start(model, endpoint) 创建 Recorder，在各回调中调用 onToken / finish
+ * - Flux：用 meter(flux, model, endpoint) 包装，订阅时开始计时，取消订阅（如 take）记为 cancelled
+ */
+public class StreamingMetrics {
+
+    public static final String OUTCOME_COMPLETE = "complete";
+    public static final String OUTCOME_CANCELLED = "cancelled";
+    public static final String OUTCOME_ERROR = "error";
+
+    private final MeterRegistry meterRegistry;
+
+    public StreamingMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 开始记录一次流式生成，应在发起请求（TokenStream.start）之前调用
+     */
+    public Recorder start(String model, String endpoint) {
+        return new Recorder(model, endpoint);
+    }
+
+    /**
+     * 包装 Flux：每次订阅单独计时，每个元素视为一个 token
+     */
+    public Flux<String> meter(Flux<String> flux, String model, String endpoint) {
+        return Flux.defer(() -> {
+            Recorder recorder = start(model, endpoint);
+            return flux
+                    .doOnNext(token -> recorder.onToken())
+                    .doOnComplete(() -> recorder.finish(OUTCOME_COMPLETE))
+                    .doOnError(error -> recorder.finish(OUTCOME_ERROR))
+                    .doOnCancel(() -> recorder.finish(OUTCOME_CANCELLED));
+        });
+    }
+
+    /**
+     * 打印已记录的流式指标（示例中没有 Actuator，直接输出到控制台）
+     */
+    public void printSummary() {
+        System.out.println("========== 流式指标 ==========");
+        for (Meter meter : meterRegistry.getMeters()) {
+            String name = meter.getId().getName();
+            if (!name.startsWith("streaming.")) {
+                continue;
+            }
+            String tags = meter.getId().getTags().toString();
+            if (meter instanceof Timer timer) {
+                System.out.printf("%s %s: 次数=%d, 平均=%.1f ms, 最大=%.1f ms%n", name, tags, timer.count(),
+                        timer.mean(TimeUnit.MILLISECONDS), timer.max(TimeUnit.MILLISECONDS));
+            } else if (meter instanceof DistributionSummary summary) {
+                System.out.printf("%s %s: 次数=%d, 平均=%.1f, 最大=%.1f%n", name, tags, summary.count(),
+                        summary.mean(), summary.max());
+            }
+        }
+    }
+
+    /**
+     * 一次流式生成的记录器，回调可能来自不同线程
+     */
+    public class Recorder {
+
+        private final String model;
+        private final String endpoint;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final Timer tokenGap;
+        // 以下字段由 this 锁保护
+        private long firstTokenNanos;
+        private long lastTokenNanos;
+        private long tokens;
+
+        private Recorder(String model, String endpoint) {
+            this.model = model != null ? model : "unknown";
+            this.endpoint = endpoint;
+            this.tokenGap = timer("streaming.token.gap", "相邻两个 token 的间隔");
+        }
+
+        /**
+         * 收到一个增量 token
+         */
+        public synchronized void onToken() {
+            long now = System.nanoTime();
+            if (tokens == 0) {
+                firstTokenNanos = now;
+                timer("streaming.ttft", "从发起请求到第一个 token 的时间")
+                        .record(now - startNanos, TimeUnit.NANOSECONDS);
+            } else {
+                tokenGap.record(now - lastTokenNanos, TimeUnit.NANOSECONDS);
+            }
+            lastTokenNanos = now;
+            tokens++;
+        }
+
+        /**
+         * 以给定结果结束记录，只有第一次调用生效
+         */
+        public void finish(String outcome) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            Timer.builder("streaming.duration")
+                    .description("流式生成的总时长")
+                    .tags("model", model, "endpoint", endpoint, "outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+
+            synchronized (this) {
+                if (tokens > 1 && lastTokenNanos > firstTokenNanos) {
+                    DistributionSummary.builder("streaming.tokens.per-second")
+                            .description("第一个 token 之后的输出速率")
+                            .tags("model", model, "endpoint", endpoint)
+                            .publishPercentileHistogram()
+                            .register(meterRegistry)
+                            .record((tokens - 1) * 1e9 / (lastTokenNanos - firstTokenNanos));
+                }
+            }
+        }
+
+        private Timer timer(String name, String description) {
+            return Timer.builder(name)
+                    .description(description)
+                    .tags("model", model, "endpoint", endpoint)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+
+    }
+
+}
@@ -7,6 +7,7 @@ import dev.langchain4j.model.chat.response.PartialResponseContext;
 import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.TokenStream;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -69,8 +70,13 @@ public class StreamingWithContextExample {
         final AtomicInteger tokenCount = new AtomicInteger(0);
         final int MAX_TOKENS = 100; // 最大 token 数量限制
 
+        // 流式指标：取消记为 cancelled
+        StreamingMetrics metrics = new StreamingMetrics(new SimpleMeterRegistry());
+        StreamingMetrics.Recorder recorder = metrics.start("deepseek-chat", "tokenstream");
+
         tokenStream
                 .onPartialResponseWithContext((PartialResponse partialResponse, PartialResponseContext context) -> {
+                    recorder.onToken();
                     // 处理增量响应
                     process(partialResponse);
 
@@ -81,11 +87,18 @@ public class StreamingWithContextExample {
                     if (shouldCancel(currentCount, MAX_TOKENS)) {
                         System.out.println("\n\n--- 达到最大 token 限制，取消流式响应 ---");
                         context.streamingHandle().cancel();
+                        recorder.finish(StreamingMetrics.OUTCOME_CANCELLED);
                         futureResponse.complete(null);
                     }
                 })
-                .onCompleteResponse(response -> futureResponse.complete(response))
-                .onError(error -> futureResponse.completeExceptionally(error))
+                .onCompleteResponse(response -> {
+                    recorder.finish(StreamingMetrics.OUTCOME_COMPLETE);
+                    futureResponse.complete(response);
+                })
+                .onError(error -> {
+                    recorder.finish(StreamingMetrics.OUTCOME_ERROR);
+                    futureResponse.completeExceptionally(error);
+                })
                 .start();
 
         // 阻塞主线程，直到流式响应完成或被取消
@@ -93,6 +106,7 @@ public class StreamingWithContextExample {
             ChatResponse response = futureResponse.join();
             if (response == null) {
                 System.out.println("流式响应被取消");
+                metrics.printSummary();
                 return;
             }
 
@@ -104,6 +118,8 @@ public class StreamingWithContextExample {
         } catch (Exception e) {
             System.err.println("等待流式响应时发生异常: " + e.getMessage());
         }
+
+        metrics.printSummary();
     }
 
     /**
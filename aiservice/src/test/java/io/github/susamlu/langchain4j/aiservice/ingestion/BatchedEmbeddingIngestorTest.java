@@ -0,0 +1,167 @@
+package io.github.susamlu.langchain4j.aiservice.ingestion;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.exception.AuthenticationException;
+import dev.langchain4j.exception.RateLimitException;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.github.susamlu.langchain4j.aiservice.ingestion.BatchedEmbeddingIngestor.IngestionResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * BatchedEmbeddingIngestor 测试类
+ * 验证批次切分、并发上限、失败重试以及向量与文本段的对应关系
+ */
+@DisplayName("批量向量化入库测试")
+class BatchedEmbeddingIngestorTest {
+
+    // 写入嵌入存储的向量与文本段，按写入顺序
+    private final List<Embedding> storedEmbeddings = Collections.synchronizedList(new ArrayList<>());
+    private final List<TextSegment> storedSegments = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    @DisplayName("按文本段数和字符数切分批次，每批一次 embedAll，向量与文本段一一对应")
+    void testBatching() {
+        FakeEmbeddingModel model = new FakeEmbeddingModel(call -> null, Duration.ZERO);
+        List<TextSegment> segments = segments(103);
+
+        IngestionResult result = ingestor(model).maxBatchSize(10).build().ingest(segments);
+
+        assertEquals(11, result.batches());
+        assertEquals(11, result.requests());
+        assertEquals(0, result.retries());
+        assertEquals(103, result.ids().size());
+        assertEquals(103, storedSegments.size());
+        assertTrue(model.batchSizes.stream().allMatch(size -> size <= 10));
+        for (int i = 0; i < storedSegments.size(); i++) {
+            assertEquals(Float.parseFloat(storedSegments.get(i).text()), storedEmbeddings.get(i).vector()[0]);
+        }
+
+        // 字符数限制：每段 1~3 个字符，每批最多 5 个字符；超过上限的单个文本段单独成批
+        BatchedEmbeddingIngestor byChars = ingestor(model).maxBatchSize(100).maxBatchChars(5).build();
+        List<List<TextSegment>> batches = byChars.split(List.of(TextSegment.from("1"), TextSegment.from("22"),
+                TextSegment.from("333"), TextSegment.from("4444444"), TextSegment.from("5")));
+        assertEquals(List.of(2, 1, 1, 1), batches.stream().map(List::size).toList());
+    }
+
+    @Test
+    @DisplayName("同时进行的请求数不超过 maxConcurrency")
+    void testConcurrencyBound() {
+        FakeEmbeddingModel model = new FakeEmbeddingModel(call -> null, Duration.ofMillis(20));
+
+        IngestionResult result = ingestor(model).maxBatchSize(5).maxConcurrency(3).build().ingest(segments(100));
+
+        assertEquals(20, result.requests());
+        assertEquals(3, model.maxActive.get());
+        assertEquals(100, storedSegments.size());
+    }
+
+    @Test
+    @DisplayName("可重试的错误退避后重试，不可重试的错误立即失败并停止后续批次")
+    void testRetry() {
+        // 前两次请求限流
+        FakeEmbeddingModel flaky = new FakeEmbeddingModel(
+                call -> call <= 2 ? new RateLimitException("429") : null, Duration.ZERO);
+        IngestionResult result = ingestor(flaky).maxBatchSize(10).maxConcurrency(1).build().ingest(segments(30));
+        assertEquals(3, result.batches());
+        assertEquals(5, result.requests());
+        assertEquals(2, result.retries());
+        assertEquals(30, storedSegments.size());
+
+        // 重试次数用完
+        storedSegments.clear();
+        FakeEmbeddingModel down = new FakeEmbeddingModel(call -> new RuntimeException("连接被重置"), Duration.ZERO);
+        assertThrows(IllegalStateException.class,
+                () -> ingestor(down).maxRetries(2).maxConcurrency(1).build().ingest(segments(30)));
+        assertEquals(3, down.calls.get());
+        assertTrue(storedSegments.isEmpty());
+
+        // 鉴权失败不重试
+        FakeEmbeddingModel unauthorized = new FakeEmbeddingModel(
+                call -> call == 2 ? new AuthenticationException("401") : null, Duration.ZERO);
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> ingestor(unauthorized).maxBatchSize(10).maxConcurrency(1).build().ingest(segments(50)));
+        assertInstanceOf(AuthenticationException.class, error.getCause());
+        assertEquals(2, unauthorized.calls.get());
+        assertEquals(10, storedSegments.size());
+    }
+
+    private BatchedEmbeddingIngestor.Builder ingestor(EmbeddingModel model) {
+        storedEmbeddings.clear();
+        storedSegments.clear();
+        @SuppressWarnings("unchecked")
+        EmbeddingStore<TextSegment> store = mock(EmbeddingStore.class);
+        when(store.addAll(anyList(), anyList())).thenAnswer(invocation -> {
+            List<Embedding> embeddings = invocation.getArgument(0);
+            List<TextSegment> segments = invocation.getArgument(1);
+            storedEmbeddings.addAll(embeddings);
+            storedSegments.addAll(segments);
+            return segments.stream().map(TextSegment::text).toList();
+        });
+        return BatchedEmbeddingIngestor.builder()
+                .embeddingModel(model)
+                .embeddingStore(store)
+                .initialBackoff(Duration.ofMillis(1))
+                .maxBackoff(Duration.ofMillis(4));
+    }
+
+    private static List<TextSegment> segments(int count) {
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            segments.add(TextSegment.from(String.valueOf(i)));
+        }
+        return segments;
+    }
+
+    // 向量的第一个分量是文本段的数值，第 n 次调用（从 1 开始）可以注入异常
+    private static class FakeEmbeddingModel implements EmbeddingModel {
+
+        private final IntFunction<RuntimeException> faults;
+        private final Duration latency;
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger maxActive = new AtomicInteger();
+        private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+        FakeEmbeddingModel(IntFunction<RuntimeException> faults, Duration latency) {
+            this.faults = faults;
+            this.latency = latency;
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            RuntimeException fault = faults.apply(calls.incrementAndGet());
+            if (fault != null) {
+                throw fault;
+            }
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(latency.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+            }
+            batchSizes.add(textSegments.size());
+            return Response.from(textSegments.stream()
+                    .map(segment -> Embedding.from(new float[]{Float.parseFloat(segment.text()), 1f}))
+                    .toList());
+        }
+
+    }
+
+}
@@ -0,0 +1,154 @@
+package io.github.susamlu.langchain4j.aiservice.ingestion;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CachedEmbeddingModel 测试类
+ * 验证只对未命中的文本请求模型、重启后从磁盘命中，以及不完整索引项的恢复
+ */
+@DisplayName("嵌入向量磁盘缓存测试")
+class CachedEmbeddingModelTest {
+
+    @TempDir
+    Path cacheDirectory;
+
+    @Test
+    @DisplayName("只把未命中的文本段交给模型，同一批内相同的文本只请求一次，结果顺序与输入一致")
+    void testOnlyMissesEmbedded() {
+        RecordingModel model = new RecordingModel(3);
+        try (CachedEmbeddingModel cached = create(model)) {
+            List<Embedding> first = cached.embedAll(segments("a", "b", "a")).content();
+            assertEquals(List.of(List.of("a", "b")), model.requests);
+            assertArrayEquals(first.get(0).vector(), first.get(2).vector());
+            assertEquals(2, cached.missCount());
+
+            Response<List<Embedding>> second = cached.embedAll(segments("b", "c", "a"));
+            assertEquals(List.of(List.of("a", "b"), List.of("c")), model.requests);
+            assertArrayEquals(first.get(1).vector(), second.content().get(0).vector());
+            assertArrayEquals(vector("c", 3), second.content().get(1).vector());
+            assertEquals(1, second.tokenUsage().inputTokenCount());
+            assertEquals(3, cached.hitCount());
+
+            // 全部命中时不请求模型
+            cached.embedAll(segments("c", "b"));
+            assertEquals(2, model.requests.size());
+            assertEquals(3, cached.size());
+            assertEquals(3, cached.dimension());
+        }
+    }
+
+    @Test
+    @DisplayName("重新打开缓存后未变化的文本全部命中，只有改动的文本段重新向量化；命名空间不同互不命中")
+    void testPersistentAcrossRestarts() {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            texts.add("文档片段 " + i);
+        }
+        try (CachedEmbeddingModel cached = create(new RecordingModel(8))) {
+            cached.embedAll(segments(texts.toArray(String[]::new)));
+        }
+
+        texts.set(10, "文档片段 10（已修改）");
+        RecordingModel model = new RecordingModel(8);
+        try (CachedEmbeddingModel cached = create(model)) {
+            assertEquals(2000, cached.size());
+            List<Embedding> embeddings = cached.embedAll(segments(texts.toArray(String[]::new))).content();
+            assertEquals(List.of(List.of("文档片段 10（已修改）")), model.requests);
+            for (int i = 0; i < texts.size(); i++) {
+                assertArrayEquals(vector(texts.get(i), 8), embeddings.get(i).vector());
+            }
+        }
+
+        RecordingModel other = new RecordingModel(8);
+        try (CachedEmbeddingModel cached = CachedEmbeddingModel.builder().delegate(other)
+                .cacheDirectory(cacheDirectory).namespace("other-model").build()) {
+            cached.embedAll(segments("文档片段 1"));
+            assertEquals(1, other.requests.size());
+        }
+    }
+
+    @Test
+    @DisplayName("索引文件末尾不完整时截掉该项，已完整写入的向量仍然命中")
+    void testTruncatedIndexRecovered() throws IOException {
+        try (CachedEmbeddingModel cached = create(new RecordingModel(4))) {
+            cached.embedAll(segments("a", "b"));
+        }
+        Path indexFile = cacheDirectory.resolve("recording.index");
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 7);
+        }
+
+        RecordingModel model = new RecordingModel(4);
+        try (CachedEmbeddingModel cached = create(model)) {
+            assertEquals(1, cached.size());
+            List<Embedding> embeddings = cached.embedAll(segments("a", "b")).content();
+            assertEquals(List.of(List.of("b")), model.requests);
+            assertArrayEquals(vector("a", 4), embeddings.get(0).vector());
+            assertArrayEquals(vector("b", 4), embeddings.get(1).vector());
+        }
+
+        // 维度与缓存文件不一致
+        try (CachedEmbeddingModel cached = create(new RecordingModel(5))) {
+            assertThrows(IllegalStateException.class, () -> cached.embedAll(segments("c")));
+        }
+    }
+
+    private CachedEmbeddingModel create(EmbeddingModel model) {
+        return CachedEmbeddingModel.builder().delegate(model).cacheDirectory(cacheDirectory).build();
+    }
+
+    private static List<TextSegment> segments(String... texts) {
+        return Arrays.stream(texts).map(TextSegment::from).toList();
+    }
+
+    // 由文本确定的向量
+    private static float[] vector(String text, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = text.hashCode() * 31f + i;
+        }
+        return vector;
+    }
+
+    // 记录每次 embedAll 请求的文本
+    private static class RecordingModel implements EmbeddingModel {
+
+        private final int dimension;
+        private final List<List<String>> requests = new ArrayList<>();
+
+        RecordingModel(int dimension) {
+            this.dimension = dimension;
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            requests.add(textSegments.stream().map(TextSegment::text).toList());
+            return Response.from(textSegments.stream().map(segment -> Embedding.from(vector(segment.text(), dimension)))
+                    .toList(), new TokenUsage(textSegments.size()));
+        }
+
+        @Override
+        public String modelName() {
+            return "recording";
+        }
+
+    }
+
+}
@@ -0,0 +1,153 @@
+package io.github.susamlu.langchain4j.aiservice.ingestion;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.github.susamlu.langchain4j.aiservice.ingestion.BatchedEmbeddingIngestor.IngestionResult;
+import io.github.susamlu.langchain4j.fakemodel.FakeModelServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 向量化入库吞吐基准：对本地假模型服务的 /v1/embeddings（每个请求固定延迟，模拟到提供方的往返）对比
+ * <ul>
+ *     <li>逐条：每个文本段一次 embed + add（原来示例中的写法），文本段较多时只跑前 --baseline-segments 条</li>
+ *     <li>批量：BatchedEmbeddingIngestor，并发数为 1</li>
+ *     <li>批量并发：BatchedEmbeddingIngestor，并发数为 --concurrency</li>
+ *     <li>批量并发 + 限流：假模型服务按 --rate-limit-rate 的比例返回 429，观察重试的开销</li>
+ *     <li>磁盘缓存：经过 CachedEmbeddingModel 入库一次（冷），再重新打开缓存入库一次（热，模拟重启后重新入库未变化的文档）</li>
+ * </ul>
+ * 基准放在 src/test 下，假模型服务只是测试依赖，不进入 aiservice 的运行时 classpath。典型用法：
+ * <pre>
+ * mvn -pl aiservice -am install -DskipTests
+ * mvn -pl aiservice test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=io.github.susamlu.langchain4j.aiservice.ingestion.EmbeddingIngestionBenchmark \
+ *     -Dexec.args="--segments=100000 --latency=50ms --batch-size=25 --concurrency=8"
+ * </pre>
+ */
+public class EmbeddingIngestionBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int segmentCount = 100_000;
+        int baselineSegments = 200;
+        int batchSize = 25;
+        int concurrency = 8;
+        int dimensions = 384;
+        double rateLimitRate = 0.05;
+        Duration latency = Duration.ofMillis(50);
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            String value = pair.length > 1 ? pair[1] : "";
+            switch (pair[0]) {
+                case "segments" -> segmentCount = Integer.parseInt(value);
+                case "baseline-segments" -> baselineSegments = Integer.parseInt(value);
+                case "batch-size" -> batchSize = Integer.parseInt(value);
+                case "concurrency" -> concurrency = Integer.parseInt(value);
+                case "dimensions" -> dimensions = Integer.parseInt(value);
+                case "rate-limit-rate" -> rateLimitRate = Double.parseDouble(value);
+                case "latency" -> latency = Duration.ofMillis(Long.parseLong(value.replace("ms", "")));
+                default -> throw new IllegalArgumentException("未知参数: " + arg);
+            }
+        }
+
+        List<TextSegment> segments = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments.add(TextSegment.from("第 " + i + " 段：微笑口腔提供牙齿清洁、美白与正畸方案，营业时间为每周一到周六。"));
+        }
+        System.out.printf("文本段=%d, 每批=%d, 并发=%d, 维度=%d, 单次请求延迟=%d ms%n",
+                segmentCount, batchSize, concurrency, dimensions, latency.toMillis());
+
+        List<String[]> rows = new ArrayList<>();
+        try (FakeModelServer server = FakeModelServer.builder().port(0)
+                .embeddingDimensions(dimensions).embeddingLatency(latency).start()) {
+            EmbeddingModel model = embeddingModel(server);
+
+            // 1. 逐条
+            List<TextSegment> baseline = segments.subList(0, Math.min(baselineSegments, segmentCount));
+            EmbeddingStore<TextSegment> baselineStore = new InMemoryEmbeddingStore<>();
+            long requestsBefore = server.embeddingRequestCount();
+            long start = System.nanoTime();
+            for (TextSegment segment : baseline) {
+                baselineStore.add(model.embed(segment).content(), segment);
+            }
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            rows.add(row("逐条 embed", baseline.size(), server.embeddingRequestCount() - requestsBefore, 0, elapsed));
+
+            // 2. 批量、3. 批量并发
+            rows.add(run("批量", server, model, segments, batchSize, 1));
+            rows.add(run("批量并发", server, model, segments, batchSize, concurrency));
+
+            // 5. 磁盘缓存，冷 / 热
+            Path cacheDirectory = Files.createTempDirectory("embedding-cache");
+            for (String name : List.of("缓存（冷）", "缓存（热）")) {
+                try (CachedEmbeddingModel cached = CachedEmbeddingModel.builder()
+                        .delegate(model).cacheDirectory(cacheDirectory).build()) {
+                    rows.add(run(name, server, cached, segments, batchSize, concurrency));
+                }
+            }
+            try (Stream<Path> files = Files.list(cacheDirectory)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(cacheDirectory);
+        }
+
+        // 4. 批量并发 + 限流（另起一个注入 429 的服务）
+        try (FakeModelServer server = FakeModelServer.builder().port(0).embeddingDimensions(dimensions)
+                .embeddingLatency(latency).rateLimitRate(rateLimitRate).seed(42).start()) {
+            rows.add(run("批量并发+" + Math.round(rateLimitRate * 100) + "%限流", server, embeddingModel(server),
+                    segments, batchSize, concurrency));
+        }
+
+        System.out.println();
+        System.out.printf("%-16s %10s %10s %8s %10s %12s%n", "方式", "文本段", "请求数", "重试", "耗时(ms)", "段/秒");
+        for (String[] row : rows) {
+            System.out.printf("%-16s %10s %10s %8s %10s %12s%n", (Object[]) row);
+        }
+    }
+
+    private static String[] run(String name, FakeModelServer server, EmbeddingModel model, List<TextSegment> segments,
+                                int batchSize, int concurrency) {
+        long requestsBefore = server.embeddingRequestCount();
+        IngestionResult result = BatchedEmbeddingIngestor.builder()
+                .embeddingModel(model)
+                .embeddingStore(new InMemoryEmbeddingStore<>())
+                .maxBatchSize(batchSize)
+                .maxConcurrency(concurrency)
+                .maxRetries(5)
+                .initialBackoff(Duration.ofMillis(50))
+                .maxBackoff(Duration.ofSeconds(1))
+                .build()
+                .ingest(segments);
+        System.out.println(name + ": " + result);
+        return row(name, result.segments(), server.embeddingRequestCount() - requestsBefore, result.retries(),
+                result.elapsed());
+    }
+
+    private static String[] row(String name, int segments, long requests, int retries, Duration elapsed) {
+        double perSecond = segments * 1_000_000_000.0 / Math.max(1, elapsed.toNanos());
+        return new String[]{name, String.valueOf(segments), String.valueOf(requests), String.valueOf(retries),
+                String.valueOf(elapsed.toMillis()), String.format("%.0f", perSecond)};
+    }
+
+    // 重试由 BatchedEmbeddingIngestor 负责，模型自身不再重试，便于统计
+    private static EmbeddingModel embeddingModel(FakeModelServer server) {
+        return OpenAiEmbeddingModel.builder()
+                .baseUrl(server.getBaseUrl())
+                .apiKey("fake")
+                .modelName("text-embedding-v2")
+                .maxRetries(0)
+                .timeout(Duration.ofSeconds(30))
+                .build();
+    }
+
+}
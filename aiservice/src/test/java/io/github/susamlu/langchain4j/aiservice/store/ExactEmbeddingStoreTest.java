@@ -0,0 +1,141 @@
+package io.github.susamlu.langchain4j.aiservice.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ExactEmbeddingStore 测试类
+ * 验证检索结果与 InMemoryEmbeddingStore 一致（向量 / 标量、顺序 / 并行），以及覆盖写入、删除和过滤
+ */
+@DisplayName("精确检索嵌入存储测试")
+class ExactEmbeddingStoreTest {
+
+    @Test
+    @DisplayName("Vector API 与标量实现的点积一致，包括不足一个向量的尾部")
+    void testDotProductKernels() {
+        Random random = new Random(1);
+        DotProduct best = DotProduct.best();
+        for (int length : new int[]{1, 3, 7, 16, 17, 33, 384, 1536}) {
+            float[] query = random(random, length);
+            float[] data = random(random, length + 5);
+            float expected = DotProduct.SCALAR.dot(query, data, 5, length);
+            assertEquals(expected, best.dot(query, data, 5, length), 1e-3 * Math.sqrt(length), best + " " + length);
+        }
+    }
+
+    @Test
+    @DisplayName("顺序扫描和 fork/join 并行扫描的结果都与 InMemoryEmbeddingStore 相同，遵守 minScore 和 maxResults")
+    void testSameResultsAsInMemoryStore() {
+        Random random = new Random(2);
+        int dimensions = 67;
+        List<String> ids = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            ids.add("id-" + i);
+            embeddings.add(Embedding.from(random(random, dimensions)));
+            segments.add(TextSegment.from("片段 " + i));
+        }
+        InMemoryEmbeddingStore<TextSegment> expected = new InMemoryEmbeddingStore<>();
+        expected.addAll(ids, embeddings, segments);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<ExactEmbeddingStore> stores = List.of(
+                    ExactEmbeddingStore.builder().build(),
+                    ExactEmbeddingStore.builder().simd(false).build(),
+                    ExactEmbeddingStore.builder().forkJoinPool(pool).parallelThreshold(0).build(),
+                    ExactEmbeddingStore.builder().forkJoinPool(pool).parallelThreshold(0).simd(false).build());
+            for (ExactEmbeddingStore store : stores) {
+                store.addAll(ids, embeddings, segments);
+                assertEquals(3000, store.size());
+            }
+            for (int q = 0; q < 50; q++) {
+                EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                        .queryEmbedding(Embedding.from(random(random, dimensions)))
+                        .maxResults(1 + q % 20)
+                        .minScore(q % 2 == 0 ? 0 : 0.58)
+                        .build();
+                List<EmbeddingMatch<TextSegment>> exact = expected.search(request).matches();
+                for (ExactEmbeddingStore store : stores) {
+                    List<EmbeddingMatch<TextSegment>> actual = store.search(request).matches();
+                    assertEquals(exact.size(), actual.size());
+                    for (int i = 0; i < exact.size(); i++) {
+                        assertEquals(exact.get(i).embeddingId(), actual.get(i).embeddingId());
+                        assertEquals(exact.get(i).score(), actual.get(i).score(), 1e-5);
+                        assertEquals(exact.get(i).embedded(), actual.get(i).embedded());
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("相同 id 覆盖写入；删除后用最后一个向量填补空位；按 metadata 过滤检索和删除")
+    void testUpsertRemoveAndFilter() {
+        ExactEmbeddingStore store = ExactEmbeddingStore.builder().parallelThreshold(0).build();
+        assertTrue(store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(new float[]{1, 0})).build()).matches().isEmpty());
+
+        store.addAll(List.of("a", "b", "c", "d"),
+                List.of(vector(1, 0), vector(0, 1), vector(-1, 0), vector(0, -1)),
+                List.of(segment("A", "java"), segment("B", "python"), segment("C", "java"), segment("D", "go")));
+        store.add("b", vector(1, 0.1f));
+        assertEquals(4, store.size());
+        assertEquals(List.of("a", "b"), ids(store, vector(1, 0), 2));
+
+        store.remove("a");
+        assertEquals(3, store.size());
+        assertEquals(List.of("b", "d", "c"), ids(store, vector(1, 0), 10));
+
+        List<EmbeddingMatch<TextSegment>> java = store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(vector(1, 0)).maxResults(10).filter(metadataKey("language").isEqualTo("java"))
+                .build()).matches();
+        assertEquals(List.of("c"), java.stream().map(EmbeddingMatch::embeddingId).toList());
+
+        store.removeAll(metadataKey("language").isEqualTo("go"));
+        assertEquals(List.of("b", "c"), ids(store, vector(1, 0), 10));
+        assertThrows(IllegalArgumentException.class, () -> store.add(Embedding.from(new float[]{1, 2, 3})));
+
+        store.removeAll();
+        assertEquals(0, store.size());
+    }
+
+    private static List<String> ids(ExactEmbeddingStore store, Embedding query, int maxResults) {
+        return store.search(EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(maxResults).build())
+                .matches().stream().map(EmbeddingMatch::embeddingId).toList();
+    }
+
+    private static Embedding vector(float x, float y) {
+        return Embedding.from(new float[]{x, y});
+    }
+
+    private static TextSegment segment(String text, String language) {
+        return TextSegment.from(text, Metadata.from("language", language));
+    }
+
+    private static float[] random(Random random, int length) {
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+}
@@ -0,0 +1,177 @@
+package io.github.susamlu.langchain4j.aiservice.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HnswEmbeddingStore 测试类
+ * 验证与精确检索相比的召回率、minScore / maxResults 语义和并发插入
+ */
+@DisplayName("HNSW 嵌入存储测试")
+class HnswEmbeddingStoreTest {
+
+    @Test
+    @DisplayName("聚类数据上 recall@10 不低于 0.95（以 InMemoryEmbeddingStore 的精确结果为准）")
+    void testRecallAgainstExactSearch() {
+        List<Embedding> embeddings = clustered(new Random(7), 5000, 32, 50);
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < embeddings.size(); i++) {
+            segments.add(TextSegment.from("片段 " + i));
+        }
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < embeddings.size(); i++) {
+            ids.add("id-" + i);
+        }
+        HnswEmbeddingStore hnsw = HnswEmbeddingStore.builder().m(16).efConstruction(100).efSearch(64).build();
+        InMemoryEmbeddingStore<TextSegment> exact = new InMemoryEmbeddingStore<>();
+        hnsw.addAll(ids, embeddings, segments);
+        exact.addAll(ids, embeddings, segments);
+        assertEquals(5000, hnsw.size());
+
+        Random random = new Random(11);
+        int found = 0;
+        int total = 0;
+        for (int q = 0; q < 200; q++) {
+            Embedding query = perturb(random, embeddings.get(random.nextInt(embeddings.size())), 0.3f);
+            EmbeddingSearchRequest request = EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(10).build();
+            Set<String> expected = new HashSet<>();
+            exact.search(request).matches().forEach(match -> expected.add(match.embeddingId()));
+            for (EmbeddingMatch<TextSegment> match : hnsw.search(request).matches()) {
+                if (expected.contains(match.embeddingId())) {
+                    found++;
+                }
+            }
+            total += expected.size();
+        }
+        double recall = (double) found / total;
+        assertTrue(recall >= 0.95, "recall@10 = " + recall);
+    }
+
+    @Test
+    @DisplayName("分数与 InMemoryEmbeddingStore 一致，按分数降序，遵守 minScore 和 maxResults，可用于 EmbeddingStoreContentRetriever")
+    void testMinScoreAndMaxResults() {
+        HnswEmbeddingStore store = HnswEmbeddingStore.builder().build();
+        Embedding empty = Embedding.from(new float[]{1, 0, 0});
+        assertTrue(store.search(EmbeddingSearchRequest.builder().queryEmbedding(empty).build()).matches().isEmpty());
+
+        InMemoryEmbeddingStore<TextSegment> exact = new InMemoryEmbeddingStore<>();
+        List<Embedding> embeddings = clustered(new Random(3), 500, 8, 5);
+        for (int i = 0; i < embeddings.size(); i++) {
+            TextSegment segment = TextSegment.from("片段 " + i);
+            store.add("id-" + i, embeddings.get(i));
+            exact.add(embeddings.get(i), segment);
+        }
+        Embedding query = embeddings.get(42);
+        List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(query).maxResults(20).minScore(0.9).build()).matches();
+        assertFalse(matches.isEmpty());
+        assertTrue(matches.size() <= 20);
+        assertEquals("id-42", matches.get(0).embeddingId());
+        assertEquals(exact.search(EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(1).build())
+                .matches().get(0).score(), matches.get(0).score(), 1e-5);
+        for (int i = 0; i < matches.size(); i++) {
+            assertTrue(matches.get(i).score() >= 0.9);
+            if (i > 0) {
+                assertTrue(matches.get(i).score() <= matches.get(i - 1).score());
+            }
+        }
+
+        // 作为 EmbeddingStoreContentRetriever 的存储
+        HnswEmbeddingStore documents = HnswEmbeddingStore.builder().build();
+        documents.add(Embedding.from(new float[]{1, 0, 0}), TextSegment.from("Java"));
+        documents.add(Embedding.from(new float[]{0, 1, 0}), TextSegment.from("Python"));
+        documents.add(Embedding.from(new float[]{0.9f, 0.1f, 0}), TextSegment.from("Kotlin"));
+        EmbeddingModel model = segments -> Response.from(segments.stream()
+                .map(segment -> Embedding.from(new float[]{1, 0.05f, 0})).toList());
+        List<Content> contents = EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(documents).embeddingModel(model).maxResults(3).minScore(0.9).build()
+                .retrieve(Query.from("JVM 语言"));
+        assertEquals(List.of("Java", "Kotlin"), contents.stream().map(content -> content.textSegment().text()).toList());
+    }
+
+    @Test
+    @DisplayName("多个线程同时插入，所有向量都能被检索到")
+    void testConcurrentInserts() throws Exception {
+        HnswEmbeddingStore store = HnswEmbeddingStore.builder().efConstruction(64).build();
+        List<Embedding> embeddings = clustered(new Random(5), 8000, 16, 40);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int offset = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = offset; i < embeddings.size(); i += 4) {
+                        store.add("id-" + i, embeddings.get(i));
+                        // 插入的同时检索
+                        if (i % 100 == 0) {
+                            store.search(EmbeddingSearchRequest.builder().queryEmbedding(embeddings.get(i)).build());
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(8000, store.size());
+        int self = 0;
+        for (int i = 0; i < embeddings.size(); i++) {
+            List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(embeddings.get(i)).maxResults(1).build()).matches();
+            if (!matches.isEmpty() && matches.get(0).embeddingId().equals("id-" + i)) {
+                self++;
+            }
+        }
+        assertTrue(self >= 7900, "自身为最近邻的向量数: " + self);
+    }
+
+    // 高斯混合：clusters 个中心，每个点为中心加上噪声，比均匀随机向量更接近真实的文本嵌入
+    private static List<Embedding> clustered(Random random, int count, int dimensions, int clusters) {
+        List<float[]> centers = new ArrayList<>();
+        for (int c = 0; c < clusters; c++) {
+            float[] center = new float[dimensions];
+            for (int d = 0; d < dimensions; d++) {
+                center[d] = (float) random.nextGaussian();
+            }
+            centers.add(center);
+        }
+        List<Embedding> embeddings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            embeddings.add(perturb(random, Embedding.from(centers.get(random.nextInt(clusters))), 0.5f));
+        }
+        return embeddings;
+    }
+
+    private static Embedding perturb(Random random, Embedding embedding, float sigma) {
+        float[] vector = embedding.vector().clone();
+        for (int d = 0; d < vector.length; d++) {
+            vector[d] += (float) random.nextGaussian() * sigma;
+        }
+        return Embedding.from(vector);
+    }
+
+}
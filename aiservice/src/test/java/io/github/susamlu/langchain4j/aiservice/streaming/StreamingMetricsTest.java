@@ -0,0 +1,46 @@
+package io.github.susamlu.langchain4j.aiservice.streaming;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * StreamingMetrics 测试类
+ * 验证 Flux 包装后按订阅记录 token 时延和结果
+ */
+@DisplayName("AI Service 流式指标测试")
+class StreamingMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final StreamingMetrics metrics = new StreamingMetrics(meterRegistry);
+
+    @Test
+    @DisplayName("完整消费 Flux：记录首 token、token 间隔和 complete 结果")
+    void testFluxComplete() {
+        Flux<String> flux = metrics.meter(Flux.just("你", "好", "！"), "deepseek-chat", "flux");
+
+        assertEquals("！", flux.blockLast());
+
+        assertEquals(1, meterRegistry.timer("streaming.ttft", "model", "deepseek-chat", "endpoint", "flux").count());
+        assertEquals(2, meterRegistry.timer("streaming.token.gap", "model", "deepseek-chat", "endpoint", "flux").count());
+        assertEquals(1, meterRegistry.timer("streaming.duration",
+                "model", "deepseek-chat", "endpoint", "flux", "outcome", "complete").count());
+    }
+
+    @Test
+    @DisplayName("下游提前取消订阅（take）：记为 cancelled，每次订阅单独计时")
+    void testFluxCancelled() {
+        Flux<String> flux = metrics.meter(Flux.just("你", "好", "！"), "deepseek-chat", "flux");
+
+        flux.take(1).blockLast();
+        flux.take(1).blockLast();
+
+        assertEquals(2, meterRegistry.timer("streaming.duration",
+                "model", "deepseek-chat", "endpoint", "flux", "outcome", "cancelled").count());
+        assertNull(meterRegistry.find("streaming.duration").tag("outcome", "complete").timer());
+    }
+
+}
@@ -0,0 +1,146 @@
+package io.github.susamlu.langchain4j.fakemodel;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 假模型的确定性内容：相同的种子和输入总是得到相同的回复、工具参数和向量
+ */
+class FakeContent {
+
+    private static final String[] VOCABULARY = {
+            "流式", "响应", "模型", "令牌", "延迟", "吞吐", "缓存", "连接", "请求", "会话",
+            "stream", "token", "latency", "model", "cache", "buffer", "client", "server", "chunk", "event"
+    };
+
+    private final long seed;
+    private final String responseText;
+
+    FakeContent(long seed, String responseText) {
+        this.seed = seed;
+        this.responseText = responseText;
+    }
+
+    /**
+     * 生成回复的 token 序列：配置了固定回复时按其切分，否则按提示词生成确定性的文本
+     */
+    List<String> completionTokens(String prompt, int maxTokens) {
+        if (responseText != null) {
+            List<String> tokens = tokenize(responseText);
+            return tokens.size() > maxTokens ? tokens.subList(0, maxTokens) : tokens;
+        }
+        Random random = new Random(seed ^ prompt.hashCode());
+        List<String> tokens = new ArrayList<>(maxTokens);
+        for (int i = 0; i < maxTokens; i++) {
+            String word = VOCABULARY[random.nextInt(VOCABULARY.length)];
+            // 英文单词之间补空格，中文直接相连
+            tokens.add(i > 0 && word.charAt(0) < 0x80 ? " " + word : word);
+        }
+        return tokens;
+    }
+
+    /**
+     * 按工具参数的 JSON Schema 生成确定性的参数
+     */
+    String toolArguments(ObjectMapper mapper, JsonNode parameters) {
+        ObjectNode arguments = mapper.createObjectNode();
+        JsonNode properties = parameters.path("properties");
+        for (Map.Entry<String, JsonNode> property : properties.properties()) {
+            arguments.set(property.getKey(), sampleValue(mapper, property.getKey(), property.getValue()));
+        }
+        return arguments.toString();
+    }
+
+    private JsonNode sampleValue(ObjectMapper mapper, String name, JsonNode schema) {
+        if (schema.has("enum") && schema.get("enum").size() > 0) {
+            return schema.get("enum").get(0);
+        }
+        return switch (schema.path("type").asText("string")) {
+            case "integer" -> mapper.getNodeFactory().numberNode(1);
+            case "number" -> mapper.getNodeFactory().numberNode(1.0);
+            case "boolean" -> mapper.getNodeFactory().booleanNode(true);
+            case "array" -> {
+                ArrayNode array = mapper.createArrayNode();
+                if (schema.has("items")) {
+                    array.add(sampleValue(mapper, name, schema.get("items")));
+                }
+                yield array;
+            }
+            case "object" -> {
+                ObjectNode object = mapper.createObjectNode();
+                for (Map.Entry<String, JsonNode> property : schema.path("properties").properties()) {
+                    object.set(property.getKey(), sampleValue(mapper, property.getKey(), property.getValue()));
+                }
+                yield object;
+            }
+            default -> mapper.getNodeFactory().textNode("fake-" + name);
+        };
+    }
+
+    /**
+     * 确定性的单位向量：同一文本总是得到同一向量，不同文本之间近似正交
+     */
+    float[] embedding(String text, int dimensions) {
+        Random random = new Random(seed ^ text.hashCode());
+        float[] vector = new float[dimensions];
+        double norm = 0;
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    /**
+     * 粗略切分 token：英文按单词（带前导空格），中日韩文字按单字；所有 token 拼接后与原文一致
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (Character.isIdeographic(codePoint)) {
+                if (!current.toString().isBlank()) {
+                    flush(current, tokens);
+                }
+                // 前导空白并入这个字
+                current.appendCodePoint(codePoint);
+                flush(current, tokens);
+            } else if (Character.isWhitespace(codePoint) && !current.toString().isBlank()) {
+                flush(current, tokens);
+                current.appendCodePoint(codePoint);
+            } else {
+                current.appendCodePoint(codePoint);
+            }
+            i += Character.charCount(codePoint);
+        }
+        flush(current, tokens);
+        return tokens;
+    }
+
+    private static void flush(StringBuilder current, List<String> tokens) {
+        if (!current.isEmpty()) {
+            tokens.add(current.toString());
+            current.setLength(0);
+        }
+    }
+
+    /**
+     * 估算 token 数（约 4 个字符一个 token），用于 usage 字段
+     */
+    static int estimateTokens(String text) {
+        return Math.max(1, (text.length() + 3) / 4);
+    }
+
+}
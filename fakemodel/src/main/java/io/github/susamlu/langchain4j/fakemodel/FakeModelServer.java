@@ -0,0 +1,555 @@
+package io.github.susamlu.langchain4j.fakemodel;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 兼容 OpenAI 接口的假模型服务，基于 JDK 自带的 HttpServer，可嵌入测试或单独运行
+ * <p>
+ * 支持的接口（baseUrl 为 http://host:port/v1）：
+ * - POST /v1/chat/completions：非流式与流式（SSE）对话，请求带 tools 时返回工具调用
+ * - POST /v1/embeddings：确定性的向量
+ * - GET /v1/models：模型列表
+ * <p>
+ * 可配置的行为：
+ * - 首 token 时间（timeToFirstToken）和输出速率（tokensPerSecond）
+ * - 错误注入：按比例返回 500（errorRate）、429 + Retry-After（rateLimitRate），或在流中途断开（streamAbortRate）
+ * - 确定性内容：固定回复（responseText），或由种子（seed）和提示词决定的伪随机文本
+ * <p>
+ * 把示例中 OpenAiChatModel / OpenAiStreamingChatModel 的 baseUrl 换成 {@link #getBaseUrl()} 即可离线压测
+ */
+public class FakeModelServer implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Builder config;
+    private final FakeContent content;
+    private final Random faultRandom;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong idSequence = new AtomicLong();
+    private final AtomicLong chatRequests = new AtomicLong();
+    private final AtomicLong embeddingRequests = new AtomicLong();
+    private final AtomicLong injectedFaults = new AtomicLong();
+    private final AtomicInteger activeStreams = new AtomicInteger();
+
+    private FakeModelServer(Builder builder) throws IOException {
+        this.config = builder;
+        this.content = new FakeContent(builder.seed, builder.responseText);
+        this.faultRandom = new Random(builder.seed);
+        this.server = HttpServer.create(new InetSocketAddress(builder.host, builder.port), builder.backlog);
+        // 每个流占用一个线程按节奏输出 token；JDK 21 上可换成虚拟线程以支撑更多并发连接
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "fake-model-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 供 OpenAI 客户端使用的 baseUrl，例如 http://127.0.0.1:18080/v1
+     */
+    public String getBaseUrl() {
+        return "http://" + config.host + ":" + getPort() + "/v1";
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long chatRequestCount() {
+        return chatRequests.get();
+    }
+
+    public long embeddingRequestCount() {
+        return embeddingRequests.get();
+    }
+
+    public long injectedFaultCount() {
+        return injectedFaults.get();
+    }
+
+    public int activeStreamCount() {
+        return activeStreams.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if ("POST".equals(method) && path.endsWith("/chat/completions")) {
+                chatRequests.incrementAndGet();
+                if (!injectFault(exchange)) {
+                    handleChat(exchange, MAPPER.readTree(readBody(exchange)));
+                }
+            } else if ("POST".equals(method) && path.endsWith("/embeddings")) {
+                embeddingRequests.incrementAndGet();
+                if (!injectFault(exchange)) {
+                    handleEmbeddings(exchange, MAPPER.readTree(readBody(exchange)));
+                }
+            } else if ("GET".equals(method) && path.endsWith("/models")) {
+                ObjectNode body = MAPPER.createObjectNode().put("object", "list");
+                body.putArray("data").addObject().put("id", config.modelName).put("object", "model")
+                        .put("owned_by", "fake");
+                sendJson(exchange, 200, body);
+            } else {
+                sendError(exchange, 404, "invalid_request_error", "未知接口: " + method + " " + path);
+            }
+        } catch (IOException e) {
+            // 客户端提前断开（例如取消流式响应），不需要处理
+        } catch (RuntimeException e) {
+            // 请求体无法解析等；响应头已发出时无法再返回错误
+            try {
+                sendError(exchange, 400, "invalid_request_error", String.valueOf(e.getMessage()));
+            } catch (IOException | RuntimeException ignored) {
+            }
+        }
+    }
+
+    // 按配置的比例注入 429 或 500，返回 true 表示已经响应
+    private boolean injectFault(HttpExchange exchange) throws IOException {
+        double roll;
+        synchronized (faultRandom) {
+            roll = faultRandom.nextDouble();
+        }
+        if (roll < config.rateLimitRate) {
+            injectedFaults.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(config.retryAfter.toSeconds()));
+            sendError(exchange, 429, "rate_limit_exceeded", "Rate limit reached (fake)");
+            return true;
+        }
+        if (roll < config.rateLimitRate + config.errorRate) {
+            injectedFaults.incrementAndGet();
+            sendError(exchange, 500, "server_error", "The server had an error (fake)");
+            return true;
+        }
+        return false;
+    }
+
+    private void handleChat(HttpExchange exchange, JsonNode request) throws IOException {
+        String model = request.path("model").asText(config.modelName);
+        String prompt = promptOf(request.path("messages"));
+        int requestedTokens = request.path("max_completion_tokens").asInt(request.path("max_tokens").asInt(Integer.MAX_VALUE));
+        JsonNode tool = selectTool(request);
+        boolean stream = request.path("stream").asBoolean(false);
+        boolean includeUsage = request.path("stream_options").path("include_usage").asBoolean(false);
+
+        String id = "chatcmpl-fake-" + idSequence.incrementAndGet();
+        long created = System.currentTimeMillis() / 1000;
+        int promptTokens = FakeContent.estimateTokens(prompt);
+
+        if (tool != null) {
+            String name = tool.path("function").path("name").asText();
+            String arguments = content.toolArguments(MAPPER, tool.path("function").path("parameters"));
+            String callId = "call_fake_" + idSequence.get();
+            ObjectNode usage = usage(promptTokens, FakeContent.estimateTokens(arguments));
+            if (stream) {
+                streamToolCall(exchange, id, created, model, callId, name, arguments, includeUsage ? usage : null);
+            } else {
+                ObjectNode message = MAPPER.createObjectNode().put("role", "assistant").putNull("content");
+                ObjectNode call = message.putArray("tool_calls").addObject().put("id", callId).put("type", "function");
+                call.putObject("function").put("name", name).put("arguments", arguments);
+                sleep(config.timeToFirstToken);
+                sendJson(exchange, 200, completion(id, created, model, message, "tool_calls", usage));
+            }
+            return;
+        }
+
+        List<String> tokens = content.completionTokens(prompt, Math.min(config.completionTokens, requestedTokens));
+        // 回复被请求的 max_tokens 截断时 finish_reason 为 length
+        boolean truncated = config.responseText != null
+                ? FakeContent.tokenize(config.responseText).size() > requestedTokens
+                : requestedTokens < config.completionTokens;
+        String finishReason = truncated ? "length" : "stop";
+        ObjectNode usage = usage(promptTokens, tokens.size());
+        if (stream) {
+            streamText(exchange, id, created, model, tokens, finishReason, includeUsage ? usage : null);
+        } else {
+            // 非流式：等待所有 token「生成」完再一次性返回
+            sleep(config.timeToFirstToken.plus(tokenInterval().multipliedBy(Math.max(0, tokens.size() - 1))));
+            ObjectNode message = MAPPER.createObjectNode().put("role", "assistant")
+                    .put("content", String.join("", tokens));
+            sendJson(exchange, 200, completion(id, created, model, message, finishReason, usage));
+        }
+    }
+
+    private void streamText(HttpExchange exchange, String id, long created, String model, List<String> tokens,
+                            String finishReason, ObjectNode usage) throws IOException {
+        activeStreams.incrementAndGet();
+        try (OutputStream out = startStream(exchange)) {
+            writeChunk(out, chunk(id, created, model, MAPPER.createObjectNode().put("role", "assistant").put("content", ""), null));
+            sleep(config.timeToFirstToken);
+
+            int abortAt = shouldAbortStream() ? tokens.size() / 2 : -1;
+            for (int i = 0; i < tokens.size(); i++) {
+                if (i == abortAt) {
+                    // 模拟上游中途断开：不发送结束标记直接关闭连接
+                    injectedFaults.incrementAndGet();
+                    return;
+                }
+                if (i > 0) {
+                    sleep(tokenInterval());
+                }
+                writeChunk(out, chunk(id, created, model, MAPPER.createObjectNode().put("content", tokens.get(i)), null));
+            }
+            finishStream(out, id, created, model, finishReason, usage);
+        } finally {
+            activeStreams.decrementAndGet();
+        }
+    }
+
+    private void streamToolCall(HttpExchange exchange, String id, long created, String model, String callId,
+                                String name, String arguments, ObjectNode usage) throws IOException {
+        activeStreams.incrementAndGet();
+        try (OutputStream out = startStream(exchange)) {
+            sleep(config.timeToFirstToken);
+            ObjectNode first = MAPPER.createObjectNode().put("role", "assistant").putNull("content");
+            ObjectNode call = first.putArray("tool_calls").addObject().put("index", 0).put("id", callId).put("type", "function");
+            call.putObject("function").put("name", name).put("arguments", "");
+            writeChunk(out, chunk(id, created, model, first, null));
+
+            // 参数分片输出，与真实模型一样逐段拼接
+            for (String piece : FakeContent.tokenize(arguments)) {
+                sleep(tokenInterval());
+                ObjectNode delta = MAPPER.createObjectNode();
+                delta.putArray("tool_calls").addObject().put("index", 0)
+                        .putObject("function").put("arguments", piece);
+                writeChunk(out, chunk(id, created, model, delta, null));
+            }
+            finishStream(out, id, created, model, "tool_calls", usage);
+        } finally {
+            activeStreams.decrementAndGet();
+        }
+    }
+
+    private OutputStream startStream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        return exchange.getResponseBody();
+    }
+
+    private void finishStream(OutputStream out, String id, long created, String model, String finishReason,
+                              ObjectNode usage) throws IOException {
+        writeChunk(out, chunk(id, created, model, MAPPER.createObjectNode(), finishReason));
+        if (usage != null) {
+            ObjectNode usageChunk = chunkHeader(id, created, model);
+            usageChunk.putArray("choices");
+            usageChunk.set("usage", usage);
+            writeChunk(out, usageChunk);
+        }
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void handleEmbeddings(HttpExchange exchange, JsonNode request) throws IOException {
+        JsonNode input = request.path("input");
+        int dimensions = request.path("dimensions").asInt(config.embeddingDimensions);
+        ObjectNode body = MAPPER.createObjectNode().put("object", "list")
+                .put("model", request.path("model").asText(config.modelName));
+        ArrayNode data = body.putArray("data");
+        int promptTokens = 0;
+        List<JsonNode> texts = input.isArray() ? MAPPER.convertValue(input, MAPPER.getTypeFactory()
+                .constructCollectionType(List.class, JsonNode.class)) : List.of(input);
+        for (int i = 0; i < texts.size(); i++) {
+            String text = texts.get(i).asText();
+            promptTokens += FakeContent.estimateTokens(text);
+            ArrayNode vector = data.addObject().put("object", "embedding").put("index", i).putArray("embedding");
+            for (float value : content.embedding(text, dimensions)) {
+                vector.add(value);
+            }
+        }
+        body.putObject("usage").put("prompt_tokens", promptTokens).put("total_tokens", promptTokens);
+        sleep(config.embeddingLatency);
+        sendJson(exchange, 200, body);
+    }
+
+    // 请求带 tools、tool_choice 不是 none，且最后一条消息不是工具结果时发起工具调用
+    private JsonNode selectTool(JsonNode request) {
+        JsonNode tools = request.path("tools");
+        if (!tools.isArray() || tools.isEmpty() || "none".equals(request.path("tool_choice").asText())) {
+            return null;
+        }
+        JsonNode messages = request.path("messages");
+        JsonNode last = messages.isArray() && !messages.isEmpty() ? messages.get(messages.size() - 1) : null;
+        if (last != null && "tool".equals(last.path("role").asText())) {
+            return null;
+        }
+        // 优先选择名称出现在最后一条消息中的工具
+        String lastText = last != null ? last.path("content").toString() : "";
+        for (JsonNode tool : tools) {
+            if (lastText.contains(tool.path("function").path("name").asText())) {
+                return tool;
+            }
+        }
+        return tools.get(0);
+    }
+
+    private static String promptOf(JsonNode messages) {
+        StringBuilder prompt = new StringBuilder();
+        for (JsonNode message : messages) {
+            JsonNode messageContent = message.path("content");
+            prompt.append(messageContent.isTextual() ? messageContent.asText() : messageContent.toString()).append('\n');
+        }
+        return prompt.toString();
+    }
+
+    private boolean shouldAbortStream() {
+        synchronized (faultRandom) {
+            return faultRandom.nextDouble() < config.streamAbortRate;
+        }
+    }
+
+    private Duration tokenInterval() {
+        return config.tokensPerSecond > 0
+                ? Duration.ofNanos((long) (TimeUnit.SECONDS.toNanos(1) / config.tokensPerSecond))
+                : Duration.ZERO;
+    }
+
+    private static ObjectNode usage(int promptTokens, int completionTokens) {
+        return MAPPER.createObjectNode()
+                .put("prompt_tokens", promptTokens)
+                .put("completion_tokens", completionTokens)
+                .put("total_tokens", promptTokens + completionTokens);
+    }
+
+    private static ObjectNode completion(String id, long created, String model, ObjectNode message,
+                                         String finishReason, ObjectNode usage) {
+        ObjectNode body = MAPPER.createObjectNode().put("id", id).put("object", "chat.completion")
+                .put("created", created).put("model", model);
+        ObjectNode choice = body.putArray("choices").addObject().put("index", 0);
+        choice.set("message", message);
+        choice.put("finish_reason", finishReason);
+        body.set("usage", usage);
+        return body;
+    }
+
+    private static ObjectNode chunk(String id, long created, String model, ObjectNode delta, String finishReason) {
+        ObjectNode body = chunkHeader(id, created, model);
+        ObjectNode choice = body.putArray("choices").addObject().put("index", 0);
+        choice.set("delta", delta);
+        if (finishReason != null) {
+            choice.put("finish_reason", finishReason);
+        } else {
+            choice.putNull("finish_reason");
+        }
+        return body;
+    }
+
+    private static ObjectNode chunkHeader(String id, long created, String model) {
+        return MAPPER.createObjectNode().put("id", id).put("object", "chat.completion.chunk")
+                .put("created", created).put("model", model);
+    }
+
+    private static void writeChunk(OutputStream out, JsonNode chunk) throws IOException {
+        out.write(("data: " + chunk + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String type, String message) throws IOException {
+        ObjectNode body = MAPPER.createObjectNode();
+        body.putObject("error").put("message", message).put("type", type).put("code", type);
+        sendJson(exchange, status, body);
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void sleep(Duration duration) throws IOException {
+        if (duration.isZero() || duration.isNegative()) {
+            return;
+        }
+        try {
+            Thread.sleep(duration.toMillis(), duration.toNanosPart() % 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("服务已关闭", e);
+        }
+    }
+
+    /**
+     * 单独运行：参数形如 --port=18080 --tokens-per-second=50 --ttft=200ms --error-rate=0.01
+     */
+    public static void main(String[] args) throws IOException {
+        Builder builder = builder().port(18080);
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            String value = pair.length > 1 ? pair[1] : "";
+            switch (pair[0]) {
+                case "host" -> builder.host(value);
+                case "port" -> builder.port(Integer.parseInt(value));
+                case "model" -> builder.modelName(value);
+                case "tokens-per-second" -> builder.tokensPerSecond(Double.parseDouble(value));
+                case "ttft" -> builder.timeToFirstToken(parseDuration(value));
+                case "completion-tokens" -> builder.completionTokens(Integer.parseInt(value));
+                case "response-text" -> builder.responseText(value);
+                case "error-rate" -> builder.errorRate(Double.parseDouble(value));
+                case "rate-limit-rate" -> builder.rateLimitRate(Double.parseDouble(value));
+                case "stream-abort-rate" -> builder.streamAbortRate(Double.parseDouble(value));
+                case "embedding-dimensions" -> builder.embeddingDimensions(Integer.parseInt(value));
+                case "embedding-latency" -> builder.embeddingLatency(parseDuration(value));
+                case "seed" -> builder.seed(Long.parseLong(value));
+                default -> throw new IllegalArgumentException("未知参数: " + arg);
+            }
+        }
+        FakeModelServer server = builder.start();
+        System.out.println("假模型服务已启动: " + server.getBaseUrl());
+    }
+
+    // 支持 200ms、2s 这样的简写
+    static Duration parseDuration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofMillis((long) (Double.parseDouble(value.substring(0, value.length() - 1)) * 1000));
+        }
+        return Duration.parse(value);
+    }
+
+    public static class Builder {
+
+        private String host = "127.0.0.1";
+        // 0 表示随机端口
+        private int port;
+        private int backlog = 1024;
+        private String modelName = "fake-model";
+        // 0 表示不限速
+        private double tokensPerSecond;
+        private Duration timeToFirstToken = Duration.ZERO;
+        private int completionTokens = 64;
+        private String responseText;
+        private double errorRate;
+        private double rateLimitRate;
+        private Duration retryAfter = Duration.ofSeconds(1);
+        private double streamAbortRate;
+        private int embeddingDimensions = 384;
+        private Duration embeddingLatency = Duration.ZERO;
+        private long seed = 42;
+
+        public Builder host(String host) {
+            this.host = host;
+            return this;
+        }
+
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder backlog(int backlog) {
+            this.backlog = backlog;
+            return this;
+        }
+
+        public Builder modelName(String modelName) {
+            this.modelName = modelName;
+            return this;
+        }
+
+        public Builder tokensPerSecond(double tokensPerSecond) {
+            this.tokensPerSecond = tokensPerSecond;
+            return this;
+        }
+
+        public Builder timeToFirstToken(Duration timeToFirstToken) {
+            this.timeToFirstToken = timeToFirstToken;
+            return this;
+        }
+
+        /**
+         * 未配置固定回复时生成的 token 数（请求中的 max_tokens 更小时以请求为准）
+         */
+        public Builder completionTokens(int completionTokens) {
+            this.completionTokens = completionTokens;
+            return this;
+        }
+
+        public Builder responseText(String responseText) {
+            this.responseText = responseText;
+            return this;
+        }
+
+        public Builder errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        public Builder rateLimitRate(double rateLimitRate) {
+            this.rateLimitRate = rateLimitRate;
+            return this;
+        }
+
+        public Builder retryAfter(Duration retryAfter) {
+            this.retryAfter = retryAfter;
+            return this;
+        }
+
+        public Builder streamAbortRate(double streamAbortRate) {
+            this.streamAbortRate = streamAbortRate;
+            return this;
+        }
+
+        public Builder embeddingDimensions(int embeddingDimensions) {
+            this.embeddingDimensions = embeddingDimensions;
+            return this;
+        }
+
+        public Builder embeddingLatency(Duration embeddingLatency) {
+            this.embeddingLatency = embeddingLatency;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public FakeModelServer start() throws IOException {
+            return new FakeModelServer(this);
+        }
+
+    }
+
+}
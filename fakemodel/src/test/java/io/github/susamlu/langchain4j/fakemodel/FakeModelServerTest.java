@@ -0,0 +1,180 @@
+package io.github.susamlu.langchain4j.fakemodel;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.json.JsonObjectSchema;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.output.FinishReason;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FakeModelServer 测试类
+ * 直接使用 langchain4j 的 OpenAI 客户端访问假模型服务，验证协议兼容性和可配置的行为
+ */
+@DisplayName("假模型服务测试")
+class FakeModelServerTest {
+
+    @Test
+    @DisplayName("非流式对话：相同提示词得到相同回复")
+    void testChatDeterministic() throws Exception {
+        try (FakeModelServer server = FakeModelServer.builder().completionTokens(16).start()) {
+            OpenAiChatModel model = chatModel(server);
+
+            ChatResponse first = model.chat(ChatRequest.builder().messages(UserMessage.from("你好")).build());
+            ChatResponse second = model.chat(ChatRequest.builder().messages(UserMessage.from("你好")).build());
+
+            assertEquals(first.aiMessage().text(), second.aiMessage().text());
+            assertEquals(16, first.tokenUsage().outputTokenCount());
+            assertEquals(2, server.chatRequestCount());
+        }
+    }
+
+    @Test
+    @DisplayName("流式对话：按配置的首 token 时间和速率逐个输出")
+    void testStreamingPacing() throws Exception {
+        try (FakeModelServer server = FakeModelServer.builder()
+                .responseText("流式 response from the fake server")
+                .timeToFirstToken(Duration.ofMillis(200))
+                .tokensPerSecond(100)
+                .start()) {
+            OpenAiStreamingChatModel model = OpenAiStreamingChatModel.builder()
+                    .baseUrl(server.getBaseUrl())
+                    .apiKey("fake")
+                    .modelName("fake-model")
+                    .build();
+
+            List<String> partials = new CopyOnWriteArrayList<>();
+            CompletableFuture<ChatResponse> future = new CompletableFuture<>();
+            long start = System.nanoTime();
+            long[] firstTokenAt = new long[1];
+            model.chat("hi", new StreamingChatResponseHandler() {
+                @Override
+                public void onPartialResponse(String partialResponse) {
+                    if (partials.isEmpty()) {
+                        firstTokenAt[0] = System.nanoTime();
+                    }
+                    partials.add(partialResponse);
+                }
+
+                @Override
+                public void onCompleteResponse(ChatResponse completeResponse) {
+                    future.complete(completeResponse);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    future.completeExceptionally(error);
+                }
+            });
+
+            ChatResponse response = future.get(10, TimeUnit.SECONDS);
+            assertEquals(List.of("流", "式", " response", " from", " the", " fake", " server"), partials);
+            assertEquals("流式 response from the fake server", response.aiMessage().text());
+            assertEquals(FinishReason.STOP, response.finishReason());
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(firstTokenAt[0] - start) >= 200);
+            // 7 个 token、每秒 100 个：首 token 之后至少 60ms
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - firstTokenAt[0]) >= 60);
+        }
+    }
+
+    @Test
+    @DisplayName("工具调用：按参数 Schema 生成确定性参数")
+    void testToolCall() throws Exception {
+        try (FakeModelServer server = FakeModelServer.builder().start()) {
+            ToolSpecification weather = ToolSpecification.builder()
+                    .name("getWeather")
+                    .description("查询天气")
+                    .parameters(JsonObjectSchema.builder()
+                            .addStringProperty("city")
+                            .addIntegerProperty("days")
+                            .required("city")
+                            .build())
+                    .build();
+
+            ChatResponse response = chatModel(server).chat(ChatRequest.builder()
+                    .messages(UserMessage.from("北京天气怎么样"))
+                    .toolSpecifications(weather)
+                    .build());
+
+            assertTrue(response.aiMessage().hasToolExecutionRequests());
+            ToolExecutionRequest request = response.aiMessage().toolExecutionRequests().get(0);
+            assertEquals("getWeather", request.name());
+            assertEquals("{\"city\":\"fake-city\",\"days\":1}", request.arguments());
+            assertEquals(FinishReason.TOOL_EXECUTION, response.finishReason());
+        }
+    }
+
+    @Test
+    @DisplayName("向量：维度可配置，同一文本得到同一单位向量")
+    void testEmbeddings() throws Exception {
+        try (FakeModelServer server = FakeModelServer.builder().embeddingDimensions(64).start()) {
+            OpenAiEmbeddingModel model = OpenAiEmbeddingModel.builder()
+                    .baseUrl(server.getBaseUrl())
+                    .apiKey("fake")
+                    .modelName("fake-embedding")
+                    .build();
+
+            List<Embedding> embeddings = model.embedAll(List.of(
+                    TextSegment.from("苹果"), TextSegment.from("香蕉"), TextSegment.from("苹果"))).content();
+
+            assertEquals(3, embeddings.size());
+            assertEquals(64, embeddings.get(0).dimension());
+            assertArrayEquals(embeddings.get(0).vector(), embeddings.get(2).vector());
+            double norm = 0;
+            for (float value : embeddings.get(1).vector()) {
+                norm += value * value;
+            }
+            assertEquals(1.0, norm, 1e-4);
+        }
+    }
+
+    @Test
+    @DisplayName("错误注入：429 携带 Retry-After")
+    void testRateLimitInjection() throws Exception {
+        try (FakeModelServer server = FakeModelServer.builder().rateLimitRate(1.0).start()) {
+            OpenAiChatModel model = OpenAiChatModel.builder()
+                    .baseUrl(server.getBaseUrl())
+                    .apiKey("fake")
+                    .modelName("fake-model")
+                    .maxRetries(0)
+                    .build();
+
+            Exception e = assertThrows(Exception.class, () -> model.chat("hi"));
+            assertTrue(e.getMessage().contains("Rate limit"), e.getMessage());
+            assertEquals(1, server.injectedFaultCount());
+        }
+    }
+
+    @Test
+    @DisplayName("token 切分后拼接与原文一致")
+    void testTokenize() {
+        String text = "你好 world，  streaming 测试 ok ";
+        assertEquals(text, String.join("", FakeContent.tokenize(text)));
+    }
+
+    private static OpenAiChatModel chatModel(FakeModelServer server) {
+        return OpenAiChatModel.builder()
+                .baseUrl(server.getBaseUrl())
+                .apiKey("fake")
+                .modelName("fake-model")
+                .build();
+    }
+
+}
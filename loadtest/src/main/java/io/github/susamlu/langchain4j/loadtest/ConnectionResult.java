@@ -0,0 +1,26 @@
+package io.github.susamlu.langchain4j.loadtest;
+
+/**
+ * 单个连接（一次流式请求）的结果，时间均为相对发起连接时刻的纳秒数，-1 表示未发生
+ */
+public record ConnectionResult(Outcome outcome, long firstTokenNanos, long durationNanos, int tokens, String detail) {
+
+    public enum Outcome {
+        // 收到 complete 事件
+        COMPLETED,
+        // 被准入控制拒绝（HTTP 429 或 WebSocket error 消息）
+        REJECTED,
+        // 服务端返回 failure / expired / error 事件或非 200 状态
+        FAILED,
+        // 连接在 complete 之前断开
+        DROPPED,
+        // 超过单个连接的最长时间
+        TIMEOUT
+    }
+
+    static ConnectionResult of(Outcome outcome, long startNanos, long firstTokenAt, int tokens, String detail) {
+        return new ConnectionResult(outcome, firstTokenAt > 0 ? firstTokenAt - startNanos : -1,
+                System.nanoTime() - startNanos, tokens, detail);
+    }
+
+}
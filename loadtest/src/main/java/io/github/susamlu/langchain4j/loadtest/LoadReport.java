@@ -0,0 +1,178 @@
+package io.github.susamlu.langchain4j.loadtest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 一轮压测的汇总结果：客户端视角的吞吐、首 token 时间分位数、各类结果数，以及服务端的堆、GC、线程
+ */
+public class LoadReport {
+
+    private static final String CSV_HEADER = "label,transport,connections,completed,rejected,failed,dropped,timeout,"
+            + "peak_open,elapsed_s,streams_per_s,tokens_per_s,ttft_p50_ms,ttft_p90_ms,ttft_p99_ms,ttft_max_ms,"
+            + "duration_p50_ms,duration_p99_ms,heap_per_connection_kb,live_data_per_connection_kb,"
+            + "gc_count,gc_pause_ms,gc_max_pause_ms,server_threads_peak";
+
+    private final String label;
+    private final String transport;
+    private final List<ConnectionResult> results;
+    private final Map<ConnectionResult.Outcome, Long> outcomes = new EnumMap<>(ConnectionResult.Outcome.class);
+    private final int peakOpenConnections;
+    private final double elapsedSeconds;
+    private final long tokens;
+    private final long[] ttftNanos;
+    private final long[] durationNanos;
+    private final ServerMetrics.Snapshot baseline;
+    private final ServerMetrics.Snapshot peak;
+    private final ServerMetrics.Snapshot end;
+
+    LoadReport(String label, String transport, List<ConnectionResult> results, int peakOpenConnections,
+               double elapsedSeconds, ServerMetrics.Snapshot baseline, ServerMetrics.Snapshot peak,
+               ServerMetrics.Snapshot end) {
+        this.label = label;
+        this.transport = transport;
+        this.results = List.copyOf(results);
+        this.peakOpenConnections = peakOpenConnections;
+        this.elapsedSeconds = elapsedSeconds;
+        this.baseline = baseline;
+        this.peak = peak;
+        this.end = end;
+        for (ConnectionResult.Outcome outcome : ConnectionResult.Outcome.values()) {
+            outcomes.put(outcome, 0L);
+        }
+        results.forEach(result -> outcomes.merge(result.outcome(), 1L, Long::sum));
+        this.tokens = results.stream().mapToLong(ConnectionResult::tokens).sum();
+        this.ttftNanos = results.stream().mapToLong(ConnectionResult::firstTokenNanos).filter(n -> n >= 0)
+                .sorted().toArray();
+        this.durationNanos = results.stream()
+                .filter(result -> result.outcome() == ConnectionResult.Outcome.COMPLETED)
+                .mapToLong(ConnectionResult::durationNanos).sorted().toArray();
+    }
+
+    public long count(ConnectionResult.Outcome outcome) {
+        return outcomes.get(outcome);
+    }
+
+    public int connections() {
+        return results.size();
+    }
+
+    public int peakOpenConnections() {
+        return peakOpenConnections;
+    }
+
+    public long tokens() {
+        return tokens;
+    }
+
+    /**
+     * 首 token 时间分位数（毫秒），没有任何连接收到 token 时返回 NaN
+     */
+    public double ttftMillis(double percentile) {
+        return percentileMillis(ttftNanos, percentile);
+    }
+
+    public double durationMillis(double percentile) {
+        return percentileMillis(durationNanos, percentile);
+    }
+
+    /**
+     * 峰值并发时服务端每个连接平均占用的堆（KB），未采集到服务端指标时返回 NaN
+     */
+    public double heapPerConnectionKb() {
+        return perConnectionKb(baseline != null ? baseline.heapUsed() : Double.NaN,
+                peak != null ? peak.heapUsed() : Double.NaN);
+    }
+
+    public double liveDataPerConnectionKb() {
+        return perConnectionKb(baseline != null ? baseline.liveDataSize() : Double.NaN,
+                peak != null ? peak.liveDataSize() : Double.NaN);
+    }
+
+    public void print() {
+        System.out.println("\n========== 压测结果: " + label + " (" + transport + ") ==========");
+        System.out.printf("连接数：%d，峰值并发：%d，耗时：%.1f s%n", connections(), peakOpenConnections, elapsedSeconds);
+        System.out.println("结果：" + outcomes.entrySet().stream()
+                .map(entry -> entry.getKey() + "=" + entry.getValue())
+                .collect(Collectors.joining(", ")));
+        System.out.printf("吞吐：%.1f 流/s，%.1f token/s%n",
+                count(ConnectionResult.Outcome.COMPLETED) / elapsedSeconds, tokens / elapsedSeconds);
+        System.out.printf("首 token 时间：p50 %.1f ms，p90 %.1f ms，p99 %.1f ms，max %.1f ms%n",
+                ttftMillis(50), ttftMillis(90), ttftMillis(99), ttftMillis(100));
+        System.out.printf("完整流耗时：p50 %.1f ms，p99 %.1f ms%n", durationMillis(50), durationMillis(99));
+
+        if (baseline == null || end == null) {
+            System.out.println("服务端指标：不可用（需暴露 /actuator/metrics）");
+        } else {
+            System.out.printf("服务端堆：基线 %.1f MB，峰值 %.1f MB，每连接约 %.1f KB（GC 后存活数据每连接约 %.1f KB）%n",
+                    baseline.heapUsed() / 1024 / 1024, peak.heapUsed() / 1024 / 1024,
+                    heapPerConnectionKb(), liveDataPerConnectionKb());
+            System.out.printf("服务端 GC：%d 次，累计暂停 %.1f ms，最长暂停 %.1f ms%n",
+                    (long) (end.gcCount() - baseline.gcCount()),
+                    (end.gcPauseSeconds() - baseline.gcPauseSeconds()) * 1000, end.gcMaxPauseSeconds() * 1000);
+            System.out.printf("服务端线程：当前 %d，峰值 %d%n", (long) end.threadsLive(), (long) end.threadsPeak());
+        }
+
+        // 列出部分失败原因，便于定位
+        results.stream()
+                .filter(result -> result.outcome() != ConnectionResult.Outcome.COMPLETED && result.detail() != null)
+                .collect(Collectors.groupingBy(result -> result.outcome() + " " + result.detail(), Collectors.counting()))
+                .entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(5)
+                .forEach(entry -> System.out.println("  " + entry.getValue() + " × " + entry.getKey()));
+    }
+
+    /**
+     * 追加一行 CSV，便于对比不同配置（例如平台线程池与虚拟线程）下的多轮结果
+     */
+    public void appendCsv(Path file) throws IOException {
+        boolean writeHeader = !Files.exists(file) || Files.size(file) == 0;
+        String row = String.join(",", label, transport, String.valueOf(connections()),
+                String.valueOf(count(ConnectionResult.Outcome.COMPLETED)),
+                String.valueOf(count(ConnectionResult.Outcome.REJECTED)),
+                String.valueOf(count(ConnectionResult.Outcome.FAILED)),
+                String.valueOf(count(ConnectionResult.Outcome.DROPPED)),
+                String.valueOf(count(ConnectionResult.Outcome.TIMEOUT)),
+                String.valueOf(peakOpenConnections), format(elapsedSeconds),
+                format(count(ConnectionResult.Outcome.COMPLETED) / elapsedSeconds), format(tokens / elapsedSeconds),
+                format(ttftMillis(50)), format(ttftMillis(90)), format(ttftMillis(99)), format(ttftMillis(100)),
+                format(durationMillis(50)), format(durationMillis(99)),
+                format(heapPerConnectionKb()), format(liveDataPerConnectionKb()),
+                end != null ? format(end.gcCount() - baseline.gcCount()) : "",
+                end != null ? format((end.gcPauseSeconds() - baseline.gcPauseSeconds()) * 1000) : "",
+                end != null ? format(end.gcMaxPauseSeconds() * 1000) : "",
+                end != null ? format(end.threadsPeak()) : "");
+        String content = (writeHeader ? CSV_HEADER + "\n" : "") + row + "\n";
+        Files.writeString(file, content, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private double perConnectionKb(double before, double atPeak) {
+        if (Double.isNaN(before) || Double.isNaN(atPeak) || peakOpenConnections == 0) {
+            return Double.NaN;
+        }
+        return Math.max(0, atPeak - before) / peakOpenConnections / 1024;
+    }
+
+    // nearest-rank 分位数
+    static double percentileMillis(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return Double.NaN;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sortedNanos.length);
+        return sortedNanos[Math.min(sortedNanos.length, Math.max(1, rank)) - 1] / 1e6;
+    }
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? "" : String.format(Locale.ROOT, "%.1f", value);
+    }
+
+}
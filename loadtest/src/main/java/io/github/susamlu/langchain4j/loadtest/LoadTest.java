@@ -0,0 +1,267 @@
+package io.github.susamlu.langchain4j.loadtest;
+
+import io.github.susamlu.langchain4j.fakemodel.FakeModelServer;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 流式端点压测：在爬坡时间内匀速建立大量 SSE 连接（/api/chat/stream）或 STOMP 会话（/ws/chat-native），
+ * 统计吞吐、首 token 时间分位数、被拒绝 / 断开的连接数，并通过 actuator 采集服务端的堆、GC 和线程
+ * <p>
+ * 典型用法（被测应用指向假模型，并放开准入控制）：
+ * <pre>
+ * # 1. 假模型服务
+ * mvn -pl fakemodel exec:java -Dexec.mainClass=io.github.susamlu.langchain4j.fakemodel.FakeModelServer \
+ *     -Dexec.args="--port=18080 --tokens-per-second=20"
+ * # 2. 被测应用
+ * mvn -pl responsestreaming exec:java -Dexec.mainClass=io.github.susamlu.langchain4j.responsestreaming.ResponseStreamingApplication \
+ *     -Dexec.args="--streaming.model.base-url=http://127.0.0.1:18080/v1 --streaming.admission.max-in-flight=10000"
+ * # 3. 压测
+ * mvn -pl loadtest exec:java -Dexec.mainClass=io.github.susamlu.langchain4j.loadtest.LoadTest \
+ *     -Dexec.args="--transport=sse --connections=2000 --ramp-up=20s"
+ * </pre>
+ * 对比平台线程池与虚拟线程：分别以默认配置（或 --server.tomcat.threads.max=N）和
+ * --spring.threads.virtual.enabled=true（需要 JDK 21）启动被测应用，用不同的 --label 各跑一轮，
+ * 结果追加到同一个 --csv 文件中对比
+ */
+public class LoadTest {
+
+    private final Builder config;
+
+    private LoadTest(Builder builder) {
+        this.config = builder;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public LoadReport run() throws InterruptedException {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        SseLoadClient sseClient = new SseLoadClient(httpClient, config.target);
+        StompLoadClient stompClient = new StompLoadClient(httpClient, config.target);
+        ServerMetrics serverMetrics = new ServerMetrics(httpClient, config.target);
+        boolean metricsAvailable = serverMetrics.available();
+
+        ServerMetrics.Snapshot baseline = metricsAvailable ? serverMetrics.snapshot() : null;
+        AtomicReference<ServerMetrics.Snapshot> peak = new AtomicReference<>(baseline);
+        AtomicInteger open = new AtomicInteger();
+        AtomicInteger peakOpen = new AtomicInteger();
+        // 采样时刻的并发连接数达到新高时记录服务端堆，用于估算每连接的堆占用
+        AtomicInteger peakSampledOpen = new AtomicInteger();
+        ConcurrentLinkedQueue<ConnectionResult> results = new ConcurrentLinkedQueue<>();
+        CountDownLatch finished = new CountDownLatch(config.connections);
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "load-test-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (metricsAvailable) {
+            scheduler.scheduleWithFixedDelay(() -> {
+                int sampledOpen = open.get();
+                ServerMetrics.Snapshot snapshot = serverMetrics.snapshot();
+                if (sampledOpen >= peakSampledOpen.get()) {
+                    peakSampledOpen.set(sampledOpen);
+                    peak.set(snapshot);
+                }
+            }, config.sampleInterval.toMillis(), config.sampleInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        System.out.println("开始压测: " + config.connections + " 个 " + config.transport + " 连接，爬坡 "
+                + config.rampUp.toSeconds() + "s，目标 " + config.target);
+        long startNanos = System.nanoTime();
+        long intervalNanos = config.rampUp.toNanos() / Math.max(1, config.connections);
+        for (int i = 0; i < config.connections; i++) {
+            int index = i;
+            scheduler.schedule(() -> {
+                peakOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+                open(index, sseClient, stompClient).whenComplete((result, error) -> {
+                    open.decrementAndGet();
+                    results.add(result != null ? result : new ConnectionResult(ConnectionResult.Outcome.DROPPED,
+                            -1, -1, 0, String.valueOf(error)));
+                    finished.countDown();
+                });
+            }, intervalNanos * i, TimeUnit.NANOSECONDS);
+        }
+
+        // 超时由每个连接自行处理，这里额外留出爬坡时间和余量
+        if (!finished.await(config.rampUp.plus(config.timeout).toSeconds() + 30, TimeUnit.SECONDS)) {
+            System.out.println("部分连接未在预期时间内结束: " + finished.getCount());
+        }
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        scheduler.shutdownNow();
+
+        ServerMetrics.Snapshot end = metricsAvailable ? serverMetrics.snapshot() : null;
+        return new LoadReport(config.label, config.transport, List.copyOf(results), peakOpen.get(), elapsedSeconds,
+                baseline, peak.get(), end);
+    }
+
+    private CompletableFuture<ConnectionResult> open(int index, SseLoadClient sseClient, StompLoadClient stompClient) {
+        String userId = "load-" + (index % config.users);
+        boolean stomp = switch (config.transport) {
+            case "stomp" -> true;
+            // 交替使用两种传输
+            case "mixed" -> index % 2 == 1;
+            default -> false;
+        };
+        try {
+            return stomp
+                    ? stompClient.stream(config.message, userId, config.timeout)
+                    : sseClient.stream(config.message, userId, config.timeout);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 参数形如 --transport=sse --connections=2000 --ramp-up=20s --csv=results.csv
+     * 加上 --fake-model=true 时在本进程内启动假模型服务（--fake-model-port、--tokens-per-second、--ttft、--completion-tokens）
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Builder builder = builder();
+        boolean startFakeModel = false;
+        FakeModelServer.Builder fakeModel = FakeModelServer.builder().port(18080);
+        Path csv = null;
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            String value = pair.length > 1 ? pair[1] : "";
+            switch (pair[0]) {
+                case "target" -> builder.target(value);
+                case "transport" -> builder.transport(value);
+                case "connections" -> builder.connections(Integer.parseInt(value));
+                case "users" -> builder.users(Integer.parseInt(value));
+                case "ramp-up" -> builder.rampUp(parseDuration(value));
+                case "timeout" -> builder.timeout(parseDuration(value));
+                case "message" -> builder.message(value);
+                case "label" -> builder.label(value);
+                case "sample-interval" -> builder.sampleInterval(parseDuration(value));
+                case "csv" -> csv = Path.of(value);
+                case "fake-model" -> startFakeModel = Boolean.parseBoolean(value);
+                case "fake-model-port" -> fakeModel.port(Integer.parseInt(value));
+                case "tokens-per-second" -> fakeModel.tokensPerSecond(Double.parseDouble(value));
+                case "ttft" -> fakeModel.timeToFirstToken(parseDuration(value));
+                case "completion-tokens" -> fakeModel.completionTokens(Integer.parseInt(value));
+                default -> throw new IllegalArgumentException("未知参数: " + arg);
+            }
+        }
+
+        FakeModelServer fakeModelServer = null;
+        if (startFakeModel) {
+            fakeModelServer = fakeModel.start();
+            System.out.println("假模型服务已启动: " + fakeModelServer.getBaseUrl()
+                    + "，被测应用需以 --streaming.model.base-url=" + fakeModelServer.getBaseUrl() + " 启动");
+        }
+        try {
+            LoadReport report = builder.build().run();
+            report.print();
+            if (csv != null) {
+                report.appendCsv(csv);
+                System.out.println("结果已追加到: " + csv.toAbsolutePath());
+            }
+        } finally {
+            if (fakeModelServer != null) {
+                fakeModelServer.close();
+            }
+        }
+    }
+
+    // 支持 200ms、20s 这样的简写
+    static Duration parseDuration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofMillis((long) (Double.parseDouble(value.substring(0, value.length() - 1)) * 1000));
+        }
+        return Duration.parse(value);
+    }
+
+    public static class Builder {
+
+        private String target = "http://127.0.0.1:8080";
+        // sse、stomp 或 mixed
+        private String transport = "sse";
+        private int connections = 1000;
+        // 用户数，决定准入控制中的每用户排队；默认每个连接一个用户
+        private int users = Integer.MAX_VALUE;
+        private Duration rampUp = Duration.ofSeconds(10);
+        // 单个连接的最长时间
+        private Duration timeout = Duration.ofSeconds(120);
+        private String message = "用一句话介绍一下你自己";
+        private String label = "default";
+        private Duration sampleInterval = Duration.ofSeconds(1);
+
+        public Builder target(String target) {
+            this.target = target.replaceAll("/+$", "");
+            return this;
+        }
+
+        public Builder transport(String transport) {
+            if (!List.of("sse", "stomp", "mixed").contains(transport)) {
+                throw new IllegalArgumentException("transport 只能是 sse、stomp 或 mixed: " + transport);
+            }
+            this.transport = transport;
+            return this;
+        }
+
+        public Builder connections(int connections) {
+            this.connections = connections;
+            return this;
+        }
+
+        public Builder users(int users) {
+            this.users = Math.max(1, users);
+            return this;
+        }
+
+        public Builder rampUp(Duration rampUp) {
+            this.rampUp = rampUp;
+            return this;
+        }
+
+        public Builder timeout(Duration timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Builder message(String message) {
+            this.message = message;
+            return this;
+        }
+
+        /**
+         * 本轮压测的标签，例如 platform-threads / virtual-threads，写入报告和 CSV
+         */
+        public Builder label(String label) {
+            this.label = label;
+            return this;
+        }
+
+        public Builder sampleInterval(Duration sampleInterval) {
+            this.sampleInterval = sampleInterval;
+            return this;
+        }
+
+        public LoadTest build() {
+            return new LoadTest(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,77 @@
+package io.github.susamlu.langchain4j.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * 通过被测应用的 /actuator/metrics 读取服务端 JVM 指标（堆、GC、线程）
+ * <p>
+ * 压测客户端与服务端不在同一个进程中统计，堆占用不会被客户端自身的对象干扰
+ */
+class ServerMetrics {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+
+    ServerMetrics(HttpClient httpClient, String baseUrl) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl;
+    }
+
+    Snapshot snapshot() {
+        return new Snapshot(
+                value("jvm.memory.used?tag=area:heap", "VALUE"),
+                // 最近一次 GC 后老年代仍存活的数据量，比瞬时堆占用更能反映连接本身持有的内存
+                value("jvm.gc.live.data.size", "VALUE"),
+                value("jvm.gc.pause", "COUNT"),
+                value("jvm.gc.pause", "TOTAL_TIME"),
+                value("jvm.gc.pause", "MAX"),
+                value("jvm.threads.live", "VALUE"),
+                value("jvm.threads.peak", "VALUE"));
+    }
+
+    boolean available() {
+        return !Double.isNaN(value("jvm.threads.live", "VALUE"));
+    }
+
+    // 指标不存在或端点不可用时返回 NaN
+    private double value(String metric, String statistic) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/metrics/" + metric))
+                    .timeout(Duration.ofSeconds(5))
+                    .GET()
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                return Double.NaN;
+            }
+            for (JsonNode measurement : MAPPER.readTree(response.body()).path("measurements")) {
+                if (statistic.equals(measurement.path("statistic").asText())) {
+                    return measurement.path("value").asDouble();
+                }
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * 某一时刻的服务端指标，GC 暂停时间单位为秒
+     */
+    record Snapshot(double heapUsed, double liveDataSize, double gcCount, double gcPauseSeconds,
+                    double gcMaxPauseSeconds, double threadsLive, double threadsPeak) {
+
+    }
+
+}
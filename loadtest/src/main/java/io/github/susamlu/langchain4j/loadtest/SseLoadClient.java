@@ -0,0 +1,145 @@
+package io.github.susamlu.langchain4j.loadtest;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSE 压测客户端：请求 GET /api/chat/stream，按 event 行统计 token
+ * <p>
+ * 响应体通过 Flow.Subscriber 异步逐行处理，数千个连接只占用 HttpClient 的少量线程
+ */
+class SseLoadClient {
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+
+    SseLoadClient(HttpClient httpClient, String baseUrl) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl;
+    }
+
+    CompletableFuture<ConnectionResult> stream(String message, String userId, Duration timeout) {
+        URI uri = URI.create(baseUrl + "/api/chat/stream?message=" + URLEncoder.encode(message, StandardCharsets.UTF_8)
+                + "&userId=" + URLEncoder.encode(userId, StandardCharsets.UTF_8));
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Accept", "text/event-stream")
+                .GET()
+                .build();
+
+        EventSubscriber subscriber = new EventSubscriber(System.nanoTime());
+        CompletableFuture<HttpResponse<Void>> response = httpClient.sendAsync(request, info -> info.statusCode() == 200
+                ? HttpResponse.BodySubscribers.fromLineSubscriber(subscriber)
+                : HttpResponse.BodySubscribers.replacing(null));
+
+        return response
+                .thenApply(subscriber::result)
+                .exceptionally(subscriber::error)
+                .completeOnTimeout(null, timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(result -> {
+                    if (result != null) {
+                        return result;
+                    }
+                    // 超时：放弃请求，服务端随之感知到断开
+                    response.cancel(true);
+                    subscriber.cancel();
+                    return subscriber.finish(ConnectionResult.Outcome.TIMEOUT, "超过 " + timeout.toSeconds() + "s");
+                });
+    }
+
+    /**
+     * 逐行解析 Spring SseEmitter 的输出：id:1 / event:message / data:...，空行分隔事件
+     */
+    private static class EventSubscriber implements Flow.Subscriber<String> {
+
+        private final long startNanos;
+        private volatile Flow.Subscription subscription;
+        private volatile long firstTokenAt;
+        private volatile int tokens;
+        private volatile String terminalEvent;
+        private volatile String terminalData;
+        private boolean inTerminalEvent;
+
+        EventSubscriber(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.startsWith("event:")) {
+                String event = line.substring("event:".length()).trim();
+                if ("message".equals(event)) {
+                    if (tokens++ == 0) {
+                        firstTokenAt = System.nanoTime();
+                    }
+                } else {
+                    terminalEvent = event;
+                    inTerminalEvent = true;
+                }
+            } else if (inTerminalEvent && line.startsWith("data:")) {
+                terminalData = line.substring("data:".length());
+                inTerminalEvent = false;
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        void cancel() {
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        ConnectionResult result(HttpResponse<Void> response) {
+            if (response.statusCode() == 429) {
+                return finish(ConnectionResult.Outcome.REJECTED, "Retry-After: "
+                        + response.headers().firstValue("Retry-After").orElse("-"));
+            }
+            if (response.statusCode() != 200) {
+                return finish(ConnectionResult.Outcome.FAILED, "HTTP " + response.statusCode());
+            }
+            if ("complete".equals(terminalEvent)) {
+                return finish(ConnectionResult.Outcome.COMPLETED, null);
+            }
+            if (terminalEvent != null) {
+                return finish(ConnectionResult.Outcome.FAILED, terminalEvent + ": " + terminalData);
+            }
+            return finish(ConnectionResult.Outcome.DROPPED, "连接在 complete 事件前结束");
+        }
+
+        ConnectionResult error(Throwable error) {
+            Throwable cause = error.getCause() != null ? error.getCause() : error;
+            if ("failure".equals(terminalEvent)) {
+                // 服务端先发出 failure 事件再以错误关闭连接
+                return finish(ConnectionResult.Outcome.FAILED, terminalEvent + ": " + terminalData);
+            }
+            return finish(ConnectionResult.Outcome.DROPPED, cause.getClass().getSimpleName() + ": " + cause.getMessage());
+        }
+
+        ConnectionResult finish(ConnectionResult.Outcome outcome, String detail) {
+            return ConnectionResult.of(outcome, startNanos, firstTokenAt, tokens, detail);
+        }
+
+    }
+
+}
@@ -0,0 +1,368 @@
+package io.github.susamlu.langchain4j.loadtest;
+
+import io.github.susamlu.langchain4j.fakemodel.FakeModelServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+/**
+ * 启动性能基准：以子进程启动 responsestreaming（fast-startup profile 的产物），对比开启 / 关闭 Spring AOT + CDS 时的
+ * 就绪时间（启动进程到 /actuator/health 返回 UP）和第一个请求的延迟（首 token 时间、完整响应时间）
+ * <p>
+ * 典型用法：
+ * <pre>
+ * # 1. 构建：AOT 处理、解压可执行 jar，并对假模型跑一轮训练生成 CDS 归档
+ * mvn -Pfast-startup -pl responsestreaming,loadtest -am package -DskipTests
+ * # 2. 基准（两种模式交替启动，各 --runs 次）
+ * mvn -pl loadtest exec:java -Dexec.mainClass=io.github.susamlu.langchain4j.loadtest.StartupBenchmark -Dexec.cleanupDaemonThreads=false \
+ *     -Dexec.args="--app-dir=responsestreaming/target/fast-startup --runs=5 --csv=startup.csv"
+ * </pre>
+ * --train=true 时只做训练：开启 AOT 启动应用，发送 SSE 和 STOMP 请求，让 JDK HttpClient、Jackson、LangChain4j OpenAI
+ * 等首个请求才用到的类也被加载，应用正常退出时由 JVM 写入 CDS 归档（-XX:ArchiveClassesAtExit）
+ */
+public class StartupBenchmark {
+
+    private static final String ARCHIVE = "application.jsa";
+
+    private final Builder config;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(200))
+            .build();
+
+    private StartupBenchmark(Builder builder) {
+        this.config = builder;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 训练：开启 AOT 启动一次，覆盖各端点的首个请求后正常退出，生成 app-dir/application.jsa
+     */
+    public Path train(String modelBaseUrl) throws IOException, InterruptedException {
+        Path archive = config.appDir.resolve(ARCHIVE);
+        Files.deleteIfExists(archive);
+        AppProcess app = start("train", modelBaseUrl,
+                List.of("-XX:ArchiveClassesAtExit=" + archive.toAbsolutePath(), "-Dspring.aot.enabled=true"));
+        try {
+            app.awaitReady();
+            SseLoadClient sseClient = new SseLoadClient(httpClient, app.target);
+            StompLoadClient stompClient = new StompLoadClient(httpClient, app.target);
+            for (int i = 0; i < config.trainingRequests; i++) {
+                expectCompleted(sseClient.stream(config.message, "train", config.requestTimeout));
+                expectCompleted(stompClient.stream(config.message, "train", config.requestTimeout));
+            }
+        } finally {
+            // 正常退出（SIGTERM）时才会写入归档
+            app.stop();
+        }
+        if (!Files.isRegularFile(archive) || Files.size(archive) == 0) {
+            throw new IllegalStateException("训练结束但未生成 CDS 归档: " + archive + "，日志见 " + app.log);
+        }
+        System.out.println("CDS 归档已生成: " + archive.toAbsolutePath() + "（" + Files.size(archive) / 1024 / 1024 + " MB）");
+        return archive;
+    }
+
+    /**
+     * 基准：关闭（off）与开启（on）fast-startup 交替启动，每次只测量就绪时间和第一个 SSE 请求
+     */
+    public Map<String, List<Sample>> run(String modelBaseUrl) throws IOException, InterruptedException {
+        Path archive = config.appDir.resolve(ARCHIVE);
+        if (!Files.isRegularFile(archive)) {
+            throw new IllegalStateException("未找到 CDS 归档: " + archive + "，请先以 -Pfast-startup 构建");
+        }
+        Map<String, List<String>> modes = new LinkedHashMap<>();
+        modes.put("off", List.of());
+        // -Xshare:auto（默认）在归档与 JDK 或类路径不匹配时静默回退，-Xlog 把这种情况打印到应用日志
+        modes.put("on", List.of("-XX:SharedArchiveFile=" + archive.toAbsolutePath(), "-Dspring.aot.enabled=true",
+                "-Xlog:cds=warning"));
+
+        Map<String, List<Sample>> samples = new LinkedHashMap<>();
+        modes.keySet().forEach(mode -> samples.put(mode, new ArrayList<>()));
+        for (int i = 0; i < config.runs; i++) {
+            for (Map.Entry<String, List<String>> mode : modes.entrySet()) {
+                Sample sample = measure(mode.getKey() + "-" + i, modelBaseUrl, mode.getValue());
+                samples.get(mode.getKey()).add(sample);
+                System.out.printf(Locale.ROOT, "%-4s #%d 就绪 %.0f ms，首 token %.0f ms，首个请求 %.0f ms%n",
+                        mode.getKey(), i + 1, sample.readyMillis, sample.firstTokenMillis, sample.firstResponseMillis);
+            }
+        }
+        return samples;
+    }
+
+    private Sample measure(String name, String modelBaseUrl, List<String> jvmArgs)
+            throws IOException, InterruptedException {
+        AppProcess app = start(name, modelBaseUrl, jvmArgs);
+        try {
+            double readyMillis = app.awaitReady() / 1e6;
+            ConnectionResult result = expectCompleted(new SseLoadClient(httpClient, app.target)
+                    .stream(config.message, "startup", config.requestTimeout));
+            return new Sample(readyMillis, result.firstTokenNanos() / 1e6, result.durationNanos() / 1e6);
+        } finally {
+            app.stop();
+        }
+    }
+
+    private AppProcess start(String name, String modelBaseUrl, List<String> jvmArgs) throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(config.jvmArgs);
+        command.addAll(jvmArgs);
+        command.addAll(List.of("-jar", findJar().toString(),
+                "--server.port=" + port,
+                "--streaming.model.base-url=" + modelBaseUrl,
+                "--streaming.model.api-key=fake"));
+        Path log = config.appDir.resolve("logs").resolve(name + ".log");
+        Files.createDirectories(log.getParent());
+        Process process = new ProcessBuilder(command)
+                .directory(config.appDir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        return new AppProcess(process, System.nanoTime(), "http://127.0.0.1:" + port, log);
+    }
+
+    // 解压后的目录中只有一个可执行 jar，依赖在 lib 目录
+    private Path findJar() throws IOException {
+        try (Stream<Path> files = Files.list(config.appDir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".jar"))
+                    .map(Path::toAbsolutePath)
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("目录中没有可执行 jar: " + config.appDir.toAbsolutePath()));
+        }
+    }
+
+    private ConnectionResult expectCompleted(CompletableFuture<ConnectionResult> future)
+            throws InterruptedException {
+        try {
+            ConnectionResult result = future.get();
+            if (result.outcome() != ConnectionResult.Outcome.COMPLETED) {
+                throw new IllegalStateException("请求未完成: " + result.outcome() + " " + result.detail());
+            }
+            return result;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("请求失败", e.getCause());
+        }
+    }
+
+    /**
+     * 参数形如 --app-dir=responsestreaming/target/fast-startup --runs=5 --csv=startup.csv
+     * 加上 --train=true 时只生成 CDS 归档；--jvm-args 以空格分隔，对两种模式都生效（例如 -Xmx512m）
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Builder builder = builder();
+        boolean train = false;
+        Path csv = null;
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            String value = pair.length > 1 ? pair[1] : "";
+            switch (pair[0]) {
+                case "app-dir" -> builder.appDir(Path.of(value));
+                case "runs" -> builder.runs(Integer.parseInt(value));
+                case "training-requests" -> builder.trainingRequests(Integer.parseInt(value));
+                case "message" -> builder.message(value);
+                case "timeout" -> builder.requestTimeout(LoadTest.parseDuration(value));
+                case "jvm-args" -> builder.jvmArgs(Arrays.asList(value.trim().split("\\s+")));
+                case "train" -> train = Boolean.parseBoolean(value);
+                case "csv" -> csv = Path.of(value);
+                default -> throw new IllegalArgumentException("未知参数: " + arg);
+            }
+        }
+
+        StartupBenchmark benchmark = builder.build();
+        // 假模型立即返回，第一个请求的延迟只反映被测应用的冷启动开销
+        try (FakeModelServer fakeModel = FakeModelServer.builder()
+                .port(0)
+                .tokensPerSecond(1000)
+                .timeToFirstToken(Duration.ZERO)
+                .completionTokens(20)
+                .start()) {
+            if (train) {
+                benchmark.train(fakeModel.getBaseUrl());
+                return;
+            }
+            Map<String, List<Sample>> samples = benchmark.run(fakeModel.getBaseUrl());
+            print(samples);
+            if (csv != null) {
+                appendCsv(csv, samples);
+                System.out.println("结果已追加到: " + csv.toAbsolutePath());
+            }
+        }
+    }
+
+    static void print(Map<String, List<Sample>> samples) {
+        System.out.println("\n模式  就绪 p50/min/max (ms)        首 token p50 (ms)  首个请求 p50/max (ms)");
+        samples.forEach((mode, list) -> System.out.printf(Locale.ROOT,
+                "%-4s  %7.0f / %7.0f / %7.0f   %10.0f         %7.0f / %7.0f%n",
+                mode,
+                median(list, Sample::readyMillis), min(list, Sample::readyMillis), max(list, Sample::readyMillis),
+                median(list, Sample::firstTokenMillis),
+                median(list, Sample::firstResponseMillis), max(list, Sample::firstResponseMillis)));
+    }
+
+    static void appendCsv(Path csv, Map<String, List<Sample>> samples) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        if (!Files.exists(csv)) {
+            lines.append("mode,run,ready_ms,first_token_ms,first_response_ms\n");
+        }
+        samples.forEach((mode, list) -> {
+            for (int i = 0; i < list.size(); i++) {
+                Sample sample = list.get(i);
+                lines.append(String.format(Locale.ROOT, "%s,%d,%.1f,%.1f,%.1f%n", mode, i + 1,
+                        sample.readyMillis, sample.firstTokenMillis, sample.firstResponseMillis));
+            }
+        });
+        Files.writeString(csv, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static double median(List<Sample> samples, ToDoubleFunction<Sample> metric) {
+        double[] values = samples.stream().mapToDouble(metric).sorted().toArray();
+        return values.length == 0 ? Double.NaN : values[values.length / 2];
+    }
+
+    private static double min(List<Sample> samples, ToDoubleFunction<Sample> metric) {
+        return samples.stream().mapToDouble(metric).min().orElse(Double.NaN);
+    }
+
+    private static double max(List<Sample> samples, ToDoubleFunction<Sample> metric) {
+        return samples.stream().mapToDouble(metric).max().orElse(Double.NaN);
+    }
+
+    /**
+     * 一次启动的测量结果（毫秒）：就绪时间、第一个请求的首 token 时间和完整响应时间
+     */
+    public record Sample(double readyMillis, double firstTokenMillis, double firstResponseMillis) {
+    }
+
+    // 被测应用子进程，输出写入 app-dir/logs
+    private class AppProcess {
+
+        private final Process process;
+        private final long startNanos;
+        private final String target;
+        private final Path log;
+
+        AppProcess(Process process, long startNanos, String target, Path log) {
+            this.process = process;
+            this.startNanos = startNanos;
+            this.target = target;
+            this.log = log;
+        }
+
+        /**
+         * 轮询健康检查直到返回 UP，返回从启动进程开始经过的纳秒数
+         */
+        long awaitReady() throws InterruptedException {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(target + "/actuator/health"))
+                    .timeout(Duration.ofSeconds(1))
+                    .GET()
+                    .build();
+            long deadline = startNanos + config.readyTimeout.toNanos();
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("应用启动失败，日志见 " + log);
+                }
+                try {
+                    HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() == 200 && response.body().contains("\"UP\"")) {
+                        return System.nanoTime() - startNanos;
+                    }
+                } catch (IOException e) {
+                    // 端口尚未监听
+                }
+                Thread.sleep(config.pollInterval.toMillis());
+            }
+            throw new IllegalStateException("应用未在 " + config.readyTimeout.toSeconds() + "s 内就绪，日志见 " + log);
+        }
+
+        void stop() throws InterruptedException {
+            process.destroy();
+            if (!process.waitFor(60, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+
+    }
+
+    public static class Builder {
+
+        private Path appDir = Path.of("responsestreaming/target/fast-startup");
+        private int runs = 5;
+        private int trainingRequests = 3;
+        private String message = "用一句话介绍一下你自己";
+        private Duration requestTimeout = Duration.ofSeconds(30);
+        private Duration readyTimeout = Duration.ofSeconds(120);
+        private Duration pollInterval = Duration.ofMillis(10);
+        private List<String> jvmArgs = List.of();
+
+        /**
+         * fast-startup profile 解压可执行 jar 的目录，CDS 归档和日志也写在这里
+         */
+        public Builder appDir(Path appDir) {
+            this.appDir = appDir;
+            return this;
+        }
+
+        public Builder runs(int runs) {
+            this.runs = Math.max(1, runs);
+            return this;
+        }
+
+        public Builder trainingRequests(int trainingRequests) {
+            this.trainingRequests = Math.max(1, trainingRequests);
+            return this;
+        }
+
+        public Builder message(String message) {
+            this.message = message;
+            return this;
+        }
+
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        public Builder readyTimeout(Duration readyTimeout) {
+            this.readyTimeout = readyTimeout;
+            return this;
+        }
+
+        public Builder jvmArgs(List<String> jvmArgs) {
+            this.jvmArgs = List.copyOf(jvmArgs);
+            return this;
+        }
+
+        public StartupBenchmark build() {
+            return new StartupBenchmark(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,159 @@
+package io.github.susamlu.langchain4j.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * STOMP 压测客户端：通过原生 WebSocket 端点 /ws/chat-native 连接，订阅 /user/queue/response 后发送 /app/chat
+ * <p>
+ * 只实现压测需要的最小 STOMP 子集（CONNECT / SUBSCRIBE / SEND / MESSAGE / ERROR），不依赖 Spring 客户端
+ */
+class StompLoadClient {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpClient httpClient;
+    private final URI endpoint;
+
+    StompLoadClient(HttpClient httpClient, String baseUrl) {
+        this.httpClient = httpClient;
+        this.endpoint = URI.create(baseUrl.replaceFirst("^http", "ws") + "/ws/chat-native");
+    }
+
+    CompletableFuture<ConnectionResult> stream(String message, String userId, Duration timeout) {
+        Session session = new Session(message, userId);
+        httpClient.newWebSocketBuilder()
+                .buildAsync(endpoint, session)
+                .whenComplete((webSocket, error) -> {
+                    if (error != null) {
+                        session.complete(ConnectionResult.Outcome.DROPPED, "握手失败: " + error.getMessage());
+                    }
+                });
+        return session.result
+                .completeOnTimeout(null, timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(result -> result != null ? result
+                        : session.complete(ConnectionResult.Outcome.TIMEOUT, "超过 " + timeout.toSeconds() + "s"));
+    }
+
+    private static class Session implements WebSocket.Listener {
+
+        private final String message;
+        private final String userId;
+        private final long startNanos = System.nanoTime();
+        private final CompletableFuture<ConnectionResult> result = new CompletableFuture<>();
+        // 一个 STOMP 帧可能分成多条 WebSocket 文本消息到达
+        private final StringBuilder buffer = new StringBuilder();
+        private volatile WebSocket webSocket;
+        private volatile long firstTokenAt;
+        private volatile int tokens;
+
+        Session(String message, String userId) {
+            this.message = message;
+            this.userId = userId;
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket) {
+            this.webSocket = webSocket;
+            webSocket.sendText("CONNECT\naccept-version:1.2\nhost:localhost\nheart-beat:0,0\n\n\0", true);
+            webSocket.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            buffer.append(data);
+            int end;
+            while ((end = buffer.indexOf("\0")) >= 0) {
+                String frame = buffer.substring(0, end);
+                buffer.delete(0, end + 1);
+                onFrame(frame.stripLeading());
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            complete(ConnectionResult.Outcome.DROPPED, "连接关闭: " + statusCode + " " + reason);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            complete(ConnectionResult.Outcome.DROPPED, error.getClass().getSimpleName() + ": " + error.getMessage());
+        }
+
+        private void onFrame(String frame) {
+            if (frame.isEmpty()) {
+                // 心跳
+                return;
+            }
+            int headerEnd = frame.indexOf("\n\n");
+            String command = frame.substring(0, frame.indexOf('\n'));
+            String body = headerEnd >= 0 ? frame.substring(headerEnd + 2) : "";
+            switch (command) {
+                case "CONNECTED" -> {
+                    // 同一会话的 SUBSCRIBE 先于 SEND 发出，响应到达前订阅已经生效
+                    webSocket.sendText("SUBSCRIBE\nid:sub-0\ndestination:/user/queue/response\n\n\0", true);
+                    webSocket.sendText("SEND\ndestination:/app/chat\ncontent-type:text/plain;charset=UTF-8\nuserId:"
+                            + userId + "\n\n" + message + "\0", true);
+                }
+                case "MESSAGE" -> onMessage(body);
+                case "ERROR" -> complete(ConnectionResult.Outcome.FAILED, "STOMP ERROR: " + body);
+                default -> {
+                }
+            }
+        }
+
+        private void onMessage(String body) {
+            JsonNode payload;
+            try {
+                payload = MAPPER.readTree(body);
+            } catch (Exception e) {
+                complete(ConnectionResult.Outcome.FAILED, "无法解析消息: " + body);
+                return;
+            }
+            String type = payload.path("type").asText();
+            switch (type) {
+                case "partial" -> {
+                    if (tokens++ == 0) {
+                        firstTokenAt = System.nanoTime();
+                    }
+                }
+                case "complete" -> complete(ConnectionResult.Outcome.COMPLETED, null);
+                default -> {
+                    String content = payload.path("content").asText();
+                    // 准入控制的拒绝以 error 消息推送
+                    boolean rejected = tokens == 0 && content.startsWith("服务繁忙");
+                    complete(rejected ? ConnectionResult.Outcome.REJECTED : ConnectionResult.Outcome.FAILED,
+                            type + ": " + content);
+                }
+            }
+        }
+
+        ConnectionResult complete(ConnectionResult.Outcome outcome, String detail) {
+            ConnectionResult connectionResult = ConnectionResult.of(outcome, startNanos, firstTokenAt, tokens, detail);
+            if (result.complete(connectionResult)) {
+                WebSocket current = webSocket;
+                if (current != null && !current.isOutputClosed()) {
+                    current.sendClose(WebSocket.NORMAL_CLOSURE, "");
+                }
+                if (current != null && outcome == ConnectionResult.Outcome.TIMEOUT) {
+                    current.abort();
+                }
+                return connectionResult;
+            }
+            return result.getNow(connectionResult);
+        }
+
+    }
+
+}
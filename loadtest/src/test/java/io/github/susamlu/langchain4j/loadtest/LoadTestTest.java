@@ -0,0 +1,120 @@
+package io.github.susamlu.langchain4j.loadtest;
+
+import io.github.susamlu.langchain4j.fakemodel.FakeModelServer;
+import io.github.susamlu.langchain4j.responsestreaming.ResponseStreamingApplication;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadTestTest {
+
+    private static FakeModelServer fakeModel;
+    private static ConfigurableApplicationContext application;
+    private static String target;
+
+    @BeforeAll
+    static void startApplication() throws Exception {
+        fakeModel = FakeModelServer.builder()
+                .tokensPerSecond(200)
+                .timeToFirstToken(Duration.ofMillis(20))
+                .completionTokens(20)
+                .start();
+        application = new SpringApplicationBuilder(ResponseStreamingApplication.class)
+                .run("--server.port=0",
+                        "--streaming.model.base-url=" + fakeModel.getBaseUrl(),
+                        "--streaming.model.api-key=fake",
+                        "--streaming.admission.max-in-flight=8",
+                        "--streaming.admission.expected-duration=200ms",
+                        "--streaming.admission.queue-capacity=64");
+        target = "http://127.0.0.1:" + application.getEnvironment().getProperty("local.server.port");
+    }
+
+    @AfterAll
+    static void stopApplication() {
+        if (application != null) {
+            application.close();
+        }
+        if (fakeModel != null) {
+            fakeModel.close();
+        }
+    }
+
+    @Test
+    void testSse() throws InterruptedException {
+        LoadReport report = run("sse", 20);
+
+        assertEquals(20, report.count(ConnectionResult.Outcome.COMPLETED));
+        assertEquals(20 * 20, report.tokens());
+        assertTrue(report.ttftMillis(50) >= 20);
+        assertTrue(report.ttftMillis(99) >= report.ttftMillis(50));
+    }
+
+    @Test
+    void testStomp() throws InterruptedException {
+        LoadReport report = run("stomp", 20);
+
+        assertEquals(20, report.count(ConnectionResult.Outcome.COMPLETED));
+        assertEquals(20 * 20, report.tokens());
+        assertTrue(report.ttftMillis(50) >= 20);
+    }
+
+    @Test
+    void testServerMetrics() throws InterruptedException {
+        LoadReport report = run("mixed", 10);
+
+        assertEquals(10, report.count(ConnectionResult.Outcome.COMPLETED));
+        assertTrue(report.peakOpenConnections() > 0);
+        // actuator 可用时能估算每连接的堆占用
+        assertTrue(report.heapPerConnectionKb() >= 0);
+    }
+
+    @Test
+    void testRejected() throws InterruptedException {
+        // 并发上限 8，同一个用户的排队容量为 4，超出的请求被准入控制直接拒绝
+        LoadReport report = LoadTest.builder()
+                .target(target)
+                .transport("sse")
+                .connections(20)
+                .users(1)
+                .rampUp(Duration.ZERO)
+                .timeout(Duration.ofSeconds(30))
+                .build()
+                .run();
+
+        assertTrue(report.count(ConnectionResult.Outcome.REJECTED) > 0);
+        assertEquals(20, report.count(ConnectionResult.Outcome.COMPLETED) + report.count(ConnectionResult.Outcome.REJECTED));
+    }
+
+    @Test
+    void testPercentile() {
+        long[] nanos = {1_000_000, 2_000_000, 3_000_000, 4_000_000};
+
+        assertEquals(2.0, LoadReport.percentileMillis(nanos, 50));
+        assertEquals(4.0, LoadReport.percentileMillis(nanos, 99));
+        assertEquals(1.0, LoadReport.percentileMillis(nanos, 0));
+        assertTrue(Double.isNaN(LoadReport.percentileMillis(new long[0], 50)));
+    }
+
+    private static LoadReport run(String transport, int connections) throws InterruptedException {
+        LoadReport report = LoadTest.builder()
+                .target(target)
+                .transport(transport)
+                .connections(connections)
+                .rampUp(Duration.ofMillis(200))
+                .timeout(Duration.ofSeconds(30))
+                .sampleInterval(Duration.ofMillis(50))
+                .label("test")
+                .build()
+                .run();
+        report.print();
+        return report;
+    }
+
+}
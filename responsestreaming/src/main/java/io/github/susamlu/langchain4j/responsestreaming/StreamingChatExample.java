@@ -2,56 +2,96 @@ package io.github.susamlu.langchain4j.responsestreaming;
 
 import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.chat.response.ChatResponse;
-import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
 import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import io.github.susamlu.langchain4j.responsestreaming.cache.CachingStreamingChatModel;
+import io.github.susamlu.langchain4j.responsestreaming.fanout.TokenFanout;
+import io.github.susamlu.langchain4j.responsestreaming.fanout.TokenSink;
 
-import java.util.concurrent.CountDownLatch;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class StreamingChatExample {
 
     public static void main(String[] args) throws InterruptedException {
         String apiKey = System.getenv("DEEPSEEK_API_KEY");
 
-        StreamingChatModel model = OpenAiStreamingChatModel.builder()
+        StreamingChatModel upstream = OpenAiStreamingChatModel.builder()
                 .baseUrl("https://api.deepseek.com/v1")
                 .apiKey(apiKey)
                 .modelName("deepseek-chat")
+                .temperature(0.1)
                 .build();
 
-        String userMessage = "给我讲一个笑话";
+        // 低温度的请求结果基本确定，缓存后相同的请求按原始节奏回放，不再消耗上游 token
+        try (CachingStreamingChatModel model = CachingStreamingChatModel.builder()
+                .delegate(upstream)
+                .replaySpeed(1.0)
+                .maxTemperature(0.3)
+                .build()) {
 
-        // 创建 CountDownLatch，初始计数为 1
-        CountDownLatch latch = new CountDownLatch(1);
+            String userMessage = "给我讲一个笑话";
 
-        model.chat(userMessage, new StreamingChatResponseHandler() {
-            @Override
-            public void onPartialResponse(String partialResponse) {
-                // 实时输出增量 token
-                System.out.print(partialResponse);
+            // 第二次请求命中缓存
+            for (int i = 1; i <= 2; i++) {
+                System.out.println("\n=== 第 " + i + " 次请求 ===");
+                chat(model, userMessage);
             }
 
-            @Override
-            public void onCompleteResponse(ChatResponse completeResponse) {
-                // 生成完成，打印完整响应和元数据
-                System.out.println("\n\n--- 生成完成 ---");
-                System.out.println("完整响应: " + completeResponse.aiMessage().text());
-                System.out.println("Token 消耗: " + completeResponse.tokenUsage());
-                // 响应完成，释放锁
-                latch.countDown();
-            }
+            System.out.println("缓存命中率: " + model.hitRate());
+        }
+    }
+
+    private static void chat(StreamingChatModel model, String userMessage) throws InterruptedException {
+        StringBuilder chatMemory = new StringBuilder();
+        AtomicInteger tokenCount = new AtomicInteger();
+
+        // 模型回调只负责把 token 写入环形缓冲区，三个下游各自在自己的线程上消费，慢的持久化不会拖慢客户端输出
+        try (TokenFanout fanout = TokenFanout.builder()
+                .sink("client", new TokenSink() {
+                    @Override
+                    public void onToken(String token) {
+                        // 实时输出增量 token
+                        System.out.print(token);
+                    }
+
+                    @Override
+                    public void onComplete(ChatResponse response) {
+                        // 生成完成，打印完整响应和元数据
+                        System.out.println("\n\n--- 生成完成 ---");
+                        System.out.println("完整响应: " + response.aiMessage().text());
+                        System.out.println("Token 消耗: " + response.tokenUsage());
+                    }
 
-            @Override
-            public void onError(Throwable error) {
-                // 错误处理
-                System.err.println("发生错误: " + error.getMessage());
-                // 发生错误时也要释放锁，避免主线程永久阻塞
-                latch.countDown();
+                    @Override
+                    public void onError(Throwable error) {
+                        // 错误处理
+                        System.err.println("发生错误: " + error.getMessage());
+                    }
+                })
+                .sink("persistence", token -> {
+                    // 模拟逐条写入对话记忆的存储，每个 token 耗时 20ms
+                    sleep(20);
+                    chatMemory.append(token);
+                })
+                .sink("analytics", token -> tokenCount.incrementAndGet())
+                .build()) {
+
+            model.chat(userMessage, fanout);
+
+            // 阻塞主线程，等待所有下游处理完毕
+            if (!fanout.awaitCompletion(Duration.ofMinutes(2))) {
+                System.err.println("等待下游处理超时，持久化仍落后 " + fanout.lag("persistence") + " 个事件");
             }
-        });
+        }
+        System.out.println("已保存到对话记忆: " + chatMemory.length() + " 个字符，增量 token 数: " + tokenCount.get());
+    }
 
-        // 阻塞主线程，等待流式响应完成
-        latch.await();
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
 }
-
@@ -0,0 +1,310 @@
+package io.github.susamlu.langchain4j.responsestreaming.admission;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 模型生成的准入控制，由 SSE、可取消 SSE 和 WebSocket 端点共享
+ * <ul>
+ *     <li>并发上限：同时进行的上游生成数不超过 streaming.admission.max-in-flight，避免突发流量耗尽供应商限流配额</li>
+ *     <li>有界排队 + 按用户公平：每个用户一个等待队列，轮流出队，单个用户的突发请求不会挤占其他用户</li>
+ *     <li>期限感知的拒绝：按平均生成时长估算排队等待时间，超过最长等待时间时立即拒绝（HTTP 429 + Retry-After），
+ *     而不是排队到超时再失败</li>
+ *     <li>指标：进行中的生成数、排队深度、排队等待时间、按原因统计的拒绝次数</li>
+ * </ul>
+ */
+@Component
+public class AdmissionController {
+
+    // 平均生成时长的指数移动平均系数
+    private static final double DURATION_SMOOTHING = 0.2;
+
+    private final int maxInFlight;
+    private final int queueCapacity;
+    private final int perUserQueueCapacity;
+    private final Duration maxWait;
+    private final MeterRegistry meterRegistry;
+
+    // 以下状态都由 this 锁保护
+    private final Map<String, ArrayDeque<Ticket>> waitingByUser = new HashMap<>();
+    // 有请求在排队的用户，按轮转顺序出队
+    private final ArrayDeque<String> userRotation = new ArrayDeque<>();
+    private int inFlight;
+    private int queued;
+    private double averageDurationMillis;
+
+    // 排队的请求轮到后在独立线程中启动，避免在释放许可的线程（通常是模型回调线程）中发起新的生成
+    private final ExecutorService dispatcher;
+    private final ScheduledExecutorService expirer;
+
+    public AdmissionController(MeterRegistry meterRegistry,
+                               @Value("${streaming.admission.max-in-flight:16}") int maxInFlight,
+                               @Value("${streaming.admission.queue-capacity:64}") int queueCapacity,
+                               @Value("${streaming.admission.per-user-queue-capacity:4}") int perUserQueueCapacity,
+                               @Value("${streaming.admission.max-wait:15s}") Duration maxWait,
+                               @Value("${streaming.admission.expected-duration:10s}") Duration expectedDuration) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("streaming.admission.max-in-flight 必须大于 0");
+        }
+        this.meterRegistry = meterRegistry;
+        this.maxInFlight = maxInFlight;
+        this.queueCapacity = queueCapacity;
+        this.perUserQueueCapacity = perUserQueueCapacity;
+        this.maxWait = maxWait;
+        this.averageDurationMillis = expectedDuration.toMillis();
+
+        Gauge.builder("streaming.admission.in-flight", this, AdmissionController::inFlightCount)
+                .description("已准入、进行中的上游生成数")
+                .register(meterRegistry);
+        Gauge.builder("streaming.admission.queue.depth", this, AdmissionController::queuedCount)
+                .description("等待准入的请求数")
+                .register(meterRegistry);
+
+        this.dispatcher = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "admission-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.expirer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "admission-expirer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sweepMillis = Math.max(10, Math.min(1000, maxWait.toMillis() / 10));
+        expirer.scheduleAtFixedRate(this::expireWaiting, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 申请启动一次生成：有空闲名额时在当前线程立即启动，否则排队，轮到时在调度线程中启动
+     *
+     * @param endpoint  端点名，用于指标标签
+     * @param userId    用户标识，用于公平排队
+     * @param start     启动生成；生成结束（完成、出错或取消）时必须调用 {@link Ticket#release()}
+     * @param onExpired 排队超过最长等待时间仍未轮到时调用
+     * @return 准入凭证，排队中调用 release 会放弃排队
+     * @throws AdmissionRejectedException 无法在最长等待时间内轮到时立即拒绝
+     */
+    public Ticket submit(String endpoint, String userId, Consumer<Ticket> start,
+                         Consumer<AdmissionRejectedException> onExpired) {
+        Ticket ticket = new Ticket(endpoint, userId, start, onExpired);
+        synchronized (this) {
+            if (inFlight < maxInFlight && queued == 0) {
+                inFlight++;
+                ticket.state = State.RUNNING;
+                ticket.admittedAtNanos = ticket.submittedAtNanos;
+            } else {
+                String reason = null;
+                Duration estimatedWait = estimateWait(queued + 1);
+                ArrayDeque<Ticket> userQueue = waitingByUser.get(userId);
+                if (queued >= queueCapacity) {
+                    reason = "queue-full";
+                } else if (userQueue != null && userQueue.size() >= perUserQueueCapacity) {
+                    reason = "user-queue-full";
+                } else if (estimatedWait.compareTo(maxWait) > 0) {
+                    reason = "deadline";
+                }
+                if (reason != null) {
+                    rejected(endpoint, reason);
+                    throw new AdmissionRejectedException(reason, estimatedWait);
+                }
+
+                if (userQueue == null) {
+                    userQueue = new ArrayDeque<>();
+                    waitingByUser.put(userId, userQueue);
+                    userRotation.addLast(userId);
+                }
+                userQueue.addLast(ticket);
+                queued++;
+                ticket.deadlineNanos = ticket.submittedAtNanos + maxWait.toNanos();
+                System.out.println("生成请求排队: " + endpoint + ", 用户: " + userId + ", 排队数: " + queued);
+                return ticket;
+            }
+        }
+        recordWait(ticket);
+        runStart(ticket);
+        return ticket;
+    }
+
+    // 前面还有 position 个请求时的预计等待时间：每批 maxInFlight 个请求消耗一个平均生成时长
+    private Duration estimateWait(int position) {
+        long rounds = (position + maxInFlight - 1) / maxInFlight;
+        return Duration.ofMillis((long) (rounds * averageDurationMillis));
+    }
+
+    private void release(Ticket ticket) {
+        List<Ticket> promoted;
+        synchronized (this) {
+            if (ticket.state == State.QUEUED) {
+                removeWaiting(ticket);
+                ticket.state = State.RELEASED;
+                return;
+            }
+            if (ticket.state != State.RUNNING) {
+                return;
+            }
+            ticket.state = State.RELEASED;
+            inFlight--;
+            long heldMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ticket.admittedAtNanos);
+            averageDurationMillis += DURATION_SMOOTHING * (heldMillis - averageDurationMillis);
+            promoted = promoteWaiting();
+        }
+        for (Ticket next : promoted) {
+            recordWait(next);
+            dispatcher.execute(() -> runStart(next));
+        }
+    }
+
+    // 按用户轮转出队，直到名额用完或没有排队的请求
+    private List<Ticket> promoteWaiting() {
+        List<Ticket> promoted = new ArrayList<>();
+        while (inFlight < maxInFlight && !userRotation.isEmpty()) {
+            String userId = userRotation.pollFirst();
+            ArrayDeque<Ticket> userQueue = waitingByUser.get(userId);
+            Ticket next = userQueue.pollFirst();
+            if (userQueue.isEmpty()) {
+                waitingByUser.remove(userId);
+            } else {
+                userRotation.addLast(userId);
+            }
+            queued--;
+            inFlight++;
+            next.state = State.RUNNING;
+            next.admittedAtNanos = System.nanoTime();
+            promoted.add(next);
+        }
+        return promoted;
+    }
+
+    private void removeWaiting(Ticket ticket) {
+        ArrayDeque<Ticket> userQueue = waitingByUser.get(ticket.userId);
+        if (userQueue != null && userQueue.remove(ticket)) {
+            queued--;
+            if (userQueue.isEmpty()) {
+                waitingByUser.remove(ticket.userId);
+                userRotation.remove(ticket.userId);
+            }
+        }
+    }
+
+    void expireWaiting() {
+        List<Ticket> expired = new ArrayList<>();
+        long now = System.nanoTime();
+        synchronized (this) {
+            for (ArrayDeque<Ticket> userQueue : new ArrayList<>(waitingByUser.values())) {
+                for (Iterator<Ticket> it = userQueue.iterator(); it.hasNext(); ) {
+                    Ticket ticket = it.next();
+                    if (now - ticket.deadlineNanos >= 0) {
+                        expired.add(ticket);
+                    }
+                }
+            }
+            for (Ticket ticket : expired) {
+                removeWaiting(ticket);
+                ticket.state = State.RELEASED;
+            }
+        }
+        for (Ticket ticket : expired) {
+            System.out.println("生成请求排队超时: " + ticket.endpoint + ", 用户: " + ticket.userId);
+            rejected(ticket.endpoint, "expired");
+            ticket.onExpired.accept(new AdmissionRejectedException("expired", estimateWaitSnapshot()));
+        }
+    }
+
+    private synchronized Duration estimateWaitSnapshot() {
+        return estimateWait(queued + 1);
+    }
+
+    private void runStart(Ticket ticket) {
+        try {
+            ticket.start.accept(ticket);
+        } catch (RuntimeException e) {
+            System.out.println("启动生成失败: " + ticket.endpoint + ", 错误: " + e.getMessage());
+            ticket.release();
+            throw e;
+        }
+    }
+
+    private void recordWait(Ticket ticket) {
+        Timer.builder("streaming.admission.wait")
+                .description("请求从提交到获得准入的等待时间")
+                .tag("endpoint", ticket.endpoint)
+                .register(meterRegistry)
+                .record(ticket.admittedAtNanos - ticket.submittedAtNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void rejected(String endpoint, String reason) {
+        meterRegistry.counter("streaming.admission.rejected", "endpoint", endpoint, "reason", reason).increment();
+    }
+
+    public synchronized int inFlightCount() {
+        return inFlight;
+    }
+
+    public synchronized int queuedCount() {
+        return queued;
+    }
+
+    /**
+     * 用户标识：优先使用客户端传入的 userId，否则退化为连接标识（客户端地址或 WebSocket 会话 ID）
+     */
+    public static String userKey(String userId, String fallback) {
+        return userId != null && !userId.isBlank() ? userId : fallback;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        expirer.shutdownNow();
+        dispatcher.shutdownNow();
+    }
+
+    private enum State {
+        QUEUED, RUNNING, RELEASED
+    }
+
+    /**
+     * 准入凭证：生成结束时释放名额；排队中释放则放弃排队。重复释放无效
+     */
+    public class Ticket {
+
+        private final String endpoint;
+        private final String userId;
+        private final Consumer<Ticket> start;
+        private final Consumer<AdmissionRejectedException> onExpired;
+        private final long submittedAtNanos = System.nanoTime();
+        // 以下字段由 AdmissionController 的锁保护
+        private State state = State.QUEUED;
+        private long admittedAtNanos;
+        private long deadlineNanos;
+
+        private Ticket(String endpoint, String userId, Consumer<Ticket> start,
+                       Consumer<AdmissionRejectedException> onExpired) {
+            this.endpoint = endpoint;
+            this.userId = userId;
+            this.start = start;
+            this.onExpired = onExpired;
+        }
+
+        public void release() {
+            AdmissionController.this.release(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+package io.github.susamlu.langchain4j.responsestreaming.admission;
+
+import java.time.Duration;
+
+/**
+ * 生成请求未被准入：并发已满且排队无法在期限内轮到，或排队超时
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final String reason;
+    private final Duration retryAfter;
+
+    public AdmissionRejectedException(String reason, Duration retryAfter) {
+        super("服务繁忙（" + reason + "），请在 " + retryAfterSeconds(retryAfter) + " 秒后重试");
+        this.reason = reason;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Retry-After 响应头的秒数，向上取整且至少为 1
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds(retryAfter);
+    }
+
+    private static long retryAfterSeconds(Duration retryAfter) {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+
+}
@@ -0,0 +1,477 @@
+package io.github.susamlu.langchain4j.responsestreaming.cache;
+
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.*;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 可回放的流式响应缓存，包装任意 StreamingChatModel
+ * <p>
+ * 以「消息 + 合并后的请求参数」的 SHA-256 为键，记录完整生成的增量序列及相邻增量的时间间隔。
+ * 命中时不调用上游，而是通过同一组 StreamingChatResponseHandler 回调回放：
+ * 立即回放（replaySpeed = 0），或按原始节奏的 replaySpeed 倍速回放。回放的完成响应中 token 用量为 0。
+ * <ul>
+ *     <li>只缓存正常完成的生成：出错、被取消或包含工具调用的生成不会写入缓存</li>
+ *     <li>过期（ttl）和容量上限（maxEntries，最近最少使用的先淘汰）</li>
+ *     <li>maxTemperature：只缓存温度不高于该值的请求（未指定温度的请求视为不可缓存），默认不限制</li>
+ *     <li>回放在 replayThreads 个线程上进行，回调中的客户端写入可能阻塞；每次调度只回调一个增量，
+ *     同一次回放的回调按顺序执行，一个慢客户端或一次很长的立即回放不会阻塞其他回放</li>
+ *     <li>指标：streaming.cache.requests{result=hit/miss/bypass}、streaming.cache.hit-rate、streaming.cache.size、
+ *     streaming.cache.evictions{cause=ttl/size}、streaming.cache.tokens.saved</li>
+ * </ul>
+ */
+public class CachingStreamingChatModel implements StreamingChatModel, AutoCloseable {
+
+    private final StreamingChatModel delegate;
+    private final Duration ttl;
+    private final int maxEntries;
+    private final double replaySpeed;
+    private final Double maxTemperature;
+    // 按访问顺序排列，队首为最近最少使用的条目；由 this 锁保护
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ScheduledExecutorService replayExecutor;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bypasses;
+    private final Counter ttlEvictions;
+    private final Counter sizeEvictions;
+    private final Counter tokensSaved;
+
+    private CachingStreamingChatModel(Builder builder) {
+        this.delegate = builder.delegate;
+        this.ttl = builder.ttl;
+        this.maxEntries = builder.maxEntries;
+        this.replaySpeed = builder.replaySpeed;
+        this.maxTemperature = builder.maxTemperature;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.replayExecutor = Executors.newScheduledThreadPool(builder.replayThreads, r -> {
+            Thread thread = new Thread(r, "streaming-cache-replay-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        MeterRegistry meterRegistry = builder.meterRegistry != null ? builder.meterRegistry : new SimpleMeterRegistry();
+        this.hits = requests(meterRegistry, "hit");
+        this.misses = requests(meterRegistry, "miss");
+        this.bypasses = requests(meterRegistry, "bypass");
+        this.ttlEvictions = evictions(meterRegistry, "ttl");
+        this.sizeEvictions = evictions(meterRegistry, "size");
+        this.tokensSaved = Counter.builder("streaming.cache.tokens.saved")
+                .description("缓存命中而未向上游请求的输出 token 数（按首次生成时的用量统计）")
+                .register(meterRegistry);
+        Gauge.builder("streaming.cache.hit-rate", this, CachingStreamingChatModel::hitRate)
+                .description("可缓存请求的命中率")
+                .register(meterRegistry);
+        Gauge.builder("streaming.cache.size", this, CachingStreamingChatModel::size)
+                .description("缓存条目数")
+                .register(meterRegistry);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        if (!isCacheable(chatRequest.parameters())) {
+            bypasses.increment();
+            delegate.chat(chatRequest, handler);
+            return;
+        }
+
+        String key = key(chatRequest);
+        CachedResponse cached = get(key);
+        if (cached != null) {
+            hits.increment();
+            Integer outputTokens = cached.response().tokenUsage() != null
+                    ? cached.response().tokenUsage().outputTokenCount() : null;
+            if (outputTokens != null) {
+                tokensSaved.increment(outputTokens);
+            }
+            new Replay(cached, handler).start();
+            return;
+        }
+
+        misses.increment();
+        delegate.chat(chatRequest, new RecordingHandler(key, handler));
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+
+    @Override
+    public ModelProvider provider() {
+        return delegate.provider();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+
+    /**
+     * 命中率 = 命中数 / (命中数 + 未命中数)，不计入绕过缓存的请求；尚无请求时为 0
+     */
+    public double hitRate() {
+        double lookups = hits.count() + misses.count();
+        return lookups == 0 ? 0 : hits.count() / lookups;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public void close() {
+        replayExecutor.shutdownNow();
+    }
+
+    /**
+     * 计算缓存键：消息列表与请求参数（模型、温度、工具等）一起取 SHA-256
+     */
+    static String key(ChatRequest chatRequest) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(chatRequest.parameters()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(chatRequest.messages()).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean isCacheable(ChatRequestParameters parameters) {
+        if (maxTemperature == null) {
+            return true;
+        }
+        Double temperature = parameters != null ? parameters.temperature() : null;
+        return temperature != null && temperature <= maxTemperature;
+    }
+
+    private synchronized CachedResponse get(String key) {
+        CachedResponse cached = entries.get(key);
+        if (cached != null && isExpired(cached, System.currentTimeMillis())) {
+            entries.remove(key);
+            ttlEvictions.increment();
+            return null;
+        }
+        return cached;
+    }
+
+    private synchronized void put(String key, CachedResponse cached) {
+        long now = System.currentTimeMillis();
+        for (Iterator<CachedResponse> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+            if (isExpired(iterator.next(), now)) {
+                iterator.remove();
+                ttlEvictions.increment();
+            }
+        }
+        entries.put(key, cached);
+        while (entries.size() > maxEntries) {
+            Iterator<Map.Entry<String, CachedResponse>> eldest = entries.entrySet().iterator();
+            eldest.next();
+            eldest.remove();
+            sizeEvictions.increment();
+        }
+    }
+
+    private boolean isExpired(CachedResponse cached, long now) {
+        return now - cached.createdAtMillis() > ttl.toMillis();
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("streaming.cache.requests")
+                .description("流式响应缓存的请求数")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter evictions(MeterRegistry meterRegistry, String cause) {
+        return Counter.builder("streaming.cache.evictions")
+                .description("被淘汰的缓存条目数")
+                .tag("cause", cause)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 一个增量（正文或思考内容）及其与上一个增量（或请求开始）的间隔
+     */
+    private record Chunk(boolean thinking, String text, long gapNanos) {
+
+    }
+
+    private record CachedResponse(List<Chunk> chunks, ChatResponse response, long createdAtMillis) {
+
+    }
+
+    /**
+     * 未命中时透传所有回调，同时记录增量序列；正常完成后写入缓存
+     */
+    private class RecordingHandler implements StreamingChatResponseHandler {
+
+        private final String key;
+        private final StreamingChatResponseHandler handler;
+        private final List<Chunk> chunks = new ArrayList<>();
+        private long lastNanos = System.nanoTime();
+        private boolean hasToolCalls;
+
+        RecordingHandler(String key, StreamingChatResponseHandler handler) {
+            this.key = key;
+            this.handler = handler;
+        }
+
+        // 上游可能回调带上下文的版本，也可能只回调旧版本，两者都要记录并原样透传
+
+        @Override
+        public void onPartialResponse(String partialResponse) {
+            record(false, partialResponse);
+            handler.onPartialResponse(partialResponse);
+        }
+
+        @Override
+        public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+            record(false, partialResponse.text());
+            handler.onPartialResponse(partialResponse, context);
+        }
+
+        @Override
+        public void onPartialThinking(PartialThinking partialThinking) {
+            record(true, partialThinking.text());
+            handler.onPartialThinking(partialThinking);
+        }
+
+        @Override
+        public void onPartialThinking(PartialThinking partialThinking, PartialThinkingContext context) {
+            record(true, partialThinking.text());
+            handler.onPartialThinking(partialThinking, context);
+        }
+
+        @Override
+        public void onPartialToolCall(PartialToolCall partialToolCall) {
+            markToolCalls();
+            handler.onPartialToolCall(partialToolCall);
+        }
+
+        @Override
+        public void onPartialToolCall(PartialToolCall partialToolCall, PartialToolCallContext context) {
+            markToolCalls();
+            handler.onPartialToolCall(partialToolCall, context);
+        }
+
+        @Override
+        public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+            markToolCalls();
+            handler.onCompleteToolCall(completeToolCall);
+        }
+
+        @Override
+        public void onCompleteResponse(ChatResponse completeResponse) {
+            boolean cacheable;
+            List<Chunk> recorded;
+            synchronized (this) {
+                cacheable = !hasToolCalls && !completeResponse.aiMessage().hasToolExecutionRequests();
+                recorded = List.copyOf(chunks);
+            }
+            if (cacheable) {
+                put(key, new CachedResponse(recorded, completeResponse, System.currentTimeMillis()));
+            }
+            handler.onCompleteResponse(completeResponse);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            handler.onError(error);
+        }
+
+        private synchronized void record(boolean thinking, String text) {
+            long now = System.nanoTime();
+            chunks.add(new Chunk(thinking, text, now - lastNanos));
+            lastNanos = now;
+        }
+
+        private synchronized void markToolCalls() {
+            hasToolCalls = true;
+        }
+
+    }
+
+    /**
+     * 在回放线程上按节奏依次回调，调用方可以通过回调上下文中的 StreamingHandle 取消回放
+     * <p>
+     * 每次调度只回调一个增量，回调结束后才调度下一个：同一次回放的回调不会并发，
+     * 立即回放时各增量之间也会让出线程，其他回放得以穿插执行
+     */
+    private class Replay implements StreamingHandle {
+
+        private final CachedResponse cached;
+        private final StreamingChatResponseHandler handler;
+        private volatile boolean cancelled;
+        // 只在回放任务中访问，任务之间由调度的先后关系保证可见性
+        private int next;
+
+        Replay(CachedResponse cached, StreamingChatResponseHandler handler) {
+            this.cached = cached;
+            this.handler = handler;
+        }
+
+        void start() {
+            scheduleNext();
+        }
+
+        private void scheduleNext() {
+            long delayNanos = next < cached.chunks().size() && replaySpeed > 0
+                    ? (long) (cached.chunks().get(next).gapNanos() / replaySpeed) : 0;
+            replayExecutor.schedule(this::emit, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void emit() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                if (next < cached.chunks().size()) {
+                    emitChunk(cached.chunks().get(next++));
+                    scheduleNext();
+                    return;
+                }
+                handler.onCompleteResponse(withoutTokenUsage(cached.response()));
+            } catch (RuntimeException e) {
+                handler.onError(e);
+            }
+        }
+
+        private void emitChunk(Chunk chunk) {
+            if (chunk.thinking()) {
+                handler.onPartialThinking(new PartialThinking(chunk.text()), new PartialThinkingContext(this));
+            } else {
+                handler.onPartialResponse(new PartialResponse(chunk.text()), new PartialResponseContext(this));
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+    }
+
+    // 回放不消耗上游 token
+    private static ChatResponse withoutTokenUsage(ChatResponse response) {
+        return ChatResponse.builder()
+                .aiMessage(response.aiMessage())
+                .metadata(response.metadata().toBuilder()
+                        .tokenUsage(new TokenUsage(0, 0, 0))
+                        .build())
+                .build();
+    }
+
+    public static class Builder {
+
+        private StreamingChatModel delegate;
+        private Duration ttl = Duration.ofMinutes(10);
+        private int maxEntries = 1000;
+        // 0 表示立即回放，1 表示按原始节奏回放
+        private double replaySpeed;
+        private int replayThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        private Double maxTemperature;
+        private MeterRegistry meterRegistry;
+
+        public Builder delegate(StreamingChatModel delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * 回放速度：0 表示立即回放，1 表示按原始的增量间隔回放，2 表示两倍速
+         */
+        public Builder replaySpeed(double replaySpeed) {
+            this.replaySpeed = replaySpeed;
+            return this;
+        }
+
+        /**
+         * 回放线程数，默认为 CPU 核数（至少 2）；回调中写客户端可能阻塞，客户端较慢时可以调大
+         */
+        public Builder replayThreads(int replayThreads) {
+            this.replayThreads = replayThreads;
+            return this;
+        }
+
+        /**
+         * 只缓存温度不高于该值的请求，null 表示不限制
+         */
+        public Builder maxTemperature(Double maxTemperature) {
+            this.maxTemperature = maxTemperature;
+            return this;
+        }
+
+        public Builder meterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        public CachingStreamingChatModel build() {
+            if (delegate == null) {
+                throw new IllegalArgumentException("delegate 不能为空");
+            }
+            if (maxEntries < 1) {
+                throw new IllegalArgumentException("maxEntries 必须大于 0: " + maxEntries);
+            }
+            if (replayThreads < 1) {
+                throw new IllegalArgumentException("replayThreads 必须大于 0: " + replayThreads);
+            }
+            if (replaySpeed < 0) {
+                throw new IllegalArgumentException("replaySpeed 不能为负数: " + replaySpeed);
+            }
+            return new CachingStreamingChatModel(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+package io.github.susamlu.langchain4j.responsestreaming.cancellable;
+
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStream;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 一次可取消的模型生成：持有上游 StreamingHandle，并保证取消只执行一次
+ * <p>
+ * 本身也是一个 StreamingHandle，请求发出后立即可用：在第一个回调到达前取消，
+ * 会在上游 StreamingHandle 登记时（任意第一个回调）立即生效。
+ */
+public class CancellableGeneration implements StreamingHandle {
+
+    private final String requestId;
+    private final ResumableStream stream;
+    private final long startedAtMillis = System.currentTimeMillis();
+    private final AtomicReference<StreamingHandle> streamingHandle = new AtomicReference<>();
+    // 取消原因，null 表示未取消；只有第一次取消生效
+    private final AtomicReference<String> cancelReason = new AtomicReference<>();
+    // 最近一次所有客户端都断开的时间，0 表示当前有客户端连接
+    private volatile long orphanedSinceMillis;
+
+    public CancellableGeneration(String requestId, ResumableStream stream) {
+        this.requestId = requestId;
+        this.stream = stream;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public ResumableStream getStream() {
+        return stream;
+    }
+
+    public long getStartedAtMillis() {
+        return startedAtMillis;
+    }
+
+    /**
+     * 登记上游 StreamingHandle，只有第一次调用生效；若此前已被取消，立即取消上游
+     *
+     * @return 是否为第一次登记
+     */
+    public boolean bindStreamingHandle(StreamingHandle handle) {
+        if (!streamingHandle.compareAndSet(null, handle)) {
+            return false;
+        }
+        if (isCancelled()) {
+            handle.cancel();
+        }
+        return true;
+    }
+
+    public boolean hasStreamingHandle() {
+        return streamingHandle.get() != null;
+    }
+
+    /**
+     * 取消上游生成并结束流，重复调用无效
+     *
+     * @return 本次调用是否真正执行了取消
+     */
+    public boolean cancel(String reason) {
+        if (!cancelReason.compareAndSet(null, reason)) {
+            return false;
+        }
+        StreamingHandle handle = streamingHandle.get();
+        if (handle != null) {
+            handle.cancel();
+        }
+        stream.close();
+        return true;
+    }
+
+    @Override
+    public void cancel() {
+        cancel("handle");
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelReason.get() != null;
+    }
+
+    public String getCancelReason() {
+        return cancelReason.get();
+    }
+
+    public long getOrphanedSinceMillis() {
+        return orphanedSinceMillis;
+    }
+
+    void markOrphaned() {
+        if (orphanedSinceMillis == 0) {
+            orphanedSinceMillis = System.currentTimeMillis();
+        }
+    }
+
+    void markAttached() {
+        orphanedSinceMillis = 0;
+    }
+
+}
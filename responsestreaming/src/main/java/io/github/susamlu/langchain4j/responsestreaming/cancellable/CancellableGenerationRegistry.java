@@ -0,0 +1,231 @@
+package io.github.susamlu.langchain4j.responsestreaming.cancellable;
+
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStream;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStreamRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 可取消生成的注册表
+ * <ul>
+ *     <li>客户端断开（完成、超时、发送失败）且在宽限期内没有重连时，自动取消上游生成，避免继续计费</li>
+ *     <li>待取消登记：取消请求先于生成到达（例如 POST /cancel 先于 GET /stream 到达服务端）时暂存，
+ *     生成开始前检查，直接放弃而不调用模型</li>
+ *     <li>泄漏检测：定时扫描已结束、已被淘汰或长期无人接收却仍在登记中的生成</li>
+ *     <li>指标：断开后浪费的 token 数、按原因统计的取消次数、进行中的生成数、泄漏数</li>
+ * </ul>
+ */
+@Component
+public class CancellableGenerationRegistry {
+
+    private static final String ENDPOINT = "cancellable";
+
+    private final Map<String, CancellableGeneration> generations = new ConcurrentHashMap<>();
+    // 尚未找到对应生成的取消请求，value 为登记时间
+    private final Map<String, Long> pendingCancels = new ConcurrentHashMap<>();
+    private final ResumableStreamRegistry streamRegistry;
+    private final MeterRegistry meterRegistry;
+    // 断开后等待重连的宽限期，0 表示立即取消
+    private final Duration disconnectGrace;
+    // 待取消登记的保留时间
+    private final Duration pendingCancelTtl;
+    private final Counter wastedTokens;
+    private final Counter cancelledBeforeFirstToken;
+    private final Counter leakedGenerations;
+    private final ScheduledExecutorService scheduler;
+
+    public CancellableGenerationRegistry(ResumableStreamRegistry streamRegistry,
+                                         MeterRegistry meterRegistry,
+                                         @Value("${streaming.cancel.disconnect-grace:5s}") Duration disconnectGrace,
+                                         @Value("${streaming.cancel.leak-check-interval:30s}") Duration leakCheckInterval,
+                                         @Value("${streaming.cancel.pending-ttl:60s}") Duration pendingCancelTtl) {
+        this.streamRegistry = streamRegistry;
+        this.meterRegistry = meterRegistry;
+        this.disconnectGrace = disconnectGrace;
+        this.pendingCancelTtl = pendingCancelTtl;
+        this.wastedTokens = Counter.builder("streaming.tokens.wasted")
+                .description("客户端断开后仍由上游生成、无人接收的 token 数")
+                .tag("endpoint", ENDPOINT)
+                .register(meterRegistry);
+        this.cancelledBeforeFirstToken = Counter.builder("streaming.cancellations.before-first-token")
+                .description("在第一个 token 到达前被取消的生成数（含尚未调用模型即放弃的请求）")
+                .tag("endpoint", ENDPOINT)
+                .register(meterRegistry);
+        this.leakedGenerations = Counter.builder("streaming.generations.leaked")
+                .description("泄漏检测发现并清理的生成数")
+                .tag("endpoint", ENDPOINT)
+                .register(meterRegistry);
+        Gauge.builder("streaming.generations.active", generations, Map::size)
+                .description("进行中的可取消生成数")
+                .tag("endpoint", ENDPOINT)
+                .register(meterRegistry);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cancellable-generation-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::detectLeaks, leakCheckInterval.toMillis(),
+                leakCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public CancellableGeneration register(String requestId, ResumableStream stream) {
+        CancellableGeneration generation = new CancellableGeneration(requestId, stream);
+        generations.put(requestId, generation);
+        return generation;
+    }
+
+    public CancellableGeneration get(String requestId) {
+        return generations.get(requestId);
+    }
+
+    /**
+     * 有客户端接入（首次连接或重连）
+     */
+    public void clientAttached(CancellableGeneration generation) {
+        generation.markAttached();
+    }
+
+    /**
+     * 客户端断开：若已没有任何连接，宽限期后仍无人重连则取消上游
+     */
+    public void clientDisconnected(CancellableGeneration generation, String reason) {
+        ResumableStream stream = generation.getStream();
+        if (stream.isFinished() || stream.subscriberCount() > 0) {
+            return;
+        }
+        generation.markOrphaned();
+
+        if (disconnectGrace.isZero()) {
+            cancelIfOrphaned(generation, reason);
+        } else {
+            scheduler.schedule(() -> cancelIfOrphaned(generation, reason),
+                    disconnectGrace.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void cancelIfOrphaned(CancellableGeneration generation, String reason) {
+        ResumableStream stream = generation.getStream();
+        if (!stream.isFinished() && stream.subscriberCount() == 0) {
+            System.out.println("客户端已断开且未重连，取消上游生成: " + generation.getRequestId() + ", 原因: " + reason);
+            cancel(generation, reason);
+        }
+    }
+
+    /**
+     * 取消上游生成；同一个生成无论被调用多少次只取消一次
+     */
+    public void cancel(CancellableGeneration generation, String reason) {
+        if (generation.cancel(reason)) {
+            meterRegistry.counter("streaming.cancellations", "endpoint", ENDPOINT, "reason", reason).increment();
+            if (!generation.hasStreamingHandle()) {
+                cancelledBeforeFirstToken.increment();
+            }
+        }
+        release(generation);
+        // 取消后不再支持续传
+        streamRegistry.remove(generation.getStream().getStreamId());
+    }
+
+    /**
+     * 生成结束（完成或出错）后移除登记
+     */
+    public void release(CancellableGeneration generation) {
+        generations.remove(generation.getRequestId(), generation);
+    }
+
+    /**
+     * 登记一个找不到对应生成的取消请求，生成稍后到达时会被直接放弃
+     */
+    public void markPendingCancel(String requestId) {
+        pendingCancels.put(requestId, System.currentTimeMillis());
+    }
+
+    /**
+     * 取消请求到达：取消已登记的生成；尚未登记时登记待取消
+     * <p>
+     * 查找和登记待取消在 generations 的同一个 compute 中完成，与 {@link #register} 互斥：
+     * 待取消要么先于 register 登记（register 之后的 {@link #consumePendingCancel} 一定能看到），
+     * 要么在 register 之后查找（一定能找到生成），不会两边都错过
+     *
+     * @return 被取消的生成，未登记时返回 null
+     */
+    public CancellableGeneration cancelOrMarkPending(String requestId, String reason) {
+        CancellableGeneration[] found = new CancellableGeneration[1];
+        generations.compute(requestId, (id, generation) -> {
+            if (generation == null) {
+                pendingCancels.put(id, System.currentTimeMillis());
+            }
+            found[0] = generation;
+            return generation;
+        });
+        // cancel 会修改 generations，不能在 compute 中调用
+        if (found[0] != null) {
+            cancel(found[0], reason);
+        }
+        return found[0];
+    }
+
+    /**
+     * 检查并消费待取消登记
+     *
+     * @return 该请求此前已被取消
+     */
+    public boolean consumePendingCancel(String requestId) {
+        Long markedAt = pendingCancels.remove(requestId);
+        return markedAt != null && System.currentTimeMillis() - markedAt <= pendingCancelTtl.toMillis();
+    }
+
+    /**
+     * 记录一个无人接收的 token（客户端断开期间或取消后上游仍在输出）
+     */
+    public void recordWastedToken() {
+        wastedTokens.increment();
+    }
+
+    void detectLeaks() {
+        long now = System.currentTimeMillis();
+        pendingCancels.values().removeIf(markedAt -> now - markedAt > pendingCancelTtl.toMillis());
+
+        long orphanDeadline = disconnectGrace.toMillis() * 2 + 1000;
+        for (CancellableGeneration generation : generations.values()) {
+            ResumableStream stream = generation.getStream();
+            String leak = null;
+            if (stream.isFinished()) {
+                leak = "流已结束但生成仍在登记中";
+            } else if (streamRegistry.get(stream.getStreamId()) != stream) {
+                leak = "流已被淘汰但生成仍在登记中";
+            } else if (generation.getOrphanedSinceMillis() > 0
+                    && now - generation.getOrphanedSinceMillis() > orphanDeadline) {
+                leak = "客户端断开后长期无人接收";
+            }
+
+            if (leak != null) {
+                System.out.println("检测到泄漏的生成: " + generation.getRequestId() + ", " + leak);
+                leakedGenerations.increment();
+                cancel(generation, "leak");
+            }
+        }
+    }
+
+    public int activeCount() {
+        return generations.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+}
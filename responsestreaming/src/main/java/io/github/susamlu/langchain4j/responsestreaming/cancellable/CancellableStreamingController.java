@@ -2,180 +2,281 @@ package io.github.susamlu.langchain4j.responsestreaming.cancellable;
 
 import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.chat.response.*;
-import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import io.github.susamlu.langchain4j.responsestreaming.admission.AdmissionController;
+import io.github.susamlu.langchain4j.responsestreaming.admission.AdmissionRejectedException;
+import io.github.susamlu.langchain4j.responsestreaming.cancellable.bus.CancellationBus;
+import io.github.susamlu.langchain4j.responsestreaming.completion.CompletionProtocol;
+import io.github.susamlu.langchain4j.responsestreaming.metrics.StreamingMetrics;
+import io.github.susamlu.langchain4j.responsestreaming.moderation.OutputGuard;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStream;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStreamRegistry;
+import io.github.susamlu.langchain4j.responsestreaming.sse.DirectSseEmitter;
+import io.github.susamlu.langchain4j.responsestreaming.sse.SseFlushPolicy;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 @RestController
 @RequestMapping("/api/cancellable/chat/")
 public class CancellableStreamingController {
 
     private final StreamingChatModel model;
-    // 存储每个请求的 StreamingHandle，key 为请求 ID
-    private final Map<String, StreamingHandle> streamingHandles = new ConcurrentHashMap<>();
-    // 存储每个请求的 SseEmitter，key 为请求 ID
-    private final Map<String, SseEmitter> emitters = new ConcurrentHashMap<>();
-
-    public CancellableStreamingController() {
-        String apiKey = System.getenv("DEEPSEEK_API_KEY");
-
-        this.model = OpenAiStreamingChatModel.builder()
-                .baseUrl("https://api.deepseek.com/v1")
-                .apiKey(apiKey)
-                .modelName("deepseek-chat")
-                .build();
+    // 可续传流注册表：生成与客户端连接解耦，断线重连后接入同一个流
+    private final ResumableStreamRegistry streamRegistry;
+    // 存储每个请求的生成（含 StreamingHandle），负责断开后自动取消和泄漏检测
+    private final CancellableGenerationRegistry generationRegistry;
+    // 取消总线：取消请求可能落在其他实例上，广播后由持有生成的节点执行取消
+    private final CancellationBus cancellationBus;
+    // 准入控制：限制并发生成数，超出时排队或快速拒绝
+    private final AdmissionController admissionController;
+    private final StreamingMetrics streamingMetrics;
+    // SSE 事件的合并刷新策略
+    private final SseFlushPolicy flushPolicy;
+    // complete 事件的内容：默认只携带元数据
+    private final CompletionProtocol completionProtocol;
+    // 流式输出审核：命中敏感词时取消生成
+    private final OutputGuard outputGuard;
+
+    public CancellableStreamingController(StreamingChatModel model,
+                                          ResumableStreamRegistry streamRegistry,
+                                          CancellableGenerationRegistry generationRegistry,
+                                          CancellationBus cancellationBus,
+                                          AdmissionController admissionController,
+                                          StreamingMetrics streamingMetrics,
+                                          SseFlushPolicy flushPolicy,
+                                          CompletionProtocol completionProtocol,
+                                          OutputGuard outputGuard) {
+        this.model = model;
+        this.streamRegistry = streamRegistry;
+        this.generationRegistry = generationRegistry;
+        this.cancellationBus = cancellationBus;
+        this.admissionController = admissionController;
+        this.streamingMetrics = streamingMetrics;
+        this.flushPolicy = flushPolicy;
+        this.completionProtocol = completionProtocol;
+        this.outputGuard = outputGuard;
+        cancellationBus.subscribe(this::cancelLocally);
     }
 
     @CrossOrigin(origins = "*")
     @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter streamChat(
             @RequestParam(name = "message") String message,
-            @RequestParam(name = "requestId") String requestId) {
-        System.out.println("\n--- 流式响应开始 ---");
-        SseEmitter emitter = new SseEmitter(60000L);
+            @RequestParam(name = "requestId") String requestId,
+            @RequestParam(name = "userId", required = false) String userId,
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId,
+            HttpServletRequest request) {
+        SseEmitter emitter = new DirectSseEmitter(60000L, flushPolicy);
 
-        // 存储 emitter
-        emitters.put(requestId, emitter);
+        String streamId = streamId(requestId);
+        long resumeFrom = ResumableStream.parseLastEventId(lastEventId);
+        if (resumeFrom > 0 && streamRegistry.get(streamId) == null) {
+            // 重连时原来的流已过期或已被取消，不能重新生成
+            System.out.println("续传失败，流已不存在: " + requestId);
+            ResumableStream.sendExpired(emitter);
+            return emitter;
+        }
+        ResumableStream stream = streamRegistry.open(streamId);
 
-        // 设置完成回调：清理资源
+        // 设置完成回调：断开该连接；宽限期内没有重连则取消上游生成
         emitter.onCompletion(() -> {
-            System.out.println("SSE 连接完成，清理资源: " + requestId);
-            emitters.remove(requestId);
-            streamingHandles.remove(requestId);
+            System.out.println("SSE 连接完成: " + requestId);
+            onClientGone(requestId, stream, emitter, "disconnect");
         });
 
-        // 设置超时回调：清理资源
+        // 设置超时回调
         emitter.onTimeout(() -> {
-            System.out.println("SSE 连接超时，清理资源: " + requestId);
-            emitters.remove(requestId);
-            streamingHandles.remove(requestId);
+            System.out.println("SSE 连接超时: " + requestId);
+            onClientGone(requestId, stream, emitter, "timeout");
         });
 
-        // 设置错误回调：清理资源
+        // 设置错误回调
         emitter.onError((throwable) -> {
-            System.out.println("SSE 连接错误，清理资源: " + requestId + ", 错误: " + throwable.getMessage());
-            emitters.remove(requestId);
-            streamingHandles.remove(requestId);
+            System.out.println("SSE 连接错误: " + requestId + ", 错误: " + throwable.getMessage());
+            onClientGone(requestId, stream, emitter, "error");
         });
 
-        model.chat(message, new StreamingChatResponseHandler() {
+        // 接入流：补发 Last-Event-ID 之后的事件
+        if (!stream.attach(emitter, resumeFrom)) {
+            System.out.println("续传失败，缺失的事件已被淘汰: " + requestId);
+            ResumableStream.sendExpired(emitter);
+            return emitter;
+        }
+
+        if (!stream.tryStart()) {
+            // 生成已在进行中，本次只是重连
+            System.out.println("续传流式响应: " + requestId + ", Last-Event-ID: " + lastEventId);
+            CancellableGeneration generation = generationRegistry.get(requestId);
+            if (generation != null) {
+                generationRegistry.clientAttached(generation);
+            }
+            return emitter;
+        }
+
+        // 请求发出前即登记生成，它本身就是可用的 StreamingHandle，此后到达的取消请求都能找到它
+        CancellableGeneration generation = generationRegistry.register(requestId, stream);
+
+        // 取消请求先于本请求到达：直接放弃，不调用模型
+        if (generationRegistry.consumePendingCancel(requestId)) {
+            System.out.println("请求在发起前已被取消，不再调用模型: " + requestId);
+            generationRegistry.cancel(generation, "user");
+            return emitter;
+        }
+
+        String userKey = AdmissionController.userKey(userId, request.getRemoteAddr());
+
+        try {
+            AdmissionController.Ticket ticket = admissionController.submit("cancellable", userKey, admitted -> {
+                if (generation.isCancelled()) {
+                    // 排队期间已被取消
+                    admitted.release();
+                    return;
+                }
+                startGeneration(message, requestId, stream, generation);
+            }, rejection -> {
+                // 排队超时：以 failure 事件结束流
+                generationRegistry.release(generation);
+                stream.fail(rejection);
+                streamRegistry.remove(streamId);
+            });
+            // 流结束（完成、失败或取消）时释放名额；仍在排队时则放弃排队
+            stream.onFinished(ticket::release);
+        } catch (AdmissionRejectedException e) {
+            // 未被准入：丢弃刚创建的流和生成，客户端稍后可用同一个 requestId 重试
+            stream.detach(emitter);
+            generationRegistry.release(generation);
+            streamRegistry.remove(streamId);
+            stream.fail(e);
+            throw e;
+        }
+
+        return emitter;
+    }
+
+    private void startGeneration(String message, String requestId, ResumableStream stream,
+                                 CancellableGeneration generation) {
+        StreamingMetrics.Recorder recorder = streamingMetrics.start(
+                model.defaultRequestParameters().modelName(), "cancellable");
+        // 流在完成或出错之前结束，说明生成被取消：用户主动取消，或客户端断开后被自动取消
+        stream.onFinished(() -> recorder.finish(isUserCancel(generation.getCancelReason())
+                ? StreamingMetrics.OUTCOME_CANCELLED : StreamingMetrics.OUTCOME_CLIENT_GONE));
+
+        System.out.println("\n--- 流式响应开始 ---");
+        model.chat(message, outputGuard.guard(new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialThinking(PartialThinking partialThinking, PartialThinkingContext context) {
+                // 思考内容可能先于正文到达，同样作为第一个回调检查取消
+                bindStreamingHandle(context.streamingHandle());
+            }
+
+            @Override
+            public void onPartialToolCall(PartialToolCall partialToolCall, PartialToolCallContext context) {
+                bindStreamingHandle(context.streamingHandle());
+            }
+
             @Override
             public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
-                // 检查 emitter 是否还存在且有效
-                SseEmitter currentEmitter = emitters.get(requestId);
-                if (currentEmitter == null || currentEmitter != emitter) {
-                    // emitter 已被移除或替换，说明连接已关闭，停止处理
-                    System.out.println("Emitter 已关闭，停止处理: " + requestId);
+                bindStreamingHandle(context.streamingHandle());
+
+                // 已被取消或没有客户端在接收：这些 token 都是浪费
+                if (generation.isCancelled() || stream.subscriberCount() == 0) {
+                    generationRegistry.recordWastedToken();
+                }
+                if (generation.isCancelled()) {
                     return;
                 }
+                recorder.onToken();
 
                 System.out.print(partialResponse.text());
 
-                try {
-                    // 保存 StreamingHandle
-                    streamingHandles.put(requestId, context.streamingHandle());
-
-                    // 发送增量 token
-                    emitter.send(SseEmitter.event()
-                            .name("message")
-                            .data(partialResponse.text()));
-                } catch (IOException e) {
-                    // 连接已关闭，清理资源
-                    System.out.println("发送数据时连接已关闭: " + requestId);
-                    cleanup(requestId);
-                } catch (Exception e) {
-                    // 其他异常，清理资源
-                    System.out.println("发送数据时发生异常: " + requestId + ", " + e.getMessage());
-                    cleanup(requestId);
-                }
+                // 发送增量 token（由流推送给当前连接的客户端）
+                stream.append("message", partialResponse.text());
             }
 
             @Override
             public void onCompleteResponse(ChatResponse completeResponse) {
-                System.out.println("\n--- 流式响应完成 ---");
-
-                // 检查 emitter 是否还存在且有效
-                SseEmitter currentEmitter = emitters.get(requestId);
-                if (currentEmitter == null || currentEmitter != emitter) {
-                    // emitter 已被移除，说明连接已关闭
-                    System.out.println("Emitter 已关闭，跳过完成事件: " + requestId);
-                    cleanup(requestId);
+                if (generation.isCancelled()) {
+                    // 取消发生在所有 token 到达之后、完成回调之前
+                    System.out.println("\n--- 流式响应已取消: " + requestId + " ---");
                     return;
                 }
+                System.out.println("\n--- 流式响应完成 ---");
+                recorder.finish(StreamingMetrics.OUTCOME_COMPLETE);
 
-                try {
-                    emitter.send(SseEmitter.event()
-                            .name("complete")
-                            .data(completeResponse.aiMessage().text()));
-                    emitter.complete();
-                } catch (IOException e) {
-                    // 连接已关闭，清理资源
-                    System.out.println("发送完成事件时连接已关闭: " + requestId);
-                    cleanup(requestId);
-                } catch (Exception e) {
-                    // 其他异常，清理资源
-                    System.out.println("发送完成事件时发生异常: " + requestId + ", " + e.getMessage());
-                    cleanup(requestId);
-                }
+                generationRegistry.release(generation);
+                stream.finish("complete", completionProtocol.completeData(
+                        CompletionProtocol.newResultId(stream.getStreamId()), completeResponse, stream.eventCount()));
             }
 
             @Override
             public void onError(Throwable error) {
                 System.out.println("流式响应错误: " + requestId + ", " + error.getMessage());
+                recorder.finish(StreamingMetrics.OUTCOME_ERROR);
 
-                // 检查 emitter 是否还存在且有效
-                SseEmitter currentEmitter = emitters.get(requestId);
-                if (currentEmitter != null && currentEmitter == emitter) {
-                    try {
-                        emitter.completeWithError(error);
-                    } catch (Exception e) {
-                        // 忽略错误，直接清理
-                        System.out.println("发送错误事件时发生异常: " + e.getMessage());
-                    }
+                generationRegistry.release(generation);
+                stream.fail(error);
+            }
+
+            // 第一个回调到达时登记上游 StreamingHandle；若此前已被取消，登记时立即取消上游
+            private void bindStreamingHandle(StreamingHandle streamingHandle) {
+                if (!generation.hasStreamingHandle()) {
+                    generation.bindStreamingHandle(streamingHandle);
                 }
-                cleanup(requestId);
             }
-        });
+        }, () -> {
+            // 输出审核命中：上游已被取消
+            System.out.println("\n--- 流式响应被输出审核拦截: " + requestId + " ---");
+            recorder.finish(StreamingMetrics.OUTCOME_MODERATED);
+            generationRegistry.release(generation);
+            stream.finish(OutputGuard.EVENT_REDACTED, outputGuard.redactedMessage());
+        }));
+    }
 
-        return emitter;
+    // 用户主动取消（POST /cancel 或通过 StreamingHandle 取消），其余原因都是客户端离开后的自动取消
+    private static boolean isUserCancel(String cancelReason) {
+        return "user".equals(cancelReason) || "handle".equals(cancelReason);
     }
 
-    // 清理资源的辅助方法
-    private void cleanup(String requestId) {
-        emitters.remove(requestId);
-        streamingHandles.remove(requestId);
+    // 客户端连接断开（正常结束、超时、出错或发送失败）
+    private void onClientGone(String requestId, ResumableStream stream, SseEmitter emitter, String reason) {
+        stream.detach(emitter);
+        CancellableGeneration generation = generationRegistry.get(requestId);
+        if (generation != null && generation.getStream() == stream) {
+            generationRegistry.clientDisconnected(generation, reason);
+        }
+    }
+
+    private static String streamId(String requestId) {
+        return "cancellable:" + requestId;
     }
 
     @PostMapping("/cancel")
     public void cancelStreaming(@RequestParam(name = "requestId") String requestId) {
         System.out.println("收到取消请求: " + requestId);
 
-        // 取消 StreamingHandle
-        StreamingHandle handle = streamingHandles.get(requestId);
-        if (handle != null) {
-            handle.cancel();
-            System.out.println("已取消 StreamingHandle: " + requestId);
-        }
+        // 只负责广播，由持有该生成的节点（可能就是本节点）执行取消
+        cancellationBus.publish(requestId);
+    }
 
-        // 关闭并移除 SseEmitter
-        SseEmitter emitter = emitters.get(requestId);
-        if (emitter != null) {
-            try {
-                emitter.complete();
-            } catch (Exception e) {
-                // 忽略异常，可能已经关闭
-                System.out.println("关闭 emitter 时发生异常（可忽略）: " + e.getMessage());
-            }
-            System.out.println("已关闭 SseEmitter: " + requestId);
+    // 收到取消广播：取消本节点持有的生成
+    private void cancelLocally(String requestId) {
+        // 取消上游生成并关闭所有连接，取消后不再支持续传
+        if (generationRegistry.cancelOrMarkPending(requestId, "user") != null) {
+            System.out.println("已取消生成: " + requestId);
+        } else {
+            // 对应的流式请求尚未到达（或刚到达还未登记，或由其他节点持有）：暂存取消，请求到达本节点时直接放弃
+            generationRegistry.markPendingCancel(requestId);
+            System.out.println("本节点未持有该生成，登记待取消: " + requestId);
         }
 
-        // 清理资源
-        cleanup(requestId);
+        // 生成已结束时，仍需关闭可能存在的流
+        ResumableStream stream = streamRegistry.get(streamId(requestId));
+        if (stream != null) {
+            stream.close();
+            streamRegistry.remove(streamId(requestId));
+            System.out.println("已关闭流: " + requestId);
+        }
     }
 
 }
@@ -0,0 +1,23 @@
+package io.github.susamlu.langchain4j.responsestreaming.cancellable.bus;
+
+import java.util.function.Consumer;
+
+/**
+ * 取消总线：把取消请求广播给所有节点，由持有该生成的节点执行取消
+ * <p>
+ * 负载均衡后，POST /cancel 可能落在与 GET /stream 不同的实例上，
+ * 收到取消请求的节点只负责发布，每个节点（包括自己）收到后取消本地持有的生成。
+ */
+public interface CancellationBus {
+
+    /**
+     * 广播取消请求
+     */
+    void publish(String requestId);
+
+    /**
+     * 订阅取消请求，监听器在收到广播时被调用（可能在总线的内部线程中）
+     */
+    void subscribe(Consumer<String> listener);
+
+}
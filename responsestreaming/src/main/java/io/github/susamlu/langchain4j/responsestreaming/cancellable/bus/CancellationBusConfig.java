@@ -0,0 +1,37 @@
+package io.github.susamlu.langchain4j.responsestreaming.cancellable.bus;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 取消总线配置：streaming.cancellation.bus=local（默认，单实例）或 redis（多实例）
+ */
+@Configuration
+public class CancellationBusConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "streaming.cancellation.bus", havingValue = "local", matchIfMissing = true)
+    public CancellationBus localCancellationBus() {
+        return new LocalCancellationBus();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "streaming.cancellation.bus", havingValue = "redis")
+    public CancellationBus redisCancellationBus(
+            @Value("${streaming.cancellation.redis.host:localhost}") String host,
+            @Value("${streaming.cancellation.redis.port:6379}") int port,
+            @Value("${streaming.cancellation.redis.channel:langchain4j:streaming:cancel}") String channel)
+            throws InterruptedException {
+        RedisCancellationBus bus = new RedisCancellationBus(host, port, channel);
+        // 启动时等待订阅建立，避免实例刚上线时漏掉取消；Redis 暂不可用时后台继续重试
+        if (!bus.awaitSubscribed(Duration.ofSeconds(3))) {
+            System.out.println("Redis 取消频道尚未订阅成功，将在后台重试: " + host + ":" + port);
+        }
+        return bus;
+    }
+
+}
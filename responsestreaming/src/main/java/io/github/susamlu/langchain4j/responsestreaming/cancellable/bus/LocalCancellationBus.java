@@ -0,0 +1,26 @@
+package io.github.susamlu.langchain4j.responsestreaming.cancellable.bus;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 进程内取消总线：直接在调用线程中通知本节点的监听器，适用于单实例部署
+ */
+public class LocalCancellationBus implements CancellationBus {
+
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(String requestId) {
+        for (Consumer<String> listener : listeners) {
+            listener.accept(requestId);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+}
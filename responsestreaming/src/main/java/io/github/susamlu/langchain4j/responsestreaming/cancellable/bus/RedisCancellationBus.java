@@ -0,0 +1,126 @@
+package io.github.susamlu.langchain4j.responsestreaming.cancellable.bus;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 基于 Redis Pub/Sub 的取消总线，适用于多实例部署
+ * <p>
+ * 每个节点用一个后台线程订阅同一个频道，连接断开后自动重新订阅。
+ * Pub/Sub 不保证送达：订阅断开期间发布的取消会丢失，由断开自动取消和泄漏检测兜底。
+ */
+public class RedisCancellationBus implements CancellationBus, AutoCloseable {
+
+    private static final Duration RESUBSCRIBE_DELAY = Duration.ofSeconds(1);
+
+    private final JedisPool jedisPool;
+    private final String channel;
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private final CountDownLatch subscribed = new CountDownLatch(1);
+    private final Thread subscriber;
+    private volatile JedisPubSub pubSub;
+    private volatile boolean closed;
+
+    public RedisCancellationBus(String host, int port, String channel) {
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        // 订阅独占一个连接，其余连接用于发布
+        poolConfig.setMaxTotal(8);
+        poolConfig.setMaxIdle(4);
+        this.jedisPool = new JedisPool(poolConfig, host, port);
+        this.channel = channel;
+
+        this.subscriber = new Thread(this::subscribeLoop, "redis-cancellation-subscriber");
+        subscriber.setDaemon(true);
+        subscriber.start();
+    }
+
+    /**
+     * 等待订阅建立：订阅建立之前发布的取消不会被本节点收到
+     *
+     * @return 是否在超时前完成订阅
+     */
+    public boolean awaitSubscribed(Duration timeout) throws InterruptedException {
+        return subscribed.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void publish(String requestId) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.publish(channel, requestId);
+        } catch (JedisException e) {
+            // Redis 不可用时至少取消本节点持有的生成
+            System.out.println("发布取消请求失败，仅在本节点取消: " + requestId + ", 错误: " + e.getMessage());
+            dispatch(requestId);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    private void subscribeLoop() {
+        while (!closed) {
+            JedisPubSub current = new JedisPubSub() {
+                @Override
+                public void onSubscribe(String channel, int subscribedChannels) {
+                    System.out.println("已订阅取消频道: " + channel);
+                    subscribed.countDown();
+                }
+
+                @Override
+                public void onMessage(String channel, String message) {
+                    dispatch(message);
+                }
+            };
+            pubSub = current;
+            try (Jedis jedis = jedisPool.getResource()) {
+                // 阻塞直到取消订阅或连接断开
+                jedis.subscribe(current, channel);
+            } catch (JedisException e) {
+                if (closed) {
+                    return;
+                }
+                System.out.println("取消频道订阅中断，稍后重试: " + e.getMessage());
+                try {
+                    Thread.sleep(RESUBSCRIBE_DELAY.toMillis());
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch(String requestId) {
+        for (Consumer<String> listener : listeners) {
+            try {
+                listener.accept(requestId);
+            } catch (RuntimeException e) {
+                // 单个监听器出错不能中断订阅线程
+                System.out.println("处理取消请求失败: " + requestId + ", 错误: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        JedisPubSub current = pubSub;
+        if (current != null && current.isSubscribed()) {
+            current.unsubscribe();
+        }
+        subscriber.interrupt();
+        jedisPool.close();
+    }
+
+}
@@ -0,0 +1,112 @@
+package io.github.susamlu.langchain4j.responsestreaming.completion;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.TokenUsage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 流结束时 complete 事件的内容，SSE 与 WebSocket 端点共用
+ * <p>
+ * 默认只携带元数据（JSON）：resultId、finishReason、inputTokens/outputTokens/totalTokens、
+ * sha256（完整回复按 UTF-8 编码的 SHA-256）和 events（complete 之前的增量事件数），不再重复发送一遍完整回复。
+ * 客户端用拼接好的增量内容核对 sha256，不一致时才通过 GET /api/chat/result/{resultId} 获取完整回复；
+ * 完整回复在本节点保留最近 streaming.complete.result-cache-size 个
+ * <p>
+ * streaming.complete.full-text=true 时保持旧协议：complete 事件直接携带完整回复，不缓存
+ */
+@Component
+public class CompletionProtocol {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final boolean fullText;
+    // 按访问顺序淘汰的完整回复缓存
+    private final Map<String, String> results;
+
+    public CompletionProtocol(@Value("${streaming.complete.full-text:false}") boolean fullText,
+                              @Value("${streaming.complete.result-cache-size:1000}") int resultCacheSize) {
+        this.fullText = fullText;
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > resultCacheSize;
+            }
+        };
+    }
+
+    /**
+     * 生成 resultId：前缀之后追加服务端生成的 UUID，客户端无法猜测或与其他客户端的 ID 冲突
+     *
+     * @param prefix 便于排查的前缀，例如 "chat:" + requestId
+     */
+    public static String newResultId(String prefix) {
+        return prefix + ":" + UUID.randomUUID();
+    }
+
+    /**
+     * 生成 complete 事件的数据
+     *
+     * @param resultId 客户端获取完整回复时使用的 ID，同一节点内唯一；不能直接使用客户端传入的 ID，见 {@link #newResultId(String)}
+     * @param events   complete 之前发送的增量事件数
+     */
+    public String completeData(String resultId, ChatResponse response, long events) {
+        String text = response.aiMessage().text() != null ? response.aiMessage().text() : "";
+        if (fullText) {
+            return text;
+        }
+        synchronized (results) {
+            results.put(resultId, text);
+        }
+        TokenUsage usage = response.tokenUsage();
+        Summary summary = new Summary(resultId,
+                response.finishReason() != null ? response.finishReason().name() : null,
+                usage != null ? usage.inputTokenCount() : null,
+                usage != null ? usage.outputTokenCount() : null,
+                usage != null ? usage.totalTokenCount() : null,
+                sha256(text), events);
+        try {
+            return OBJECT_MAPPER.writeValueAsString(summary);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 获取缓存的完整回复，已被淘汰或不存在时返回 null
+     */
+    public String result(String resultId) {
+        synchronized (results) {
+            return results.get(resultId);
+        }
+    }
+
+    static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * complete 事件携带的元数据，模型未返回的字段省略
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Summary(String resultId, String finishReason, Integer inputTokens, Integer outputTokens,
+                          Integer totalTokens, String sha256, long events) {
+    }
+
+}
@@ -0,0 +1,27 @@
+package io.github.susamlu.langchain4j.responsestreaming.completion;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * 客户端核对 complete 事件的 sha256 失败时，按 resultId 获取完整回复
+ */
+@RestController
+@RequestMapping("/api/chat/result")
+public class CompletionResultController {
+
+    private final CompletionProtocol completionProtocol;
+
+    public CompletionResultController(CompletionProtocol completionProtocol) {
+        this.completionProtocol = completionProtocol;
+    }
+
+    @CrossOrigin(origins = "*") // 调试临时配置，生产环境需限定具体跨域域名，禁止通配符
+    @GetMapping(value = "/{resultId}", produces = MediaType.TEXT_PLAIN_VALUE + ";charset=UTF-8")
+    public ResponseEntity<String> result(@PathVariable("resultId") String resultId) {
+        String text = completionProtocol.result(resultId);
+        return text != null ? ResponseEntity.ok(text) : ResponseEntity.notFound().build();
+    }
+
+}
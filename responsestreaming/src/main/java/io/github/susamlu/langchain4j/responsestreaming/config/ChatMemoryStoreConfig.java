@@ -0,0 +1,30 @@
+package io.github.susamlu.langchain4j.responsestreaming.config;
+
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import io.github.susamlu.langchain4j.chatmemory.redis.RedisChatMemoryStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 会话记忆的存储：streaming.memory.store=in-memory（默认，重启丢失）或 redis（多实例共享）
+ */
+@Configuration
+public class ChatMemoryStoreConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "streaming.memory.store", havingValue = "in-memory", matchIfMissing = true)
+    public ChatMemoryStore inMemoryChatMemoryStore() {
+        return new InMemoryChatMemoryStore();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "streaming.memory.store", havingValue = "redis")
+    public ChatMemoryStore redisChatMemoryStore(@Value("${streaming.memory.redis.host:localhost}") String host,
+                                                @Value("${streaming.memory.redis.port:6379}") int port) {
+        return new RedisChatMemoryStore(host, port);
+    }
+
+}
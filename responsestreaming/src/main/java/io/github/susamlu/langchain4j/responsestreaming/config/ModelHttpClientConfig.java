@@ -0,0 +1,134 @@
+package io.github.susamlu.langchain4j.responsestreaming.config;
+
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.http.client.HttpMethod;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.jdk.JdkHttpClient;
+import io.github.susamlu.langchain4j.responsestreaming.http.MeteredHttpClient;
+import io.github.susamlu.langchain4j.responsestreaming.http.SharedHttpClientBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * 访问模型的共享 HTTP 客户端
+ * <ul>
+ *     <li>所有模型 Bean 共用一个 JDK HttpClient，也就共用一个连接池，不再各自握手</li>
+ *     <li>优先使用 HTTP/2：服务端支持时所有并发流复用同一个连接，否则自动退回 HTTP/1.1 连接池</li>
+ *     <li>空闲连接保活时间和 HTTP/1.1 连接池大小通过 JDK 系统属性设置，必须在第一个 JDK HttpClient 创建前生效</li>
+ *     <li>启动完成后异步预热：提前建立连接（含 TLS 握手），第一个用户请求不再承担握手延迟，预热本身不推迟就绪</li>
+ * </ul>
+ */
+@Configuration
+public class ModelHttpClientConfig {
+
+    @Bean
+    public MeteredHttpClient modelHttpClient(
+            @Value("${streaming.http.version:HTTP_2}") HttpClient.Version version,
+            @Value("${streaming.http.connect-timeout:10s}") Duration connectTimeout,
+            @Value("${streaming.http.read-timeout:60s}") Duration readTimeout,
+            @Value("${streaming.http.keep-alive:5m}") Duration keepAlive,
+            @Value("${streaming.http.max-idle-connections:0}") int maxIdleConnections,
+            MeterRegistry meterRegistry) {
+        // 已通过 -D 显式设置时以命令行为准
+        setIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(keepAlive.toSeconds()));
+        if (maxIdleConnections > 0) {
+            setIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(maxIdleConnections));
+        }
+
+        JdkHttpClient httpClient = JdkHttpClient.builder()
+                .httpClientBuilder(HttpClient.newBuilder().version(version))
+                .connectTimeout(connectTimeout)
+                .readTimeout(readTimeout)
+                .build();
+        return new MeteredHttpClient(httpClient, meterRegistry);
+    }
+
+    @Bean
+    public SharedHttpClientBuilder modelHttpClientBuilder(
+            MeteredHttpClient modelHttpClient,
+            @Value("${streaming.http.connect-timeout:10s}") Duration connectTimeout,
+            @Value("${streaming.http.read-timeout:60s}") Duration readTimeout) {
+        return new SharedHttpClientBuilder(modelHttpClient, connectTimeout, readTimeout);
+    }
+
+    /**
+     * 启动完成后并发请求 GET {baseUrl}/models 建立连接；HTTP/1.1 下并发数即预热的连接数，HTTP/2 下 1 个即可
+     * <p>
+     * 预热异步进行，不阻塞启动；超过 streaming.http.prewarm.timeout 仍未完成时放弃，由第一个请求建立连接
+     */
+    @Bean
+    public ApplicationRunner modelConnectionPrewarmer(
+            MeteredHttpClient modelHttpClient,
+            @Value("${streaming.http.prewarm.enabled:true}") boolean enabled,
+            @Value("${streaming.http.prewarm.connections:1}") int connections,
+            @Value("${streaming.http.prewarm.timeout:2s}") Duration timeout,
+            @Value("${streaming.model.base-url:https://api.deepseek.com/v1}") String baseUrl,
+            @Value("${streaming.model.api-key:${DEEPSEEK_API_KEY:}}") String apiKey) {
+        return args -> {
+            if (!enabled || connections <= 0) {
+                return;
+            }
+            HttpRequest request = HttpRequest.builder()
+                    .method(HttpMethod.GET)
+                    .url(baseUrl.replaceAll("/+$", "") + "/models")
+                    .addHeader("Authorization", "Bearer " + apiKey)
+                    .build();
+            // 预热在独立的守护线程上进行，不等待结果，不推迟应用就绪
+            AtomicInteger threadCount = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(connections, r -> {
+                Thread thread = new Thread(r, "model-connection-prewarm-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            long startNanos = System.nanoTime();
+            CompletableFuture<?>[] warmups = IntStream.range(0, connections)
+                    .mapToObj(i -> CompletableFuture.runAsync(() -> {
+                        try {
+                            modelHttpClient.execute(request);
+                        } catch (HttpException e) {
+                            // 收到了响应（例如接口不存在或未授权），连接同样已经建立
+                        }
+                    }, executor))
+                    .toArray(CompletableFuture[]::new);
+            executor.shutdown();
+            CompletableFuture.allOf(warmups)
+                    .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                    .whenComplete((ignored, e) -> {
+                        if (e == null) {
+                            System.out.println("模型连接预热完成: " + baseUrl + ", 连接数: " + connections
+                                    + ", 耗时: " + Duration.ofNanos(System.nanoTime() - startNanos).toMillis() + "ms");
+                            return;
+                        }
+                        // 预热失败或超时不影响服务，第一个请求时再建立连接
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        if (cause instanceof TimeoutException) {
+                            executor.shutdownNow();
+                            System.out.println("模型连接预热超时: " + baseUrl + ", 超过 " + timeout.toMillis() + "ms");
+                        } else {
+                            System.out.println("模型连接预热失败: " + baseUrl + ", " + cause.getMessage());
+                        }
+                    });
+        };
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package io.github.susamlu.langchain4j.responsestreaming.config;
+
+import io.github.susamlu.langchain4j.responsestreaming.sse.DirectSseEmitter;
+import io.github.susamlu.langchain4j.responsestreaming.sse.SseFlushPolicy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * SSE 端点的写出配置：各端点使用 {@link DirectSseEmitter} 直接写输出流，按此策略合并刷新
+ * <p>
+ * 默认每个事件立即刷新；streaming.sse.flush-bytes 大于 0 时 token 事件在缓冲区累计到该字节数再刷新，
+ * 最多等待 streaming.sse.max-flush-delay
+ */
+@Configuration
+public class SseWriterConfig {
+
+    @Bean
+    public SseFlushPolicy sseFlushPolicy(
+            @Value("${streaming.sse.flush-bytes:0}") int flushBytes,
+            @Value("${streaming.sse.max-flush-delay:20ms}") Duration maxFlushDelay) {
+        return new SseFlushPolicy(flushBytes, maxFlushDelay);
+    }
+
+}
@@ -0,0 +1,63 @@
+package io.github.susamlu.langchain4j.responsestreaming.config;
+
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import io.github.susamlu.langchain4j.responsestreaming.cache.CachingStreamingChatModel;
+import io.github.susamlu.langchain4j.responsestreaming.http.SharedHttpClientBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 各流式端点共享的模型配置
+ * <p>
+ * 默认访问 DeepSeek；压测或离线环境可把 streaming.model.base-url 指向 fakemodel 模块的假模型服务，
+ * 例如 --streaming.model.base-url=http://127.0.0.1:18080/v1
+ * <p>
+ * 模型通过 {@link ModelHttpClientConfig} 提供的共享 HTTP 客户端访问上游，复用已预热的连接
+ * <p>
+ * streaming.cache.enabled=true 时在模型前加一层可回放的响应缓存，相同的请求直接回放，不消耗上游 token
+ */
+@Configuration
+public class StreamingModelConfig {
+
+    @Bean
+    public StreamingChatModel streamingChatModel(
+            @Value("${streaming.model.base-url:https://api.deepseek.com/v1}") String baseUrl,
+            @Value("${streaming.model.api-key:${DEEPSEEK_API_KEY:}}") String apiKey,
+            @Value("${streaming.model.name:deepseek-chat}") String modelName,
+            @Value("${streaming.cache.enabled:false}") boolean cacheEnabled,
+            @Value("${streaming.cache.ttl:10m}") Duration cacheTtl,
+            @Value("${streaming.cache.max-entries:1000}") int cacheMaxEntries,
+            @Value("${streaming.cache.replay-speed:0}") double cacheReplaySpeed,
+            @Value("${streaming.cache.replay-threads:0}") int cacheReplayThreads,
+            @Value("${streaming.cache.max-temperature:#{null}}") Double cacheMaxTemperature,
+            SharedHttpClientBuilder modelHttpClientBuilder,
+            MeterRegistry meterRegistry) {
+        StreamingChatModel model = OpenAiStreamingChatModel.builder()
+                .httpClientBuilder(modelHttpClientBuilder)
+                .baseUrl(baseUrl)
+                .apiKey(apiKey)
+                .modelName(modelName)
+                .build();
+        if (!cacheEnabled) {
+            return model;
+        }
+        CachingStreamingChatModel.Builder builder = CachingStreamingChatModel.builder()
+                .delegate(model)
+                .ttl(cacheTtl)
+                .maxEntries(cacheMaxEntries)
+                .replaySpeed(cacheReplaySpeed)
+                .maxTemperature(cacheMaxTemperature)
+                .meterRegistry(meterRegistry);
+        // 0 表示使用默认线程数
+        if (cacheReplayThreads > 0) {
+            builder.replayThreads(cacheReplayThreads);
+        }
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,327 @@
+package io.github.susamlu.langchain4j.responsestreaming.fanout;
+
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 把一次流式生成的 token 无锁地分发给多个下游（Disruptor 风格的单生产者、多消费者环形缓冲区）
+ * <p>
+ * 作为 StreamingChatResponseHandler 传给模型：回调线程（唯一的生产者）只把事件写入环形缓冲区的槽位并发布序号，
+ * 每个 {@link TokenSink} 在自己的消费线程上按顺序批量读取，互不等待。
+ * 某个下游处理得慢（例如写数据库的持久化）只会让它自己落后，客户端推送不受影响。
+ * <ul>
+ *     <li>槽位在所有下游都读过之后才会被覆盖：最慢的下游落后超过容量时生产者等待（背压），事件不会丢失</li>
+ *     <li>消费者空闲时挂起，生产者发布后只唤醒正在等待的消费者</li>
+ *     <li>下游回调抛出的异常只打印日志，不影响后续事件和其他下游</li>
+ *     <li>指标：streaming.fanout.lag{sink}（每批开始时落后的事件数）、streaming.fanout.delay{sink}（从发布到处理的时间）、
+ *     streaming.fanout.producer.stall（缓冲区满时生产者的等待时间）</li>
+ * </ul>
+ * 一个实例对应一次生成：收到完成或错误后各下游处理完剩余事件即退出
+ */
+public class TokenFanout implements StreamingChatResponseHandler, AutoCloseable {
+
+    private static final int TOKEN = 0;
+    private static final int COMPLETE = 1;
+    private static final int ERROR = 2;
+
+    // 缓冲区满时生产者每次等待的时间
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    // 消费者挂起的最长时间，防止错过唤醒后一直等待
+    private static final long CONSUMER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Slot[] ring;
+    private final int mask;
+    private final List<Consumer> consumers = new ArrayList<>();
+    // 已发布的最大序号，-1 表示尚未发布
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final CountDownLatch finished;
+    private final Timer producerStall;
+
+    // 以下字段只由生产者线程访问
+    private long nextSequence;
+    // 上一次看到的最慢消费者序号，避免每次发布都遍历所有消费者
+    private long cachedGatingSequence = -1;
+    private boolean terminated;
+
+    private volatile boolean closed;
+
+    private TokenFanout(Builder builder) {
+        this.ring = new Slot[builder.capacity];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new Slot();
+        }
+        this.mask = builder.capacity - 1;
+        this.finished = new CountDownLatch(builder.sinks.size());
+
+        MeterRegistry meterRegistry = builder.meterRegistry != null ? builder.meterRegistry : new SimpleMeterRegistry();
+        this.producerStall = Timer.builder("streaming.fanout.producer.stall")
+                .description("缓冲区满时生产者等待最慢下游的时间")
+                .register(meterRegistry);
+        builder.sinks.forEach((name, sink) -> consumers.add(new Consumer(name, sink, meterRegistry)));
+        for (Consumer consumer : consumers) {
+            if (builder.executor != null) {
+                builder.executor.execute(consumer);
+            } else {
+                Thread thread = new Thread(consumer, "fanout-" + consumer.name);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public void onPartialResponse(String partialResponse) {
+        publish(TOKEN, partialResponse, null, null);
+    }
+
+    @Override
+    public void onCompleteResponse(ChatResponse completeResponse) {
+        publish(COMPLETE, null, completeResponse, null);
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        publish(ERROR, null, null, error);
+    }
+
+    /**
+     * 等待所有下游处理完完成或错误事件
+     *
+     * @return false 表示超时
+     */
+    public boolean awaitCompletion(Duration timeout) throws InterruptedException {
+        return finished.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 指定下游当前落后的事件数
+     */
+    public long lag(String sinkName) {
+        for (Consumer consumer : consumers) {
+            if (consumer.name.equals(sinkName)) {
+                return cursor.get() - consumer.sequence.get();
+            }
+        }
+        throw new IllegalArgumentException("未知的下游: " + sinkName);
+    }
+
+    /**
+     * 停止分发：消费者不再等待新事件，等待中的生产者放弃发布
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Consumer consumer : consumers) {
+            Thread thread = consumer.thread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    private void publish(int type, String token, ChatResponse response, Throwable error) {
+        if (terminated || closed) {
+            return;
+        }
+        long sequence = nextSequence;
+        long wrapPoint = sequence - ring.length;
+        if (wrapPoint > cachedGatingSequence && !awaitCapacity(wrapPoint)) {
+            return;
+        }
+        nextSequence++;
+        terminated = type != TOKEN;
+
+        Slot slot = ring[(int) (sequence & mask)];
+        slot.type = type;
+        slot.token = token;
+        slot.response = response;
+        slot.error = error;
+        slot.publishNanos = System.nanoTime();
+        // volatile 写：消费者读到这个序号时一定能看到上面写入的槽位
+        cursor.set(sequence);
+
+        for (Consumer consumer : consumers) {
+            if (consumer.waiting) {
+                LockSupport.unpark(consumer.thread);
+            }
+        }
+    }
+
+    // 等待最慢的下游读过即将被覆盖的槽位；返回 false 表示已关闭
+    private boolean awaitCapacity(long wrapPoint) {
+        long startNanos = 0;
+        while (wrapPoint > (cachedGatingSequence = minConsumerSequence())) {
+            if (closed) {
+                return false;
+            }
+            if (startNanos == 0) {
+                startNanos = System.nanoTime();
+            }
+            LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+        }
+        if (startNanos != 0) {
+            producerStall.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+        return true;
+    }
+
+    private long minConsumerSequence() {
+        long min = Long.MAX_VALUE;
+        for (Consumer consumer : consumers) {
+            min = Math.min(min, consumer.sequence.get());
+        }
+        return min;
+    }
+
+    // 环形缓冲区的槽位，由生产者反复复用
+    private static class Slot {
+
+        private int type;
+        private String token;
+        private ChatResponse response;
+        private Throwable error;
+        private long publishNanos;
+
+    }
+
+    // 一个下游的消费线程：读到最新发布的序号后批量处理
+    private class Consumer implements Runnable {
+
+        private final String name;
+        private final TokenSink sink;
+        // 已处理的最大序号
+        private final AtomicLong sequence = new AtomicLong(-1);
+        private final DistributionSummary lag;
+        private final Timer delay;
+        private volatile Thread thread;
+        private volatile boolean waiting;
+
+        Consumer(String name, TokenSink sink, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.sink = sink;
+            this.lag = DistributionSummary.builder("streaming.fanout.lag")
+                    .description("下游每批开始处理时落后的事件数")
+                    .tag("sink", name)
+                    .register(meterRegistry);
+            this.delay = Timer.builder("streaming.fanout.delay")
+                    .description("事件从发布到被下游处理的时间")
+                    .tag("sink", name)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            long next = 0;
+            while (true) {
+                long available = cursor.get();
+                if (available < next) {
+                    if (closed) {
+                        finished.countDown();
+                        return;
+                    }
+                    // 先声明等待再检查一次，保证不会错过生产者的唤醒
+                    waiting = true;
+                    if (cursor.get() < next && !closed) {
+                        LockSupport.parkNanos(this, CONSUMER_PARK_NANOS);
+                    }
+                    waiting = false;
+                    continue;
+                }
+
+                lag.record(available - next + 1);
+                for (; next <= available; next++) {
+                    Slot slot = ring[(int) (next & mask)];
+                    delay.record(System.nanoTime() - slot.publishNanos, TimeUnit.NANOSECONDS);
+                    int type = slot.type;
+                    dispatch(type, slot);
+                    sequence.lazySet(next);
+                    if (type != TOKEN) {
+                        finished.countDown();
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void dispatch(int type, Slot slot) {
+            try {
+                switch (type) {
+                    case TOKEN -> sink.onToken(slot.token);
+                    case COMPLETE -> sink.onComplete(slot.response);
+                    default -> sink.onError(slot.error);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("下游 " + name + " 处理事件失败: " + e.getMessage());
+            }
+        }
+
+    }
+
+    public static class Builder {
+
+        // 2 的幂，覆盖一次生成的全部 token 时最慢的下游也不会让生产者等待
+        private int capacity = 1024;
+        private final Map<String, TokenSink> sinks = new LinkedHashMap<>();
+        private MeterRegistry meterRegistry;
+        private Executor executor;
+
+        public Builder capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * 添加一个下游，名称用作指标标签和线程名
+         */
+        public Builder sink(String name, TokenSink sink) {
+            this.sinks.put(name, sink);
+            return this;
+        }
+
+        public Builder meterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        /**
+         * 运行消费者的线程池，每个下游占用一个线程直到生成结束；默认为每个下游新建守护线程
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public TokenFanout build() {
+            if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+                throw new IllegalArgumentException("capacity 必须是 2 的幂: " + capacity);
+            }
+            if (sinks.isEmpty()) {
+                throw new IllegalArgumentException("至少需要一个下游");
+            }
+            return new TokenFanout(this);
+        }
+
+    }
+
+}
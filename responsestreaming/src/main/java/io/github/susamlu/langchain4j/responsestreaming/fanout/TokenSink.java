@@ -0,0 +1,29 @@
+package io.github.susamlu.langchain4j.responsestreaming.fanout;
+
+import dev.langchain4j.model.chat.response.ChatResponse;
+
+/**
+ * 接收 token 流的一个下游（客户端推送、持久化、统计分析等）
+ * <p>
+ * 每个下游在自己的消费线程上按顺序收到回调，处理得慢只会让自己落后，不会拖慢其他下游
+ */
+public interface TokenSink {
+
+    /**
+     * 收到一个增量 token
+     */
+    void onToken(String token);
+
+    /**
+     * 生成完成，之后不会再有回调
+     */
+    default void onComplete(ChatResponse response) {
+    }
+
+    /**
+     * 生成出错，之后不会再有回调
+     */
+    default void onError(Throwable error) {
+    }
+
+}
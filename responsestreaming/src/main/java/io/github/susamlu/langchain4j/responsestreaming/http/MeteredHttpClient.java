@@ -0,0 +1,126 @@
+package io.github.susamlu.langchain4j.responsestreaming.http;
+
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.SuccessfulHttpResponse;
+import dev.langchain4j.http.client.sse.ServerSentEvent;
+import dev.langchain4j.http.client.sse.ServerSentEventContext;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import dev.langchain4j.http.client.sse.ServerSentEventParser;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 为访问模型的 HttpClient 记录指标
+ * <ul>
+ *     <li>streaming.http.requests.active：进行中的请求数（流式请求从发出到流结束）</li>
+ *     <li>streaming.http.time-to-headers：从发出请求到收到响应头的时间，按 type（sync / sse）打标签；
+ *     需要新建连接（TCP + TLS 握手）的请求会明显偏慢，用于观察连接复用和预热的效果</li>
+ *     <li>streaming.http.requests：按 type 和 outcome（success / error）统计的请求数</li>
+ * </ul>
+ * JDK HttpClient 不对外暴露连接池的连接数，这里只能从请求侧观察
+ */
+public class MeteredHttpClient implements HttpClient {
+
+    private final HttpClient delegate;
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger activeRequests = new AtomicInteger();
+
+    public MeteredHttpClient(HttpClient delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("streaming.http.requests.active", activeRequests, AtomicInteger::get)
+                .description("访问模型的进行中请求数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public SuccessfulHttpResponse execute(HttpRequest request) throws HttpException {
+        activeRequests.incrementAndGet();
+        long startNanos = System.nanoTime();
+        String outcome = "error";
+        try {
+            SuccessfulHttpResponse response = delegate.execute(request);
+            outcome = "success";
+            return response;
+        } finally {
+            // 非流式请求收到完整响应时即收到响应头，这里近似为整个请求的时间
+            timeToHeaders("sync").record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            meterRegistry.counter("streaming.http.requests", "type", "sync", "outcome", outcome).increment();
+            activeRequests.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void execute(HttpRequest request, ServerSentEventParser parser, ServerSentEventListener listener) {
+        activeRequests.incrementAndGet();
+        long startNanos = System.nanoTime();
+        AtomicBoolean finished = new AtomicBoolean();
+        Runnable finish = () -> {
+            if (finished.compareAndSet(false, true)) {
+                activeRequests.decrementAndGet();
+            }
+        };
+
+        try {
+            delegate.execute(request, parser, new ServerSentEventListener() {
+                @Override
+                public void onOpen(SuccessfulHttpResponse response) {
+                    timeToHeaders("sse").record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                    listener.onOpen(response);
+                }
+
+                @Override
+                public void onEvent(ServerSentEvent event, ServerSentEventContext context) {
+                    listener.onEvent(event, context);
+                }
+
+                @Override
+                public void onEvent(ServerSentEvent event) {
+                    listener.onEvent(event);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    if (!finished.get()) {
+                        meterRegistry.counter("streaming.http.requests", "type", "sse", "outcome", "error").increment();
+                    }
+                    finish.run();
+                    listener.onError(error);
+                }
+
+                @Override
+                public void onClose() {
+                    if (!finished.get()) {
+                        meterRegistry.counter("streaming.http.requests", "type", "sse", "outcome", "success").increment();
+                    }
+                    finish.run();
+                    listener.onClose();
+                }
+            });
+        } catch (RuntimeException e) {
+            meterRegistry.counter("streaming.http.requests", "type", "sse", "outcome", "error").increment();
+            finish.run();
+            throw e;
+        }
+    }
+
+    public int activeRequests() {
+        return activeRequests.get();
+    }
+
+    private Timer timeToHeaders(String type) {
+        return Timer.builder("streaming.http.time-to-headers")
+                .description("从发出请求到收到响应头的时间")
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+}
@@ -0,0 +1,51 @@
+package io.github.susamlu.langchain4j.responsestreaming.http;
+
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpClientBuilder;
+
+import java.time.Duration;
+
+/**
+ * 总是返回同一个 HttpClient 的 HttpClientBuilder，让多个模型共享一个连接池
+ * <p>
+ * langchain4j 的模型在构建时各自调用 build()，默认每次都会创建新的 JDK HttpClient（以及新的连接池）。
+ * 超时在共享客户端创建时统一配置，模型构建时传入的超时会被忽略。
+ */
+public class SharedHttpClientBuilder implements HttpClientBuilder {
+
+    private final HttpClient httpClient;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+
+    public SharedHttpClientBuilder(HttpClient httpClient, Duration connectTimeout, Duration readTimeout) {
+        this.httpClient = httpClient;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public Duration connectTimeout() {
+        return connectTimeout;
+    }
+
+    @Override
+    public HttpClientBuilder connectTimeout(Duration timeout) {
+        return this;
+    }
+
+    @Override
+    public Duration readTimeout() {
+        return readTimeout;
+    }
+
+    @Override
+    public HttpClientBuilder readTimeout(Duration timeout) {
+        return this;
+    }
+
+    @Override
+    public HttpClient build() {
+        return httpClient;
+    }
+
+}
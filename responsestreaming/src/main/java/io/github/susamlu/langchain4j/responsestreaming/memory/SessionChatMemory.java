@@ -0,0 +1,186 @@
+package io.github.susamlu.langchain4j.responsestreaming.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 按会话 ID 异步读写对话记忆，读写 ChatMemoryStore（可能是 Redis）都不占用请求线程和模型回调线程
+ * <ul>
+ *     <li>同一会话的读取和写入严格按提交顺序执行：下一轮的读取排在上一轮的写入之后，总能看到上一轮的对话</li>
+ *     <li>写入可以先占位、后提供 AI 回复，占位之后提交的读取同样排在这次写入之后</li>
+ *     <li>不同会话互不等待，在共享的线程池上并行执行</li>
+ *     <li>每轮对话完成后用户消息和 AI 回复一次性写入，只保留最近 maxMessages 条消息</li>
+ *     <li>指标：streaming.memory.persist（从提交到写入完成的时间）、streaming.memory.persist.failures</li>
+ * </ul>
+ */
+@Component
+public class SessionChatMemory {
+
+    private final ChatMemoryStore store;
+    private final int maxMessages;
+    private final ExecutorService executor;
+    // 每个会话最后提交的任务，新任务在它结束后执行；任务结束时若仍是最后一个则移除
+    private final Map<String, CompletableFuture<?>> tails = new ConcurrentHashMap<>();
+    private final Timer persistTimer;
+    private final Counter persistFailures;
+
+    public SessionChatMemory(ChatMemoryStore store, MeterRegistry meterRegistry,
+                             @Value("${streaming.memory.max-messages:20}") int maxMessages,
+                             @Value("${streaming.memory.threads:4}") int threads) {
+        if (maxMessages < 2) {
+            throw new IllegalArgumentException("streaming.memory.max-messages 至少为 2");
+        }
+        this.store = store;
+        this.maxMessages = maxMessages;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "chat-memory-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.persistTimer = Timer.builder("streaming.memory.persist")
+                .description("一轮对话从提交到写入对话记忆的时间")
+                .register(meterRegistry);
+        this.persistFailures = Counter.builder("streaming.memory.persist.failures")
+                .description("写入对话记忆失败的次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 读取会话的历史消息，排在该会话所有已提交的写入之后
+     */
+    public CompletableFuture<List<ChatMessage>> load(String sessionId) {
+        return enqueue(sessionId, () -> store.getMessages(sessionId));
+    }
+
+    /**
+     * 追加一轮对话（用户消息和 AI 回复），超出窗口的最早消息被丢弃
+     */
+    public CompletableFuture<Void> persistTurn(String sessionId, UserMessage userMessage, AiMessage aiMessage) {
+        return persistTurn(sessionId, userMessage, CompletableFuture.completedFuture(aiMessage));
+    }
+
+    /**
+     * 立即占住该会话队列中的位置，等 aiMessage 完成后再写入这一轮对话：之后提交的读取总能看到这一轮。
+     * aiMessage 异常完成或为 null 时放弃这一轮，不写入，也不阻塞后续任务
+     */
+    public CompletableFuture<Void> persistTurn(String sessionId, UserMessage userMessage,
+                                               CompletableFuture<AiMessage> aiMessage) {
+        long startNanos = System.nanoTime();
+        return enqueue(sessionId, aiMessage, () -> {
+            AiMessage reply = aiMessage.isCompletedExceptionally() ? null : aiMessage.join();
+            if (reply == null) {
+                return null;
+            }
+            try {
+                List<ChatMessage> messages = new ArrayList<>(store.getMessages(sessionId));
+                messages.add(userMessage);
+                messages.add(reply);
+                store.updateMessages(sessionId, evict(messages));
+                return null;
+            } catch (RuntimeException e) {
+                persistFailures.increment();
+                System.out.println("写入对话记忆失败: " + sessionId + ", 错误: " + e.getMessage());
+                throw e;
+            } finally {
+                persistTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    /**
+     * 清空会话的历史消息，排在该会话所有已提交的写入之后
+     */
+    public CompletableFuture<Void> clear(String sessionId) {
+        return enqueue(sessionId, () -> {
+            store.deleteMessages(sessionId);
+            return null;
+        });
+    }
+
+    // 从最早的消息开始丢弃，且不以没有对应用户消息的 AI 回复开头
+    private List<ChatMessage> evict(List<ChatMessage> messages) {
+        int from = Math.max(0, messages.size() - maxMessages);
+        while (from < messages.size() && messages.get(from) instanceof AiMessage) {
+            from++;
+        }
+        return new ArrayList<>(messages.subList(from, messages.size()));
+    }
+
+    private <T> CompletableFuture<T> enqueue(String sessionId, Supplier<T> task) {
+        return enqueue(sessionId, null, task);
+    }
+
+    // ready 不为 null 时，任务还要等 ready 完成（无论成功与否）才执行，但在队列中的位置在提交时就已确定
+    private <T> CompletableFuture<T> enqueue(String sessionId, CompletableFuture<?> ready, Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable runnable = () -> {
+            try {
+                future.complete(task.get());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                tails.remove(sessionId, future);
+            }
+        };
+        CompletableFuture<?> previous = tails.put(sessionId, future);
+        if (ready != null) {
+            CompletableFuture<?> gate = ready.handle((ignored, error) -> null);
+            previous = previous == null ? gate : CompletableFuture.allOf(gate, previous.handle((ignored, error) -> null));
+        }
+        if (previous == null) {
+            execute(runnable, future);
+        } else {
+            // 前一个任务失败不影响后续任务
+            previous.whenComplete((ignored, error) -> execute(runnable, future));
+        }
+        return future;
+    }
+
+    private void execute(Runnable runnable, CompletableFuture<?> future) {
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 等待已提交的写入完成后再关闭，避免丢失最后几轮对话
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // 每个会话最后一个任务完成时，该会话之前的任务都已完成；排队中的任务还需要提交到线程池，所以先等待再关闭线程池
+        try {
+            CompletableFuture.allOf(tails.values().toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            // 失败已在任务中记录
+        } catch (TimeoutException e) {
+            System.out.println("对话记忆仍有未完成的写入，放弃等待: " + tails.keySet());
+        }
+        executor.shutdownNow();
+    }
+
+}
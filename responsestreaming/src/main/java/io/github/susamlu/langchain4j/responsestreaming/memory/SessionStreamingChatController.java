@@ -0,0 +1,172 @@
+package io.github.susamlu.langchain4j.responsestreaming.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.response.*;
+import io.github.susamlu.langchain4j.responsestreaming.admission.AdmissionController;
+import io.github.susamlu.langchain4j.responsestreaming.admission.AdmissionRejectedException;
+import io.github.susamlu.langchain4j.responsestreaming.completion.CompletionProtocol;
+import io.github.susamlu.langchain4j.responsestreaming.metrics.StreamingMetrics;
+import io.github.susamlu.langchain4j.responsestreaming.moderation.OutputGuard;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStream;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStreamRegistry;
+import io.github.susamlu.langchain4j.responsestreaming.sse.DirectSseEmitter;
+import io.github.susamlu.langchain4j.responsestreaming.sse.SseFlushPolicy;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 带会话记忆的多轮流式对话，按 sessionId 区分会话
+ * <p>
+ * 请求到达时就开始读取历史消息，与准入排队同时进行；生成完成后先在会话队列中为本轮写入占位，
+ * 再把 complete 事件推送给客户端，最后异步写入本轮的用户消息和 AI 回复：客户端收到完整回复的时间不受记忆存储的影响，
+ * 收到后立即发起的下一轮也能读到本轮对话
+ */
+@RestController
+@RequestMapping("/api/chat/session")
+public class SessionStreamingChatController {
+
+    private final StreamingChatModel model;
+    private final ResumableStreamRegistry streamRegistry;
+    // 会话记忆：同一会话的读写按顺序异步执行
+    private final SessionChatMemory sessionChatMemory;
+    // 准入控制：限制并发生成数，超出时排队或快速拒绝
+    private final AdmissionController admissionController;
+    private final StreamingMetrics streamingMetrics;
+    // SSE 事件的合并刷新策略
+    private final SseFlushPolicy flushPolicy;
+    // complete 事件的内容：默认只携带元数据
+    private final CompletionProtocol completionProtocol;
+    // 流式输出审核：命中敏感词时取消生成
+    private final OutputGuard outputGuard;
+
+    public SessionStreamingChatController(StreamingChatModel model,
+                                          ResumableStreamRegistry streamRegistry,
+                                          SessionChatMemory sessionChatMemory,
+                                          AdmissionController admissionController,
+                                          StreamingMetrics streamingMetrics,
+                                          SseFlushPolicy flushPolicy,
+                                          CompletionProtocol completionProtocol,
+                                          OutputGuard outputGuard) {
+        this.model = model;
+        this.streamRegistry = streamRegistry;
+        this.sessionChatMemory = sessionChatMemory;
+        this.admissionController = admissionController;
+        this.streamingMetrics = streamingMetrics;
+        this.flushPolicy = flushPolicy;
+        this.completionProtocol = completionProtocol;
+        this.outputGuard = outputGuard;
+    }
+
+    @CrossOrigin(origins = "*") // 调试临时配置，生产环境需限定具体跨域域名，禁止通配符
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChat(@RequestParam(name = "sessionId") String sessionId,
+                                 @RequestParam(name = "message") String message,
+                                 @RequestParam(name = "userId", required = false) String userId,
+                                 HttpServletRequest request) {
+        SseEmitter emitter = new DirectSseEmitter(60000L, flushPolicy); // 60秒超时
+        String userKey = AdmissionController.userKey(userId, request.getRemoteAddr());
+        String streamId = "session:" + sessionId + ":" + UUID.randomUUID();
+        ResumableStream stream = streamRegistry.open(streamId);
+        stream.tryStart();
+
+        emitter.onCompletion(() -> stream.detach(emitter));
+        emitter.onTimeout(() -> stream.detach(emitter));
+        emitter.onError(throwable -> stream.detach(emitter));
+        stream.attach(emitter, 0);
+        stream.onFinished(() -> streamRegistry.remove(streamId));
+
+        // 排在该会话之前各轮的写入之后读取
+        CompletableFuture<List<ChatMessage>> history = sessionChatMemory.load(sessionId);
+        try {
+            AdmissionController.Ticket ticket = admissionController.submit("sse-session", userKey, admitted -> {
+                if (stream.isFinished()) {
+                    admitted.release();
+                    return;
+                }
+                history.whenComplete((messages, error) -> {
+                    if (error != null) {
+                        stream.fail(error);
+                    } else {
+                        startGeneration(sessionId, message, messages, stream);
+                    }
+                });
+            }, stream::fail);
+            // 流结束时释放名额；仍在排队时则放弃排队
+            stream.onFinished(ticket::release);
+        } catch (AdmissionRejectedException e) {
+            stream.detach(emitter);
+            stream.fail(e);
+            throw e;
+        }
+        return emitter;
+    }
+
+    /**
+     * 清空会话记忆，在该会话已提交的写入完成之后执行
+     */
+    @CrossOrigin(origins = "*")
+    @DeleteMapping("/{sessionId}")
+    public CompletableFuture<Void> clearSession(@PathVariable("sessionId") String sessionId) {
+        return sessionChatMemory.clear(sessionId);
+    }
+
+    private void startGeneration(String sessionId, String message, List<ChatMessage> history,
+                                 ResumableStream stream) {
+        StreamingMetrics.Recorder recorder = streamingMetrics.start(
+                model.defaultRequestParameters().modelName(), "sse-session");
+        // 完成和出错都先于流结束记录；流在此之前结束只可能是客户端已断开
+        stream.onFinished(() -> recorder.finish(StreamingMetrics.OUTCOME_CLIENT_GONE));
+
+        UserMessage userMessage = UserMessage.from(message);
+        List<ChatMessage> messages = new ArrayList<>(history);
+        messages.add(userMessage);
+
+        System.out.println("\n--- 会话 " + sessionId + " 流式响应开始，历史消息 " + history.size() + " 条 ---");
+        model.chat(messages, outputGuard.guard(new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+                recorder.onToken();
+                System.out.print(partialResponse.text());
+                stream.append("message", partialResponse.text());
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+                System.out.println("\n--- 流式响应完成 ---");
+                recorder.finish(StreamingMetrics.OUTCOME_COMPLETE);
+
+                // 推送完成事件之前先在会话队列中占位：客户端收到 complete 后立即发起的下一轮，读取也排在本轮写入之后；
+                // 写入在推送之后才执行（客户端断开也照常写入，下一轮仍能看到本轮对话）
+                CompletableFuture<AiMessage> reply = new CompletableFuture<>();
+                sessionChatMemory.persistTurn(sessionId, userMessage, reply);
+                try {
+                    stream.finish("complete", completionProtocol.completeData(
+                            stream.getStreamId(), completeResponse, stream.eventCount()));
+                } finally {
+                    reply.complete(completeResponse.aiMessage());
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                recorder.finish(StreamingMetrics.OUTCOME_ERROR);
+                stream.fail(error);
+            }
+        }, () -> {
+            // 输出审核命中：本轮不写入会话记忆
+            recorder.finish(StreamingMetrics.OUTCOME_MODERATED);
+            stream.finish(OutputGuard.EVENT_REDACTED, outputGuard.redactedMessage());
+        }));
+    }
+
+}
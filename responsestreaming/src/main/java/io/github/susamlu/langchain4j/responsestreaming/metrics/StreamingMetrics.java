@@ -0,0 +1,122 @@
+package io.github.susamlu.langchain4j.responsestreaming.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 流式生成的时延指标，按模型（model）和端点（endpoint）打标签，可在 /actuator/metrics 中查看并据此设定 SLO
+ * <ul>
+ *     <li>streaming.ttft：从发起请求到第一个 token 的时间（time-to-first-token）</li>
+ *     <li>streaming.token.gap：相邻两个 token 的间隔</li>
+ *     <li>streaming.tokens.per-second：第一个 token 之后的输出速率</li>
+ *     <li>streaming.duration：整个流的时长，额外按结果（outcome）打标签：complete / cancelled / error / client-gone / moderated</li>
+ * </ul>
+ * 这里的 token 指一次增量回调（onPartialResponse），与计费 token 数不完全相同
+ */
+@Component
+public class StreamingMetrics {
+
+    public static final String OUTCOME_COMPLETE = "complete";
+    public static final String OUTCOME_CANCELLED = "cancelled";
+    public static final String OUTCOME_ERROR = "error";
+    public static final String OUTCOME_CLIENT_GONE = "client-gone";
+    // 输出审核命中，生成被取消
+    public static final String OUTCOME_MODERATED = "moderated";
+
+    private final MeterRegistry meterRegistry;
+
+    public StreamingMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 开始记录一次流式生成，应在调用模型之前调用
+     */
+    public Recorder start(String model, String endpoint) {
+        return new Recorder(model != null ? model : "unknown", endpoint);
+    }
+
+    /**
+     * 一次流式生成的记录器，回调可能来自不同线程
+     */
+    public class Recorder {
+
+        private final String model;
+        private final String endpoint;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final Timer tokenGap;
+        // 以下字段由 this 锁保护
+        private long firstTokenNanos;
+        private long lastTokenNanos;
+        private long tokens;
+
+        private Recorder(String model, String endpoint) {
+            this.model = model;
+            this.endpoint = endpoint;
+            this.tokenGap = Timer.builder("streaming.token.gap")
+                    .description("相邻两个 token 的间隔")
+                    .tags("model", model, "endpoint", endpoint)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+
+        /**
+         * 收到一个增量 token
+         */
+        public synchronized void onToken() {
+            long now = System.nanoTime();
+            if (tokens == 0) {
+                firstTokenNanos = now;
+                Timer.builder("streaming.ttft")
+                        .description("从发起请求到第一个 token 的时间")
+                        .tags("model", model, "endpoint", endpoint)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+                        .record(now - startNanos, TimeUnit.NANOSECONDS);
+            } else {
+                tokenGap.record(now - lastTokenNanos, TimeUnit.NANOSECONDS);
+            }
+            lastTokenNanos = now;
+            tokens++;
+        }
+
+        /**
+         * 以给定结果结束记录，只有第一次调用生效
+         */
+        public void finish(String outcome) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            long now = System.nanoTime();
+            Timer.builder("streaming.duration")
+                    .description("流式生成的总时长")
+                    .tags("model", model, "endpoint", endpoint, "outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(now - startNanos, TimeUnit.NANOSECONDS);
+
+            synchronized (this) {
+                if (tokens > 1 && lastTokenNanos > firstTokenNanos) {
+                    DistributionSummary.builder("streaming.tokens.per-second")
+                            .description("第一个 token 之后的输出速率")
+                            .tags("model", model, "endpoint", endpoint)
+                            .publishPercentileHistogram()
+                            .register(meterRegistry)
+                            .record((tokens - 1) * 1e9 / (lastTokenNanos - firstTokenNanos));
+                }
+            }
+        }
+
+        public boolean isFinished() {
+            return finished.get();
+        }
+
+    }
+
+}
@@ -0,0 +1,332 @@
+package io.github.susamlu.langchain4j.responsestreaming.moderation;
+
+import dev.langchain4j.model.chat.response.*;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 流式输出审核：用 Aho-Corasick 自动机在增量回复到达时逐字符匹配敏感词，不再额外调用一次模型审核输出
+ * <p>
+ * 敏感词可能被拆在相邻的几个增量里，因此每个流保留尾部“可能是某个敏感词开头”的若干字符（即自动机当前状态的深度）暂不下发，
+ * 确认不构成敏感词后再随后续增量一起发出；生成正常结束时补发剩余字符。命中时通过 StreamingHandle 取消上游生成，
+ * 由调用方发送 {@link #EVENT_REDACTED} 终止事件，命中的敏感词不会有任何一部分到达客户端
+ * <p>
+ * 每个字符只做一次状态转移（失败指针摊还为常数），单个增量的开销在微秒级；
+ * 敏感词来自 streaming.moderation.output.terms（逗号分隔）和 streaming.moderation.output.terms-file（每行一个），
+ * 匹配忽略大小写，两者都为空时不做任何处理
+ */
+@Component
+public class OutputGuard {
+
+    public static final String EVENT_REDACTED = "redacted";
+
+    private final String[] terms;
+    private final String redactedMessage;
+    private final Counter blocked;
+
+    // 自动机按状态展开为数组：状态 s 的转移边为 edgeChars/edgeTargets[edgeStart[s] .. edgeStart[s + 1])，按字符升序
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    private final int[] fail;
+    // 状态深度：输入尾部与某个敏感词前缀重合的最长长度，也就是需要暂缓下发的字符数
+    private final int[] depth;
+    // 到达该状态时命中的敏感词下标（沿失败指针继承），-1 表示未命中
+    private final int[] match;
+
+    public OutputGuard(MeterRegistry meterRegistry,
+                       @Value("${streaming.moderation.output.terms:}") String terms,
+                       @Value("${streaming.moderation.output.terms-file:classpath:moderation/output-terms.txt}") String termsFile,
+                       @Value("${streaming.moderation.output.redacted-message:回复包含不当内容，已停止生成}") String redactedMessage) {
+        Set<String> allTerms = new LinkedHashSet<>();
+        Arrays.stream(terms.split(",")).forEach(term -> addTerm(allTerms, term));
+        loadTerms(termsFile).forEach(term -> addTerm(allTerms, term));
+        this.terms = allTerms.toArray(String[]::new);
+        this.redactedMessage = redactedMessage;
+        this.blocked = Counter.builder("streaming.moderation.output.blocked")
+                .description("输出审核命中并被取消的流式生成数")
+                .register(meterRegistry);
+
+        // 1. 构建字典树
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        List<Integer> matches = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        depths.add(0);
+        matches.add(-1);
+        for (int i = 0; i < this.terms.length; i++) {
+            int state = 0;
+            for (char c : this.terms[i].toCharArray()) {
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(c, next);
+                    trie.add(new TreeMap<>());
+                    depths.add(depths.get(state) + 1);
+                    matches.add(-1);
+                }
+                state = next;
+            }
+            matches.set(state, i);
+        }
+
+        // 2. 展开为数组
+        int states = trie.size();
+        this.edgeStart = new int[states + 1];
+        this.edgeChars = new char[states - 1];
+        this.edgeTargets = new int[states - 1];
+        int edge = 0;
+        for (int s = 0; s < states; s++) {
+            edgeStart[s] = edge;
+            for (Map.Entry<Character, Integer> entry : trie.get(s).entrySet()) {
+                edgeChars[edge] = entry.getKey();
+                edgeTargets[edge++] = entry.getValue();
+            }
+        }
+        edgeStart[states] = edge;
+        this.depth = depths.stream().mapToInt(Integer::intValue).toArray();
+        this.match = matches.stream().mapToInt(Integer::intValue).toArray();
+
+        // 3. 按层次遍历计算失败指针，命中结果沿失败指针继承（较短的敏感词是较长前缀的后缀时也能命中）
+        this.fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            queue.add(edgeTargets[e]);
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+                int child = edgeTargets[e];
+                int f = fail[s];
+                int target;
+                while ((target = transition(f, edgeChars[e])) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = target > 0 ? target : 0;
+                if (match[child] < 0) {
+                    match[child] = match[fail[child]];
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * 未配置任何敏感词时不做审核
+     */
+    public boolean enabled() {
+        return terms.length > 0;
+    }
+
+    /**
+     * 命中后发送给客户端的终止事件内容
+     */
+    public String redactedMessage() {
+        return redactedMessage;
+    }
+
+    /**
+     * 为一个流创建匹配器，不可跨流共享
+     */
+    public Scanner newScanner() {
+        return new Scanner();
+    }
+
+    /**
+     * 包装流式回调：下发的增量都经过审核；命中时取消上游生成并调用 onBlocked，之后不再回调 delegate
+     * <p>
+     * 未配置敏感词时直接返回 delegate
+     */
+    public StreamingChatResponseHandler guard(StreamingChatResponseHandler delegate, Runnable onBlocked) {
+        if (!enabled()) {
+            return delegate;
+        }
+        Scanner scanner = newScanner();
+        return new StreamingChatResponseHandler() {
+            // 补发暂缓字符时沿用最后一个增量的上下文
+            private PartialResponseContext lastContext;
+
+            @Override
+            public void onPartialResponse(String partialResponse) {
+                onPartialResponse(new PartialResponse(partialResponse), null);
+            }
+
+            @Override
+            public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+                if (scanner.isBlocked()) {
+                    return;
+                }
+                lastContext = context;
+                String released = scanner.scan(partialResponse.text());
+                if (scanner.isBlocked()) {
+                    if (context != null) {
+                        context.streamingHandle().cancel();
+                    }
+                    onBlocked.run();
+                    return;
+                }
+                if (!released.isEmpty()) {
+                    deliver(released, context);
+                }
+            }
+
+            // 思考内容和工具调用不下发给客户端，不审核
+            @Override
+            public void onPartialThinking(PartialThinking partialThinking, PartialThinkingContext context) {
+                delegate.onPartialThinking(partialThinking, context);
+            }
+
+            @Override
+            public void onPartialToolCall(PartialToolCall partialToolCall, PartialToolCallContext context) {
+                delegate.onPartialToolCall(partialToolCall, context);
+            }
+
+            @Override
+            public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+                delegate.onCompleteToolCall(completeToolCall);
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+                if (scanner.isBlocked()) {
+                    return;
+                }
+                String rest = scanner.flush();
+                if (!rest.isEmpty()) {
+                    deliver(rest, lastContext);
+                }
+                delegate.onCompleteResponse(completeResponse);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                if (!scanner.isBlocked()) {
+                    delegate.onError(error);
+                }
+            }
+
+            private void deliver(String text, PartialResponseContext context) {
+                if (context != null) {
+                    delegate.onPartialResponse(new PartialResponse(text), context);
+                } else {
+                    delegate.onPartialResponse(text);
+                }
+            }
+        };
+    }
+
+    private int transition(int state, char c) {
+        int low = edgeStart[state];
+        int high = edgeStart[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char key = edgeChars[mid];
+            if (key < c) {
+                low = mid + 1;
+            } else if (key > c) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    private int step(int state, char c) {
+        while (true) {
+            int next = transition(state, c);
+            if (next >= 0) {
+                return next;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    private static void addTerm(Set<String> terms, String term) {
+        String normalized = term.strip().toLowerCase(Locale.ROOT);
+        if (!normalized.isEmpty() && !normalized.startsWith("#")) {
+            terms.add(normalized);
+        }
+    }
+
+    private static List<String> loadTerms(String location) {
+        if (location == null || location.isBlank()) {
+            return List.of();
+        }
+        Resource resource = new DefaultResourceLoader().getResource(location);
+        if (!resource.exists()) {
+            System.out.println("输出审核词表不存在，忽略: " + location);
+            return List.of();
+        }
+        try {
+            return resource.getContentAsString(StandardCharsets.UTF_8).lines().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取输出审核词表失败: " + location, e);
+        }
+    }
+
+    /**
+     * 一个流的匹配状态：自动机当前状态和暂缓下发的尾部字符，回调按顺序执行，不需要同步
+     */
+    public class Scanner {
+
+        private int state;
+        private final StringBuilder held = new StringBuilder();
+        private boolean blocked;
+
+        /**
+         * 输入一个增量，返回可以下发的文本（可能为空）；命中时返回空字符串，之后 {@link #isBlocked()} 为 true
+         */
+        public String scan(String fragment) {
+            if (blocked) {
+                return "";
+            }
+            for (int i = 0; i < fragment.length(); i++) {
+                state = step(state, Character.toLowerCase(fragment.charAt(i)));
+                if (match[state] >= 0) {
+                    blocked = true;
+                    held.setLength(0);
+                    OutputGuard.this.blocked.increment();
+                    System.out.println("\n输出审核命中，已停止生成: " + terms[match[state]]);
+                    return "";
+                }
+            }
+            held.append(fragment);
+            // 尾部 depth 个字符仍可能是敏感词的开头
+            int releasable = held.length() - depth[state];
+            if (releasable <= 0) {
+                return "";
+            }
+            String released = held.substring(0, releasable);
+            held.delete(0, releasable);
+            return released;
+        }
+
+        /**
+         * 生成正常结束：剩余的暂缓字符不可能再构成敏感词，全部返回
+         */
+        public String flush() {
+            String rest = held.toString();
+            held.setLength(0);
+            return rest;
+        }
+
+        public boolean isBlocked() {
+            return blocked;
+        }
+
+    }
+
+}
@@ -0,0 +1,244 @@
+package io.github.susamlu.langchain4j.responsestreaming.resumable;
+
+import io.github.susamlu.langchain4j.responsestreaming.sse.DirectSseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 可续传的流：一次模型生成对应一个实例，与客户端连接解耦
+ * <p>
+ * 每个事件分配单调递增的 ID（即 SSE 的 id 字段），最近的事件保存在有界环形缓冲区中。
+ * 客户端断线重连时携带 Last-Event-ID，只补发缺失的事件，然后继续接收实时事件，不会重新触发模型生成。
+ */
+public class ResumableStream {
+
+    private final String streamId;
+    private final StreamEvent[] ring;
+    private final List<SseEmitter> subscribers = new ArrayList<>();
+    private final List<Runnable> finishListeners = new ArrayList<>();
+    private final List<Consumer<StreamEvent>> eventListeners = new ArrayList<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    // 下一个事件的 ID，从 1 开始
+    private long nextEventId = 1;
+    private boolean finished;
+    private volatile long lastActivityMillis = System.currentTimeMillis();
+
+    public ResumableStream(String streamId, int bufferSize) {
+        this.streamId = streamId;
+        this.ring = new StreamEvent[bufferSize];
+    }
+
+    public String getStreamId() {
+        return streamId;
+    }
+
+    /**
+     * 标记生成已启动，只有第一次调用返回 true
+     */
+    public boolean tryStart() {
+        return started.compareAndSet(false, true);
+    }
+
+    /**
+     * 追加一个事件，并推送给当前所有已连接的客户端；流结束后追加的事件会被忽略
+     */
+    public synchronized StreamEvent append(String name, String data) {
+        if (finished) {
+            return null;
+        }
+        StreamEvent event = new StreamEvent(nextEventId++, name, data);
+        ring[(int) ((event.id() - 1) % ring.length)] = event;
+        lastActivityMillis = System.currentTimeMillis();
+
+        for (SseEmitter subscriber : new ArrayList<>(subscribers)) {
+            send(subscriber, event);
+        }
+        eventListeners.forEach(listener -> listener.accept(event));
+        return event;
+    }
+
+    /**
+     * 追加最后一个事件并结束流，已连接的客户端随之关闭
+     */
+    public synchronized void finish(String name, String data) {
+        if (finished) {
+            return;
+        }
+        append(name, data);
+        finished = true;
+        subscribers.forEach(SseEmitter::complete);
+        subscribers.clear();
+        notifyFinished();
+    }
+
+    /**
+     * 直接结束流，不追加事件（例如用户主动取消）
+     */
+    public synchronized void close() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        lastActivityMillis = System.currentTimeMillis();
+        subscribers.forEach(SseEmitter::complete);
+        subscribers.clear();
+        notifyFinished();
+    }
+
+    /**
+     * 以错误结束流：先追加 failure 事件（重连的客户端也能收到），再以错误关闭当前连接
+     */
+    public synchronized void fail(Throwable error) {
+        if (finished) {
+            return;
+        }
+        append("failure", error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName());
+        finished = true;
+        subscribers.forEach(subscriber -> subscriber.completeWithError(error));
+        subscribers.clear();
+        notifyFinished();
+    }
+
+    /**
+     * 注册流结束（完成、关闭或失败）时的回调，例如释放准入许可；流已结束时立即执行
+     */
+    public synchronized void onFinished(Runnable listener) {
+        if (finished) {
+            listener.run();
+        } else {
+            finishListeners.add(listener);
+        }
+    }
+
+    /**
+     * 注册事件回调（例如转发到其他节点），在事件推送给已连接的客户端之后按顺序调用；只收到注册之后追加的事件
+     */
+    public synchronized void onEvent(Consumer<StreamEvent> listener) {
+        eventListeners.add(listener);
+    }
+
+    /**
+     * 接入一个客户端连接：先补发 lastEventId 之后的事件，再加入实时订阅
+     *
+     * @return false 表示缺失的事件已被环形缓冲区淘汰，无法续传
+     */
+    public synchronized boolean attach(SseEmitter emitter, long lastEventId) {
+        if (lastEventId + 1 < firstRetainedEventId()) {
+            return false;
+        }
+        lastActivityMillis = System.currentTimeMillis();
+
+        for (long id = lastEventId + 1; id < nextEventId; id++) {
+            if (!send(emitter, ring[(int) ((id - 1) % ring.length)])) {
+                return true;
+            }
+        }
+
+        if (finished) {
+            // 流已结束：补发完毕后正常关闭，避免浏览器因连接异常而反复重连
+            emitter.complete();
+        } else {
+            subscribers.add(emitter);
+        }
+        return true;
+    }
+
+    /**
+     * 客户端连接断开（完成、超时或出错）时移除订阅，生成不受影响
+     */
+    public synchronized void detach(SseEmitter emitter) {
+        subscribers.remove(emitter);
+        lastActivityMillis = System.currentTimeMillis();
+    }
+
+    public synchronized int subscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * 已追加的事件数
+     */
+    public synchronized long eventCount() {
+        return nextEventId - 1;
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    public long getLastActivityMillis() {
+        return lastActivityMillis;
+    }
+
+    /**
+     * 解析 Last-Event-ID 请求头，缺失或非法时视为从头开始
+     */
+    public static long parseLastEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 通知客户端无法续传（缺失的事件已被淘汰）
+     */
+    public static void sendExpired(SseEmitter emitter) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name("expired")
+                    .data("续传窗口已过期，请重新发起请求"));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * 把事件写给一个客户端连接，事件 ID 即 SSE 的 id 字段
+     */
+    public static void write(SseEmitter emitter, StreamEvent event) throws IOException {
+        if (emitter instanceof DirectSseEmitter directEmitter) {
+            // 直接编码写出，不经过事件构建器和消息转换器
+            directEmitter.send(event.id(), event.name(), event.data());
+        } else {
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(event.id()))
+                    .name(event.name())
+                    .data(event.data()));
+        }
+    }
+
+    private void notifyFinished() {
+        finishListeners.forEach(Runnable::run);
+        finishListeners.clear();
+    }
+
+    // 环形缓冲区中最早仍保留的事件 ID
+    private long firstRetainedEventId() {
+        return Math.max(1, nextEventId - ring.length);
+    }
+
+    private boolean send(SseEmitter emitter, StreamEvent event) {
+        try {
+            write(emitter, event);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // 连接已断开：只移除该订阅者，等待客户端重连
+            subscribers.remove(emitter);
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+}
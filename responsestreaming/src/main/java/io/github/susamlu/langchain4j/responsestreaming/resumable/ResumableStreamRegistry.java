@@ -0,0 +1,64 @@
+package io.github.susamlu.langchain4j.responsestreaming.resumable;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 可续传流注册表：按请求 ID 保存进行中和刚结束的流
+ * 超过 TTL 没有任何活动的流会被定时清理
+ */
+@Component
+public class ResumableStreamRegistry {
+
+    private final Map<String, ResumableStream> streams = new ConcurrentHashMap<>();
+    private final int bufferSize;
+    private final Duration ttl;
+    private final ScheduledExecutorService sweeper;
+
+    public ResumableStreamRegistry(@Value("${streaming.resume.buffer-size:1024}") int bufferSize,
+                                   @Value("${streaming.resume.ttl:5m}") Duration ttl) {
+        this.bufferSize = bufferSize;
+        this.ttl = ttl;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "resumable-stream-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, ttl.toMillis() / 2);
+        sweeper.scheduleAtFixedRate(this::evictExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public ResumableStream get(String streamId) {
+        return streams.get(streamId);
+    }
+
+    /**
+     * 获取已有的流，不存在时创建；调用方通过 {@link ResumableStream#tryStart()} 保证同一个流只启动一次生成
+     */
+    public ResumableStream open(String streamId) {
+        return streams.computeIfAbsent(streamId, id -> new ResumableStream(id, bufferSize));
+    }
+
+    public void remove(String streamId) {
+        streams.remove(streamId);
+    }
+
+    void evictExpired() {
+        long deadline = System.currentTimeMillis() - ttl.toMillis();
+        streams.values().removeIf(stream -> stream.getLastActivityMillis() < deadline);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+}
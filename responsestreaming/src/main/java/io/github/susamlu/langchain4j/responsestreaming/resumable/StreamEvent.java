@@ -0,0 +1,11 @@
+package io.github.susamlu.langchain4j.responsestreaming.resumable;
+
+/**
+ * 流中的一个 SSE 事件
+ *
+ * @param id   单调递增的事件 ID，对应 SSE 的 id 字段
+ * @param name 事件名称，对应 SSE 的 event 字段
+ * @param data 事件数据
+ */
+public record StreamEvent(long id, String name, String data) {
+}
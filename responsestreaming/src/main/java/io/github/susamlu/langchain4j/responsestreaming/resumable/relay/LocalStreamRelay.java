@@ -0,0 +1,29 @@
+package io.github.susamlu.langchain4j.responsestreaming.resumable.relay;
+
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStream;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * 单实例部署：所有流都在本节点生成，没有可中继的事件
+ */
+public class LocalStreamRelay implements StreamRelay {
+
+    @Override
+    public boolean claim(String streamId) {
+        return true;
+    }
+
+    @Override
+    public void release(String streamId) {
+    }
+
+    @Override
+    public void publish(ResumableStream stream) {
+    }
+
+    @Override
+    public void tail(String streamId, SseEmitter emitter, long lastEventId) {
+        ResumableStream.sendExpired(emitter);
+    }
+
+}
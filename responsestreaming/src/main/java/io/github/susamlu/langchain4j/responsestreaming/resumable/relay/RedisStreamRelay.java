@@ -0,0 +1,280 @@
+package io.github.susamlu.langchain4j.responsestreaming.resumable.relay;
+
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStream;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.StreamEvent;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.params.XReadParams;
+import redis.clients.jedis.resps.StreamEntry;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Redis Streams 的流中继，适用于多实例部署
+ * <ul>
+ *     <li>生成节点把每个事件追加到该请求的 Redis Stream（{keyPrefix}{streamId}），条目 ID 为 {事件 ID}-0，
+ *     与 SSE 的 id 字段一一对应；流结束时追加一个 end 条目。每次追加都刷新过期时间（ttl）</li>
+ *     <li>追加由后台线程批量以 pipeline 写入，生成的回调线程不等待 Redis</li>
+ *     <li>生成前用 SET NX 声明归属（{keyPrefix}{streamId}:owner，同样有 ttl），同一个请求 ID 只会生成一次；
+ *     重连到其他节点时声明失败，改为从中继续传</li>
+ *     <li>所有续传连接由一个后台线程用 XREAD BLOCK 一次读取多个流，按 Last-Event-ID 推送给各自的客户端</li>
+ * </ul>
+ * Redis 不可用时声明视为成功，退化为只在本节点生成和续传
+ */
+public class RedisStreamRelay implements StreamRelay, AutoCloseable {
+
+    // 每次 XREAD 最长阻塞时间，也是新接入的续传连接最长等待被轮询的时间
+    private static final int POLL_BLOCK_MILLIS = 200;
+    private static final int POLL_COUNT = 256;
+    private static final int WRITE_BATCH = 256;
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+
+    private final JedisPool jedisPool;
+    private final String keyPrefix;
+    private final Duration ttl;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final BlockingQueue<Append> appends = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Tail> newTails = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final Thread poller;
+    private volatile boolean closed;
+
+    public RedisStreamRelay(String host, int port, String keyPrefix, Duration ttl) {
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        // 写入线程和轮询线程各占一个连接，其余用于声明归属
+        poolConfig.setMaxTotal(8);
+        poolConfig.setMaxIdle(4);
+        this.jedisPool = new JedisPool(poolConfig, host, port);
+        this.keyPrefix = keyPrefix;
+        this.ttl = ttl;
+
+        this.writer = new Thread(this::writeLoop, "redis-relay-writer");
+        writer.setDaemon(true);
+        writer.start();
+        this.poller = new Thread(this::pollLoop, "redis-relay-poller");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    @Override
+    public boolean claim(String streamId) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            return "OK".equals(jedis.set(ownerKey(streamId), nodeId, SetParams.setParams().nx().px(ttl.toMillis())));
+        } catch (JedisException e) {
+            System.out.println("声明流归属失败，仅在本节点生成: " + streamId + ", 错误: " + e.getMessage());
+            return true;
+        }
+    }
+
+    @Override
+    public void release(String streamId) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            if (nodeId.equals(jedis.get(ownerKey(streamId)))) {
+                jedis.del(ownerKey(streamId));
+            }
+        } catch (JedisException e) {
+            System.out.println("释放流归属失败: " + streamId + ", 错误: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void publish(ResumableStream stream) {
+        String streamId = stream.getStreamId();
+        long[] lastEventId = {0};
+        stream.onEvent(event -> {
+            lastEventId[0] = event.id();
+            appends.add(new Append(streamId, event.id(), Map.of("name", event.name(), "data", event.data())));
+        });
+        // 结束标记紧跟在最后一个事件之后；回调都在流的锁内执行，读写 lastEventId 不需要额外同步
+        stream.onFinished(() -> appends.add(new Append(streamId, lastEventId[0] + 1, Map.of("end", "1"))));
+    }
+
+    @Override
+    public void tail(String streamId, SseEmitter emitter, long lastEventId) {
+        Tail tail = new Tail(streamKey(streamId), emitter, lastEventId);
+        emitter.onCompletion(() -> tail.closed = true);
+        emitter.onTimeout(() -> tail.closed = true);
+        emitter.onError(throwable -> tail.closed = true);
+        System.out.println("\n--- 从中继续传: " + streamId + ", Last-Event-ID: " + lastEventId + " ---");
+        newTails.add(tail);
+    }
+
+    private void writeLoop() {
+        List<Append> batch = new ArrayList<>(WRITE_BATCH);
+        while (!closed) {
+            try {
+                batch.add(appends.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            appends.drainTo(batch, WRITE_BATCH - 1);
+
+            try (Jedis jedis = jedisPool.getResource()) {
+                Pipeline pipeline = jedis.pipelined();
+                Set<String> streamIds = new HashSet<>();
+                for (Append append : batch) {
+                    pipeline.xadd(streamKey(append.streamId), new StreamEntryID(append.eventId, 0), append.fields);
+                    streamIds.add(append.streamId);
+                }
+                for (String streamId : streamIds) {
+                    pipeline.pexpire(streamKey(streamId), ttl.toMillis());
+                    pipeline.pexpire(ownerKey(streamId), ttl.toMillis());
+                }
+                pipeline.sync();
+            } catch (JedisException e) {
+                // 写入失败的事件不再重试：本节点的续传不受影响，其他节点的续传会等到连接超时
+                System.out.println("写入中继失败，丢弃 " + batch.size() + " 个事件: " + e.getMessage());
+                sleepBeforeRetry();
+            }
+            batch.clear();
+        }
+    }
+
+    private void pollLoop() {
+        Map<String, List<Tail>> tails = new LinkedHashMap<>();
+        while (!closed) {
+            try {
+                acceptNewTails(tails);
+                if (tails.isEmpty()) {
+                    Tail tail = newTails.poll(POLL_BLOCK_MILLIS, TimeUnit.MILLISECONDS);
+                    if (tail != null) {
+                        tails.computeIfAbsent(tail.key, key -> new ArrayList<>()).add(tail);
+                    }
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            // 同一个流有多个续传连接时从最小的 Last-Event-ID 读起，各连接再跳过已收到的事件
+            Map<String, StreamEntryID> from = new HashMap<>();
+            tails.forEach((key, list) -> from.put(key,
+                    new StreamEntryID(list.stream().mapToLong(tail -> tail.lastEventId).min().orElse(0), 0)));
+            try (Jedis jedis = jedisPool.getResource()) {
+                List<Map.Entry<String, List<StreamEntry>>> result = jedis.xread(
+                        XReadParams.xReadParams().block(POLL_BLOCK_MILLIS).count(POLL_COUNT), from);
+                if (result != null) {
+                    for (Map.Entry<String, List<StreamEntry>> entries : result) {
+                        List<Tail> list = tails.get(entries.getKey());
+                        if (list != null) {
+                            list.forEach(tail -> deliver(tail, entries.getValue()));
+                        }
+                    }
+                }
+            } catch (JedisException e) {
+                if (closed) {
+                    break;
+                }
+                System.out.println("读取中继失败，稍后重试: " + e.getMessage());
+                sleepBeforeRetry();
+            }
+        }
+        // 关闭时结束所有续传连接，客户端会带着 Last-Event-ID 重连到其他节点
+        tails.values().forEach(list -> list.forEach(tail -> tail.emitter.complete()));
+    }
+
+    private void acceptNewTails(Map<String, List<Tail>> tails) {
+        Tail tail;
+        while ((tail = newTails.poll()) != null) {
+            tails.computeIfAbsent(tail.key, key -> new ArrayList<>()).add(tail);
+        }
+        for (Iterator<List<Tail>> iterator = tails.values().iterator(); iterator.hasNext(); ) {
+            List<Tail> list = iterator.next();
+            list.removeIf(t -> t.closed);
+            if (list.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void deliver(Tail tail, List<StreamEntry> entries) {
+        for (StreamEntry entry : entries) {
+            if (tail.closed) {
+                return;
+            }
+            long eventId = entry.getID().getTime();
+            if (eventId <= tail.lastEventId) {
+                continue;
+            }
+            Map<String, String> fields = entry.getFields();
+            if (fields.containsKey("end")) {
+                tail.closed = true;
+                tail.emitter.complete();
+                return;
+            }
+            try {
+                ResumableStream.write(tail.emitter, new StreamEvent(eventId, fields.get("name"), fields.get("data")));
+                tail.lastEventId = eventId;
+            } catch (IOException | IllegalStateException e) {
+                // 连接已断开：等待客户端再次重连
+                tail.closed = true;
+                tail.emitter.completeWithError(e);
+                return;
+            }
+        }
+    }
+
+    private void sleepBeforeRetry() {
+        try {
+            Thread.sleep(RETRY_DELAY.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String streamKey(String streamId) {
+        return keyPrefix + streamId;
+    }
+
+    private String ownerKey(String streamId) {
+        return keyPrefix + streamId + ":owner";
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        writer.interrupt();
+        poller.interrupt();
+        jedisPool.close();
+    }
+
+    // 待写入中继的一个条目
+    private record Append(String streamId, long eventId, Map<String, String> fields) {
+    }
+
+    // 一个从中继续传的客户端连接，只由轮询线程读写 lastEventId
+    private static class Tail {
+
+        private final String key;
+        private final SseEmitter emitter;
+        private long lastEventId;
+        private volatile boolean closed;
+
+        Tail(String key, SseEmitter emitter, long lastEventId) {
+            this.key = key;
+            this.emitter = emitter;
+            this.lastEventId = lastEventId;
+        }
+
+    }
+
+}
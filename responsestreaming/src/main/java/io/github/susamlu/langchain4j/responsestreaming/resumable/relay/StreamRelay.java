@@ -0,0 +1,35 @@
+package io.github.susamlu.langchain4j.responsestreaming.resumable.relay;
+
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStream;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * 跨节点的流中继：客户端经负载均衡重连到其他节点时，由该节点从中继读取事件续传，而不是重新生成
+ * <p>
+ * 实现：{@link LocalStreamRelay}（单实例，不中继）、{@link RedisStreamRelay}（多实例，基于 Redis Streams）
+ */
+public interface StreamRelay {
+
+    /**
+     * 声明由本节点生成该流
+     *
+     * @return false 表示已有节点生成过（进行中或刚结束），调用方应通过 {@link #tail} 续传
+     */
+    boolean claim(String streamId);
+
+    /**
+     * 放弃声明（例如未被准入），同一个请求 ID 可以重新发起生成
+     */
+    void release(String streamId);
+
+    /**
+     * 把本节点生成的流的事件写入中继，应在生成启动前调用
+     */
+    void publish(ResumableStream stream);
+
+    /**
+     * 从中继读取 lastEventId 之后的事件推送给客户端，流结束时关闭连接
+     */
+    void tail(String streamId, SseEmitter emitter, long lastEventId);
+
+}
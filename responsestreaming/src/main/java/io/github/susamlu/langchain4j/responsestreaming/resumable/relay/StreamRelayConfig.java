@@ -0,0 +1,32 @@
+package io.github.susamlu.langchain4j.responsestreaming.resumable.relay;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 流中继配置：streaming.resume.relay=local（默认，单实例）或 redis（多实例，重连到任意节点都能续传）
+ */
+@Configuration
+public class StreamRelayConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "streaming.resume.relay", havingValue = "local", matchIfMissing = true)
+    public StreamRelay localStreamRelay() {
+        return new LocalStreamRelay();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "streaming.resume.relay", havingValue = "redis")
+    public StreamRelay redisStreamRelay(
+            @Value("${streaming.resume.redis.host:localhost}") String host,
+            @Value("${streaming.resume.redis.port:6379}") int port,
+            @Value("${streaming.resume.redis.key-prefix:langchain4j:streaming:relay:}") String keyPrefix,
+            @Value("${streaming.resume.redis.ttl:2m}") Duration ttl) {
+        return new RedisStreamRelay(host, port, keyPrefix, ttl);
+    }
+
+}
@@ -0,0 +1,153 @@
+package io.github.susamlu.langchain4j.responsestreaming.singleflight;
+
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 相同请求的流式生成合并（single-flight）
+ * <p>
+ * 按「规范化后的提示词 + 模型参数」分组：第一个请求发起唯一一次上游调用，
+ * 之后相同的请求作为订阅者加入，并从第一个事件开始收到完整的事件序列。
+ * 只有最后一个订阅者离开时才取消上游生成。
+ */
+@Component
+public class SingleFlightStreams {
+
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final int bufferSize;
+
+    public SingleFlightStreams(@Value("${streaming.resume.buffer-size:1024}") int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * 计算分组键：提示词做 Unicode 规范化并合并空白字符，再与模型参数一起取 SHA-256
+     */
+    public static String key(String message, ChatRequestParameters parameters) {
+        String normalized = Normalizer.normalize(message, Normalizer.Form.NFKC)
+                .strip()
+                .replaceAll("\\s+", " ");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(parameters).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 加入（或发起）一次生成，并把 emitter 接入流；调用方通过 {@link ResumableStream#tryStart()} 判断是否需要启动生成
+     *
+     * @return 无法接入时返回 null：请求的起点已被环形缓冲区淘汰，或者是续传（lastEventId > 0）
+     * 但原来的生成已结束、已取消或已被替换。续传不会发起新的生成，否则客户端会从 id 1 起重复收到内容
+     */
+    public Flight join(String key, SseEmitter emitter, long lastEventId) {
+        Flight[] joined = new Flight[1];
+        // 在 compute 中接入，与 leave 中「最后一个订阅者离开」的判断互斥
+        inFlight.compute(key, (k, flight) -> {
+            if (flight == null || flight.cancelled) {
+                if (lastEventId > 0) {
+                    return flight;
+                }
+                flight = new Flight(k, new ResumableStream("single-flight:" + k, bufferSize));
+            }
+            if (flight.stream.attach(emitter, lastEventId)) {
+                joined[0] = flight;
+            }
+            return flight;
+        });
+        return joined[0];
+    }
+
+    /**
+     * 订阅者离开；若已没有订阅者且生成尚未结束，则取消上游生成
+     */
+    public void leave(Flight flight, SseEmitter emitter) {
+        flight.stream.detach(emitter);
+
+        boolean[] abandoned = new boolean[1];
+        inFlight.computeIfPresent(flight.key, (k, current) -> {
+            if (current == flight && flight.stream.subscriberCount() == 0 && !flight.stream.isFinished()) {
+                abandoned[0] = true;
+                return null;
+            }
+            return current;
+        });
+
+        if (abandoned[0]) {
+            System.out.println("最后一个订阅者已离开，取消上游生成: " + flight.key);
+            flight.cancel();
+        }
+    }
+
+    /**
+     * 生成结束（完成或失败）后移除分组，之后相同的请求会发起新的生成
+     */
+    public void complete(Flight flight) {
+        inFlight.remove(flight.key, flight);
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * 一次共享的上游生成
+     */
+    public static class Flight {
+
+        private final String key;
+        private final ResumableStream stream;
+        private final AtomicReference<StreamingHandle> streamingHandle = new AtomicReference<>();
+        private volatile boolean cancelled;
+
+        Flight(String key, ResumableStream stream) {
+            this.key = key;
+            this.stream = stream;
+        }
+
+        public ResumableStream stream() {
+            return stream;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * 记录上游的 StreamingHandle；若在第一个 token 到达前已被取消，则立即取消上游
+         */
+        public void bindStreamingHandle(StreamingHandle handle) {
+            if (streamingHandle.compareAndSet(null, handle) && cancelled) {
+                handle.cancel();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            StreamingHandle handle = streamingHandle.get();
+            if (handle != null) {
+                handle.cancel();
+            }
+            stream.close();
+        }
+
+    }
+
+}
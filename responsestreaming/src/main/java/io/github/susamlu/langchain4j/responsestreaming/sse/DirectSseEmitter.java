@@ -0,0 +1,358 @@
+package io.github.susamlu.langchain4j.responsestreaming.sse;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 直接写 Servlet 输出流的 SseEmitter
+ * <p>
+ * SseEmitter 每发送一个事件都要创建事件构建器、拼接字符串，再经过 HttpMessageConverter 链写出，
+ * 对只有几个字节的 token 来说开销远大于数据本身。本类把事件直接编码为 UTF-8 写入每个连接复用的缓冲区，
+ * 事件前缀（event:name、data: 等）预先编码，再按 {@link SseFlushPolicy} 写出并刷新到输出流。
+ * 线上格式与 {@code SseEmitter.event().id(..).name(..).data(..)} 完全一致：
+ * {@code id:N\nevent:name\ndata:text\n\n}，数据中的换行符替换为 {@code \ndata:}。
+ * <p>
+ * 控制器返回前（例如续传补发）和异步请求开始前发送的事件先留在缓冲区，开始后按顺序写出；
+ * 在此之前结束时把缓冲的字节交给 SseEmitter 原有的发送流程。
+ * 通过 {@code send(SseEventBuilder)} 等父类方法发送事件仍然可用，但之后的事件都改走父类流程，保证顺序。
+ */
+public class DirectSseEmitter extends SseEmitter {
+
+    private static final byte[] ID_PREFIX = utf8("id:");
+    private static final byte[] DATA_NEWLINE = utf8("\ndata:");
+    private static final byte[] EVENT_END = utf8("\n\n");
+
+    // 事件名称只有少数几个，"\nevent:name\ndata:" 编码一次后复用
+    private static final Map<String, byte[]> EVENT_PREFIXES = new ConcurrentHashMap<>();
+
+    // 按 maxDelay 刷新缓冲区的后台线程，所有连接共用
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "sse-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 异步请求开始前等待的重试间隔
+    private static final long NOT_READY_RETRY_MILLIS = 10;
+
+    private final SseFlushPolicy flushPolicy;
+
+    // 以下字段都由 writeLock 保护
+    private byte[] buffer = new byte[256];
+    private int length;
+    private ServerHttpResponse response;
+    private HttpServletRequest request;
+    private OutputStream out;
+    private ScheduledFuture<?> scheduledFlush;
+    // 已经通过父类流程发送过数据，之后的事件也必须走父类流程
+    private boolean delegated;
+    private boolean completed;
+
+    // 连接已结束（完成、超时或出错），不能再写输出流
+    private volatile boolean closed;
+
+    public DirectSseEmitter(Long timeout) {
+        this(timeout, SseFlushPolicy.IMMEDIATE);
+    }
+
+    public DirectSseEmitter(Long timeout, SseFlushPolicy flushPolicy) {
+        super(timeout);
+        this.flushPolicy = flushPolicy;
+        onCompletion(this::close);
+        onTimeout(this::close);
+        onError(throwable -> close());
+    }
+
+    /**
+     * 发送一个事件，格式与 {@code SseEmitter.event().id(id).name(name).data(data)} 相同
+     *
+     * @throws IOException           写出失败（通常是客户端已断开）
+     * @throws IllegalStateException 已经结束
+     */
+    public void send(long id, String name, String data) throws IOException {
+        writeLock.lock();
+        try {
+            if (completed || closed) {
+                throw new IllegalStateException("DirectSseEmitter has already completed");
+            }
+            int start = length;
+            encode(id, name, data);
+            if (delegated) {
+                byte[] event = Arrays.copyOfRange(buffer, start, length);
+                length = start;
+                super.send(Set.of(new DataWithMediaType(event, MediaType.TEXT_EVENT_STREAM)));
+            } else if (flushPolicy.shouldFlush(length, name)) {
+                flushBuffer();
+            } else {
+                scheduleFlush(flushPolicy.maxDelay().toMillis());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 父类的发送方法：先写出缓冲区中更早的事件，之后的事件都改走父类流程
+     */
+    @Override
+    public void send(SseEventBuilder builder) throws IOException {
+        writeLock.lock();
+        try {
+            delegate();
+            super.send(builder);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void send(Set<DataWithMediaType> items) throws IOException {
+        writeLock.lock();
+        try {
+            delegate();
+            super.send(items);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void complete() {
+        writeLock.lock();
+        try {
+            drainOnCompletion();
+        } finally {
+            writeLock.unlock();
+        }
+        super.complete();
+    }
+
+    @Override
+    public void completeWithError(Throwable ex) {
+        writeLock.lock();
+        try {
+            drainOnCompletion();
+        } finally {
+            writeLock.unlock();
+        }
+        super.completeWithError(ex);
+    }
+
+    /**
+     * 记录响应对象（此时响应头已确定），输出流在异步请求开始后才打开
+     */
+    @Override
+    protected void extendResponse(ServerHttpResponse outputMessage) {
+        super.extendResponse(outputMessage);
+        writeLock.lock();
+        try {
+            response = outputMessage;
+            RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+            if (attributes instanceof ServletRequestAttributes servletAttributes) {
+                request = servletAttributes.getRequest();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 异步请求已开始，可以从任意线程写输出流
+    private boolean ready() throws IOException {
+        if (out != null) {
+            return true;
+        }
+        if (response == null || (request != null && !request.isAsyncStarted())) {
+            return false;
+        }
+        // 第一次取输出流时写出响应头
+        out = response.getBody();
+        return true;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (length == 0) {
+            return;
+        }
+        if (!ready()) {
+            scheduleFlush(NOT_READY_RETRY_MILLIS);
+            return;
+        }
+        cancelScheduledFlush();
+        int bytes = length;
+        length = 0;
+        out.write(buffer, 0, bytes);
+        out.flush();
+    }
+
+    private void scheduleFlush(long delayMillis) {
+        if (scheduledFlush == null || scheduledFlush.isDone()) {
+            scheduledFlush = FLUSHER.schedule(this::scheduledFlush, Math.max(1, delayMillis), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void scheduledFlush() {
+        writeLock.lock();
+        try {
+            scheduledFlush = null;
+            if (completed || closed || delegated) {
+                return;
+            }
+            flushBuffer();
+        } catch (IOException e) {
+            // 写出失败说明连接已断开，由下一次发送报告错误
+            closed = true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    private void drainOnCompletion() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        cancelScheduledFlush();
+        if (length == 0 || closed || delegated) {
+            return;
+        }
+        try {
+            if (ready()) {
+                flushBuffer();
+            } else {
+                // 异步请求尚未开始：交给父类，由它在开始后先写出缓冲的事件再结束
+                handOverBuffer();
+            }
+        } catch (IOException e) {
+            // 连接已断开，剩余事件无法送达
+            length = 0;
+        }
+    }
+
+    private void delegate() throws IOException {
+        if (delegated) {
+            return;
+        }
+        if (length > 0 && ready()) {
+            flushBuffer();
+        }
+        delegated = true;
+        if (length > 0) {
+            handOverBuffer();
+        }
+    }
+
+    private void handOverBuffer() throws IOException {
+        byte[] pending = Arrays.copyOf(buffer, length);
+        length = 0;
+        super.send(Set.of(new DataWithMediaType(pending, MediaType.TEXT_EVENT_STREAM)));
+    }
+
+    private void close() {
+        closed = true;
+        writeLock.lock();
+        try {
+            cancelScheduledFlush();
+            length = 0;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void encode(long id, String name, String data) {
+        write(ID_PREFIX);
+        writeDecimal(id);
+        write(EVENT_PREFIXES.computeIfAbsent(name, n -> utf8("\nevent:" + n + "\ndata:")));
+        writeUtf8(data);
+        write(EVENT_END);
+    }
+
+    private void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void writeDecimal(long value) {
+        if (value < 0) {
+            // 事件 ID 不会是负数，按字符串写出以保持格式一致
+            writeUtf8(Long.toString(value));
+            return;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    // 与 String.getBytes(UTF_8) 相同：不成对的代理字符写为 '?'；换行符后接 "data:"，与 SseEmitter 的处理一致
+    private void writeUtf8(String text) {
+        int n = text.length();
+        // 每个字符最多 3 个字节（代理对 2 个字符共 4 个字节），换行符另加 "data:" 5 个字节
+        ensureCapacity(n * 3);
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                write(DATA_NEWLINE);
+                ensureCapacity((n - i) * 3);
+            } else if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[length++] = '?';
+            } else {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
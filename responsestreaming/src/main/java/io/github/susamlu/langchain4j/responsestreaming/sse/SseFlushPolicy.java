@@ -0,0 +1,43 @@
+package io.github.susamlu.langchain4j.responsestreaming.sse;
+
+import java.time.Duration;
+
+/**
+ * SSE 事件的合并刷新策略
+ * <ul>
+ *     <li>message 事件写入连接缓冲区，累计达到 flushBytes 时刷新一次，减少 flush 和 TCP 小包的次数</li>
+ *     <li>缓冲区中最早的未刷新事件最多等待 maxDelay，之后由后台线程刷新，避免最后几个 token 卡在缓冲区</li>
+ *     <li>其他事件（complete、failure、expired 等）总是立即刷新</li>
+ * </ul>
+ * flushBytes 为 0 时每个事件都立即刷新，与 SseEmitter 的行为一致
+ *
+ * @param flushBytes 触发刷新的缓冲字节数
+ * @param maxDelay   未刷新事件的最长等待时间
+ */
+public record SseFlushPolicy(int flushBytes, Duration maxDelay) {
+
+    /**
+     * 每个事件立即刷新
+     */
+    public static final SseFlushPolicy IMMEDIATE = new SseFlushPolicy(0, Duration.ZERO);
+
+    public SseFlushPolicy {
+        if (flushBytes < 0) {
+            throw new IllegalArgumentException("flushBytes 不能为负数: " + flushBytes);
+        }
+        if (maxDelay == null || maxDelay.isNegative()) {
+            throw new IllegalArgumentException("maxDelay 不能为负数: " + maxDelay);
+        }
+    }
+
+    /**
+     * 写入一个事件后是否立即刷新
+     *
+     * @param bufferedBytes 缓冲区中未刷新的字节数（含刚写入的事件）
+     * @param eventName     刚写入的事件名称
+     */
+    public boolean shouldFlush(int bufferedBytes, String eventName) {
+        return bufferedBytes >= flushBytes || maxDelay.isZero() || !"message".equals(eventName);
+    }
+
+}
@@ -0,0 +1,169 @@
+package io.github.susamlu.langchain4j.responsestreaming.sse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 对比 SseEmitter 与 DirectSseEmitter 发送 token 事件：每个 token 在发送线程上分配的字节数与 CPU 时间
+ * <p>
+ * SseEmitter 一侧按 Spring MVC 的处理方式写出：构建事件，再对每段数据依次查找可写的 HttpMessageConverter 写出并刷新；
+ * 两侧都写到丢弃数据的响应，只统计编码和写出本身的开销，并核对两侧写出的字节数相同
+ */
+public class SseWriterBenchmark {
+
+    private static final int TOKENS = 1000;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURE_ROUNDS = 200;
+
+    public static void main(String[] args) throws IOException {
+        List<String> tokens = sampleTokens();
+        List<HttpMessageConverter<?>> converters = List.of(new ByteArrayHttpMessageConverter(),
+                new StringHttpMessageConverter(StandardCharsets.UTF_8), new MappingJackson2HttpMessageConverter());
+        DiscardingResponse springResponse = new DiscardingResponse();
+        DiscardingResponse directResponse = new DiscardingResponse();
+        DirectSseEmitter directEmitter = new DirectSseEmitter(0L);
+        directEmitter.extendResponse(directResponse);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sendWithSseEmitter(tokens, converters, springResponse);
+            sendDirect(tokens, directEmitter);
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        springResponse.bytes = 0;
+        long allocated = threadMXBean.getCurrentThreadAllocatedBytes();
+        long cpu = threadMXBean.getCurrentThreadCpuTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            sendWithSseEmitter(tokens, converters, springResponse);
+        }
+        long springCpuNanos = (threadMXBean.getCurrentThreadCpuTime() - cpu) / MEASURE_ROUNDS;
+        long springAllocated = (threadMXBean.getCurrentThreadAllocatedBytes() - allocated) / MEASURE_ROUNDS;
+
+        directResponse.bytes = 0;
+        allocated = threadMXBean.getCurrentThreadAllocatedBytes();
+        cpu = threadMXBean.getCurrentThreadCpuTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            sendDirect(tokens, directEmitter);
+        }
+        long directCpuNanos = (threadMXBean.getCurrentThreadCpuTime() - cpu) / MEASURE_ROUNDS;
+        long directAllocated = (threadMXBean.getCurrentThreadAllocatedBytes() - allocated) / MEASURE_ROUNDS;
+
+        if (springResponse.bytes != directResponse.bytes) {
+            throw new IllegalStateException("两侧写出的字节数不同: " + springResponse.bytes + " / " + directResponse.bytes);
+        }
+        System.out.println("--- 每个 token（共 " + TOKENS + " 个，线上 " + springResponse.bytes / MEASURE_ROUNDS + " 字节）---");
+        System.out.printf("SseEmitter：       分配 %,d 字节，CPU %.3f μs%n",
+                springAllocated / TOKENS, springCpuNanos / 1e3 / TOKENS);
+        System.out.printf("DirectSseEmitter： 分配 %,d 字节，CPU %.3f μs%n",
+                directAllocated / TOKENS, directCpuNanos / 1e3 / TOKENS);
+    }
+
+    private static void sendWithSseEmitter(List<String> tokens, List<HttpMessageConverter<?>> converters,
+                                           ServerHttpResponse response) throws IOException {
+        long id = 0;
+        for (String token : tokens) {
+            Set<DataWithMediaType> items = SseEmitter.event()
+                    .id(String.valueOf(++id))
+                    .name("message")
+                    .data(token)
+                    .build();
+            for (DataWithMediaType item : items) {
+                write(item, converters, response);
+            }
+            response.flush();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void write(DataWithMediaType item, List<HttpMessageConverter<?>> converters,
+                              ServerHttpResponse response) throws IOException {
+        Object data = item.getData();
+        MediaType mediaType = item.getMediaType();
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter.canWrite(data.getClass(), mediaType)) {
+                ((HttpMessageConverter<Object>) converter).write(data, mediaType, response);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("没有可写出 " + data.getClass() + " 的转换器");
+    }
+
+    private static void sendDirect(List<String> tokens, DirectSseEmitter emitter) throws IOException {
+        long id = 0;
+        for (String token : tokens) {
+            emitter.send(++id, "message", token);
+        }
+    }
+
+    // 模拟中文流式输出：每个 token 1~3 个字符
+    private static List<String> sampleTokens() {
+        String text = "从前有座山山里有座庙庙里有个老和尚在给小和尚讲故事，讲的是什么呢？";
+        Random random = new Random(42);
+        List<String> tokens = new ArrayList<>(TOKENS);
+        for (int i = 0; i < TOKENS; i++) {
+            int begin = random.nextInt(text.length() - 3);
+            tokens.add(text.substring(begin, begin + 1 + random.nextInt(3)));
+        }
+        return tokens;
+    }
+
+    // 丢弃数据、只统计字节数的响应；与流式响应一样，响应头对象复用
+    private static class DiscardingResponse implements ServerHttpResponse {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private long bytes;
+        private final OutputStream body = new OutputStream() {
+            @Override
+            public void write(int b) {
+                bytes++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                bytes += len;
+            }
+        };
+
+        @Override
+        public void setStatusCode(HttpStatusCode status) {
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
@@ -1,76 +1,254 @@
 package io.github.susamlu.langchain4j.responsestreaming.sse;
 
 import dev.langchain4j.model.chat.StreamingChatModel;
-import dev.langchain4j.model.chat.response.ChatResponse;
-import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
-import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.chat.response.*;
+import io.github.susamlu.langchain4j.responsestreaming.admission.AdmissionController;
+import io.github.susamlu.langchain4j.responsestreaming.admission.AdmissionRejectedException;
+import io.github.susamlu.langchain4j.responsestreaming.completion.CompletionProtocol;
+import io.github.susamlu.langchain4j.responsestreaming.metrics.StreamingMetrics;
+import io.github.susamlu.langchain4j.responsestreaming.moderation.OutputGuard;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStream;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStreamRegistry;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.relay.StreamRelay;
+import io.github.susamlu.langchain4j.responsestreaming.singleflight.SingleFlightStreams;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/api/chat")
 public class StreamingChatController {
 
     private final StreamingChatModel model;
+    private final ResumableStreamRegistry streamRegistry;
+    // 流中继：重连落到其他节点时从中继续传
+    private final StreamRelay streamRelay;
+    private final SingleFlightStreams singleFlightStreams;
+    // 是否合并相同的并发请求（默认关闭）
+    private final boolean singleFlightEnabled;
+    // 准入控制：限制并发生成数，超出时排队或快速拒绝
+    private final AdmissionController admissionController;
+    private final StreamingMetrics streamingMetrics;
+    // SSE 事件的合并刷新策略
+    private final SseFlushPolicy flushPolicy;
+    // complete 事件的内容：默认只携带元数据
+    private final CompletionProtocol completionProtocol;
+    // 流式输出审核：命中敏感词时取消生成
+    private final OutputGuard outputGuard;
 
-    public StreamingChatController() {
-        String apiKey = System.getenv("DEEPSEEK_API_KEY");
-
-        this.model = OpenAiStreamingChatModel.builder()
-                .baseUrl("https://api.deepseek.com/v1")
-                .apiKey(apiKey)
-                .modelName("deepseek-chat")
-                .build();
+    public StreamingChatController(StreamingChatModel model,
+                                   ResumableStreamRegistry streamRegistry,
+                                   StreamRelay streamRelay,
+                                   SingleFlightStreams singleFlightStreams,
+                                   @Value("${streaming.single-flight.enabled:false}") boolean singleFlightEnabled,
+                                   AdmissionController admissionController,
+                                   StreamingMetrics streamingMetrics,
+                                   SseFlushPolicy flushPolicy,
+                                   CompletionProtocol completionProtocol,
+                                   OutputGuard outputGuard) {
+        this.model = model;
+        this.streamRegistry = streamRegistry;
+        this.streamRelay = streamRelay;
+        this.singleFlightStreams = singleFlightStreams;
+        this.singleFlightEnabled = singleFlightEnabled;
+        this.admissionController = admissionController;
+        this.streamingMetrics = streamingMetrics;
+        this.flushPolicy = flushPolicy;
+        this.completionProtocol = completionProtocol;
+        this.outputGuard = outputGuard;
     }
 
+    /**
+     * 携带 requestId 的请求可以断线续传：浏览器 EventSource 重连时会自动带上 Last-Event-ID 请求头，
+     * 此时直接接入正在进行的生成，只补发缺失的事件，不会重新调用模型
+     * <p>
+     * 新的生成需要经过准入控制：并发已满时排队，预计无法在期限内轮到时直接返回 429
+     */
     @CrossOrigin(origins = "*") // 调试临时配置，生产环境需限定具体跨域域名，禁止通配符
     @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter streamChat(@RequestParam(name = "message") String message) {
-        System.out.println("\n--- 流式响应开始 ---");
+    public SseEmitter streamChat(@RequestParam(name = "message") String message,
+                                 @RequestParam(name = "requestId", required = false) String requestId,
+                                 @RequestParam(name = "userId", required = false) String userId,
+                                 @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId,
+                                 HttpServletRequest request) {
+        SseEmitter emitter = new DirectSseEmitter(60000L, flushPolicy); // 60秒超时
+        long resumeFrom = ResumableStream.parseLastEventId(lastEventId);
+        String userKey = AdmissionController.userKey(userId, request.getRemoteAddr());
 
-        SseEmitter emitter = new SseEmitter(60000L); // 60秒超时
+        if (singleFlightEnabled && streamShared(message, userKey, emitter, resumeFrom)) {
+            return emitter;
+        }
 
-        model.chat(message, new StreamingChatResponseHandler() {
-            @Override
-            public void onPartialResponse(String partialResponse) {
-                System.out.print(partialResponse);
-
-                try {
-                    // 发送增量 token 到前端
-                    emitter.send(SseEmitter.event()
-                            .name("message")
-                            .data(partialResponse));
-                } catch (IOException e) {
-                    // 连接可能已断开，标记错误并停止后续处理
-                    emitter.completeWithError(e);
+        // 未携带 requestId 时无法续传，使用随机 ID
+        String streamId = "chat:" + (requestId != null ? requestId : UUID.randomUUID().toString());
+        boolean local = streamRegistry.get(streamId) != null;
+        if (!local && requestId != null && !streamRelay.claim(streamId)) {
+            // 生成在其他节点进行（或刚结束）：从中继续传，不重新生成
+            streamRelay.tail(streamId, emitter, resumeFrom);
+            return emitter;
+        }
+        if (resumeFrom > 0 && !local) {
+            // 重连时原来的流已过期，不能重新生成（否则客户端会收到重复内容）
+            if (requestId != null) {
+                streamRelay.release(streamId);
+            }
+            ResumableStream.sendExpired(emitter);
+            return emitter;
+        }
+        ResumableStream stream = streamRegistry.open(streamId);
+
+        emitter.onCompletion(() -> stream.detach(emitter));
+        emitter.onTimeout(() -> stream.detach(emitter));
+        emitter.onError(throwable -> stream.detach(emitter));
+
+        if (!stream.attach(emitter, resumeFrom)) {
+            // 缺失的事件已被淘汰，通知客户端无法续传
+            ResumableStream.sendExpired(emitter);
+            return emitter;
+        }
+
+        if (stream.tryStart()) {
+            try {
+                admitGeneration("sse", message, userKey, stream, requestId != null, handle -> {
+                }, () -> {
+                    // 不可续传的流结束后立即释放
+                    if (requestId == null) {
+                        streamRegistry.remove(streamId);
+                    }
+                });
+            } catch (AdmissionRejectedException e) {
+                // 未被准入：丢弃刚创建的流，客户端稍后可用同一个 requestId 重试
+                stream.detach(emitter);
+                streamRegistry.remove(streamId);
+                if (requestId != null) {
+                    streamRelay.release(streamId);
                 }
+                stream.fail(e);
+                throw e;
+            }
+        } else {
+            System.out.println("\n--- 续传流式响应: " + streamId + ", Last-Event-ID: " + lastEventId + " ---");
+        }
+
+        return emitter;
+    }
+
+    /**
+     * 合并相同的并发请求：只有第一个请求调用模型，其余请求订阅同一个流并从头收到完整事件
+     *
+     * @return false 表示无法加入共享流（请求的起点已被淘汰），由调用方单独发起生成
+     */
+    private boolean streamShared(String message, String userKey, SseEmitter emitter, long resumeFrom) {
+        String key = SingleFlightStreams.key(message, model.defaultRequestParameters());
+        SingleFlightStreams.Flight flight = singleFlightStreams.join(key, emitter, resumeFrom);
+        if (flight == null) {
+            if (resumeFrom > 0) {
+                ResumableStream.sendExpired(emitter);
+                return true;
+            }
+            return false;
+        }
+
+        emitter.onCompletion(() -> singleFlightStreams.leave(flight, emitter));
+        emitter.onTimeout(() -> singleFlightStreams.leave(flight, emitter));
+        emitter.onError(throwable -> singleFlightStreams.leave(flight, emitter));
+
+        if (flight.stream().tryStart()) {
+            try {
+                admitGeneration("sse-shared", message, userKey, flight.stream(), false, flight::bindStreamingHandle,
+                        () -> singleFlightStreams.complete(flight));
+            } catch (AdmissionRejectedException e) {
+                // 未被准入：已加入的其他订阅者也收到失败事件
+                flight.stream().detach(emitter);
+                singleFlightStreams.complete(flight);
+                flight.stream().fail(e);
+                throw e;
+            }
+        } else {
+            System.out.println("\n--- 合并到进行中的相同请求: " + key + " ---");
+        }
+        return true;
+    }
+
+    /**
+     * 经过准入控制后启动生成；流结束（完成、失败或被取消）时释放名额
+     * <p>
+     * relayed 为 true 时，准入后（或排队超时后）把流的事件写入中继，其他节点可以续传；
+     * 直接被拒绝的请求不写入中继，客户端可以用同一个 requestId 在任意节点重试
+     *
+     * @throws AdmissionRejectedException 无法在最长等待时间内轮到
+     */
+    private void admitGeneration(String endpoint, String message, String userKey, ResumableStream stream,
+                                 boolean relayed, Consumer<StreamingHandle> handleConsumer, Runnable onFinished) {
+        AdmissionController.Ticket ticket = admissionController.submit(endpoint, userKey, admitted -> {
+            if (stream.isFinished()) {
+                // 排队期间流已被关闭（例如合并请求的订阅者全部离开）
+                admitted.release();
+                return;
+            }
+            if (relayed) {
+                streamRelay.publish(stream);
+            }
+            startGeneration(endpoint, message, stream, handleConsumer, onFinished);
+        }, rejection -> {
+            // 排队超时：以 failure 事件结束流
+            if (relayed) {
+                streamRelay.publish(stream);
+            }
+            stream.fail(rejection);
+            onFinished.run();
+        });
+        // 流结束时释放名额；仍在排队时则放弃排队
+        stream.onFinished(ticket::release);
+    }
+
+    private void startGeneration(String endpoint, String message, ResumableStream stream,
+                                 Consumer<StreamingHandle> handleConsumer, Runnable onFinished) {
+        StreamingMetrics.Recorder recorder = streamingMetrics.start(
+                model.defaultRequestParameters().modelName(), endpoint);
+        // 完成和出错都先于流结束记录；流在此之前结束只可能是订阅者全部离开后被取消
+        stream.onFinished(() -> recorder.finish(StreamingMetrics.OUTCOME_CLIENT_GONE));
+
+        System.out.println("\n--- 流式响应开始 ---");
+        model.chat(message, outputGuard.guard(new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+                recorder.onToken();
+                handleConsumer.accept(context.streamingHandle());
+                System.out.print(partialResponse.text());
+
+                // 发送增量 token 到前端（写入可续传流，由流推送给当前连接的客户端）
+                stream.append("message", partialResponse.text());
             }
 
             @Override
             public void onCompleteResponse(ChatResponse completeResponse) {
                 System.out.println("\n--- 流式响应完成 ---");
+                recorder.finish(StreamingMetrics.OUTCOME_COMPLETE);
 
-                try {
-                    // 发送完成事件
-                    emitter.send(SseEmitter.event()
-                            .name("complete")
-                            .data(completeResponse.aiMessage().text()));
-                    emitter.complete();
-                } catch (IOException e) {
-                    emitter.completeWithError(e);
-                }
+                // 发送完成事件
+                stream.finish("complete", completionProtocol.completeData(
+                        CompletionProtocol.newResultId(stream.getStreamId()), completeResponse, stream.eventCount()));
+                onFinished.run();
             }
 
             @Override
             public void onError(Throwable error) {
-                emitter.completeWithError(error);
+                recorder.finish(StreamingMetrics.OUTCOME_ERROR);
+                stream.fail(error);
+                onFinished.run();
             }
-        });
-
-        return emitter;
+        }, () -> {
+            // 输出审核命中：上游已被取消，以 redacted 事件结束流（合并请求的所有订阅者都会收到）
+            recorder.finish(StreamingMetrics.OUTCOME_MODERATED);
+            stream.finish(OutputGuard.EVENT_REDACTED, outputGuard.redactedMessage());
+            onFinished.run();
+        }));
     }
 
 }
@@ -0,0 +1,106 @@
+package io.github.susamlu.langchain4j.responsestreaming.websocket;
+
+import io.github.susamlu.langchain4j.responsestreaming.websocket.WebSocketChatController.StreamingMessage;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * 对比 JSON 帧与紧凑二进制帧：每 1000 个 token 的线上字节数与服务端 CPU 时间
+ * 字节数按完整的 STOMP MESSAGE 帧计算（命令行 + 头 + 负载），与浏览器实际收到的一致
+ */
+public class CompactFrameBenchmark {
+
+    private static final int TOKENS = 1000;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURE_ROUNDS = 200;
+
+    public static void main(String[] args) {
+        List<String> tokens = sampleTokens();
+        String conversationId = UUID.randomUUID().toString();
+        MappingJackson2MessageConverter jsonConverter = new MappingJackson2MessageConverter();
+        CompactFrameCodec codec = new CompactFrameCodec(true);
+        StompEncoder stompEncoder = new StompEncoder();
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            encodeJson(tokens, conversationId, jsonConverter, stompEncoder);
+            encodeCompact(tokens, codec, stompEncoder);
+        }
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        long jsonBytes = 0;
+        long start = threadMXBean.getCurrentThreadCpuTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            jsonBytes = encodeJson(tokens, conversationId, jsonConverter, stompEncoder);
+        }
+        long jsonCpuNanos = (threadMXBean.getCurrentThreadCpuTime() - start) / MEASURE_ROUNDS;
+
+        long compactBytes = 0;
+        start = threadMXBean.getCurrentThreadCpuTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            compactBytes = encodeCompact(tokens, codec, stompEncoder);
+        }
+        long compactCpuNanos = (threadMXBean.getCurrentThreadCpuTime() - start) / MEASURE_ROUNDS;
+
+        System.out.println("--- 每 " + TOKENS + " 个 token ---");
+        System.out.printf("JSON 帧：   %,d 字节，CPU %.3f ms%n", jsonBytes, jsonCpuNanos / 1e6);
+        System.out.printf("紧凑帧：    %,d 字节，CPU %.3f ms%n", compactBytes, compactCpuNanos / 1e6);
+        System.out.printf("字节减少：  %.1f%%%n", 100.0 * (jsonBytes - compactBytes) / jsonBytes);
+    }
+
+    private static long encodeJson(List<String> tokens, String conversationId,
+                                   MappingJackson2MessageConverter converter, StompEncoder encoder) {
+        long bytes = 0;
+        for (String token : tokens) {
+            Message<?> json = converter.toMessage(new StreamingMessage("partial", conversationId, token), null);
+            bytes += encodeStompFrame((byte[]) json.getPayload(), MimeTypeUtils.APPLICATION_JSON, encoder);
+        }
+        return bytes;
+    }
+
+    private static long encodeCompact(List<String> tokens, CompactFrameCodec codec, StompEncoder encoder) {
+        long bytes = 0;
+        long sequence = 0;
+        for (String token : tokens) {
+            byte[] frame = codec.encode(CompactFrameCodec.TYPE_PARTIAL, ++sequence, token);
+            bytes += encodeStompFrame(frame, MimeTypeUtils.APPLICATION_OCTET_STREAM, encoder);
+        }
+        return bytes;
+    }
+
+    private static int encodeStompFrame(byte[] payload, MimeType contentType, StompEncoder encoder) {
+        // 与 SimpleBroker 推送给订阅者的 MESSAGE 帧头一致
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination("/user/queue/response");
+        accessor.setSubscriptionId("sub-0");
+        accessor.setMessageId("a1b2c3d4-0");
+        accessor.setContentType(contentType);
+        accessor.setContentLength(payload.length);
+        return encoder.encode(MessageBuilder.createMessage(payload, accessor.getMessageHeaders())).length;
+    }
+
+    // 模拟中文流式输出：每个 token 1~3 个字符
+    private static List<String> sampleTokens() {
+        String text = "从前有座山山里有座庙庙里有个老和尚在给小和尚讲故事，讲的是什么呢？";
+        Random random = new Random(42);
+        List<String> tokens = new ArrayList<>(TOKENS);
+        for (int i = 0; i < TOKENS; i++) {
+            int begin = random.nextInt(text.length() - 3);
+            tokens.add(text.substring(begin, begin + 1 + random.nextInt(3)));
+        }
+        return tokens;
+    }
+
+}
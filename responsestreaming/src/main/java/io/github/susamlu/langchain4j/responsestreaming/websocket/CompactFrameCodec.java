@@ -0,0 +1,143 @@
+package io.github.susamlu.langchain4j.responsestreaming.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 紧凑二进制帧编解码器（可选协议，替代每个 token 一个 JSON 对象）
+ * <p>
+ * 帧格式：[1 字节类型标记][varint 序号][UTF-8 负载]
+ * <ul>
+ *     <li>类型标记低 7 位为消息类型，最高位表示负载经过 raw deflate 压缩</li>
+ *     <li>序号为无符号 LEB128 编码，每个对话从 1 开始递增，客户端据此检测乱序/丢帧</li>
+ *     <li>START 帧的负载为对话 ID，之后的帧都属于该对话</li>
+ * </ul>
+ */
+public final class CompactFrameCodec {
+
+    public static final byte TYPE_START = 0x01;
+    public static final byte TYPE_PARTIAL = 0x02;
+    public static final byte TYPE_COMPLETE = 0x03;
+    public static final byte TYPE_ERROR = 0x04;
+
+    // 类型字节最高位：负载已压缩
+    public static final int FLAG_DEFLATE = 0x80;
+
+    // 小于该长度的负载压缩后反而更大（单个 token 通常只有几个字节），不做压缩
+    public static final int DEFAULT_DEFLATE_THRESHOLD = 256;
+
+    private final boolean deflateEnabled;
+    private final int deflateThreshold;
+
+    public CompactFrameCodec(boolean deflateEnabled) {
+        this(deflateEnabled, DEFAULT_DEFLATE_THRESHOLD);
+    }
+
+    public CompactFrameCodec(boolean deflateEnabled, int deflateThreshold) {
+        this.deflateEnabled = deflateEnabled;
+        this.deflateThreshold = deflateThreshold;
+    }
+
+    public byte[] encode(byte type, long sequence, String payload) {
+        byte[] body = payload == null ? new byte[0] : payload.getBytes(StandardCharsets.UTF_8);
+        int typeByte = type;
+        if (deflateEnabled && body.length >= deflateThreshold) {
+            byte[] compressed = deflate(body);
+            if (compressed.length < body.length) {
+                body = compressed;
+                typeByte |= FLAG_DEFLATE;
+            }
+        }
+
+        byte[] frame = new byte[1 + varintSize(sequence) + body.length];
+        frame[0] = (byte) typeByte;
+        int offset = writeVarint(sequence, frame, 1);
+        System.arraycopy(body, 0, frame, offset, body.length);
+        return frame;
+    }
+
+    public static Frame decode(byte[] frame) {
+        int typeByte = frame[0] & 0xFF;
+        long sequence = 0;
+        int shift = 0;
+        int offset = 1;
+        byte b;
+        do {
+            b = frame[offset++];
+            sequence |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        byte[] body = new byte[frame.length - offset];
+        System.arraycopy(frame, offset, body, 0, body.length);
+        if ((typeByte & FLAG_DEFLATE) != 0) {
+            body = inflate(body);
+        }
+        return new Frame((byte) (typeByte & ~FLAG_DEFLATE), sequence, new String(body, StandardCharsets.UTF_8));
+    }
+
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarint(long value, byte[] target, int offset) {
+        while ((value & ~0x7FL) != 0) {
+            target[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static byte[] deflate(byte[] input) {
+        // nowrap = true：raw deflate，浏览器端可直接使用 DecompressionStream('deflate-raw') 解压
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length);
+            byte[] buffer = new byte[512];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] input) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length * 3);
+            byte[] buffer = new byte[512];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && inflater.needsInput()) {
+                    break;
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("无效的压缩负载", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // 解码后的帧
+    public record Frame(byte type, long sequence, String payload) {
+    }
+
+}
@@ -0,0 +1,328 @@
+package io.github.susamlu.langchain4j.responsestreaming.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * WebSocket 会话的出站流量控制与慢消费者处理
+ * <p>
+ * 出站通道按会话顺序投递（preservePublishOrder）：上一条消息写入套接字之后才投递下一条。
+ * 浏览器标签页卡住时，写入一直阻塞，Spring 内部该会话的队列会无限增长，同时占住一个出站线程。
+ * 这里在消息交给 Spring 之前按会话限流：
+ * <ul>
+ *     <li>每个会话最多 maxInFlight 条消息已交给 Spring 但尚未写入套接字（由出站通道的拦截器在写入后回调确认），
+ *     其余消息在本地等待</li>
+ *     <li>coalesce 策略（默认）：等待中的连续 partial 合并为一条，客户端收到的内容不变，只是 token 粒度变粗；
+ *     disconnect 策略：不合并，等待的消息数超过 maxInFlight 即断开</li>
+ *     <li>两种策略下，等待的内容超过 maxPendingChars 个字符，或超过 sendTimeLimit 没有任何消息写入成功，都会断开该会话
+ *     （CloseStatus.SESSION_NOT_RELIABLE），释放被阻塞的出站线程</li>
+ *     <li>指标：streaming.websocket.outbound.depth（每次发送时该会话排队的消息数）、
+ *     streaming.websocket.outbound.depth.max（当前排队最多的会话）、streaming.websocket.outbound.backlogged（有消息在本地等待的会话数）、
+ *     streaming.websocket.outbound.coalesced（被合并的 partial 数）、streaming.websocket.slow-consumer.disconnects{reason}</li>
+ * </ul>
+ * 只对带有 {@link #TRACKED_HEADER} 头的消息计数；未登记的会话（例如测试中）直接发送。
+ * 会话被断开或关闭时通知 {@link #onSessionClosed} 登记的监听器，由发送方取消仍在进行的生成
+ */
+@Component
+public class OutboundFlowControl implements ExecutorChannelInterceptor {
+
+    /**
+     * 需要流量控制的消息头，投递完成后据此确认；不是 STOMP 原生头，不会发送给客户端
+     */
+    public static final String TRACKED_HEADER = "streamingOutboundTracked";
+
+    static final String POLICY_COALESCE = "coalesce";
+    static final String POLICY_DISCONNECT = "disconnect";
+
+    // 只有 partial 可以合并，其他消息（start、complete、error）保持原样
+    private static final String PARTIAL = "partial";
+
+    private final int maxInFlight;
+    private final int maxPendingChars;
+    private final long sendTimeLimitNanos;
+    private final boolean coalesce;
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+    private final List<Consumer<String>> closeListeners = new CopyOnWriteArrayList<>();
+
+    private final DistributionSummary depth;
+    private final Counter coalesced;
+    private final MeterRegistry meterRegistry;
+
+    public OutboundFlowControl(MeterRegistry meterRegistry,
+                               @Value("${streaming.websocket.max-in-flight:32}") int maxInFlight,
+                               @Value("${streaming.websocket.max-pending-chars:262144}") int maxPendingChars,
+                               @Value("${streaming.websocket.send-time-limit:10s}") Duration sendTimeLimit,
+                               @Value("${streaming.websocket.slow-consumer:coalesce}") String policy) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("streaming.websocket.max-in-flight 必须大于 0");
+        }
+        if (!POLICY_COALESCE.equals(policy) && !POLICY_DISCONNECT.equals(policy)) {
+            throw new IllegalArgumentException("streaming.websocket.slow-consumer 只能是 coalesce 或 disconnect: " + policy);
+        }
+        this.maxInFlight = maxInFlight;
+        this.maxPendingChars = maxPendingChars;
+        this.sendTimeLimitNanos = sendTimeLimit.toNanos();
+        this.coalesce = POLICY_COALESCE.equals(policy);
+        this.meterRegistry = meterRegistry;
+
+        this.depth = DistributionSummary.builder("streaming.websocket.outbound.depth")
+                .description("每次发送时该会话已交给 Spring 未写出和在本地等待的消息数")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("streaming.websocket.outbound.coalesced")
+                .description("慢消费者等待期间被合并的 partial 数")
+                .register(meterRegistry);
+        Gauge.builder("streaming.websocket.outbound.depth.max", sessions,
+                        map -> map.values().stream().mapToInt(SessionState::depth).max().orElse(0))
+                .description("排队消息最多的会话的排队数")
+                .register(meterRegistry);
+        Gauge.builder("streaming.websocket.outbound.backlogged", sessions,
+                        map -> map.values().stream().filter(SessionState::hasPending).count())
+                .description("有消息在本地等待的会话数")
+                .register(meterRegistry);
+
+        // 生成已结束、不再发送的会话也要检查写入是否卡住
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "websocket-slow-consumer-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(100, sendTimeLimit.toMillis() / 4);
+        sweeper.scheduleAtFixedRate(this::evictStalled, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 发送方：把一条消息交给 Spring（例如 SimpMessagingTemplate），发送的消息必须带有 {@link #TRACKED_HEADER} 头
+     * <p>
+     * 同一个实例发出的连续 partial 可以合并，实例应与对话一一对应
+     */
+    @FunctionalInterface
+    public interface Dispatcher {
+
+        void dispatch(String type, String content);
+
+    }
+
+    /**
+     * 登记 WebSocket 会话，连接建立时调用
+     */
+    public void register(WebSocketSession session) {
+        sessions.put(session.getId(), new SessionState(session));
+    }
+
+    /**
+     * 注销 WebSocket 会话，连接关闭时调用
+     */
+    public void unregister(String sessionId) {
+        sessions.remove(sessionId);
+        notifyClosed(sessionId);
+    }
+
+    /**
+     * 登记会话关闭监听器：会话因慢消费被断开或连接关闭时以会话 ID 回调，同一会话可能回调多次
+     */
+    public void onSessionClosed(Consumer<String> listener) {
+        closeListeners.add(listener);
+    }
+
+    /**
+     * 按会话限流发送；会话已因慢消费被断开时丢弃
+     */
+    public void send(String sessionId, Dispatcher dispatcher, String type, String content) {
+        SessionState state = sessions.get(sessionId);
+        if (state == null) {
+            dispatcher.dispatch(type, content);
+            return;
+        }
+        String evictReason;
+        synchronized (state) {
+            if (state.closed) {
+                return;
+            }
+            // 在锁内交给 Spring，保证同一会话的消息按顺序进入出站通道（只是入队，不会阻塞）
+            if (state.inFlight < maxInFlight && state.pending.isEmpty()) {
+                state.dispatch(dispatcher, type, content);
+                depth.record(state.depth());
+                return;
+            }
+            Pending last = state.pending.peekLast();
+            if (coalesce && last != null && last.dispatcher == dispatcher
+                    && PARTIAL.equals(type) && PARTIAL.equals(last.type)) {
+                last.content.append(content);
+                coalesced.increment();
+            } else {
+                state.pending.addLast(new Pending(dispatcher, type, content));
+            }
+            state.pendingChars += content.length();
+            depth.record(state.depth());
+            evictReason = state.pendingChars > maxPendingChars ? "buffer"
+                    : !coalesce && state.pending.size() > maxInFlight ? "backlog"
+                    : state.stalled(System.nanoTime(), sendTimeLimitNanos) ? "stall"
+                    : null;
+        }
+        if (evictReason != null) {
+            evict(state, evictReason);
+        }
+    }
+
+    /**
+     * 出站通道的消息写入套接字之后（或失败后）回调：释放一个名额，补发等待中的消息
+     */
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler,
+                                    Exception ex) {
+        if (message.getHeaders().get(TRACKED_HEADER) == null) {
+            return;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        SessionState state = sessionId != null ? sessions.get(sessionId) : null;
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            state.inFlight = Math.max(0, state.inFlight - 1);
+            state.lastProgressNanos = System.nanoTime();
+            while (!state.closed && state.inFlight < maxInFlight && !state.pending.isEmpty()) {
+                Pending pending = state.pending.pollFirst();
+                state.pendingChars -= pending.content.length();
+                state.dispatch(pending.dispatcher, pending.type, pending.content.toString());
+            }
+        }
+    }
+
+    void evictStalled() {
+        long now = System.nanoTime();
+        for (SessionState state : sessions.values()) {
+            boolean stalled;
+            synchronized (state) {
+                stalled = !state.closed && state.stalled(now, sendTimeLimitNanos);
+            }
+            if (stalled) {
+                evict(state, "stall");
+            }
+        }
+    }
+
+    // 断开慢消费者：丢弃等待中的消息，关闭连接使阻塞在写入上的出站线程退出
+    private void evict(SessionState state, String reason) {
+        synchronized (state) {
+            if (state.closed) {
+                return;
+            }
+            state.closed = true;
+            state.pending.clear();
+            state.pendingChars = 0;
+        }
+        Counter.builder("streaming.websocket.slow-consumer.disconnects")
+                .description("因慢消费被断开的 WebSocket 会话数")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        System.out.println("断开慢消费者 WebSocket 会话: " + state.session.getId() + ", 原因: " + reason);
+        // 先停止上游生成，不必等到连接真正关闭
+        notifyClosed(state.session.getId());
+        try {
+            state.session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            System.out.println("关闭 WebSocket 会话失败: " + e.getMessage());
+        }
+    }
+
+    private void notifyClosed(String sessionId) {
+        for (Consumer<String> listener : closeListeners) {
+            try {
+                listener.accept(sessionId);
+            } catch (RuntimeException e) {
+                System.out.println("会话关闭监听器执行失败: " + sessionId + ", 错误: " + e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    // 一个会话的出站状态，所有字段都在该对象的锁内访问
+    private static class SessionState {
+
+        private final WebSocketSession session;
+        private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+        private int inFlight;
+        private int pendingChars;
+        private long lastProgressNanos = System.nanoTime();
+        private boolean closed;
+
+        SessionState(WebSocketSession session) {
+            this.session = session;
+        }
+
+        void dispatch(Dispatcher dispatcher, String type, String content) {
+            if (inFlight == 0) {
+                // 从空闲开始计算写入等待时间
+                lastProgressNanos = System.nanoTime();
+            }
+            inFlight++;
+            try {
+                dispatcher.dispatch(type, content);
+            } catch (RuntimeException e) {
+                inFlight--;
+                throw e;
+            }
+        }
+
+        boolean stalled(long now, long limitNanos) {
+            return inFlight > 0 && now - lastProgressNanos > limitNanos;
+        }
+
+        synchronized int depth() {
+            return inFlight + pending.size();
+        }
+
+        synchronized boolean hasPending() {
+            return !pending.isEmpty();
+        }
+
+    }
+
+    // 在本地等待的消息，连续的 partial 合并到 content
+    private static class Pending {
+
+        private final Dispatcher dispatcher;
+        private final String type;
+        private final StringBuilder content;
+
+        Pending(Dispatcher dispatcher, String type, String content) {
+            this.dispatcher = dispatcher;
+            this.type = type;
+            this.content = new StringBuilder(content);
+        }
+
+    }
+
+}
@@ -2,62 +2,364 @@ package io.github.susamlu.langchain4j.responsestreaming.websocket;
 
 import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
 import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
-import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import io.github.susamlu.langchain4j.responsestreaming.admission.AdmissionController;
+import io.github.susamlu.langchain4j.responsestreaming.admission.AdmissionRejectedException;
+import io.github.susamlu.langchain4j.responsestreaming.completion.CompletionProtocol;
+import io.github.susamlu.langchain4j.responsestreaming.metrics.StreamingMetrics;
+import io.github.susamlu.langchain4j.responsestreaming.moderation.OutputGuard;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Controller
 public class WebSocketChatController {
 
+    // 点对点响应目标地址，客户端订阅 /user/queue/response
+    static final String RESPONSE_DESTINATION = "/queue/response";
+    // 客户端通过 SEND 帧的 protocol 头选择紧凑二进制协议
+    static final String PROTOCOL_COMPACT = "compact";
+
     private final StreamingChatModel model;
     private final SimpMessagingTemplate messagingTemplate;
+    // 准入控制：限制并发生成数，超出时排队或快速拒绝
+    private final AdmissionController admissionController;
+    private final StreamingMetrics streamingMetrics;
+    // complete 消息的内容：默认只携带元数据
+    private final CompletionProtocol completionProtocol;
+    // 出站流量控制：慢消费者的 partial 合并或断开
+    private final OutboundFlowControl outboundFlowControl;
+    // 流式输出审核：命中敏感词时取消生成
+    private final OutputGuard outputGuard;
+    // 每个 WebSocket 会话正在排队或生成的对话，会话被断开或关闭时取消
+    private final Map<String, Set<Generation>> generations = new ConcurrentHashMap<>();
 
-    public WebSocketChatController(SimpMessagingTemplate messagingTemplate) {
-        String apiKey = System.getenv("DEEPSEEK_API_KEY");
-
-        this.model = OpenAiStreamingChatModel.builder()
-                .baseUrl("https://api.deepseek.com/v1")
-                .apiKey(apiKey)
-                .modelName("deepseek-chat")
-                .build();
+    public WebSocketChatController(StreamingChatModel model, SimpMessagingTemplate messagingTemplate,
+                                   AdmissionController admissionController, StreamingMetrics streamingMetrics,
+                                   CompletionProtocol completionProtocol, OutboundFlowControl outboundFlowControl,
+                                   OutputGuard outputGuard) {
+        this.model = model;
         this.messagingTemplate = messagingTemplate;
+        this.admissionController = admissionController;
+        this.streamingMetrics = streamingMetrics;
+        this.completionProtocol = completionProtocol;
+        this.outboundFlowControl = outboundFlowControl;
+        this.outputGuard = outputGuard;
+        outboundFlowControl.onSessionClosed(this::cancelSession);
     }
 
     @MessageMapping("/chat")
-    public void handleChat(String message) {
-        model.chat(message, new StreamingChatResponseHandler() {
+    public void handleChat(@Payload String message,
+                           @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String sessionId,
+                           @Header(name = "conversationId", required = false) String conversationId,
+                           @Header(name = "protocol", required = false) String protocol,
+                           @Header(name = "accept-encoding", required = false) String acceptEncoding,
+                           @Header(name = "userId", required = false) String userId) {
+        // 客户端未指定会话 ID 时由服务端生成，用于区分同一连接上的多轮对话
+        String currentConversationId = conversationId != null ? conversationId : UUID.randomUUID().toString();
+        ResponseSender sender = PROTOCOL_COMPACT.equalsIgnoreCase(protocol)
+                ? new CompactResponseSender(sessionId, currentConversationId,
+                new CompactFrameCodec(acceptEncoding != null && acceptEncoding.contains("deflate")))
+                : new JsonResponseSender(sessionId, currentConversationId);
+
+        Generation generation = new Generation(sessionId, currentConversationId);
+        track(generation);
+
+        // 经过准入控制后再调用模型：并发已满时排队，预计无法在期限内轮到或排队超时则推送错误事件
+        try {
+            AdmissionController.Ticket ticket = admissionController.submit("websocket",
+                    AdmissionController.userKey(userId, sessionId),
+                    admitted -> {
+                        // 排队期间会话已关闭：admit 已释放名额，不再调用模型
+                        if (!generation.admit(admitted)) {
+                            return;
+                        }
+                        startGeneration(message, currentConversationId, sender, generation);
+                    },
+                    rejection -> {
+                        untrack(generation);
+                        sender.send("error", rejection.getMessage());
+                    });
+            generation.admit(ticket);
+        } catch (AdmissionRejectedException e) {
+            untrack(generation);
+            sender.send("error", e.getMessage());
+        }
+    }
+
+    private void startGeneration(String message, String conversationId, ResponseSender sender,
+                                 Generation generation) {
+        StreamingMetrics.Recorder recorder = streamingMetrics.start(
+                model.defaultRequestParameters().modelName(), "websocket");
+        generation.recorder = recorder;
+        if (generation.isFinished()) {
+            // 准入之后、调用模型之前会话已关闭
+            recorder.finish(StreamingMetrics.OUTCOME_CLIENT_GONE);
+            return;
+        }
+        model.chat(message, outputGuard.guard(new StreamingChatResponseHandler() {
+            // 已推送的 partial 消息数，回调按顺序执行
+            private long partials;
+
             @Override
             public void onPartialResponse(String partialResponse) {
-                // 通过 WebSocket 推送增量 token
-                messagingTemplate.convertAndSend("/topic/response",
-                        new StreamingMessage("partial", partialResponse));
+                if (generation.isFinished()) {
+                    return;
+                }
+                recorder.onToken();
+                partials++;
+                // 通过 WebSocket 推送增量 token（仅发送给发起请求的会话）
+                sender.send("partial", partialResponse);
+            }
+
+            @Override
+            public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+                // 第一个回调到达时登记上游 StreamingHandle；若会话此前已关闭，登记时立即取消上游
+                generation.bind(context.streamingHandle());
+                onPartialResponse(partialResponse.text());
             }
 
             @Override
             public void onCompleteResponse(ChatResponse completeResponse) {
-                // 推送完成事件
-                messagingTemplate.convertAndSend("/topic/response",
-                        new StreamingMessage("complete", completeResponse.aiMessage().text()));
+                if (generation.finish(StreamingMetrics.OUTCOME_COMPLETE)) {
+                    // 推送完成事件
+                    sender.send("complete", completionProtocol.completeData(
+                            CompletionProtocol.newResultId("websocket:" + conversationId), completeResponse, partials));
+                }
             }
 
             @Override
             public void onError(Throwable error) {
-                messagingTemplate.convertAndSend("/topic/response",
-                        new StreamingMessage("error", error.getMessage()));
+                if (generation.finish(StreamingMetrics.OUTCOME_ERROR)) {
+                    sender.send("error", error.getMessage());
+                }
+            }
+        }, () -> {
+            // 输出审核命中：紧凑协议没有对应的帧类型，以 ERROR 帧发送
+            if (generation.finish(StreamingMetrics.OUTCOME_MODERATED)) {
+                sender.send(OutputGuard.EVENT_REDACTED, outputGuard.redactedMessage());
+            }
+        }));
+    }
+
+    /**
+     * 会话因慢消费被断开或连接关闭：取消该会话所有排队中和生成中的对话，释放准入名额
+     */
+    void cancelSession(String sessionId) {
+        Set<Generation> cancelled = generations.remove(sessionId);
+        if (cancelled == null) {
+            return;
+        }
+        for (Generation generation : cancelled) {
+            if (generation.cancel()) {
+                System.out.println("WebSocket 会话已关闭，取消生成: " + sessionId + "/" + generation.conversationId);
             }
+        }
+    }
+
+    private void track(Generation generation) {
+        generations.computeIfAbsent(generation.sessionId, id -> ConcurrentHashMap.newKeySet()).add(generation);
+    }
+
+    private void untrack(Generation generation) {
+        generations.computeIfPresent(generation.sessionId, (id, running) -> {
+            running.remove(generation);
+            return running.isEmpty() ? null : running;
         });
     }
 
+    /**
+     * 按 WebSocket 会话 ID 点对点推送，避免广播到所有客户端
+     * 目标地址 /user/{sessionId}/queue/response 会被解析为该会话独享的队列，投递开销与在线客户端数量无关
+     */
+    private void sendToSession(String sessionId, Object payload, MimeType contentType) {
+        messagingTemplate.convertAndSendToUser(sessionId, RESPONSE_DESTINATION, payload,
+                createHeaders(sessionId, contentType));
+    }
+
+    private static MessageHeaders createHeaders(String sessionId, MimeType contentType) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setSessionId(sessionId);
+        // 写入套接字后由出站流量控制确认
+        headerAccessor.setHeader(OutboundFlowControl.TRACKED_HEADER, Boolean.TRUE);
+        if (contentType != null) {
+            headerAccessor.setContentType(contentType);
+        }
+        headerAccessor.setLeaveMutable(true);
+        return headerAccessor.getMessageHeaders();
+    }
+
+    // 所有消息先经过出站流量控制，再由子类编码后交给 SimpMessagingTemplate
+    private abstract class ResponseSender implements OutboundFlowControl.Dispatcher {
+
+        protected final String sessionId;
+
+        ResponseSender(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        void send(String type, String content) {
+            outboundFlowControl.send(sessionId, this, type, content);
+        }
+
+    }
+
+    // 默认协议：每条消息序列化为 JSON
+    private class JsonResponseSender extends ResponseSender {
+
+        private final String conversationId;
+
+        JsonResponseSender(String sessionId, String conversationId) {
+            super(sessionId);
+            this.conversationId = conversationId;
+        }
+
+        @Override
+        public void dispatch(String type, String content) {
+            sendToSession(sessionId, new StreamingMessage(type, conversationId, content), null);
+        }
+
+    }
+
+    /**
+     * 紧凑协议：二进制帧（application/octet-stream），首帧为携带对话 ID 的 START 帧
+     * 二进制帧只能通过原生 WebSocket 端点传输，SockJS 会话会被降级为文本帧
+     */
+    private class CompactResponseSender extends ResponseSender {
+
+        private final CompactFrameCodec codec;
+        private final AtomicLong sequence = new AtomicLong();
+
+        CompactResponseSender(String sessionId, String conversationId, CompactFrameCodec codec) {
+            super(sessionId);
+            this.codec = codec;
+            send("start", conversationId);
+        }
+
+        @Override
+        public void dispatch(String type, String content) {
+            switch (type) {
+                case "start" -> sendFrame(CompactFrameCodec.TYPE_START, content);
+                case "partial" -> sendFrame(CompactFrameCodec.TYPE_PARTIAL, content);
+                case "complete" -> sendFrame(CompactFrameCodec.TYPE_COMPLETE, content);
+                default -> sendFrame(CompactFrameCodec.TYPE_ERROR, content);
+            }
+        }
+
+        private void sendFrame(byte type, String content) {
+            sendToSession(sessionId, codec.encode(type, sequence.incrementAndGet(), content),
+                    MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        }
+
+    }
+
+    /**
+     * 一个 WebSocket 会话中的一次对话：持有准入凭证和上游 StreamingHandle，
+     * 正常结束和因会话关闭而取消只有一个生效，名额只释放一次
+     */
+    private class Generation {
+
+        private final String sessionId;
+        private final String conversationId;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final AtomicReference<StreamingHandle> streamingHandle = new AtomicReference<>();
+        private volatile AdmissionController.Ticket ticket;
+        // 开始调用模型后才有
+        private volatile StreamingMetrics.Recorder recorder;
+
+        Generation(String sessionId, String conversationId) {
+            this.sessionId = sessionId;
+            this.conversationId = conversationId;
+        }
+
+        /**
+         * 记录准入凭证；已结束（会话已关闭）时释放凭证：排队中则放弃排队
+         *
+         * @return 是否仍需继续
+         */
+        boolean admit(AdmissionController.Ticket ticket) {
+            this.ticket = ticket;
+            if (finished.get()) {
+                ticket.release();
+                return false;
+            }
+            return true;
+        }
+
+        void bind(StreamingHandle handle) {
+            if (streamingHandle.compareAndSet(null, handle) && finished.get()) {
+                handle.cancel();
+            }
+        }
+
+        // 已正常结束或已取消，之后的回调都忽略
+        boolean isFinished() {
+            return finished.get();
+        }
+
+        /**
+         * 以给定结果结束：记录指标、释放名额，只有第一次调用（包括 cancel）生效
+         */
+        boolean finish(String outcome) {
+            if (!finished.compareAndSet(false, true)) {
+                return false;
+            }
+            StreamingMetrics.Recorder current = recorder;
+            if (current != null) {
+                current.finish(outcome);
+            }
+            AdmissionController.Ticket admitted = ticket;
+            if (admitted != null) {
+                admitted.release();
+            }
+            untrack(this);
+            return true;
+        }
+
+        /**
+         * 会话已关闭：取消上游生成（尚未登记 StreamingHandle 时在登记时取消），记为 client-gone
+         */
+        boolean cancel() {
+            if (!finish(StreamingMetrics.OUTCOME_CLIENT_GONE)) {
+                return false;
+            }
+            StreamingHandle handle = streamingHandle.get();
+            if (handle != null) {
+                handle.cancel();
+            }
+            return true;
+        }
+
+    }
+
     // 消息封装类
     public static class StreamingMessage {
 
         private String type;
+        private String conversationId;
         private String content;
 
-        public StreamingMessage(String type, String content) {
+        public StreamingMessage(String type, String conversationId, String content) {
             this.type = type;
+            this.conversationId = conversationId;
             this.content = content;
         }
 
@@ -70,6 +372,14 @@ public class WebSocketChatController {
             this.type = type;
         }
 
+        public String getConversationId() {
+            return conversationId;
+        }
+
+        public void setConversationId(String conversationId) {
+            this.conversationId = conversationId;
+        }
+
         public String getContent() {
             return content;
         }
@@ -1,10 +1,18 @@
 package io.github.susamlu.langchain4j.responsestreaming.websocket;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.time.Duration;
 
 /**
  * WebSocket + STOMP 核心配置
@@ -14,6 +22,22 @@ import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerCo
 @EnableWebSocketMessageBroker // 核心注解：启用 STOMP 消息代理，自动创建 SimpMessagingTemplate
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    // 出站流量控制：按会话限制未写出的消息数，处理慢消费者
+    private final OutboundFlowControl outboundFlowControl;
+    private final int outboundThreads;
+    private final Duration sendTimeLimit;
+    private final int sendBufferSizeLimit;
+
+    public WebSocketConfig(OutboundFlowControl outboundFlowControl,
+                           @Value("${streaming.websocket.outbound-threads:32}") int outboundThreads,
+                           @Value("${streaming.websocket.send-time-limit:10s}") Duration sendTimeLimit,
+                           @Value("${streaming.websocket.send-buffer-size-limit:524288}") int sendBufferSizeLimit) {
+        this.outboundFlowControl = outboundFlowControl;
+        this.outboundThreads = outboundThreads;
+        this.sendTimeLimit = sendTimeLimit;
+        this.sendBufferSizeLimit = sendBufferSizeLimit;
+    }
+
     /**
      * 配置消息代理（用于广播/点对点消息）
      */
@@ -26,8 +50,48 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         // 2. 配置应用前缀：客户端发送的消息需以 /app 开头，路由到 @MessageMapping 注解的方法
         config.setApplicationDestinationPrefixes("/app");
 
-        // 3. 可选：配置点对点消息的前缀（如 /user）
+        // 3. 配置点对点消息的前缀：/user/queue/response 会按会话解析为独享队列，避免广播
         config.setUserDestinationPrefix("/user");
+
+        // 4. 保持同一会话的推送顺序：出站通道默认由线程池并发投递，complete 可能先于最后几个 partial 到达客户端
+        config.setPreservePublishOrder(true);
+    }
+
+    /**
+     * 出站通道：按顺序投递时每个会话同一时间最多占用一个线程，写入慢的会话会阻塞该线程直到写完或被断开，
+     * 所以线程数固定且多于 CPU 核数；排队的消息数由 {@link OutboundFlowControl} 按会话限制
+     */
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(outboundThreads)
+                .maxPoolSize(outboundThreads)
+                .keepAliveSeconds(60);
+        registration.interceptors(outboundFlowControl);
+    }
+
+    /**
+     * 传输层限制：并发写入同一会话时，单次写入超过 sendTimeLimit 或缓冲超过 sendBufferSizeLimit 字节即断开；
+     * 同时登记会话，供出站流量控制断开慢消费者
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit((int) sendTimeLimit.toMillis())
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .addDecoratorFactory(handler -> new WebSocketHandlerDecorator(handler) {
+                    @Override
+                    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                        outboundFlowControl.register(session);
+                        super.afterConnectionEstablished(session);
+                    }
+
+                    @Override
+                    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus)
+                            throws Exception {
+                        outboundFlowControl.unregister(session.getId());
+                        super.afterConnectionClosed(session, closeStatus);
+                    }
+                });
     }
 
     /**
@@ -41,6 +105,10 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOriginPatterns("*")
                 // 3. 启用 SockJS 降级（适配不支持 WebSocket 的浏览器）
                 .withSockJS();
+
+        // 4. 原生 WebSocket 端点（不经过 SockJS），供紧凑二进制协议使用：SockJS 只能传输文本帧
+        registry.addEndpoint("/ws/chat-native")
+                .setAllowedOriginPatterns("*");
     }
 
 }
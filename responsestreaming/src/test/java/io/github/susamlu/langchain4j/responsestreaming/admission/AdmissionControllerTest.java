@@ -0,0 +1,128 @@
+package io.github.susamlu.langchain4j.responsestreaming.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AdmissionController 测试类
+ * 验证并发上限、按用户轮转出队、期限感知的快速拒绝和排队超时
+ */
+@DisplayName("准入控制测试")
+class AdmissionControllerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AdmissionController admission;
+
+    @AfterEach
+    void tearDown() {
+        admission.shutdown();
+    }
+
+    @Test
+    @DisplayName("名额释放后按用户轮流出队，单个用户的突发请求不会挤占其他用户")
+    void testFairQueuing() throws InterruptedException {
+        admission = new AdmissionController(meterRegistry, 1, 10, 4, Duration.ofMinutes(1), Duration.ofMillis(1));
+        BlockingQueue<AdmissionController.Ticket> started = new LinkedBlockingQueue<>();
+        BlockingQueue<String> order = new LinkedBlockingQueue<>();
+
+        submit("alice", "a0", started, order);
+        submit("alice", "a1", started, order);
+        submit("alice", "a2", started, order);
+        submit("bob", "b1", started, order);
+        assertEquals(1, admission.inFlightCount());
+        assertEquals(3, admission.queuedCount());
+
+        // 每释放一个名额，启动下一个请求
+        for (int i = 0; i < 4; i++) {
+            started.poll(1, TimeUnit.SECONDS).release();
+        }
+
+        assertEquals("a0", order.poll());
+        assertEquals("a1", order.poll());
+        assertEquals("b1", order.poll());
+        assertEquals("a2", order.poll());
+        assertEquals(0, admission.inFlightCount());
+        assertEquals(4, meterRegistry.timer("streaming.admission.wait", "endpoint", "test").count());
+    }
+
+    @Test
+    @DisplayName("预计等待超过最长等待时间时立即拒绝，并给出 Retry-After")
+    void testDeadlineRejection() {
+        admission = new AdmissionController(meterRegistry, 1, 10, 4, Duration.ofSeconds(5), Duration.ofSeconds(10));
+        admission.submit("test", "alice", ticket -> {
+        }, rejection -> fail("不应排队超时"));
+
+        AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class,
+                () -> admission.submit("test", "bob", ticket -> fail("不应启动"), rejection -> {
+                }));
+
+        assertEquals("deadline", e.getReason());
+        assertEquals(10, e.getRetryAfterSeconds());
+        assertEquals(0, admission.queuedCount());
+        assertEquals(1.0, meterRegistry.counter("streaming.admission.rejected",
+                "endpoint", "test", "reason", "deadline").count());
+    }
+
+    @Test
+    @DisplayName("单个用户的排队数超过上限时拒绝")
+    void testPerUserQueueCapacity() {
+        admission = new AdmissionController(meterRegistry, 1, 10, 1, Duration.ofMinutes(1), Duration.ofMillis(1));
+        admission.submit("test", "alice", ticket -> {
+        }, rejection -> {
+        });
+        admission.submit("test", "alice", ticket -> {
+        }, rejection -> {
+        });
+
+        AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class,
+                () -> admission.submit("test", "alice", ticket -> {
+                }, rejection -> {
+                }));
+        assertEquals("user-queue-full", e.getReason());
+
+        // 其他用户仍可排队
+        admission.submit("test", "bob", ticket -> {
+        }, rejection -> {
+        });
+        assertEquals(2, admission.queuedCount());
+    }
+
+    @Test
+    @DisplayName("排队超时回调、排队中放弃都会移出队列")
+    void testExpireAndAbandon() throws InterruptedException {
+        admission = new AdmissionController(meterRegistry, 1, 10, 4, Duration.ofMillis(200), Duration.ofMillis(1));
+        admission.submit("test", "alice", ticket -> {
+        }, rejection -> {
+        });
+        CountDownLatch expired = new CountDownLatch(1);
+        admission.submit("test", "bob", ticket -> fail("不应启动"), rejection -> expired.countDown());
+        AdmissionController.Ticket abandoned = admission.submit("test", "carol", ticket -> fail("不应启动"),
+                rejection -> fail("已放弃排队，不应再超时"));
+
+        abandoned.release();
+        assertEquals(1, admission.queuedCount());
+
+        assertTrue(expired.await(2, TimeUnit.SECONDS));
+        assertEquals(0, admission.queuedCount());
+        assertEquals(1, admission.inFlightCount());
+    }
+
+    private void submit(String userId, String name, BlockingQueue<AdmissionController.Ticket> started,
+                        BlockingQueue<String> order) {
+        admission.submit("test", userId, ticket -> {
+            order.add(name);
+            started.add(ticket);
+        }, rejection -> fail("不应排队超时"));
+    }
+
+}
@@ -0,0 +1,359 @@
+package io.github.susamlu.langchain4j.responsestreaming.cache;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证命中时不调用上游、按原始节奏或立即回放、回放之间互不阻塞，以及过期、容量淘汰和不可缓存的请求
+ * 验证命中时不调用上游、按原始节奏或立即回放，以及过期、容量淘汰和不可缓存的请求
+ */
+@DisplayName("可回放的流式响应缓存测试")
+class CachingStreamingChatModelTest {
+
+    @Test
+    @DisplayName("相同请求第二次命中缓存：不调用上游，回放相同的增量，token 用量为 0")
+    void testHitReplaysWithoutUpstreamCall() throws Exception {
+        FakeStreamingChatModel upstream = new FakeStreamingChatModel(Duration.ZERO, "你", "好", "！");
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        try (CachingStreamingChatModel model = CachingStreamingChatModel.builder()
+                .delegate(upstream)
+                .meterRegistry(meterRegistry)
+                .build()) {
+
+            Result first = chat(model, "hello");
+            Result second = chat(model, "hello");
+
+            assertEquals(1, upstream.calls.get());
+            assertEquals(List.of("你", "好", "！"), first.tokens);
+            assertEquals(first.tokens, second.tokens);
+            assertEquals("你好！", second.response.aiMessage().text());
+            assertEquals(3, first.response.tokenUsage().outputTokenCount());
+            assertEquals(0, second.response.tokenUsage().totalTokenCount());
+
+            assertEquals(0.5, model.hitRate());
+            assertEquals(1, meterRegistry.counter("streaming.cache.requests", "result", "hit").count());
+            assertEquals(3, meterRegistry.counter("streaming.cache.tokens.saved").count());
+            assertEquals(1, meterRegistry.get("streaming.cache.size").gauge().value());
+        }
+    }
+
+    @Test
+    @DisplayName("按原始节奏回放时保持增量间隔，立即回放时不等待")
+    void testReplayPacing() throws Exception {
+        FakeStreamingChatModel upstream = new FakeStreamingChatModel(Duration.ofMillis(40), "a", "b", "c", "d");
+        try (CachingStreamingChatModel paced = CachingStreamingChatModel.builder()
+                .delegate(upstream)
+                .replaySpeed(1.0)
+                .build();
+             CachingStreamingChatModel instant = CachingStreamingChatModel.builder()
+                     .delegate(upstream)
+                     .build()) {
+
+            chat(paced, "hello");
+            long start = System.nanoTime();
+            Result replayed = chat(paced, "hello");
+            long pacedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            chat(instant, "hello");
+            start = System.nanoTime();
+            chat(instant, "hello");
+            long instantMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertEquals(List.of("a", "b", "c", "d"), replayed.tokens);
+            // 4 个增量各间隔约 40ms
+            assertTrue(pacedMillis >= 120, "按节奏回放耗时: " + pacedMillis);
+            assertTrue(instantMillis < 100, "立即回放耗时: " + instantMillis);
+            assertEquals(2, upstream.calls.get());
+        }
+    }
+
+    @Test
+    @DisplayName("回放互不阻塞：一个客户端卡住时其他回放照常完成，立即回放的长响应与其他回放交替执行")
+    void testReplaysDoNotBlockEachOther() throws Exception {
+        String longMessage = "x".repeat(200);
+
+        // 两个回放线程：卡住的客户端只占住一个线程
+        try (CachingStreamingChatModel model = CachingStreamingChatModel.builder()
+                .delegate(new EchoStreamingChatModel())
+                .replayThreads(2)
+                .build()) {
+            chat(model, "stuck");
+            chat(model, "fast");
+            CountDownLatch entered = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            model.chat(request("stuck", null), new ReplayHandler(token -> {
+                entered.countDown();
+                await(release);
+            }));
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+            assertEquals(List.of("f", "a", "s", "t"), chat(model, "fast").tokens);
+            release.countDown();
+        }
+
+        // 只有一个回放线程：立即回放的长响应每个增量都让出线程，短响应不必等它回放完
+        try (CachingStreamingChatModel model = CachingStreamingChatModel.builder()
+                .delegate(new EchoStreamingChatModel())
+                .replayThreads(1)
+                .build()) {
+            chat(model, longMessage);
+            chat(model, "hi");
+            CountDownLatch longDone = new CountDownLatch(1);
+            model.chat(request(longMessage, null), new ReplayHandler(token -> {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }) {
+                @Override
+                public void onCompleteResponse(ChatResponse completeResponse) {
+                    longDone.countDown();
+                }
+            });
+
+            assertEquals(List.of("h", "i"), chat(model, "hi").tokens);
+            assertEquals(1, longDone.getCount(), "短响应应在长响应回放完之前完成");
+            assertTrue(longDone.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    @DisplayName("过期条目和超出容量的最久未使用条目被淘汰")
+    void testTtlAndSizeEviction() throws Exception {
+        FakeStreamingChatModel upstream = new FakeStreamingChatModel(Duration.ZERO, "x");
+        try (CachingStreamingChatModel model = CachingStreamingChatModel.builder()
+                .delegate(upstream)
+                .maxEntries(2)
+                .ttl(Duration.ofMillis(200))
+                .build()) {
+
+            chat(model, "a");
+            chat(model, "b");
+            // 访问 a，使 b 成为最久未使用的条目
+            chat(model, "a");
+            chat(model, "c");
+            assertEquals(3, upstream.calls.get());
+            assertEquals(2, model.size());
+
+            chat(model, "a");
+            assertEquals(3, upstream.calls.get());
+            chat(model, "b");
+            assertEquals(4, upstream.calls.get());
+
+            Thread.sleep(300);
+            chat(model, "a");
+            assertEquals(5, upstream.calls.get());
+        }
+    }
+
+    @Test
+    @DisplayName("出错的生成不写入缓存；温度高于上限的请求绕过缓存")
+    void testUncacheableRequests() throws Exception {
+        FakeStreamingChatModel upstream = new FakeStreamingChatModel(Duration.ZERO, "x");
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        try (CachingStreamingChatModel model = CachingStreamingChatModel.builder()
+                .delegate(upstream)
+                .maxTemperature(0.3)
+                .meterRegistry(meterRegistry)
+                .build()) {
+
+            upstream.fail = true;
+            assertNotNull(chat(model, request("hello", 0.1)).error);
+            upstream.fail = false;
+            chat(model, request("hello", 0.1));
+            chat(model, request("hello", 0.1));
+            assertEquals(2, upstream.calls.get());
+
+            chat(model, request("hello", 0.9));
+            chat(model, request("hello", 0.9));
+            assertEquals(4, upstream.calls.get());
+            assertEquals(2, meterRegistry.counter("streaming.cache.requests", "result", "bypass").count());
+        }
+    }
+
+    @Test
+    @DisplayName("通过回调上下文中的 StreamingHandle 取消回放")
+    void testCancelReplay() throws Exception {
+        FakeStreamingChatModel upstream = new FakeStreamingChatModel(Duration.ofMillis(20), "a", "b", "c", "d");
+        try (CachingStreamingChatModel model = CachingStreamingChatModel.builder()
+                .delegate(upstream)
+                .replaySpeed(1.0)
+                .build()) {
+            chat(model, "hello");
+
+            List<String> tokens = new CopyOnWriteArrayList<>();
+            CompletableFuture<Void> completed = new CompletableFuture<>();
+            model.chat(request("hello", null), new StreamingChatResponseHandler() {
+                @Override
+                public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+                    tokens.add(partialResponse.text());
+                    if (tokens.size() == 2) {
+                        context.streamingHandle().cancel();
+                    }
+                }
+
+                @Override
+                public void onCompleteResponse(ChatResponse completeResponse) {
+                    completed.complete(null);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    completed.completeExceptionally(error);
+                }
+            });
+
+            Thread.sleep(200);
+            assertEquals(List.of("a", "b"), tokens);
+            assertFalse(completed.isDone());
+        }
+    }
+
+    private static ChatRequest request(String message, Double temperature) {
+        return ChatRequest.builder()
+                .messages(UserMessage.from(message))
+                .parameters(ChatRequestParameters.builder().temperature(temperature).build())
+                .build();
+    }
+
+    private static Result chat(StreamingChatModel model, String message) throws Exception {
+        return chat(model, request(message, null));
+    }
+
+    private static Result chat(StreamingChatModel model, ChatRequest request) throws Exception {
+        Result result = new Result();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        model.chat(request, new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(String partialResponse) {
+                result.tokens.add(partialResponse);
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+                result.response = completeResponse;
+                done.complete(null);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                result.error = error;
+                done.complete(null);
+            }
+        });
+        done.get(5, TimeUnit.SECONDS);
+        return result;
+    }
+
+    private static class Result {
+
+        private final List<String> tokens = new CopyOnWriteArrayList<>();
+        private volatile ChatResponse response;
+        private volatile Throwable error;
+
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 每个增量交给 onToken 处理的回调
+    private static class ReplayHandler implements StreamingChatResponseHandler {
+
+        private final Consumer<String> onToken;
+
+        ReplayHandler(Consumer<String> onToken) {
+            this.onToken = onToken;
+        }
+
+        @Override
+        public void onPartialResponse(String partialResponse) {
+            onToken.accept(partialResponse);
+        }
+
+        @Override
+        public void onCompleteResponse(ChatResponse completeResponse) {
+        }
+
+        @Override
+        public void onError(Throwable error) {
+        }
+
+    }
+
+    // 把用户消息逐字符作为 token 输出的假模型，不同消息的增量数不同
+    private static class EchoStreamingChatModel implements StreamingChatModel {
+
+        @Override
+        public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+            String text = ((UserMessage) chatRequest.messages().get(0)).singleText();
+            text.chars().forEach(c -> handler.onPartialResponse(String.valueOf((char) c)));
+            handler.onCompleteResponse(ChatResponse.builder().aiMessage(AiMessage.from(text)).build());
+        }
+
+    }
+
+    // 在调用线程上按固定间隔输出 token 的假模型
+    private static class FakeStreamingChatModel implements StreamingChatModel {
+
+        private final Duration gap;
+        private final List<String> tokens;
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean fail;
+
+        FakeStreamingChatModel(Duration gap, String... tokens) {
+            this.gap = gap;
+            this.tokens = List.of(tokens);
+        }
+
+        @Override
+        public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+            calls.incrementAndGet();
+            if (fail) {
+                handler.onError(new RuntimeException("upstream error"));
+                return;
+            }
+            for (String token : tokens) {
+                try {
+                    Thread.sleep(gap.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                handler.onPartialResponse(token);
+            }
+            handler.onCompleteResponse(ChatResponse.builder()
+                    .aiMessage(AiMessage.from(String.join("", tokens)))
+                    .tokenUsage(new TokenUsage(1, tokens.size()))
+                    .build());
+        }
+
+    }
+
+}
@@ -0,0 +1,193 @@
+package io.github.susamlu.langchain4j.responsestreaming.cancellable;
+
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStream;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStreamRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CancellableGenerationRegistry 测试类
+ * 验证客户端断开后上游生成只被取消一次、重连可以避免取消，以及先于生成到达的取消
+ */
+@DisplayName("断开自动取消测试")
+class CancellableGenerationRegistryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ResumableStreamRegistry streamRegistry = new ResumableStreamRegistry(16, Duration.ofMinutes(5));
+
+    @AfterEach
+    void tearDown() {
+        streamRegistry.shutdown();
+    }
+
+    @Test
+    @DisplayName("断开、超时、发送失败多次触发时只取消一次上游")
+    void testCancelExactlyOnce() {
+        CancellableGenerationRegistry registry = newRegistry(Duration.ZERO);
+        ResumableStream stream = streamRegistry.open("cancellable:r1");
+        SseEmitter emitter = new SseEmitter();
+        stream.attach(emitter, 0);
+        CancellableGeneration generation = registry.register("r1", stream);
+        CountingHandle handle = new CountingHandle();
+        generation.bindStreamingHandle(handle);
+
+        stream.detach(emitter);
+        registry.clientDisconnected(generation, "timeout");
+        registry.clientDisconnected(generation, "disconnect");
+        registry.cancel(generation, "user");
+
+        assertEquals(1, handle.cancelCount);
+        assertEquals("timeout", generation.getCancelReason());
+        assertEquals(1.0, meterRegistry.counter("streaming.cancellations",
+                "endpoint", "cancellable", "reason", "timeout").count());
+        assertNull(registry.get("r1"));
+        assertNull(streamRegistry.get("cancellable:r1"));
+        registry.shutdown();
+    }
+
+    @Test
+    @DisplayName("在第一个 token 之前断开：登记 StreamingHandle 时立即取消")
+    void testCancelBeforeHandleBound() {
+        CancellableGenerationRegistry registry = newRegistry(Duration.ZERO);
+        ResumableStream stream = streamRegistry.open("cancellable:r2");
+        CancellableGeneration generation = registry.register("r2", stream);
+
+        registry.clientDisconnected(generation, "disconnect");
+        CountingHandle handle = new CountingHandle();
+        assertTrue(generation.bindStreamingHandle(handle));
+        assertFalse(generation.bindStreamingHandle(new CountingHandle()));
+
+        assertEquals(1, handle.cancelCount);
+        registry.shutdown();
+    }
+
+    @Test
+    @DisplayName("宽限期内重连则不取消上游")
+    void testReconnectWithinGrace() throws InterruptedException {
+        CancellableGenerationRegistry registry = newRegistry(Duration.ofMillis(100));
+        ResumableStream stream = streamRegistry.open("cancellable:r3");
+        SseEmitter first = new SseEmitter();
+        stream.attach(first, 0);
+        CancellableGeneration generation = registry.register("r3", stream);
+        CountingHandle handle = new CountingHandle();
+        generation.bindStreamingHandle(handle);
+
+        stream.detach(first);
+        registry.clientDisconnected(generation, "disconnect");
+        stream.attach(new SseEmitter(), 0);
+        registry.clientAttached(generation);
+
+        Thread.sleep(300);
+        assertEquals(0, handle.cancelCount);
+        assertFalse(generation.isCancelled());
+        registry.shutdown();
+    }
+
+    @Test
+    @DisplayName("泄漏检测清理流已被淘汰的生成")
+    void testDetectLeaks() {
+        CancellableGenerationRegistry registry = newRegistry(Duration.ZERO);
+        ResumableStream stream = streamRegistry.open("cancellable:r4");
+        CancellableGeneration generation = registry.register("r4", stream);
+        CountingHandle handle = new CountingHandle();
+        generation.bindStreamingHandle(handle);
+
+        streamRegistry.remove("cancellable:r4");
+        registry.detectLeaks();
+
+        assertEquals(1, handle.cancelCount);
+        assertEquals(0, registry.activeCount());
+        assertEquals(1.0, meterRegistry.counter("streaming.generations.leaked", "endpoint", "cancellable").count());
+        registry.shutdown();
+    }
+
+    @Test
+    @DisplayName("取消请求先于生成到达：登记待取消，生成开始前放弃")
+    void testPendingCancel() {
+        CancellableGenerationRegistry registry = newRegistry(Duration.ZERO);
+        registry.markPendingCancel("r5");
+
+        ResumableStream stream = streamRegistry.open("cancellable:r5");
+        CancellableGeneration generation = registry.register("r5", stream);
+        assertTrue(registry.consumePendingCancel("r5"));
+        assertFalse(registry.consumePendingCancel("r5"));
+        registry.cancel(generation, "user");
+
+        assertTrue(generation.isCancelled());
+        assertTrue(stream.isFinished());
+        assertEquals(1.0, meterRegistry.counter("streaming.cancellations.before-first-token",
+                "endpoint", "cancellable").count());
+        registry.shutdown();
+    }
+
+    @Test
+    @DisplayName("取消请求与生成登记并发到达：无论先后，生成都被取消")
+    void testConcurrentCancelAndRegister() throws Exception {
+        CancellableGenerationRegistry registry = newRegistry(Duration.ZERO);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 2000; i++) {
+                String requestId = "race-" + i;
+                ResumableStream stream = streamRegistry.open("cancellable:" + requestId);
+                CyclicBarrier barrier = new CyclicBarrier(2);
+                // 与 CancellableStreamingController.streamChat 相同：先登记，再检查待取消
+                Future<CancellableGeneration> registered = executor.submit(() -> {
+                    barrier.await();
+                    CancellableGeneration generation = registry.register(requestId, stream);
+                    if (registry.consumePendingCancel(requestId)) {
+                        registry.cancel(generation, "user");
+                    }
+                    return generation;
+                });
+                Future<?> cancelled = executor.submit(() -> {
+                    barrier.await();
+                    return registry.cancelOrMarkPending(requestId, "user");
+                });
+                CancellableGeneration generation = registered.get(5, TimeUnit.SECONDS);
+                cancelled.get(5, TimeUnit.SECONDS);
+
+                assertTrue(generation.isCancelled(), requestId);
+                // 待取消登记已被消费，不会残留
+                assertFalse(registry.consumePendingCancel(requestId), requestId);
+            }
+            assertEquals(0, registry.activeCount());
+        } finally {
+            executor.shutdownNow();
+            registry.shutdown();
+        }
+    }
+
+    private CancellableGenerationRegistry newRegistry(Duration grace) {
+        return new CancellableGenerationRegistry(streamRegistry, meterRegistry, grace, Duration.ofHours(1), Duration.ofMinutes(1));
+    }
+
+    private static class CountingHandle implements StreamingHandle {
+
+        private int cancelCount;
+
+        @Override
+        public void cancel() {
+            cancelCount++;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelCount > 0;
+        }
+
+    }
+
+}
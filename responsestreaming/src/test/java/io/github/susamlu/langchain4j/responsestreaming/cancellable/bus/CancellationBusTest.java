@@ -0,0 +1,132 @@
+package io.github.susamlu.langchain4j.responsestreaming.cancellable.bus;
+
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import io.github.susamlu.langchain4j.responsestreaming.admission.AdmissionController;
+import io.github.susamlu.langchain4j.responsestreaming.cancellable.CancellableGeneration;
+import io.github.susamlu.langchain4j.responsestreaming.cancellable.CancellableGenerationRegistry;
+import io.github.susamlu.langchain4j.responsestreaming.cancellable.CancellableStreamingController;
+import io.github.susamlu.langchain4j.responsestreaming.completion.CompletionProtocol;
+import io.github.susamlu.langchain4j.responsestreaming.moderation.OutputGuard;
+import io.github.susamlu.langchain4j.responsestreaming.config.ModelHttpClientConfig;
+import io.github.susamlu.langchain4j.responsestreaming.config.SseWriterConfig;
+import io.github.susamlu.langchain4j.responsestreaming.config.StreamingModelConfig;
+import io.github.susamlu.langchain4j.responsestreaming.metrics.StreamingMetrics;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStreamRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 取消总线测试类
+ * 每个节点是一个独立的应用上下文；Redis 测试需要本地 Redis（localhost:6379），不可用时跳过
+ */
+@DisplayName("集群取消测试")
+class CancellationBusTest {
+
+    @Test
+    @DisplayName("进程内总线：本节点持有的生成被取消")
+    void testLocalBus() throws InterruptedException {
+        try (ConfigurableApplicationContext node = startNode("--streaming.cancellation.bus=local")) {
+            LatchHandle handle = registerGeneration(node, "r1");
+
+            node.getBean(CancellableStreamingController.class).cancelStreaming("r1");
+
+            assertTrue(handle.cancelled.await(0, TimeUnit.MILLISECONDS));
+            assertNull(node.getBean(CancellableGenerationRegistry.class).get("r1"));
+        }
+    }
+
+    @Test
+    @DisplayName("Redis 总线：取消请求落在另一个节点，持有生成的节点执行取消")
+    void testRedisBusAcrossNodes() throws InterruptedException {
+        assumeTrue(redisAvailable(), "本地 Redis 不可用，跳过");
+
+        // 每次测试使用独立频道，避免与其他实例互相干扰
+        String channel = "streaming:cancel:test:" + UUID.randomUUID();
+        String[] args = {"--streaming.cancellation.bus=redis", "--streaming.cancellation.redis.channel=" + channel};
+        try (ConfigurableApplicationContext owner = startNode(args);
+             ConfigurableApplicationContext other = startNode(args)) {
+            LatchHandle handle = registerGeneration(owner, "r2");
+
+            long start = System.nanoTime();
+            other.getBean(CancellableStreamingController.class).cancelStreaming("r2");
+
+            assertTrue(handle.cancelled.await(2, TimeUnit.SECONDS));
+            System.out.println("跨节点取消耗时: " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        }
+    }
+
+    private static LatchHandle registerGeneration(ConfigurableApplicationContext node, String requestId) {
+        ResumableStreamRegistry streamRegistry = node.getBean(ResumableStreamRegistry.class);
+        CancellableGenerationRegistry generationRegistry = node.getBean(CancellableGenerationRegistry.class);
+        CancellableGeneration generation = generationRegistry.register(requestId,
+                streamRegistry.open("cancellable:" + requestId));
+        LatchHandle handle = new LatchHandle();
+        generation.bindStreamingHandle(handle);
+        return handle;
+    }
+
+    private static ConfigurableApplicationContext startNode(String... args) {
+        return new SpringApplicationBuilder(NodeConfig.class)
+                .web(WebApplicationType.NONE)
+                // 测试不访问真实模型，跳过连接预热
+                .properties("streaming.http.prewarm.enabled=false")
+                .run(args);
+    }
+
+    private static boolean redisAvailable() {
+        try (Jedis jedis = new Jedis("localhost", 6379)) {
+            return "PONG".equals(jedis.ping());
+        } catch (JedisException e) {
+            return false;
+        }
+    }
+
+    @Configuration
+    @Import({ResumableStreamRegistry.class, CancellableGenerationRegistry.class,
+            CancellationBusConfig.class, CancellableStreamingController.class, AdmissionController.class,
+            StreamingMetrics.class, StreamingModelConfig.class, ModelHttpClientConfig.class, SseWriterConfig.class,
+            CompletionProtocol.class, OutputGuard.class})
+    static class NodeConfig {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+    }
+
+    private static class LatchHandle implements StreamingHandle {
+
+        private final CountDownLatch cancelled = new CountDownLatch(1);
+
+        @Override
+        public void cancel() {
+            cancelled.countDown();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled.getCount() == 0;
+        }
+
+    }
+
+}
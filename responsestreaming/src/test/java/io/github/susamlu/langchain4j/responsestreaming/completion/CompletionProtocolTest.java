@@ -0,0 +1,91 @@
+package io.github.susamlu.langchain4j.responsestreaming.completion;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CompletionProtocol 测试类
+ * 验证轻量 complete 事件的元数据、按 resultId 获取完整回复，以及兼容旧协议
+ */
+@DisplayName("complete 事件协议测试")
+class CompletionProtocolTest {
+
+    private static final String TEXT = "从前有座山，山里有座庙 😀";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    @DisplayName("complete 事件只携带用量、结束原因、内容哈希和事件数，完整回复按 resultId 获取")
+    void testSummary() throws Exception {
+        CompletionProtocol protocol = new CompletionProtocol(false, 16);
+        ChatResponse response = ChatResponse.builder()
+                .aiMessage(AiMessage.from(TEXT))
+                .tokenUsage(new TokenUsage(12, 34))
+                .finishReason(FinishReason.STOP)
+                .build();
+
+        String data = protocol.completeData("chat:r1", response, 7);
+        assertTrue(data.length() < 300);
+        JsonNode summary = objectMapper.readTree(data);
+        assertEquals("chat:r1", summary.get("resultId").asText());
+        assertEquals("STOP", summary.get("finishReason").asText());
+        assertEquals(12, summary.get("inputTokens").asInt());
+        assertEquals(34, summary.get("outputTokens").asInt());
+        assertEquals(46, summary.get("totalTokens").asInt());
+        assertEquals(7, summary.get("events").asLong());
+        // 与浏览器 crypto.subtle.digest('SHA-256', new TextEncoder().encode(text)) 的十六进制结果一致
+        assertEquals(CompletionProtocol.sha256(TEXT), summary.get("sha256").asText());
+        assertEquals(64, summary.get("sha256").asText().length());
+
+        assertEquals(TEXT, protocol.result("chat:r1"));
+        assertNull(protocol.result("chat:unknown"));
+    }
+
+    @Test
+    @DisplayName("resultId 在客户端传入的 ID 之后追加服务端生成的 UUID，相同前缀每次都不同")
+    void testNewResultId() {
+        String first = CompletionProtocol.newResultId("chat:r1");
+        String second = CompletionProtocol.newResultId("chat:r1");
+        assertTrue(first.matches("chat:r1:[0-9a-f-]{36}"));
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    @DisplayName("模型未返回用量和结束原因时省略对应字段；完整回复只保留最近的若干个")
+    void testMissingMetadataAndEviction() throws Exception {
+        CompletionProtocol protocol = new CompletionProtocol(false, 2);
+        ChatResponse response = ChatResponse.builder().aiMessage(AiMessage.from("hi")).build();
+
+        JsonNode summary = objectMapper.readTree(protocol.completeData("a", response, 1));
+        assertFalse(summary.has("finishReason"));
+        assertFalse(summary.has("inputTokens"));
+        assertTrue(summary.has("sha256"));
+
+        protocol.completeData("b", response, 1);
+        protocol.result("a");
+        protocol.completeData("c", response, 1);
+        // 最近访问过的 a 保留，b 被淘汰
+        assertEquals("hi", protocol.result("a"));
+        assertNull(protocol.result("b"));
+        assertEquals("hi", protocol.result("c"));
+    }
+
+    @Test
+    @DisplayName("兼容模式：complete 事件直接携带完整回复，不缓存")
+    void testFullTextCompatibility() {
+        CompletionProtocol protocol = new CompletionProtocol(true, 16);
+        ChatResponse response = ChatResponse.builder().aiMessage(AiMessage.from(TEXT)).build();
+
+        assertEquals(TEXT, protocol.completeData("chat:r1", response, 3));
+        assertNull(protocol.result("chat:r1"));
+    }
+
+}
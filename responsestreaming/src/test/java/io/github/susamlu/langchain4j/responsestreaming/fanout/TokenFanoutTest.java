@@ -0,0 +1,176 @@
+package io.github.susamlu.langchain4j.responsestreaming.fanout;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TokenFanout 测试类
+ * 验证每个下游按顺序收到全部事件、慢下游不拖慢其他下游、缓冲区满时的背压以及落后指标
+ */
+@DisplayName("token 流多下游分发测试")
+class TokenFanoutTest {
+
+    @Test
+    @DisplayName("每个下游按顺序收到全部 token 和完成事件，容量小于 token 数时也不丢失")
+    void testAllSinksReceiveEverythingInOrder() throws Exception {
+        RecordingSink first = new RecordingSink(0);
+        RecordingSink second = new RecordingSink(0);
+        try (TokenFanout fanout = TokenFanout.builder()
+                .capacity(8)
+                .sink("first", first)
+                .sink("second", second)
+                .build()) {
+
+            List<String> tokens = tokens(1000);
+            tokens.forEach(fanout::onPartialResponse);
+            fanout.onCompleteResponse(response("done"));
+            // 完成之后的事件被忽略
+            fanout.onPartialResponse("ignored");
+
+            assertTrue(fanout.awaitCompletion(Duration.ofSeconds(5)));
+            assertEquals(tokens, first.tokens);
+            assertEquals(tokens, second.tokens);
+            assertEquals("done", first.completed.get(1, TimeUnit.SECONDS).aiMessage().text());
+            assertEquals(0, fanout.lag("first"));
+        }
+    }
+
+    @Test
+    @DisplayName("慢下游只让自己落后：快下游在慢下游处理完之前就收到全部 token，生产者不等待")
+    void testSlowSinkDoesNotDelayOthers() throws Exception {
+        RecordingSink client = new RecordingSink(0);
+        RecordingSink persistence = new RecordingSink(5);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        try (TokenFanout fanout = TokenFanout.builder()
+                .sink("client", client)
+                .sink("persistence", persistence)
+                .meterRegistry(meterRegistry)
+                .build()) {
+
+            long start = System.nanoTime();
+            tokens(100).forEach(fanout::onPartialResponse);
+            fanout.onCompleteResponse(response("done"));
+            long publishMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            client.completed.get(1, TimeUnit.SECONDS);
+            long clientMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(publishMillis < 100, "发布耗时: " + publishMillis);
+            assertTrue(clientMillis < 300, "客户端收完耗时: " + clientMillis);
+            assertEquals(100, client.tokens.size());
+            assertTrue(fanout.lag("persistence") > 0);
+
+            assertTrue(fanout.awaitCompletion(Duration.ofSeconds(5)));
+            assertEquals(100, persistence.tokens.size());
+            assertEquals(0, meterRegistry.timer("streaming.fanout.producer.stall").count());
+            assertTrue(meterRegistry.summary("streaming.fanout.lag", "sink", "persistence").max() > 1);
+            assertEquals(101, meterRegistry.timer("streaming.fanout.delay", "sink", "client").count());
+        }
+    }
+
+    @Test
+    @DisplayName("最慢的下游落后超过容量时生产者等待，并记录等待时间")
+    void testBackpressureWhenFull() throws Exception {
+        RecordingSink slow = new RecordingSink(2);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        try (TokenFanout fanout = TokenFanout.builder()
+                .capacity(4)
+                .sink("slow", slow)
+                .meterRegistry(meterRegistry)
+                .build()) {
+
+            long start = System.nanoTime();
+            tokens(20).forEach(fanout::onPartialResponse);
+            long publishMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // 20 个 token 每个 2ms，只有 4 个槽位，生产者至少要等约 16 个 token 的处理时间
+            assertTrue(publishMillis >= 25, "发布耗时: " + publishMillis);
+            assertTrue(meterRegistry.timer("streaming.fanout.producer.stall").count() > 0);
+            assertTrue(fanout.lag("slow") <= 4);
+        }
+    }
+
+    @Test
+    @DisplayName("错误事件送达每个下游；下游抛出的异常不影响后续事件")
+    void testErrorAndFailingSink() throws Exception {
+        RecordingSink healthy = new RecordingSink(0);
+        List<String> seen = new CopyOnWriteArrayList<>();
+        try (TokenFanout fanout = TokenFanout.builder()
+                .sink("failing", token -> {
+                    seen.add(token);
+                    throw new IllegalStateException("boom");
+                })
+                .sink("healthy", healthy)
+                .build()) {
+
+            fanout.onPartialResponse("a");
+            fanout.onPartialResponse("b");
+            fanout.onError(new RuntimeException("upstream error"));
+
+            assertTrue(fanout.awaitCompletion(Duration.ofSeconds(5)));
+            assertEquals(List.of("a", "b"), seen);
+            assertEquals(List.of("a", "b"), healthy.tokens);
+            assertEquals("upstream error", healthy.error.get(1, TimeUnit.SECONDS).getMessage());
+        }
+    }
+
+    private static List<String> tokens(int count) {
+        List<String> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tokens.add("t" + i);
+        }
+        return tokens;
+    }
+
+    private static ChatResponse response(String text) {
+        return ChatResponse.builder().aiMessage(AiMessage.from(text)).build();
+    }
+
+    // 记录收到的事件，每个 token 可模拟固定的处理耗时
+    private static class RecordingSink implements TokenSink {
+
+        private final long delayMillis;
+        private final List<String> tokens = new CopyOnWriteArrayList<>();
+        private final CompletableFuture<ChatResponse> completed = new CompletableFuture<>();
+        private final CompletableFuture<Throwable> error = new CompletableFuture<>();
+
+        RecordingSink(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void onToken(String token) {
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            tokens.add(token);
+        }
+
+        @Override
+        public void onComplete(ChatResponse response) {
+            completed.complete(response);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error.complete(error);
+        }
+
+    }
+
+}
@@ -0,0 +1,177 @@
+package io.github.susamlu.langchain4j.responsestreaming.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.http.client.jdk.JdkHttpClient;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import io.github.susamlu.langchain4j.responsestreaming.config.ModelHttpClientConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MeteredHttpClient / SharedHttpClientBuilder 测试类
+ * 验证多个模型共享同一个 HTTP 客户端并复用连接，且流式请求的指标正确
+ */
+@DisplayName("共享模型 HTTP 客户端测试")
+class MeteredHttpClientTest {
+
+    private static final String CHUNK = "data: {\"id\":\"1\",\"object\":\"chat.completion.chunk\",\"created\":0,"
+            + "\"model\":\"m\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"%s\"},\"finish_reason\":%s}]}\n\n";
+
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch releaseModels = new CountDownLatch(1);
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", this::streamCompletion);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        releaseModels.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    @DisplayName("两个模型共享同一个客户端：复用同一个连接，请求数和响应头时间都被记录")
+    void testSharedClientReusesConnection() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MeteredHttpClient httpClient = new MeteredHttpClient(JdkHttpClient.builder()
+                .httpClientBuilder(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2))
+                .connectTimeout(Duration.ofSeconds(5))
+                .readTimeout(Duration.ofSeconds(5))
+                .build(), meterRegistry);
+        SharedHttpClientBuilder builder = new SharedHttpClientBuilder(httpClient,
+                Duration.ofSeconds(5), Duration.ofSeconds(5));
+        assertSame(httpClient, builder.build());
+
+        StreamingChatModel first = model(builder);
+        StreamingChatModel second = model(builder);
+        assertEquals("你好", chat(first));
+        assertEquals("你好", chat(second));
+        assertEquals("你好", chat(first));
+
+        // 顺序的三个请求只建立了一个连接
+        assertEquals(1, clientPorts.size());
+        assertEquals(3, meterRegistry.timer("streaming.http.time-to-headers", "type", "sse").count());
+        assertEquals(3, meterRegistry.counter("streaming.http.requests", "type", "sse", "outcome", "success").count());
+        assertEquals(0, httpClient.activeRequests());
+        assertEquals(0, meterRegistry.get("streaming.http.requests.active").gauge().value());
+    }
+
+    @Test
+    @DisplayName("上游返回错误时计入失败请求，进行中的请求数归零")
+    void testErrorCounted() {
+        server.createContext("/v1/fail/chat/completions", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MeteredHttpClient httpClient = new MeteredHttpClient(JdkHttpClient.builder()
+                .httpClientBuilder(HttpClient.newBuilder())
+                .build(), meterRegistry);
+        StreamingChatModel model = OpenAiStreamingChatModel.builder()
+                .httpClientBuilder(new SharedHttpClientBuilder(httpClient, Duration.ofSeconds(5), Duration.ofSeconds(5)))
+                .baseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/fail")
+                .apiKey("test")
+                .modelName("m")
+                .build();
+
+        assertThrows(Exception.class, () -> chat(model));
+        assertEquals(1, meterRegistry.counter("streaming.http.requests", "type", "sse", "outcome", "error").count());
+        assertEquals(0, httpClient.activeRequests());
+    }
+
+    @Test
+    @DisplayName("上游迟迟不响应时连接预热不阻塞启动")
+    void testPrewarmDoesNotBlockStartup() throws Exception {
+        CountDownLatch prewarmed = new CountDownLatch(1);
+        server.createContext("/v1/models", exchange -> {
+            prewarmed.countDown();
+            try {
+                releaseModels.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        MeteredHttpClient httpClient = new MeteredHttpClient(JdkHttpClient.builder()
+                .httpClientBuilder(HttpClient.newBuilder())
+                .readTimeout(Duration.ofSeconds(30))
+                .build(), new SimpleMeterRegistry());
+
+        long startNanos = System.nanoTime();
+        new ModelHttpClientConfig()
+                .modelConnectionPrewarmer(httpClient, true, 2, Duration.ofMillis(200),
+                        "http://127.0.0.1:" + server.getAddress().getPort() + "/v1", "test")
+                .run(new DefaultApplicationArguments());
+
+        // 预热请求已经发出，但启动流程没有等待它的响应
+        assertTrue(Duration.ofNanos(System.nanoTime() - startNanos).toMillis() < 1000);
+        assertTrue(prewarmed.await(5, TimeUnit.SECONDS));
+    }
+
+    private StreamingChatModel model(SharedHttpClientBuilder builder) {
+        return OpenAiStreamingChatModel.builder()
+                .httpClientBuilder(builder)
+                .baseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/v1")
+                .apiKey("test")
+                .modelName("m")
+                .build();
+    }
+
+    private static String chat(StreamingChatModel model) throws Exception {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        model.chat("hello", new StreamingChatResponseHandler() {
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+                result.complete(completeResponse.aiMessage().text());
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                result.completeExceptionally(error);
+            }
+        });
+        return result.get(10, TimeUnit.SECONDS);
+    }
+
+    private void streamCompletion(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        exchange.getRequestBody().readAllBytes();
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(String.format(CHUNK, "你", "null").getBytes(StandardCharsets.UTF_8));
+            out.write(String.format(CHUNK, "好", "null").getBytes(StandardCharsets.UTF_8));
+            out.write(String.format(CHUNK, "", "\"stop\"").getBytes(StandardCharsets.UTF_8));
+            out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+}
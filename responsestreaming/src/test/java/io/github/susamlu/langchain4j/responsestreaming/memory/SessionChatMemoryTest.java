@@ -0,0 +1,279 @@
+package io.github.susamlu.langchain4j.responsestreaming.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import io.github.susamlu.langchain4j.responsestreaming.admission.AdmissionController;
+import io.github.susamlu.langchain4j.responsestreaming.completion.CompletionProtocol;
+import io.github.susamlu.langchain4j.responsestreaming.moderation.OutputGuard;
+import io.github.susamlu.langchain4j.responsestreaming.metrics.StreamingMetrics;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStreamRegistry;
+import io.github.susamlu.langchain4j.responsestreaming.sse.SseFlushPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitterReturnValueHandler;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 会话记忆测试类
+ * 验证同一会话的读写按顺序执行、窗口淘汰，客户端在记忆写入完成前就收到 complete 事件，
+ * 以及收到 complete 后立即发起的读取能看到本轮对话
+ */
+@DisplayName("会话记忆测试")
+class SessionChatMemoryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BlockingStore store = new BlockingStore();
+
+    @AfterEach
+    void releaseStore() {
+        store.gate.countDown();
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    @DisplayName("同一会话的写入按提交顺序执行，读取能看到之前提交的全部写入；不同会话互不等待")
+    void testOrderingPerSession() throws Exception {
+        SessionChatMemory memory = new SessionChatMemory(store, meterRegistry, 100, 4);
+        for (int i = 1; i <= 10; i++) {
+            memory.persistTurn("s1", UserMessage.from("q" + i), AiMessage.from("a" + i));
+        }
+        // s1 的写入被阻塞时，s2 照常读写
+        memory.persistTurn("s2", UserMessage.from("other"), AiMessage.from("reply"));
+        assertEquals(2, memory.load("s2").get(1, TimeUnit.SECONDS).size());
+
+        CompletableFuture<List<ChatMessage>> loaded = memory.load("s1");
+        assertFalse(loaded.isDone());
+        store.gate.countDown();
+        List<ChatMessage> messages = loaded.get(1, TimeUnit.SECONDS);
+
+        assertEquals(20, messages.size());
+        for (int i = 1; i <= 10; i++) {
+            assertEquals("q" + i, text(messages.get(2 * i - 2)));
+            assertEquals("a" + i, text(messages.get(2 * i - 1)));
+        }
+        memory.shutdown();
+        assertEquals(11, meterRegistry.timer("streaming.memory.persist").count());
+    }
+
+    @Test
+    @DisplayName("超出窗口时丢弃最早的消息，且不以 AI 回复开头")
+    void testEviction() throws Exception {
+        store.gate.countDown();
+        SessionChatMemory memory = new SessionChatMemory(store, meterRegistry, 5, 1);
+        for (int i = 1; i <= 3; i++) {
+            memory.persistTurn("s1", UserMessage.from("q" + i), AiMessage.from("a" + i));
+        }
+        List<ChatMessage> messages = memory.load("s1").get(1, TimeUnit.SECONDS);
+        assertEquals(List.of("q2", "a2", "q3", "a3"), messages.stream().map(SessionChatMemoryTest::text).toList());
+
+        memory.clear("s1");
+        assertTrue(memory.load("s1").get(1, TimeUnit.SECONDS).isEmpty());
+        memory.shutdown();
+    }
+
+    @Test
+    @DisplayName("客户端在记忆写入完成前收到 complete 事件，下一轮在写入完成后带着上一轮对话调用模型")
+    void testCompleteBeforePersistence() throws Exception {
+        SessionChatMemory memory = new SessionChatMemory(store, meterRegistry, 20, 2);
+        RecordingModel model = new RecordingModel();
+        SessionStreamingChatController controller = new SessionStreamingChatController(model,
+                new ResumableStreamRegistry(16, Duration.ofMinutes(1)), memory,
+                new AdmissionController(meterRegistry, 4, 16, 4, Duration.ofSeconds(5), Duration.ofSeconds(1)),
+                new StreamingMetrics(meterRegistry), SseFlushPolicy.IMMEDIATE, new CompletionProtocol(false, 16),
+                new OutputGuard(meterRegistry, "", "", "blocked"));
+
+        // 第一轮：写入被阻塞，客户端仍然收到完整响应
+        Connection first = Connection.open(controller, "s1", "你好");
+        assertTrue(first.awaitComplete().startsWith("id:1\nevent:message\ndata:答1\n\nid:2\nevent:complete\ndata:{"));
+        assertTrue(store.getMessages("s1").isEmpty());
+
+        // 第二轮的读取排在第一轮的写入之后
+        Connection second = Connection.open(controller, "s1", "再见");
+        Thread.sleep(100);
+        assertEquals(1, model.requests.size());
+        store.gate.countDown();
+        second.awaitComplete();
+
+        assertEquals(List.of("你好", "答1", "再见"), model.requests.get(1).messages().stream()
+                .map(SessionChatMemoryTest::text).toList());
+        memory.shutdown();
+        assertEquals(4, store.getMessages("s1").size());
+    }
+
+    @Test
+    @DisplayName("客户端收到 complete 事件时立即读取会话，读取排在本轮写入之后")
+    void testLoadRightAfterCompleteSeesTurn() throws Exception {
+        SessionChatMemory memory = new SessionChatMemory(store, meterRegistry, 20, 2);
+        SessionStreamingChatController controller = new SessionStreamingChatController(new RecordingModel(),
+                new ResumableStreamRegistry(16, Duration.ofMinutes(1)), memory,
+                new AdmissionController(meterRegistry, 4, 16, 4, Duration.ofSeconds(5), Duration.ofSeconds(1)),
+                new StreamingMetrics(meterRegistry), SseFlushPolicy.IMMEDIATE, new CompletionProtocol(false, 16),
+                new OutputGuard(meterRegistry, "", "", "blocked"));
+
+        // complete 事件刷出到客户端的那一刻发起读取，模拟客户端立即开始下一轮
+        CompletableFuture<CompletableFuture<List<ChatMessage>>> nextLoad = new CompletableFuture<>();
+        Connection connection = Connection.open(controller, "s1", "你好",
+                () -> nextLoad.complete(memory.load("s1")));
+        connection.awaitComplete();
+        CompletableFuture<List<ChatMessage>> loaded = nextLoad.get(1, TimeUnit.SECONDS);
+
+        // 写入被阻塞，读取也跟着等待，而不是抢先读到空的历史
+        Thread.sleep(100);
+        assertFalse(loaded.isDone());
+        store.gate.countDown();
+        assertEquals(List.of("你好", "答1"), loaded.get(1, TimeUnit.SECONDS).stream()
+                .map(SessionChatMemoryTest::text).toList());
+        memory.shutdown();
+    }
+
+    private static String text(ChatMessage message) {
+        return message instanceof UserMessage user ? user.singleText() : ((AiMessage) message).text();
+    }
+
+    // 在 gate 打开前阻塞写入的存储
+    private static class BlockingStore extends InMemoryChatMemoryStore {
+
+        private final CountDownLatch gate = new CountDownLatch(1);
+
+        @Override
+        public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+            if (!"s2".equals(memoryId)) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.updateMessages(memoryId, messages);
+        }
+
+    }
+
+    // 记录每次请求的消息，并回复 "答{第几次调用}"
+    private static class RecordingModel implements StreamingChatModel {
+
+        private final List<ChatRequest> requests = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+            requests.add(chatRequest);
+            String text = "答" + requests.size();
+            handler.onPartialResponse(new PartialResponse(text), new PartialResponseContext(new StreamingHandle() {
+                @Override
+                public void cancel() {
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return false;
+                }
+            }));
+            handler.onCompleteResponse(ChatResponse.builder().aiMessage(AiMessage.from(text)).build());
+        }
+
+    }
+
+    // 一次 SSE 请求：与 DispatcherServlet 一样设置请求上下文，调用控制器后由返回值处理器开始异步请求
+    private static class Connection {
+
+        private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/chat/session/stream");
+        private final MockHttpServletResponse response;
+
+        private Connection(Runnable onCompleteFlushed) {
+            this.response = new MockHttpServletResponse() {
+                private boolean notified;
+
+                // 每次刷出输出流时调用
+                @Override
+                public void setCommitted(boolean committed) {
+                    super.setCommitted(committed);
+                    if (!notified && getContentAsByteArray().length > 0
+                            && new String(getContentAsByteArray(), StandardCharsets.UTF_8).contains("event:complete")) {
+                        notified = true;
+                        onCompleteFlushed.run();
+                    }
+                }
+            };
+        }
+
+        static Connection open(SessionStreamingChatController controller, String sessionId, String message)
+                throws Exception {
+            return open(controller, sessionId, message, () -> {
+            });
+        }
+
+        // onCompleteFlushed 在 complete 事件刷出到客户端时，在发送线程上调用
+        static Connection open(SessionStreamingChatController controller, String sessionId, String message,
+                               Runnable onCompleteFlushed) throws Exception {
+            Connection connection = new Connection(onCompleteFlushed);
+            connection.request.setAsyncSupported(true);
+            NativeWebRequest webRequest = new ServletWebRequest(connection.request, connection.response);
+            WebAsyncUtils.getAsyncManager(webRequest)
+                    .setAsyncWebRequest(new StandardServletAsyncWebRequest(connection.request, connection.response));
+            RequestContextHolder.setRequestAttributes(
+                    new ServletRequestAttributes(connection.request, connection.response));
+
+            SseEmitter emitter = controller.streamChat(sessionId, message, null, connection.request);
+            List<HttpMessageConverter<?>> converters = List.of(
+                    new ByteArrayHttpMessageConverter(), new StringHttpMessageConverter(StandardCharsets.UTF_8));
+            MethodParameter returnType = new MethodParameter(Connection.class.getDeclaredMethod("handler"), -1);
+            new ResponseBodyEmitterReturnValueHandler(converters)
+                    .handleReturnValue(emitter, returnType, new ModelAndViewContainer(), webRequest);
+            return connection;
+        }
+
+        String awaitComplete() throws Exception {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!body().endsWith("\n\n") || !body().contains("event:complete")) {
+                assertTrue(System.currentTimeMillis() < deadline, "等待完成超时: " + body());
+                Thread.sleep(10);
+            }
+            return body();
+        }
+
+        String body() throws Exception {
+            return response.getContentAsString(StandardCharsets.UTF_8);
+        }
+
+        @SuppressWarnings("unused")
+        private SseEmitter handler() {
+            return null;
+        }
+
+    }
+
+}
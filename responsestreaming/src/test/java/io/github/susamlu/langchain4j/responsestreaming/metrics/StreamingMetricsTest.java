@@ -0,0 +1,57 @@
+package io.github.susamlu.langchain4j.responsestreaming.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * StreamingMetrics 测试类
+ * 验证首 token 时间、token 间隔、输出速率和按结果统计的时长
+ */
+@DisplayName("流式时延指标测试")
+class StreamingMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final StreamingMetrics metrics = new StreamingMetrics(meterRegistry);
+
+    @Test
+    @DisplayName("首 token、token 间隔和输出速率")
+    void testTokenTimings() throws InterruptedException {
+        StreamingMetrics.Recorder recorder = metrics.start("deepseek-chat", "sse");
+        Thread.sleep(20);
+        for (int i = 0; i < 3; i++) {
+            recorder.onToken();
+            Thread.sleep(5);
+        }
+        recorder.finish(StreamingMetrics.OUTCOME_COMPLETE);
+
+        assertEquals(1, meterRegistry.timer("streaming.ttft", "model", "deepseek-chat", "endpoint", "sse").count());
+        assertTrue(meterRegistry.timer("streaming.ttft", "model", "deepseek-chat", "endpoint", "sse")
+                .totalTime(TimeUnit.MILLISECONDS) >= 20);
+        assertEquals(2, meterRegistry.timer("streaming.token.gap", "model", "deepseek-chat", "endpoint", "sse").count());
+        assertEquals(1, meterRegistry.summary("streaming.tokens.per-second",
+                "model", "deepseek-chat", "endpoint", "sse").count());
+    }
+
+    @Test
+    @DisplayName("结果只记录第一次：完成后流关闭不会再记为 client-gone")
+    void testOutcomeRecordedOnce() {
+        StreamingMetrics.Recorder recorder = metrics.start(null, "cancellable");
+        recorder.finish(StreamingMetrics.OUTCOME_CANCELLED);
+        recorder.finish(StreamingMetrics.OUTCOME_CLIENT_GONE);
+
+        assertEquals(1, meterRegistry.timer("streaming.duration",
+                "model", "unknown", "endpoint", "cancellable", "outcome", "cancelled").count());
+        assertNull(meterRegistry.find("streaming.duration").tag("outcome", "client-gone").timer());
+        // 没有 token 时不记录首 token 时间和输出速率
+        assertNull(meterRegistry.find("streaming.ttft").timer());
+        assertNull(meterRegistry.find("streaming.tokens.per-second").summary());
+    }
+
+}
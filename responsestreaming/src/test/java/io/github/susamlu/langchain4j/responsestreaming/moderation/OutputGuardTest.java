@@ -0,0 +1,200 @@
+package io.github.susamlu.langchain4j.responsestreaming.moderation;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.response.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * OutputGuard 测试类
+ * 验证跨增量的敏感词匹配、暂缓下发的字符不泄露敏感词，以及命中时取消上游生成
+ */
+@DisplayName("流式输出审核测试")
+class OutputGuardTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    @DisplayName("敏感词被拆在多个增量里也能命中，命中前下发的内容不包含敏感词的任何部分")
+    void testMatchAcrossFragments() {
+        OutputGuard guard = create("赌博网站,ABC");
+        OutputGuard.Scanner scanner = guard.newScanner();
+
+        assertEquals("推荐几个", scanner.scan("推荐几个赌"));
+        assertEquals("", scanner.scan("博网"));
+        assertFalse(scanner.isBlocked());
+        assertEquals("", scanner.scan("站吧"));
+        assertTrue(scanner.isBlocked());
+        assertEquals("", scanner.scan("后续内容"));
+        assertEquals(1, meterRegistry.counter("streaming.moderation.output.blocked").count());
+
+        // 忽略大小写
+        OutputGuard.Scanner caseScanner = guard.newScanner();
+        assertEquals("x", caseScanner.scan("xa"));
+        caseScanner.scan("Bc");
+        assertTrue(caseScanner.isBlocked());
+    }
+
+    @Test
+    @DisplayName("未构成敏感词的前缀在后续增量或结束时补发，内容与原文一致")
+    void testHeldCharactersReleased() {
+        OutputGuard guard = create("赌博网站,hers,his,she");
+        OutputGuard.Scanner scanner = guard.newScanner();
+
+        StringBuilder released = new StringBuilder();
+        released.append(scanner.scan("赌博"));
+        assertEquals("", released.toString());
+        released.append(scanner.scan("是违法的，他说 s"));
+        released.append(scanner.scan("h"));
+        released.append(scanner.scan("e"));
+        // she 命中（同时是 hers 的前缀的后缀）
+        assertTrue(scanner.isBlocked());
+        assertEquals("赌博是违法的，他说 ", released.toString());
+
+        OutputGuard.Scanner another = guard.newScanner();
+        String text = "a cat on her mat";
+        StringBuilder output = new StringBuilder(another.scan(text.substring(0, 12)));
+        output.append(another.scan(text.substring(12)));
+        output.append(another.flush());
+        assertFalse(another.isBlocked());
+        assertEquals(text, output.toString());
+    }
+
+    @Test
+    @DisplayName("随机拆分的增量：命中结果与整段文本查找一致，未命中时内容完整")
+    void testRandomFragments() {
+        List<String> terms = List.of("赌博网站", "网络赌场", "abab", "bab", "代开发票");
+        OutputGuard guard = create(String.join(",", terms));
+        Random random = new Random(42);
+        String alphabet = "ab赌博网站络场代开发票 ";
+        for (int round = 0; round < 2000; round++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int i = 0; i < length; i++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String lower = text.toString().toLowerCase(Locale.ROOT);
+            boolean expected = terms.stream().anyMatch(lower::contains);
+
+            OutputGuard.Scanner scanner = guard.newScanner();
+            StringBuilder released = new StringBuilder();
+            int position = 0;
+            while (position < text.length() && !scanner.isBlocked()) {
+                int end = Math.min(text.length(), position + 1 + random.nextInt(4));
+                released.append(scanner.scan(text.substring(position, end)));
+                position = end;
+            }
+            assertEquals(expected, scanner.isBlocked(), text.toString());
+            if (expected) {
+                // 已下发的内容本身不包含敏感词
+                String releasedLower = released.toString().toLowerCase(Locale.ROOT);
+                assertTrue(terms.stream().noneMatch(releasedLower::contains), text.toString());
+            } else {
+                released.append(scanner.flush());
+                assertEquals(text.toString(), released.toString());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("包装回调：命中时取消上游生成并只通知一次，之后的增量和完成回调不再下发")
+    void testGuardCancelsUpstream() {
+        OutputGuard guard = create("赌博网站");
+        List<String> partials = new ArrayList<>();
+        AtomicInteger completes = new AtomicInteger();
+        AtomicInteger blocked = new AtomicInteger();
+        AtomicInteger cancels = new AtomicInteger();
+        StreamingChatResponseHandler handler = guard.guard(new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+                partials.add(partialResponse.text());
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+                completes.incrementAndGet();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                fail(error);
+            }
+        }, blocked::incrementAndGet);
+        PartialResponseContext context = new PartialResponseContext(new StreamingHandle() {
+            @Override
+            public void cancel() {
+                cancels.incrementAndGet();
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return cancels.get() > 0;
+            }
+        });
+
+        for (String token : List.of("可以", "访问赌", "博", "网站", "xxx")) {
+            handler.onPartialResponse(new PartialResponse(token), context);
+        }
+        handler.onCompleteResponse(ChatResponse.builder().aiMessage(AiMessage.from("")).build());
+
+        assertEquals(List.of("可以", "访问"), partials);
+        assertEquals(1, cancels.get());
+        assertEquals(1, blocked.get());
+        assertEquals(0, completes.get());
+
+        // 未命中：结束时补发暂缓的字符
+        partials.clear();
+        StreamingChatResponseHandler clean = guard.guard(new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+                partials.add(partialResponse.text());
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+                completes.incrementAndGet();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                fail(error);
+            }
+        }, blocked::incrementAndGet);
+        clean.onPartialResponse(new PartialResponse("这是赌博"), context);
+        clean.onCompleteResponse(ChatResponse.builder().aiMessage(AiMessage.from("")).build());
+        assertEquals(List.of("这是", "赌博"), partials);
+        assertEquals(1, completes.get());
+    }
+
+    @Test
+    @DisplayName("未配置敏感词时不包装回调")
+    void testDisabled() {
+        OutputGuard guard = new OutputGuard(meterRegistry, " , ", "", "blocked");
+        StreamingChatResponseHandler delegate = new StreamingChatResponseHandler() {
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+            }
+
+            @Override
+            public void onError(Throwable error) {
+            }
+        };
+        assertFalse(guard.enabled());
+        assertSame(delegate, guard.guard(delegate, () -> {
+        }));
+    }
+
+    private OutputGuard create(String terms) {
+        return new OutputGuard(meterRegistry, terms, "", "回复包含不当内容，已停止生成");
+    }
+
+}
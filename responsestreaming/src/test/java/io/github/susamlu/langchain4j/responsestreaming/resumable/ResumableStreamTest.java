@@ -0,0 +1,90 @@
+package io.github.susamlu.langchain4j.responsestreaming.resumable;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ResumableStream 测试类
+ * 验证断线重连只补发缺失的事件，以及环形缓冲区淘汰后的续传失败
+ */
+@DisplayName("可续传流测试")
+class ResumableStreamTest {
+
+    @Test
+    @DisplayName("重连携带 Last-Event-ID 时只补发缺失的事件，然后继续接收实时事件")
+    void testReplayMissedEventsOnly() {
+        ResumableStream stream = new ResumableStream("chat:1", 16);
+        CapturingEmitter first = new CapturingEmitter();
+        assertTrue(stream.attach(first, 0));
+
+        stream.append("message", "a");
+        stream.append("message", "b");
+        // 第一个连接断开，期间继续生成
+        stream.detach(first);
+        stream.append("message", "c");
+        stream.append("message", "d");
+
+        CapturingEmitter second = new CapturingEmitter();
+        assertTrue(stream.attach(second, 2));
+        stream.finish("complete", "abcde");
+
+        assertEquals(List.of("1:message:a", "2:message:b"), first.events);
+        assertEquals(List.of("3:message:c", "4:message:d", "5:complete:abcde"), second.events);
+        assertEquals(0, stream.subscriberCount());
+    }
+
+    @Test
+    @DisplayName("缺失的事件已被环形缓冲区淘汰时无法续传")
+    void testEvictedEventsCannotResume() {
+        ResumableStream stream = new ResumableStream("chat:2", 2);
+        for (int i = 0; i < 5; i++) {
+            stream.append("message", String.valueOf(i));
+        }
+
+        // 缓冲区只保留事件 4、5
+        assertFalse(stream.attach(new CapturingEmitter(), 1));
+
+        CapturingEmitter emitter = new CapturingEmitter();
+        assertTrue(stream.attach(emitter, 3));
+        assertEquals(List.of("4:message:3", "5:message:4"), emitter.events);
+    }
+
+    @Test
+    @DisplayName("流结束后重连可以补发全部剩余事件")
+    void testResumeAfterFinish() {
+        ResumableStream stream = new ResumableStream("chat:3", 16);
+        stream.append("message", "x");
+        stream.finish("complete", "x");
+
+        CapturingEmitter emitter = new CapturingEmitter();
+        assertTrue(stream.attach(emitter, 1));
+        assertEquals(List.of("2:complete:x"), emitter.events);
+        assertTrue(stream.isFinished());
+    }
+
+    // 记录发送事件的 SseEmitter，格式为 id:name:data
+    private static class CapturingEmitter extends SseEmitter {
+
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            String raw = builder.build().stream()
+                    .map(data -> data.getData().toString())
+                    .collect(Collectors.joining());
+            String id = raw.replaceAll("(?s).*id:([^\n]*)\n.*", "$1");
+            String name = raw.replaceAll("(?s).*event:([^\n]*)\n.*", "$1");
+            String data = raw.replaceAll("(?s).*data:([^\n]*)\n.*", "$1");
+            events.add(id + ":" + name + ":" + data);
+        }
+
+    }
+
+}
@@ -0,0 +1,302 @@
+package io.github.susamlu.langchain4j.responsestreaming.resumable.relay;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import io.github.susamlu.langchain4j.responsestreaming.admission.AdmissionController;
+import io.github.susamlu.langchain4j.responsestreaming.completion.CompletionProtocol;
+import io.github.susamlu.langchain4j.responsestreaming.moderation.OutputGuard;
+import io.github.susamlu.langchain4j.responsestreaming.config.SseWriterConfig;
+import io.github.susamlu.langchain4j.responsestreaming.metrics.StreamingMetrics;
+import io.github.susamlu.langchain4j.responsestreaming.resumable.ResumableStreamRegistry;
+import io.github.susamlu.langchain4j.responsestreaming.singleflight.SingleFlightStreams;
+import io.github.susamlu.langchain4j.responsestreaming.sse.StreamingChatController;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitterReturnValueHandler;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 流中继测试类
+ * 每个节点是一个独立的应用上下文，直接调用 SSE 控制器；Redis 测试优先在随机端口启动本地 redis-server，
+ * 找不到时使用 localhost:6379，都不可用时跳过
+ */
+@DisplayName("跨节点续传测试")
+class StreamRelayTest {
+
+    private static final Pattern EVENT_ID = Pattern.compile("^id:(\\d+)$", Pattern.MULTILINE);
+
+    private static Process redisServer;
+    private static int redisPort = 6379;
+
+    @BeforeAll
+    static void startRedis() throws Exception {
+        String executable = findOnPath("redis-server");
+        if (executable == null) {
+            return;
+        }
+        try (ServerSocket socket = new ServerSocket(0)) {
+            redisPort = socket.getLocalPort();
+        }
+        redisServer = new ProcessBuilder(executable, "--port", String.valueOf(redisPort),
+                "--save", "", "--appendonly", "no")
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        for (int i = 0; i < 50 && !redisAvailable(); i++) {
+            Thread.sleep(100);
+        }
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        if (redisServer != null) {
+            redisServer.destroy();
+        }
+    }
+
+    @AfterEach
+    void resetRequestContext() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    @DisplayName("单实例：同一节点上重连只补发缺失的事件，不重新生成")
+    void testLocalReconnect() throws Exception {
+        try (ConfigurableApplicationContext node = startNode()) {
+            Connection first = Connection.open(node, "r1", null);
+            first.awaitEvents(3);
+
+            Connection resumed = Connection.open(node, "r1", "3");
+            String body = resumed.awaitComplete();
+
+            assertEquals(List.of(4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L), eventIds(body));
+            assertEquals(1, calls(node));
+        }
+    }
+
+    @Test
+    @DisplayName("Redis 中继：重连落到另一个节点时从中继续传，两个节点总共只生成一次")
+    void testReconnectOnOtherNode() throws Exception {
+        assumeTrue(redisAvailable(), "本地 Redis 不可用，跳过");
+
+        // 每次测试使用独立的键前缀，避免与其他实例互相干扰
+        String[] args = {"--streaming.resume.relay=redis", "--streaming.resume.redis.port=" + redisPort,
+                "--streaming.resume.redis.key-prefix=streaming:relay:test:" + UUID.randomUUID() + ":"};
+        try (ConfigurableApplicationContext owner = startNode(args);
+             ConfigurableApplicationContext other = startNode(args)) {
+            Connection first = Connection.open(owner, "r2", null);
+            first.awaitEvents(3);
+
+            // 断线后经负载均衡重连到另一个节点
+            Connection resumed = Connection.open(other, "r2", "3");
+            String body = resumed.awaitComplete();
+            assertEquals(List.of(4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L), eventIds(body));
+            assertTrue(Pattern.compile("event:complete\ndata:\\{\"resultId\":\"chat:r2:[0-9a-f-]{36}\"")
+                    .matcher(body).find());
+
+            // 生成结束后不带 Last-Event-ID 重新请求同一个 requestId：完整回放，仍不重新生成
+            String replay = Connection.open(other, "r2", null).awaitComplete();
+            assertEquals(first.awaitComplete(), replay);
+            assertEquals(1, calls(owner) + calls(other));
+        }
+    }
+
+    private static List<Long> eventIds(String body) {
+        List<Long> ids = new ArrayList<>();
+        Matcher matcher = EVENT_ID.matcher(body);
+        while (matcher.find()) {
+            ids.add(Long.parseLong(matcher.group(1)));
+        }
+        return ids;
+    }
+
+    private static int calls(ConfigurableApplicationContext node) {
+        return node.getBean(FakeStreamingChatModel.class).calls.get();
+    }
+
+    private static ConfigurableApplicationContext startNode(String... args) {
+        return new SpringApplicationBuilder(NodeConfig.class)
+                .web(WebApplicationType.NONE)
+                .run(args);
+    }
+
+    private static boolean redisAvailable() {
+        try (Jedis jedis = new Jedis("localhost", redisPort)) {
+            return "PONG".equals(jedis.ping());
+        } catch (JedisException e) {
+            return false;
+        }
+    }
+
+    private static String findOnPath(String name) {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+        for (String dir : path.split(File.pathSeparator)) {
+            File file = new File(dir, name);
+            if (file.canExecute()) {
+                return file.getAbsolutePath();
+            }
+        }
+        return null;
+    }
+
+    @Configuration
+    @Import({ResumableStreamRegistry.class, StreamRelayConfig.class, StreamingChatController.class,
+            SingleFlightStreams.class, AdmissionController.class, StreamingMetrics.class, SseWriterConfig.class,
+            CompletionProtocol.class, OutputGuard.class})
+    static class NodeConfig {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        FakeStreamingChatModel streamingChatModel() {
+            return new FakeStreamingChatModel();
+        }
+
+    }
+
+    // 一次 SSE 请求：与 DispatcherServlet 一样设置请求上下文，调用控制器后由返回值处理器开始异步请求
+    private static class Connection {
+
+        private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/chat/stream");
+        private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        static Connection open(ConfigurableApplicationContext node, String requestId, String lastEventId)
+                throws Exception {
+            Connection connection = new Connection();
+            connection.request.setAsyncSupported(true);
+            NativeWebRequest webRequest = new ServletWebRequest(connection.request, connection.response);
+            WebAsyncUtils.getAsyncManager(webRequest)
+                    .setAsyncWebRequest(new StandardServletAsyncWebRequest(connection.request, connection.response));
+            RequestContextHolder.setRequestAttributes(
+                    new ServletRequestAttributes(connection.request, connection.response));
+
+            SseEmitter emitter = node.getBean(StreamingChatController.class)
+                    .streamChat("hello", requestId, null, lastEventId, connection.request);
+            List<HttpMessageConverter<?>> converters = List.of(
+                    new ByteArrayHttpMessageConverter(), new StringHttpMessageConverter(StandardCharsets.UTF_8));
+            MethodParameter returnType = new MethodParameter(Connection.class.getDeclaredMethod("handler"), -1);
+            new ResponseBodyEmitterReturnValueHandler(converters)
+                    .handleReturnValue(emitter, returnType, new ModelAndViewContainer(), webRequest);
+            return connection;
+        }
+
+        void awaitEvents(int count) throws Exception {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (eventIds(body()).size() < count) {
+                assertTrue(System.currentTimeMillis() < deadline, "等待事件超时: " + body());
+                Thread.sleep(10);
+            }
+        }
+
+        String awaitComplete() throws Exception {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!body().endsWith("\n\n") || !body().contains("event:complete")) {
+                assertTrue(System.currentTimeMillis() < deadline, "等待完成超时: " + body());
+                Thread.sleep(10);
+            }
+            return body();
+        }
+
+        String body() throws IOException {
+            return response.getContentAsString(StandardCharsets.UTF_8);
+        }
+
+        @SuppressWarnings("unused")
+        private SseEmitter handler() {
+            return null;
+        }
+
+    }
+
+    // 在后台线程上每隔 30ms 输出一个 token 的假模型，共 10 个
+    static class FakeStreamingChatModel implements StreamingChatModel {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+            calls.incrementAndGet();
+            StreamingHandle handle = new StreamingHandle() {
+                @Override
+                public void cancel() {
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return false;
+                }
+            };
+            Thread thread = new Thread(() -> {
+                StringBuilder text = new StringBuilder();
+                for (int i = 1; i <= 10; i++) {
+                    try {
+                        Thread.sleep(30);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    text.append("t").append(i);
+                    handler.onPartialResponse(new PartialResponse("t" + i), new PartialResponseContext(handle));
+                }
+                handler.onCompleteResponse(ChatResponse.builder()
+                        .aiMessage(AiMessage.from(text.toString()))
+                        .build());
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+    }
+
+}
@@ -0,0 +1,152 @@
+package io.github.susamlu.langchain4j.responsestreaming.singleflight;
+
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SingleFlightStreams 测试类
+ * 验证相同请求只发起一次上游生成，且只有最后一个订阅者离开时才取消上游
+ */
+@DisplayName("相同请求合并测试")
+class SingleFlightStreamsTest {
+
+    private static final ChatRequestParameters PARAMETERS = ChatRequestParameters.builder()
+            .modelName("deepseek-chat")
+            .build();
+
+    @Test
+    @DisplayName("规范化后相同的提示词得到相同的分组键，模型参数不同则不同")
+    void testKeyNormalization() {
+        assertEquals(SingleFlightStreams.key("给我讲个 笑话", PARAMETERS),
+                SingleFlightStreams.key("  给我讲个\t\n笑话 ", PARAMETERS));
+        assertNotEquals(SingleFlightStreams.key("给我讲个笑话", PARAMETERS),
+                SingleFlightStreams.key("给我讲个笑话", ChatRequestParameters.builder()
+                        .modelName("deepseek-chat")
+                        .temperature(0.1)
+                        .build()));
+    }
+
+    @Test
+    @DisplayName("后加入的订阅者从头收到完整事件序列，只启动一次生成")
+    void testLateSubscriberReceivesFullSequence() {
+        SingleFlightStreams streams = new SingleFlightStreams(64);
+        String key = SingleFlightStreams.key("hello", PARAMETERS);
+
+        CapturingEmitter first = new CapturingEmitter();
+        SingleFlightStreams.Flight flight = streams.join(key, first, 0);
+        assertTrue(flight.stream().tryStart());
+        flight.stream().append("message", "a");
+
+        CapturingEmitter second = new CapturingEmitter();
+        assertSame(flight, streams.join(key, second, 0));
+        assertFalse(flight.stream().tryStart());
+
+        flight.stream().append("message", "b");
+        flight.stream().finish("complete", "ab");
+        streams.complete(flight);
+
+        assertEquals(List.of("a", "b", "ab"), first.data);
+        assertEquals(List.of("a", "b", "ab"), second.data);
+        assertEquals(0, streams.inFlightCount());
+    }
+
+    @Test
+    @DisplayName("只有最后一个订阅者离开时才取消上游")
+    void testCancelOnlyWhenLastSubscriberLeaves() {
+        SingleFlightStreams streams = new SingleFlightStreams(64);
+        String key = SingleFlightStreams.key("hello", PARAMETERS);
+        CountingHandle handle = new CountingHandle();
+
+        CapturingEmitter first = new CapturingEmitter();
+        CapturingEmitter second = new CapturingEmitter();
+        SingleFlightStreams.Flight flight = streams.join(key, first, 0);
+        streams.join(key, second, 0);
+        flight.bindStreamingHandle(handle);
+
+        streams.leave(flight, first);
+        assertEquals(0, handle.cancelCount);
+
+        streams.leave(flight, second);
+        assertEquals(1, handle.cancelCount);
+        assertTrue(flight.isCancelled());
+        assertEquals(0, streams.inFlightCount());
+
+        // 取消后的相同请求会发起新的生成
+        assertNotSame(flight, streams.join(key, new CapturingEmitter(), 0));
+    }
+
+    @Test
+    @DisplayName("共享生成结束或取消后携带 Last-Event-ID 重连，不会发起新的生成")
+    void testReconnectAfterFlightEnded() {
+        SingleFlightStreams streams = new SingleFlightStreams(64);
+        String key = SingleFlightStreams.key("hello", PARAMETERS);
+
+        SingleFlightStreams.Flight flight = streams.join(key, new CapturingEmitter(), 0);
+        assertTrue(flight.stream().tryStart());
+        flight.stream().append("message", "a");
+        flight.stream().finish("complete", "a");
+        streams.complete(flight);
+
+        CapturingEmitter reconnected = new CapturingEmitter();
+        assertNull(streams.join(key, reconnected, 1));
+        assertTrue(reconnected.data.isEmpty());
+        assertEquals(0, streams.inFlightCount());
+
+        // 进行中的生成被取消后重连同样无法续传
+        CapturingEmitter only = new CapturingEmitter();
+        SingleFlightStreams.Flight cancelled = streams.join(key, only, 0);
+        cancelled.stream().append("message", "b");
+        streams.leave(cancelled, only);
+        assertNull(streams.join(key, new CapturingEmitter(), 1));
+        assertEquals(0, streams.inFlightCount());
+
+        // 进行中的生成仍可续传
+        SingleFlightStreams.Flight running = streams.join(key, new CapturingEmitter(), 0);
+        running.stream().append("message", "c");
+        running.stream().append("message", "d");
+        CapturingEmitter resumed = new CapturingEmitter();
+        assertSame(running, streams.join(key, resumed, 1));
+        assertEquals(List.of("d"), resumed.data);
+    }
+
+    private static class CountingHandle implements StreamingHandle {
+
+        private int cancelCount;
+
+        @Override
+        public void cancel() {
+            cancelCount++;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelCount > 0;
+        }
+
+    }
+
+    // 记录发送事件数据的 SseEmitter
+    private static class CapturingEmitter extends SseEmitter {
+
+        private final List<String> data = new ArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            String raw = builder.build().stream()
+                    .map(item -> item.getData().toString())
+                    .collect(Collectors.joining());
+            data.add(raw.replaceAll("(?s).*data:([^\n]*)\n.*", "$1"));
+        }
+
+    }
+
+}
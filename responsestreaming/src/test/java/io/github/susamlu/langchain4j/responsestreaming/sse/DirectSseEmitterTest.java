@@ -0,0 +1,165 @@
+package io.github.susamlu.langchain4j.responsestreaming.sse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitterReturnValueHandler;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DirectSseEmitter 测试类
+ * 通过 Spring MVC 的返回值处理器驱动，验证线上格式与 SseEmitter 逐字节一致，以及合并刷新和异步开始前的缓冲
+ */
+@DisplayName("直接写输出流的 SSE 发送器测试")
+class DirectSseEmitterTest {
+
+    private static final List<String> SAMPLES = List.of(
+            "你好", "hello", "", "第一行\n第二行", "\n", "a\r\nb", "😀 emoji", "x".repeat(600), "ü€", "结尾\n");
+
+    @AfterEach
+    void resetRequestContext() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    @DisplayName("与 SseEmitter 的事件构建器输出逐字节一致，包括多行、空数据和四字节字符")
+    void testSameWireFormat() throws Exception {
+        Connection spring = new Connection();
+        SseEmitter springEmitter = new SseEmitter(60000L);
+        spring.start(springEmitter);
+
+        Connection direct = new Connection();
+        DirectSseEmitter directEmitter = new DirectSseEmitter(60000L);
+        direct.start(directEmitter);
+
+        long id = 1;
+        for (String data : SAMPLES) {
+            springEmitter.send(SseEmitter.event().id(String.valueOf(id)).name("message").data(data));
+            directEmitter.send(id, "message", data);
+            id += 97;
+        }
+        springEmitter.send(SseEmitter.event().id(String.valueOf(id)).name("complete").data("完成"));
+        directEmitter.send(id, "complete", "完成");
+        springEmitter.complete();
+        directEmitter.complete();
+
+        assertFalse(spring.body().isEmpty());
+        assertEquals(spring.body(), direct.body());
+        assertEquals(spring.response.getContentType(), direct.response.getContentType());
+    }
+
+    @Test
+    @DisplayName("合并刷新：token 事件留在缓冲区直到达到字节数或最长等待时间，结束事件立即刷新")
+    void testCoalescingFlush() throws Exception {
+        Connection connection = new Connection();
+        DirectSseEmitter emitter = new DirectSseEmitter(60000L, new SseFlushPolicy(64, Duration.ofMillis(100)));
+        connection.start(emitter);
+
+        emitter.send(1, "message", "你");
+        emitter.send(2, "message", "好");
+        assertEquals("", connection.body());
+
+        // 第三个事件使缓冲区超过 64 字节，三个事件一起写出
+        emitter.send(3, "message", "x".repeat(40));
+        assertTrue(connection.body().startsWith("id:1\nevent:message\ndata:你\n\nid:2\n"));
+        assertTrue(connection.body().endsWith("x\n\n"));
+
+        // 未达到字节数的事件最多等待 maxDelay
+        emitter.send(4, "message", "慢");
+        String flushed = connection.body();
+        Thread.sleep(300);
+        assertEquals(flushed + "id:4\nevent:message\ndata:慢\n\n", connection.body());
+
+        emitter.send(5, "message", "最");
+        emitter.send(6, "complete", "完成");
+        assertTrue(connection.body().endsWith("id:5\nevent:message\ndata:最\n\nid:6\nevent:complete\ndata:完成\n\n"));
+    }
+
+    @Test
+    @DisplayName("控制器返回前发送的事件先缓冲，异步开始后按顺序写出；在此之前结束时交给 SseEmitter 写出")
+    void testEventsBeforeAsyncStart() throws Exception {
+        Connection connection = new Connection();
+        DirectSseEmitter emitter = new DirectSseEmitter(60000L);
+        emitter.send(1, "message", "补发1");
+        emitter.send(2, "message", "补发2");
+        connection.start(emitter);
+        emitter.send(3, "message", "实时");
+        assertEquals("id:1\nevent:message\ndata:补发1\n\nid:2\nevent:message\ndata:补发2\n\n"
+                + "id:3\nevent:message\ndata:实时\n\n", connection.body());
+
+        Connection finished = new Connection();
+        DirectSseEmitter finishedEmitter = new DirectSseEmitter(60000L);
+        finishedEmitter.send(1, "message", "你好");
+        finishedEmitter.send(2, "complete", "你好");
+        finishedEmitter.complete();
+        assertThrows(IllegalStateException.class, () -> finishedEmitter.send(3, "message", "晚了"));
+        finished.start(finishedEmitter);
+        assertEquals("id:1\nevent:message\ndata:你好\n\nid:2\nevent:complete\ndata:你好\n\n", finished.body());
+    }
+
+    @Test
+    @DisplayName("混用父类的发送方法时保持事件顺序")
+    void testMixedWithBuilderSend() throws Exception {
+        Connection connection = new Connection();
+        DirectSseEmitter emitter = new DirectSseEmitter(60000L, new SseFlushPolicy(1024, Duration.ofSeconds(10)));
+        connection.start(emitter);
+
+        emitter.send(1, "message", "a");
+        emitter.send(SseEmitter.event().name("expired").data("b"));
+        emitter.send(2, "message", "c");
+        emitter.complete();
+        assertEquals("id:1\nevent:message\ndata:a\n\nevent:expired\ndata:b\n\nid:2\nevent:message\ndata:c\n\n",
+                connection.body());
+    }
+
+    // 模拟一次 SSE 请求：与 DispatcherServlet 一样设置请求上下文，再由返回值处理器开始异步请求并初始化发送器
+    private static class Connection {
+
+        private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stream");
+        private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        void start(SseEmitter emitter) throws Exception {
+            request.setAsyncSupported(true);
+            NativeWebRequest webRequest = new ServletWebRequest(request, response);
+            WebAsyncUtils.getAsyncManager(webRequest)
+                    .setAsyncWebRequest(new StandardServletAsyncWebRequest(request, response));
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+
+            List<HttpMessageConverter<?>> converters = List.of(
+                    new ByteArrayHttpMessageConverter(), new StringHttpMessageConverter(StandardCharsets.UTF_8));
+            MethodParameter returnType = new MethodParameter(Connection.class.getDeclaredMethod("handler"), -1);
+            new ResponseBodyEmitterReturnValueHandler(converters)
+                    .handleReturnValue(emitter, returnType, new ModelAndViewContainer(), webRequest);
+        }
+
+        String body() throws Exception {
+            return response.getContentAsString(StandardCharsets.UTF_8);
+        }
+
+        @SuppressWarnings("unused")
+        private SseEmitter handler() {
+            return null;
+        }
+
+    }
+
+}
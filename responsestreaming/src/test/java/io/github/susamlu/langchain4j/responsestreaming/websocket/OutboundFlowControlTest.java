@@ -0,0 +1,134 @@
+package io.github.susamlu.langchain4j.responsestreaming.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * OutboundFlowControl 测试类
+ * 验证慢消费者的 partial 合并、按策略断开和写入卡住时断开
+ */
+@DisplayName("WebSocket 出站流量控制测试")
+class OutboundFlowControlTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<OutboundFlowControl> flowControls = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        flowControls.forEach(OutboundFlowControl::shutdown);
+    }
+
+    @Test
+    @DisplayName("coalesce 策略：未确认的消息达到上限后，等待中的连续 partial 合并，确认后按顺序补发")
+    void testCoalesce() throws Exception {
+        OutboundFlowControl flowControl = create(2, 1024, Duration.ofSeconds(10), OutboundFlowControl.POLICY_COALESCE);
+        WebSocketSession session = session("s1");
+        flowControl.register(session);
+        List<String> dispatched = new ArrayList<>();
+        OutboundFlowControl.Dispatcher dispatcher = (type, content) -> dispatched.add(type + ":" + content);
+
+        for (String token : List.of("a", "b", "c", "d", "e")) {
+            flowControl.send("s1", dispatcher, "partial", token);
+        }
+        flowControl.send("s1", dispatcher, "complete", "done");
+
+        // 前 2 条直接交给 Spring，c、d、e 合并为一条，complete 单独等待
+        assertEquals(List.of("partial:a", "partial:b"), dispatched);
+        assertEquals(2, meterRegistry.counter("streaming.websocket.outbound.coalesced").count());
+        assertEquals(1, meterRegistry.get("streaming.websocket.outbound.backlogged").gauge().value());
+        assertEquals(4, meterRegistry.get("streaming.websocket.outbound.depth.max").gauge().value());
+
+        flowControl.afterMessageHandled(written("s1"), null, null, null);
+        assertEquals(List.of("partial:a", "partial:b", "partial:cde"), dispatched);
+        flowControl.afterMessageHandled(written("s1"), null, null, null);
+        assertEquals(List.of("partial:a", "partial:b", "partial:cde", "complete:done"), dispatched);
+        assertEquals(0, meterRegistry.get("streaming.websocket.outbound.backlogged").gauge().value());
+
+        // 未带流量控制头的消息不计入确认
+        flowControl.afterMessageHandled(MessageBuilder.withPayload("x").build(), null, null, null);
+        verify(session, never()).close(any());
+        assertEquals(0, meterRegistry.find("streaming.websocket.slow-consumer.disconnects").counters().size());
+    }
+
+    @Test
+    @DisplayName("disconnect 策略：等待的消息超过上限即断开，之后的消息丢弃")
+    void testDisconnectPolicy() throws Exception {
+        OutboundFlowControl flowControl = create(1, 1024, Duration.ofSeconds(10), OutboundFlowControl.POLICY_DISCONNECT);
+        WebSocketSession session = session("s1");
+        flowControl.register(session);
+        List<String> dispatched = new ArrayList<>();
+
+        for (String token : List.of("a", "b", "c", "d")) {
+            flowControl.send("s1", (type, content) -> dispatched.add(content), "partial", token);
+        }
+
+        assertEquals(List.of("a"), dispatched);
+        verify(session, times(1)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(1, meterRegistry.counter("streaming.websocket.slow-consumer.disconnects",
+                "reason", "backlog").count());
+
+        // 未登记的会话不受限制
+        flowControl.send("s2", (type, content) -> dispatched.add(content), "partial", "x");
+        assertEquals(List.of("a", "x"), dispatched);
+    }
+
+    @Test
+    @DisplayName("等待的内容超过字符上限，或超过发送时限没有写入成功，都会断开")
+    void testBufferAndStall() throws Exception {
+        OutboundFlowControl flowControl = create(1, 8, Duration.ofMillis(200), OutboundFlowControl.POLICY_COALESCE);
+        WebSocketSession overflowing = session("s1");
+        WebSocketSession stalled = session("s2");
+        flowControl.register(overflowing);
+        flowControl.register(stalled);
+
+        flowControl.send("s1", (type, content) -> { }, "partial", "first");
+        flowControl.send("s1", (type, content) -> { }, "partial", "0123456789");
+        verify(overflowing).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(1, meterRegistry.counter("streaming.websocket.slow-consumer.disconnects",
+                "reason", "buffer").count());
+
+        // 生成已结束，只有一条消息一直没有写出：由后台检查断开
+        flowControl.send("s2", (type, content) -> { }, "complete", "done");
+        verify(stalled, timeout(5000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(1, meterRegistry.counter("streaming.websocket.slow-consumer.disconnects",
+                "reason", "stall").count());
+    }
+
+    private OutboundFlowControl create(int maxInFlight, int maxPendingChars, Duration sendTimeLimit, String policy) {
+        OutboundFlowControl flowControl = new OutboundFlowControl(meterRegistry, maxInFlight, maxPendingChars,
+                sendTimeLimit, policy);
+        flowControls.add(flowControl);
+        return flowControl;
+    }
+
+    private static WebSocketSession session(String id) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        return session;
+    }
+
+    // 出站通道写入套接字后的消息
+    private static Message<String> written(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setHeader(OutboundFlowControl.TRACKED_HEADER, Boolean.TRUE);
+        return MessageBuilder.createMessage("", accessor.getMessageHeaders());
+    }
+
+}
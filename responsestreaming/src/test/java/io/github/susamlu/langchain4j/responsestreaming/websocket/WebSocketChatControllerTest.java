@@ -0,0 +1,290 @@
+package io.github.susamlu.langchain4j.responsestreaming.websocket;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import io.github.susamlu.langchain4j.responsestreaming.admission.AdmissionController;
+import io.github.susamlu.langchain4j.responsestreaming.completion.CompletionProtocol;
+import io.github.susamlu.langchain4j.responsestreaming.metrics.StreamingMetrics;
+import io.github.susamlu.langchain4j.responsestreaming.moderation.OutputGuard;
+import io.github.susamlu.langchain4j.responsestreaming.websocket.WebSocketChatController.StreamingMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.DefaultUserDestinationResolver;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.messaging.simp.user.UserDestinationResult;
+import org.springframework.messaging.support.AbstractMessageChannel;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * WebSocketChatController 测试类
+ * 验证流式 token 只推送给发起请求的会话，不存在跨会话流量；会话被断开或关闭时取消上游生成
+ */
+@DisplayName("WebSocket 点对点流式推送测试")
+class WebSocketChatControllerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AdmissionController admissionController = new AdmissionController(meterRegistry,
+            16, 64, 4, Duration.ofSeconds(15), Duration.ofSeconds(10));
+    private final StreamingMetrics streamingMetrics = new StreamingMetrics(meterRegistry);
+    private final CompletionProtocol completionProtocol = new CompletionProtocol(false, 16);
+    private final OutboundFlowControl outboundFlowControl = new OutboundFlowControl(meterRegistry,
+            32, 262144, Duration.ofSeconds(10), OutboundFlowControl.POLICY_COALESCE);
+    private final OutputGuard outputGuard = new OutputGuard(meterRegistry, "", "", "blocked");
+
+    @AfterEach
+    void tearDown() {
+        admissionController.shutdown();
+        outboundFlowControl.shutdown();
+    }
+
+    @Test
+    @DisplayName("每个会话只收到自己对话的消息")
+    void testNoCrossSessionTraffic() {
+        CapturingChannel channel = new CapturingChannel();
+        WebSocketChatController controller = new WebSocketChatController(
+                new FakeStreamingChatModel("你", "好", "！"), new SimpMessagingTemplate(channel), admissionController,
+                streamingMetrics, completionProtocol, outboundFlowControl, outputGuard);
+
+        controller.handleChat("hello", "session-a", "conversation-a", null, null, null);
+        controller.handleChat("hello", "session-b", "conversation-b", null, null, null);
+
+        // 两个会话各 3 个 partial + 1 个 complete
+        assertEquals(8, channel.messages.size());
+        assertEquals(2, meterRegistry.timer("streaming.duration",
+                "model", "unknown", "endpoint", "websocket", "outcome", "complete").count());
+        assertEquals(4, meterRegistry.timer("streaming.token.gap", "model", "unknown", "endpoint", "websocket").count());
+
+        DefaultUserDestinationResolver resolver = new DefaultUserDestinationResolver(mock(SimpUserRegistry.class));
+        for (Message<?> message : channel.messages) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+            StreamingMessage payload = (StreamingMessage) message.getPayload();
+            String sessionId = accessor.getSessionId();
+
+            // 写入后由出站流量控制确认
+            assertEquals(Boolean.TRUE, message.getHeaders().get(OutboundFlowControl.TRACKED_HEADER));
+
+            // 不再向广播主题发送
+            assertFalse(accessor.getDestination().startsWith("/topic"));
+
+            // 会话与对话一一对应
+            assertEquals("session-a".equals(sessionId) ? "conversation-a" : "conversation-b",
+                    payload.getConversationId());
+
+            // 用户目标地址只解析为一个目标会话队列，投递开销为 O(1)
+            UserDestinationResult result = resolver.resolveDestination(message);
+            assertNotNull(result);
+            assertEquals(1, result.getTargetDestinations().size());
+            assertEquals("/queue/response-user" + sessionId, result.getTargetDestinations().iterator().next());
+        }
+    }
+
+    @Test
+    @DisplayName("未指定对话 ID 时由服务端生成")
+    void testConversationIdGenerated() {
+        CapturingChannel channel = new CapturingChannel();
+        WebSocketChatController controller = new WebSocketChatController(
+                new FakeStreamingChatModel("hi"), new SimpMessagingTemplate(channel), admissionController,
+                streamingMetrics, completionProtocol, outboundFlowControl, outputGuard);
+
+        controller.handleChat("hello", "session-a", null, null, null, null);
+
+        String conversationId = ((StreamingMessage) channel.messages.get(0).getPayload()).getConversationId();
+        assertNotNull(conversationId);
+        channel.messages.forEach(message ->
+                assertEquals(conversationId, ((StreamingMessage) message.getPayload()).getConversationId()));
+    }
+
+    @Test
+    @DisplayName("紧凑协议：按序号推送二进制帧，首帧携带对话 ID")
+    void testCompactProtocol() {
+        CapturingChannel channel = new CapturingChannel();
+        WebSocketChatController controller = new WebSocketChatController(
+                new FakeStreamingChatModel("你", "好"), new SimpMessagingTemplate(channel), admissionController,
+                streamingMetrics, completionProtocol, outboundFlowControl, outputGuard);
+
+        controller.handleChat("hello", "session-a", "conversation-a", "compact", null, null);
+
+        // START + 2 个 partial + complete
+        assertEquals(4, channel.messages.size());
+        byte[] expectedTypes = {CompactFrameCodec.TYPE_START, CompactFrameCodec.TYPE_PARTIAL,
+                CompactFrameCodec.TYPE_PARTIAL, CompactFrameCodec.TYPE_COMPLETE};
+        String[] expectedPayloads = {"conversation-a", "你", "好", null};
+        CompactFrameCodec.Frame frame = null;
+        for (int i = 0; i < channel.messages.size(); i++) {
+            Message<?> message = channel.messages.get(i);
+            assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM,
+                    SimpMessageHeaderAccessor.wrap(message).getContentType());
+            frame = CompactFrameCodec.decode((byte[]) message.getPayload());
+            assertEquals(expectedTypes[i], frame.type());
+            assertEquals(i + 1, frame.sequence());
+            if (expectedPayloads[i] != null) {
+                assertEquals(expectedPayloads[i], frame.payload());
+            }
+        }
+        // complete 帧只携带元数据，完整回复可按 resultId 获取；resultId 带有服务端生成的 UUID，不能只凭 conversationId 取到别人的回复
+        Matcher resultId = Pattern.compile("\"resultId\":\"(websocket:conversation-a:[0-9a-f-]{36})\"")
+                .matcher(frame.payload());
+        assertTrue(resultId.find());
+        assertTrue(frame.payload().contains("\"events\":2"));
+        assertEquals("你好", completionProtocol.result(resultId.group(1)));
+        assertNull(completionProtocol.result("websocket:conversation-a"));
+    }
+
+    @Test
+    @DisplayName("慢消费者被断开或会话关闭时取消上游生成、释放准入名额，之后的回调不再发送")
+    void testEvictionCancelsGeneration() throws Exception {
+        // disconnect 策略、最多 1 条未写出：通道从不确认，第 3 个 token 时断开
+        OutboundFlowControl flowControl = new OutboundFlowControl(meterRegistry,
+                1, 262144, Duration.ofSeconds(10), OutboundFlowControl.POLICY_DISCONNECT);
+        try {
+            WebSocketSession session = mock(WebSocketSession.class);
+            when(session.getId()).thenReturn("session-a");
+            flowControl.register(session);
+            HangingStreamingChatModel model = new HangingStreamingChatModel();
+            WebSocketChatController controller = new WebSocketChatController(model,
+                    new SimpMessagingTemplate(new CapturingChannel()), admissionController, streamingMetrics,
+                    completionProtocol, flowControl, outputGuard);
+
+            controller.handleChat("hello", "session-a", "conversation-a", null, null, null);
+            controller.handleChat("hello", "session-b", "conversation-b", null, null, null);
+            assertEquals(2, meterRegistry.get("streaming.admission.in-flight").gauge().value());
+
+            model.emit(0, "a");
+            model.emit(0, "b");
+            assertFalse(model.handles.get(0).isCancelled());
+            model.emit(0, "c");
+
+            verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+            assertTrue(model.handles.get(0).isCancelled());
+            assertEquals(1, meterRegistry.get("streaming.admission.in-flight").gauge().value());
+            assertEquals(1, meterRegistry.timer("streaming.duration",
+                    "model", "unknown", "endpoint", "websocket", "outcome", "client-gone").count());
+
+            // 上游在取消前已发出的完成回调被忽略，名额不会重复释放
+            model.handlers.get(0).onCompleteResponse(ChatResponse.builder().aiMessage(AiMessage.from("abc")).build());
+            assertEquals(0, meterRegistry.timer("streaming.duration",
+                    "model", "unknown", "endpoint", "websocket", "outcome", "complete").count());
+            assertEquals(1, meterRegistry.get("streaming.admission.in-flight").gauge().value());
+
+            // 连接关闭（未登记流量控制的会话同样生效）
+            model.emit(1, "x");
+            flowControl.unregister("session-b");
+            assertTrue(model.handles.get(1).isCancelled());
+            assertEquals(0, meterRegistry.get("streaming.admission.in-flight").gauge().value());
+        } finally {
+            flowControl.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("紧凑帧编解码：varint 序号与 deflate 负载往返一致")
+    void testCompactFrameRoundTrip() {
+        CompactFrameCodec codec = new CompactFrameCodec(true);
+        String longText = "流式响应".repeat(200);
+
+        byte[] small = codec.encode(CompactFrameCodec.TYPE_PARTIAL, 300, "你");
+        // 1 字节类型 + 2 字节 varint(300) + 3 字节 UTF-8
+        assertEquals(6, small.length);
+        assertEquals(new CompactFrameCodec.Frame(CompactFrameCodec.TYPE_PARTIAL, 300, "你"),
+                CompactFrameCodec.decode(small));
+
+        byte[] large = codec.encode(CompactFrameCodec.TYPE_COMPLETE, Long.MAX_VALUE, longText);
+        assertNotEquals(0, large[0] & CompactFrameCodec.FLAG_DEFLATE);
+        assertTrue(large.length < longText.getBytes(StandardCharsets.UTF_8).length);
+        assertEquals(new CompactFrameCodec.Frame(CompactFrameCodec.TYPE_COMPLETE, Long.MAX_VALUE, longText),
+                CompactFrameCodec.decode(large));
+    }
+
+    // 同步输出固定 token 的假模型
+    private static class FakeStreamingChatModel implements StreamingChatModel {
+
+        private final List<String> tokens;
+
+        FakeStreamingChatModel(String... tokens) {
+            this.tokens = List.of(tokens);
+        }
+
+        @Override
+        public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+            tokens.forEach(handler::onPartialResponse);
+            handler.onCompleteResponse(ChatResponse.builder()
+                    .aiMessage(AiMessage.from(String.join("", tokens)))
+                    .build());
+        }
+
+    }
+
+    // 不主动结束的假模型：由测试逐个推送 token，记录每次调用的 StreamingHandle
+    private static class HangingStreamingChatModel implements StreamingChatModel {
+
+        private final List<StreamingChatResponseHandler> handlers = new CopyOnWriteArrayList<>();
+        private final List<RecordingHandle> handles = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+            handlers.add(handler);
+            handles.add(new RecordingHandle());
+        }
+
+        void emit(int call, String token) {
+            handlers.get(call).onPartialResponse(new PartialResponse(token),
+                    new PartialResponseContext(handles.get(call)));
+        }
+
+    }
+
+    private static class RecordingHandle implements StreamingHandle {
+
+        private volatile boolean cancelled;
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+    }
+
+    // 记录所有发送消息的通道
+    private static class CapturingChannel extends AbstractMessageChannel {
+
+        private final List<Message<?>> messages = new CopyOnWriteArrayList<>();
+
+        @Override
+        protected boolean sendInternal(Message<?> message, long timeout) {
+            messages.add(message);
+            return true;
+        }
+
+    }
+
+}